@@ -0,0 +1,311 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A regular expression that has been classified when compiled, so simple patterns can be matched without a
+ * {@link java.util.regex.Matcher}.  {@link #test} always gives the same result as
+ * <code>pattern.matcher(value).matches()</code>.
+ * <p>
+ * A pattern is split into a fixed-length part and an optional leading or trailing <code>.*</code>.  The fixed part
+ * may only contain literal characters, escaped punctuation such as <code>\.</code>, and <code>.</code>, which keeps
+ * its regex meaning of any character except a line terminator.  Anything else is matched using the regex.
+ */
+public final class CompiledPattern implements Predicate<String>
+{
+    public enum Kind
+    {
+        /**
+         * The whole value must match the fixed part, e.g. <code>foo.bar</code>.
+         */
+        EXACT,
+
+        /**
+         * The value must start with the fixed part, e.g. <code>foo.bar.*</code>.
+         */
+        PREFIX,
+
+        /**
+         * The value must end with the fixed part, e.g. <code>.*\.bar</code>.
+         */
+        SUFFIX,
+
+        /**
+         * The value is matched by the regex.
+         */
+        REGEX
+    }
+
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final Pattern pattern;
+    private final Kind kind;
+    private final String fixed;
+    private final boolean[] wildcards;
+    private final boolean hasWildcards;
+
+    private CompiledPattern(final Pattern pattern,
+                            final Kind kind,
+                            final String fixed,
+                            final boolean[] wildcards)
+    {
+        this.pattern = pattern;
+        this.kind = kind;
+        this.fixed = fixed;
+        this.wildcards = wildcards;
+        boolean anyWildcards = false;
+        for (int i = 0; !anyWildcards && i < wildcards.length; i++)
+        {
+            anyWildcards = wildcards[i];
+        }
+        this.hasWildcards = anyWildcards;
+    }
+
+    /**
+     * Classify a pattern.
+     *
+     * @param pattern the pattern
+     * @return the classified pattern
+     */
+    public static CompiledPattern of(final Pattern pattern)
+    {
+        final String source = pattern.pattern();
+        final StringBuilder fixed = new StringBuilder(source.length());
+        final boolean[] wildcards = new boolean[source.length()];
+        boolean leadingStar = false;
+        boolean trailingStar = false;
+        boolean regex = pattern.flags() != 0;
+
+        for (int i = 0; !regex && i < source.length(); i++)
+        {
+            final char c = source.charAt(i);
+            if (trailingStar || Character.isSurrogate(c))
+            {
+                // nothing may follow a trailing .*, and supplementary characters are left to the regex
+                regex = true;
+            }
+            else if (c == '.' && i + 1 < source.length() && source.charAt(i + 1) == '*')
+            {
+                if (i == 0 && source.length() > 2)
+                {
+                    leadingStar = true;
+                }
+                else if (i == source.length() - 2 && !leadingStar)
+                {
+                    trailingStar = true;
+                }
+                else
+                {
+                    regex = true;
+                }
+                i++;
+            }
+            else if (c == '.')
+            {
+                wildcards[fixed.length()] = true;
+                fixed.append(c);
+            }
+            else if (c == '\\')
+            {
+                final char escaped = i + 1 < source.length() ? source.charAt(i + 1) : 'a';
+                if (escaped < 128 && !Character.isLetterOrDigit(escaped))
+                {
+                    fixed.append(escaped);
+                    i++;
+                }
+                else
+                {
+                    regex = true;
+                }
+            }
+            else if (METACHARACTERS.indexOf(c) >= 0)
+            {
+                regex = true;
+            }
+            else
+            {
+                fixed.append(c);
+            }
+        }
+
+        final Kind kind;
+        if (regex)
+        {
+            kind = Kind.REGEX;
+        }
+        else if (leadingStar)
+        {
+            kind = Kind.SUFFIX;
+        }
+        else if (trailingStar)
+        {
+            kind = Kind.PREFIX;
+        }
+        else
+        {
+            kind = Kind.EXACT;
+        }
+
+        final boolean[] fixedWildcards = new boolean[fixed.length()];
+        System.arraycopy(wildcards,
+                         0,
+                         fixedWildcards,
+                         0,
+                         fixedWildcards.length);
+        return new CompiledPattern(pattern,
+                                   kind,
+                                   fixed.toString(),
+                                   fixedWildcards);
+    }
+
+    /**
+     * Get the underlying pattern.
+     *
+     * @return the pattern
+     */
+    public Pattern pattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * Get the classification of the pattern.
+     *
+     * @return the kind of pattern
+     */
+    public Kind kind()
+    {
+        return kind;
+    }
+
+    /**
+     * Get the fixed part of the pattern, i.e. the pattern without its leading or trailing <code>.*</code> and with
+     * escapes removed.  This is only meaningful if the kind is not {@link Kind#REGEX}.
+     *
+     * @return the fixed part of the pattern
+     */
+    String fixed()
+    {
+        return fixed;
+    }
+
+    /**
+     * Check if the fixed part of the pattern contains any <code>.</code> wildcards.
+     *
+     * @return true iff the fixed part contains a wildcard
+     */
+    boolean hasWildcards()
+    {
+        return hasWildcards;
+    }
+
+    /**
+     * Check if the value matches the pattern.
+     *
+     * @param value the value
+     * @return true iff the entire value matches the pattern
+     */
+    @Override
+    public boolean test(final String value)
+    {
+        final boolean matches;
+        if (kind == Kind.REGEX || (hasWildcards && hasSurrogates(value)))
+        {
+            // a . matches a whole code point, so character-by-character matching isn't safe here
+            matches = pattern.matcher(value).matches();
+        }
+        else
+        {
+            final int length = value.length();
+            final int fixedLength = fixed.length();
+            switch (kind)
+            {
+                case EXACT:
+                    matches = length == fixedLength && matchesFixed(value,
+                                                                    0);
+                    break;
+                case PREFIX:
+                    matches = length >= fixedLength
+                              && matchesFixed(value,
+                                              0)
+                              && !hasLineTerminators(value,
+                                                     fixedLength,
+                                                     length);
+                    break;
+                default:
+                    matches = length >= fixedLength
+                              && matchesFixed(value,
+                                              length - fixedLength)
+                              && !hasLineTerminators(value,
+                                                     0,
+                                                     length - fixedLength);
+            }
+        }
+        return matches;
+    }
+
+    private boolean matchesFixed(final String value,
+                                 final int offset)
+    {
+        boolean matches;
+        if (hasWildcards)
+        {
+            matches = true;
+            for (int i = 0; matches && i < wildcards.length; i++)
+            {
+                final char c = value.charAt(offset + i);
+                matches = wildcards[i] ? !isLineTerminator(c)
+                                       : c == fixed.charAt(i);
+            }
+        }
+        else
+        {
+            matches = value.startsWith(fixed,
+                                       offset);
+        }
+        return matches;
+    }
+
+    private static boolean hasLineTerminators(final String value,
+                                              final int from,
+                                              final int to)
+    {
+        boolean found = false;
+        for (int i = from; !found && i < to; i++)
+        {
+            found = isLineTerminator(value.charAt(i));
+        }
+        return found;
+    }
+
+    private static boolean hasSurrogates(final String value)
+    {
+        boolean found = false;
+        for (int i = 0; !found && i < value.length(); i++)
+        {
+            found = Character.isSurrogate(value.charAt(i));
+        }
+        return found;
+    }
+
+    static boolean isLineTerminator(final char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -17,6 +17,9 @@ package be.objectify.deadbolt.java;
 
 import play.libs.F;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Steve Chaloner (steve@objectify.be)
  */
@@ -26,6 +29,12 @@ public class ConfigKeys
     public static final String CACHE_DEADBOLT_USER = "deadbolt.java.cache-user";
     public static final F.Tuple<String, Boolean> CACHE_DEADBOLT_USER_DEFAULT = new F.Tuple<>(CACHE_DEADBOLT_USER,
                                                                                              false);
+    public static final String CACHE_ABSENT_USER = "deadbolt.java.cache-absent-user";
+    public static final F.Tuple<String, Boolean> CACHE_ABSENT_USER_DEFAULT = new F.Tuple<>(CACHE_ABSENT_USER,
+                                                                                           false);
+    public static final String CACHE_DYNAMIC = "deadbolt.java.cache-dynamic";
+    public static final F.Tuple<String, Boolean> CACHE_DYNAMIC_DEFAULT = new F.Tuple<>(CACHE_DYNAMIC,
+                                                                                       false);
     public static final String DEFAULT_VIEW_TIMEOUT = "deadbolt.java.view-timeout";
     public static final F.Tuple<String, Long> DEFAULT_VIEW_TIMEOUT_DEFAULT = new F.Tuple<>(DEFAULT_VIEW_TIMEOUT,
                                                                                            1000L);
@@ -35,10 +44,127 @@ public class ConfigKeys
     public static final String DEFAULT_BLOCKING_TIMEOUT = "deadbolt.java.blocking-timeout";
     public static final F.Tuple<String, Long> DEFAULT_BLOCKING_TIMEOUT_DEFAULT = new F.Tuple<>(DEFAULT_BLOCKING_TIMEOUT,
                                                                                                1000L);
+    public static final String BLOCKING_MODE = "deadbolt.java.blocking-mode";
+    public static final F.Tuple<String, String> BLOCKING_MODE_DEFAULT = new F.Tuple<>(BLOCKING_MODE,
+                                                                                      "wait");
     public static final String CUSTOM_EC = "deadbolt.java.custom-execution-context.enable";
     public static final F.Tuple<String, Boolean> CUSTOM_EC_DEFAULT = new F.Tuple<>(CUSTOM_EC,
                                                                                    false);
 
+    public static final String FAST_PATH = "deadbolt.java.fast-path";
+    public static final F.Tuple<String, Boolean> FAST_PATH_DEFAULT = new F.Tuple<>(FAST_PATH,
+                                                                                   false);
+
+    public static final String DECISION_CACHE = "deadbolt.java.decision-cache.enabled";
+    public static final F.Tuple<String, Boolean> DECISION_CACHE_DEFAULT = new F.Tuple<>(DECISION_CACHE,
+                                                                                        false);
+    public static final String DECISION_CACHE_DYNAMIC = "deadbolt.java.decision-cache.include-dynamic";
+    public static final F.Tuple<String, Boolean> DECISION_CACHE_DYNAMIC_DEFAULT = new F.Tuple<>(DECISION_CACHE_DYNAMIC,
+                                                                                                false);
+    public static final String DECISION_CACHE_MAX_SIZE = "deadbolt.java.decision-cache.max-size";
+    public static final F.Tuple<String, Long> DECISION_CACHE_MAX_SIZE_DEFAULT = new F.Tuple<>(DECISION_CACHE_MAX_SIZE,
+                                                                                              10000L);
+    public static final String DECISION_CACHE_TTL = "deadbolt.java.decision-cache.ttl";
+    public static final F.Tuple<String, Long> DECISION_CACHE_TTL_DEFAULT = new F.Tuple<>(DECISION_CACHE_TTL,
+                                                                                         60000L);
+
+    public static final String ROLE_PERMISSIONS_CACHE = "deadbolt.java.role-permissions-cache.enabled";
+    public static final F.Tuple<String, Boolean> ROLE_PERMISSIONS_CACHE_DEFAULT = new F.Tuple<>(ROLE_PERMISSIONS_CACHE,
+                                                                                                false);
+    public static final String ROLE_PERMISSIONS_CACHE_TTL = "deadbolt.java.role-permissions-cache.ttl";
+    public static final F.Tuple<String, Long> ROLE_PERMISSIONS_CACHE_TTL_DEFAULT = new F.Tuple<>(ROLE_PERMISSIONS_CACHE_TTL,
+                                                                                                 300000L);
+    public static final String ROLE_PERMISSIONS_CACHE_REFRESH = "deadbolt.java.role-permissions-cache.refresh";
+    public static final F.Tuple<String, Long> ROLE_PERMISSIONS_CACHE_REFRESH_DEFAULT = new F.Tuple<>(ROLE_PERMISSIONS_CACHE_REFRESH,
+                                                                                                     240000L);
+
+    public static final String SUBJECT_CACHE = "deadbolt.java.subject-cache.enabled";
+    public static final F.Tuple<String, Boolean> SUBJECT_CACHE_DEFAULT = new F.Tuple<>(SUBJECT_CACHE,
+                                                                                       false);
+    public static final String SUBJECT_CACHE_MAX_SIZE = "deadbolt.java.subject-cache.max-size";
+    public static final F.Tuple<String, Long> SUBJECT_CACHE_MAX_SIZE_DEFAULT = new F.Tuple<>(SUBJECT_CACHE_MAX_SIZE,
+                                                                                             10000L);
+    public static final String SUBJECT_CACHE_TTL = "deadbolt.java.subject-cache.ttl";
+    public static final F.Tuple<String, Long> SUBJECT_CACHE_TTL_DEFAULT = new F.Tuple<>(SUBJECT_CACHE_TTL,
+                                                                                        300000L);
+    public static final String SUBJECT_CACHE_IDLE = "deadbolt.java.subject-cache.idle";
+    public static final F.Tuple<String, Long> SUBJECT_CACHE_IDLE_DEFAULT = new F.Tuple<>(SUBJECT_CACHE_IDLE,
+                                                                                         120000L);
+    public static final String SUBJECT_CACHE_OFF_HEAP = "deadbolt.java.subject-cache.off-heap.enabled";
+    public static final F.Tuple<String, Boolean> SUBJECT_CACHE_OFF_HEAP_DEFAULT = new F.Tuple<>(SUBJECT_CACHE_OFF_HEAP,
+                                                                                                false);
+    public static final String SUBJECT_CACHE_OFF_HEAP_SIZE = "deadbolt.java.subject-cache.off-heap.size";
+    public static final F.Tuple<String, Long> SUBJECT_CACHE_OFF_HEAP_SIZE_DEFAULT = new F.Tuple<>(SUBJECT_CACHE_OFF_HEAP_SIZE,
+                                                                                                  67108864L);
+    public static final String SUBJECT_CACHE_ABSENT_TTL = "deadbolt.java.subject-cache.absent-ttl";
+    public static final F.Tuple<String, Long> SUBJECT_CACHE_ABSENT_TTL_DEFAULT = new F.Tuple<>(SUBJECT_CACHE_ABSENT_TTL,
+                                                                                               0L);
+    public static final String SUBJECT_CACHE_SINGLE_FLIGHT = "deadbolt.java.subject-cache.single-flight";
+    public static final F.Tuple<String, Boolean> SUBJECT_CACHE_SINGLE_FLIGHT_DEFAULT = new F.Tuple<>(SUBJECT_CACHE_SINGLE_FLIGHT,
+                                                                                                     false);
+
+    public static final String PATTERN_CACHE_MAX_SIZE = "deadbolt.java.pattern-cache.max-size";
+    public static final F.Tuple<String, Long> PATTERN_CACHE_MAX_SIZE_DEFAULT = new F.Tuple<>(PATTERN_CACHE_MAX_SIZE,
+                                                                                             1000L);
+    public static final String PATTERN_CACHE_WARM = "deadbolt.java.pattern-cache.warm";
+
+    public static final String SNAPSHOT_PATH = "deadbolt.java.snapshot.path";
+    public static final String SNAPSHOT_VERSION = "deadbolt.java.snapshot.version";
+    public static final F.Tuple<String, String> SNAPSHOT_VERSION_DEFAULT = new F.Tuple<>(SNAPSHOT_VERSION,
+                                                                                         "");
+    public static final String SNAPSHOT_MAX_AGE = "deadbolt.java.snapshot.max-age";
+    public static final F.Tuple<String, Long> SNAPSHOT_MAX_AGE_DEFAULT = new F.Tuple<>(SNAPSHOT_MAX_AGE,
+                                                                                       3600000L);
+
+    public static final String INVALIDATION_TRANSPORT = "deadbolt.java.invalidation.transport";
+    public static final F.Tuple<String, String> INVALIDATION_TRANSPORT_DEFAULT = new F.Tuple<>(INVALIDATION_TRANSPORT,
+                                                                                               "loopback");
+    public static final String INVALIDATION_UDP_BIND = "deadbolt.java.invalidation.udp.bind";
+    public static final F.Tuple<String, String> INVALIDATION_UDP_BIND_DEFAULT = new F.Tuple<>(INVALIDATION_UDP_BIND,
+                                                                                              "127.0.0.1:4446");
+    public static final String INVALIDATION_UDP_TARGETS = "deadbolt.java.invalidation.udp.targets";
+    public static final F.Tuple<String, List<String>> INVALIDATION_UDP_TARGETS_DEFAULT = new F.Tuple<>(INVALIDATION_UDP_TARGETS,
+                                                                                                       Collections.emptyList());
+    public static final String INVALIDATION_UDP_SECRET = "deadbolt.java.invalidation.udp.secret";
+    public static final F.Tuple<String, String> INVALIDATION_UDP_SECRET_DEFAULT = new F.Tuple<>(INVALIDATION_UDP_SECRET,
+                                                                                                "");
+    public static final String INVALIDATION_BATCH_WINDOW = "deadbolt.java.invalidation.batch-window";
+    public static final F.Tuple<String, Long> INVALIDATION_BATCH_WINDOW_DEFAULT = new F.Tuple<>(INVALIDATION_BATCH_WINDOW,
+                                                                                                50L);
+    public static final String INVALIDATION_BATCH_MAX_SIZE = "deadbolt.java.invalidation.batch-max-size";
+    public static final F.Tuple<String, Integer> INVALIDATION_BATCH_MAX_SIZE_DEFAULT = new F.Tuple<>(INVALIDATION_BATCH_MAX_SIZE,
+                                                                                                     1000);
+
+    public static final String CACHE_STATS_JMX = "deadbolt.java.cache-stats.jmx.enabled";
+    public static final F.Tuple<String, Boolean> CACHE_STATS_JMX_DEFAULT = new F.Tuple<>(CACHE_STATS_JMX,
+                                                                                         false);
+
+    public static final String TIMEOUTS_JMX = "deadbolt.java.timeouts.jmx.enabled";
+    public static final F.Tuple<String, Boolean> TIMEOUTS_JMX_DEFAULT = new F.Tuple<>(TIMEOUTS_JMX,
+                                                                                      false);
+
+    public static final String FUSE_ACTIONS = "deadbolt.java.fuse-actions";
+    public static final F.Tuple<String, Boolean> FUSE_ACTIONS_DEFAULT = new F.Tuple<>(FUSE_ACTIONS,
+                                                                                      false);
+
+    public static final String SCAN = "deadbolt.java.scan.enabled";
+    public static final F.Tuple<String, Boolean> SCAN_DEFAULT = new F.Tuple<>(SCAN,
+                                                                              false);
+    public static final String SCAN_CONTROLLERS = "deadbolt.java.scan.controllers";
+    public static final F.Tuple<String, List<String>> SCAN_CONTROLLERS_DEFAULT = new F.Tuple<>(SCAN_CONTROLLERS,
+                                                                                               Collections.emptyList());
+    public static final String SCAN_AFTER = "deadbolt.java.scan.after";
+    public static final F.Tuple<String, List<String>> SCAN_AFTER_DEFAULT = new F.Tuple<>(SCAN_AFTER,
+                                                                                         Collections.emptyList());
+    public static final String SCAN_FAIL_ON_ERROR = "deadbolt.java.scan.fail-on-error";
+    public static final F.Tuple<String, Boolean> SCAN_FAIL_ON_ERROR_DEFAULT = new F.Tuple<>(SCAN_FAIL_ON_ERROR,
+                                                                                            false);
+
+    /**
+     * @deprecated no longer set in {@link play.mvc.Http.Context#args}; the invert flag of a custom pattern is passed
+     * to {@link DynamicResourceHandler#checkPermission(String, java.util.Optional, boolean, DeadboltHandler, play.mvc.Http.Context)}
+     */
+    @Deprecated
     public static final String PATTERN_INVERT = "deadbolt.pattern.invert";
 
     private ConfigKeys()
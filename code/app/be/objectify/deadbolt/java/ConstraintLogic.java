@@ -15,12 +15,22 @@
  */
 package be.objectify.deadbolt.java;
 
+import be.objectify.deadbolt.java.cache.DecisionCache;
+import be.objectify.deadbolt.java.cache.DecisionKey;
+import be.objectify.deadbolt.java.cache.DefaultDynamicResourceCache;
+import be.objectify.deadbolt.java.cache.DefaultRolePermissionsCache;
+import be.objectify.deadbolt.java.cache.DynamicResourceCache;
+import be.objectify.deadbolt.java.cache.NoOpDecisionCache;
 import be.objectify.deadbolt.java.cache.PatternCache;
+import be.objectify.deadbolt.java.cache.RolePermissionsCache;
 import be.objectify.deadbolt.java.cache.SubjectCache;
 import be.objectify.deadbolt.java.models.PatternType;
+import be.objectify.deadbolt.java.models.Permission;
 import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.utils.CompletionStages;
 import be.objectify.deadbolt.java.utils.TriFunction;
 import com.google.inject.Singleton;
+import play.Configuration;
 import play.libs.concurrent.HttpExecution;
 import play.mvc.Http;
 import scala.concurrent.ExecutionContext;
@@ -32,7 +42,9 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * The logic behind the constraints.
@@ -50,16 +62,82 @@ public class ConstraintLogic
 
     private final DeadboltExecutionContextProvider executionContextProvider;
 
+    /**
+     * If true, stages that have already completed are evaluated on the calling thread instead of being handed off
+     * to the executor.
+     */
+    private final boolean fastPath;
+
+    private final DecisionCache decisionCache;
+
+    private final DynamicResourceCache dynamicResourceCache;
+
+    private final RolePermissionsCache rolePermissionsCache;
+
     @Inject
+    public ConstraintLogic(final DeadboltAnalyzer analyzer,
+                           final SubjectCache subjectCache,
+                           final PatternCache patternCache,
+                           final ExecutionContextProvider ecProvider,
+                           final Configuration configuration,
+                           final DecisionCache decisionCache,
+                           final DynamicResourceCache dynamicResourceCache,
+                           final RolePermissionsCache rolePermissionsCache)
+    {
+        this(analyzer,
+             subjectCache,
+             patternCache,
+             ecProvider,
+             configuration.getBoolean(ConfigKeys.FAST_PATH_DEFAULT._1,
+                                      ConfigKeys.FAST_PATH_DEFAULT._2),
+             decisionCache,
+             dynamicResourceCache,
+             rolePermissionsCache);
+    }
+
+    /**
+     * Create a constraint logic with the fast path and all caches disabled, which is how it behaves by default.
+     *
+     * @param analyzer     the analyzer
+     * @param subjectCache the subject cache
+     * @param patternCache the pattern cache
+     * @param ecProvider   the execution context provider
+     */
     public ConstraintLogic(final DeadboltAnalyzer analyzer,
                            final SubjectCache subjectCache,
                            final PatternCache patternCache,
                            final ExecutionContextProvider ecProvider)
+    {
+        this(analyzer,
+             subjectCache,
+             patternCache,
+             ecProvider,
+             false,
+             NoOpDecisionCache.INSTANCE,
+             new DefaultDynamicResourceCache(false),
+             new DefaultRolePermissionsCache(false,
+                                             0L,
+                                             0L,
+                                             System::nanoTime));
+    }
+
+    public ConstraintLogic(final DeadboltAnalyzer analyzer,
+                           final SubjectCache subjectCache,
+                           final PatternCache patternCache,
+                           final ExecutionContextProvider ecProvider,
+                           final boolean fastPath,
+                           final DecisionCache decisionCache,
+                           final DynamicResourceCache dynamicResourceCache,
+                           final RolePermissionsCache rolePermissionsCache)
     {
         this.analyzer = analyzer;
         this.subjectCache = subjectCache;
         this.patternCache = patternCache;
         this.executionContextProvider = ecProvider.get();
+        this.fastPath = fastPath;
+        this.decisionCache = decisionCache;
+        this.dynamicResourceCache = dynamicResourceCache;
+        this.rolePermissionsCache = rolePermissionsCache;
     }
 
     public <T> CompletionStage<T> subjectPresent(final Http.Context ctx,
@@ -112,16 +190,14 @@ public class ConstraintLogic
                                                final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> present,
                                                final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> notPresent)
     {
-        final ExecutionContextExecutor executor = executor();
-        return getSubject(ctx,
-                          deadboltHandler)
-                .thenComposeAsync(maybeSubject -> maybeSubject.isPresent() ? present.apply(ctx,
-                                                                                           deadboltHandler,
-                                                                                           content)
-                                                                           : notPresent.apply(ctx,
-                                                                                              deadboltHandler,
-                                                                                              content),
-                                  executor);
+        return thenCompose(getSubject(ctx,
+                                      deadboltHandler),
+                           maybeSubject -> maybeSubject.isPresent() ? present.apply(ctx,
+                                                                                    deadboltHandler,
+                                                                                    content)
+                                                                    : notPresent.apply(ctx,
+                                                                                       deadboltHandler,
+                                                                                       content));
     }
 
     public <T> CompletionStage<T> restrict(final Http.Context ctx,
@@ -132,36 +208,63 @@ public class ConstraintLogic
                                            final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                            final ConstraintPoint constraintPoint)
     {
-        final ExecutionContextExecutor executor = executor();
-        return getSubject(ctx,
-                          deadboltHandler)
-                .thenApplyAsync(subjectOption ->
-                                {
-                                    boolean roleOk = false;
-                                    if (subjectOption.isPresent())
-                                    {
-                                        final List<String[]> roleGroups = roleGroupSupplier.get();
-                                        for (int i = 0; !roleOk && i < roleGroups.size(); i++)
-                                        {
-                                            roleOk = analyzer.checkRole(subjectOption,
-                                                                        roleGroups.get(i));
-                                        }
-                                    }
-                                    return roleOk;
-                                },
-                                executor)
-                .thenComposeAsync(allowed -> allowed ? pass(ctx,
-                                                            deadboltHandler,
-                                                            pass,
-                                                            constraintPoint,
-                                                            "restrict")
-                                                     : fail.apply(ctx,
-                                                                  deadboltHandler,
-                                                                  content),
-                                  executor);
+        final Supplier<List<String[]>> roleGroups = once(roleGroupSupplier);
+        return thenCompose(decide(ctx,
+                                  deadboltHandler,
+                                  () -> fingerprint("restrict",
+                                                    roleGroups.get()),
+                                  subjectOption -> subjectOption.isPresent() && analyzer.checkAnyRoleGroup(subjectOption,
+                                                                                                            roleGroups.get())),
+                           allowed -> allowed ? pass(ctx,
+                                                     deadboltHandler,
+                                                     pass,
+                                                     constraintPoint,
+                                                     "restrict")
+                                              : fail.apply(ctx,
+                                                           deadboltHandler,
+                                                           content));
 
     }
 
+    /**
+     * As {@link #restrict(Http.Context, DeadboltHandler, Optional, Supplier, Function, TriFunction, ConstraintPoint)},
+     * but with role groups that have already been compiled by {@link #compileRoleGroups}.
+     */
+    public <T> CompletionStage<T> restrict(final Http.Context ctx,
+                                           final DeadboltHandler deadboltHandler,
+                                           final Optional<String> content,
+                                           final RoleGroups roleGroups,
+                                           final Function<Http.Context, CompletionStage<T>> pass,
+                                           final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
+                                           final ConstraintPoint constraintPoint)
+    {
+        return thenCompose(decide(ctx,
+                                  deadboltHandler,
+                                  roleGroups::fingerprint,
+                                  subjectOption -> subjectOption.isPresent() && analyzer.checkAnyRoleGroup(subjectOption,
+                                                                                                            roleGroups)),
+                           allowed -> allowed ? pass(ctx,
+                                                     deadboltHandler,
+                                                     pass,
+                                                     constraintPoint,
+                                                     "restrict")
+                                              : fail.apply(ctx,
+                                                           deadboltHandler,
+                                                           content));
+    }
+
+    /**
+     * Compiles role groups for use with
+     * {@link #restrict(Http.Context, DeadboltHandler, Optional, RoleGroups, Function, TriFunction, ConstraintPoint)}.
+     *
+     * @param roleGroups the role groups.  Any role name starting with ! will be negated.
+     * @return the compiled role groups
+     */
+    public RoleGroups compileRoleGroups(final List<String[]> roleGroups)
+    {
+        return analyzer.compile(roleGroups);
+    }
+
     public <T> CompletionStage<T> roleBasedPermissions(final Http.Context ctx,
                                                        final DeadboltHandler deadboltHandler,
                                                        final Optional<String> content,
@@ -170,34 +273,25 @@ public class ConstraintLogic
                                                        final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                                        final ConstraintPoint constraintPoint)
     {
-        final ExecutionContextExecutor executor = executor();
-        return getSubject(ctx,
-                          deadboltHandler)
-                .thenComposeAsync(maybeSubject -> maybeSubject.isPresent() ? deadboltHandler.getPermissionsForRole(roleName)
-                                                                                            .thenApplyAsync(permissions -> permissions.stream()
-                                                                                                                                      .map(permission -> Optional
-                                                                                                                                              .ofNullable(patternCache
-                                                                                                                                                                  .apply(permission
-                                                                                                                                                                                 .getValue())))
-                                                                                                                                      .map(maybePattern -> analyzer
-                                                                                                                                              .checkRegexPattern(maybeSubject,
-                                                                                                                                                                 maybePattern))
-                                                                                                                                      .filter(matches -> matches)
-                                                                                                                                      .findFirst()
-                                                                                                                                      .isPresent(),
-                                                                                                            executor)
-
-                                                                           : CompletableFuture.completedFuture(false),
-                                  executor)
-                .thenComposeAsync(allowed -> allowed ? pass(ctx,
-                                                            deadboltHandler,
-                                                            pass,
-                                                            constraintPoint,
-                                                            "roleBasedPermissions")
-                                                     : fail.apply(ctx,
-                                                                  deadboltHandler,
-                                                                  content),
-                                  executor);
+        return thenCompose(decideAsync(ctx,
+                                       deadboltHandler,
+                                       () -> fingerprint("roleBasedPermissions",
+                                                         roleName),
+                                       maybeSubject -> maybeSubject.isPresent() ? thenApply(rolePermissionsCache.get(deadboltHandler,
+                                                                                                                     roleName),
+                                                                                            permissions -> analyzer.checkPatternSet(maybeSubject,
+                                                                                                                                    patternCache.compiledSet(permissions.stream()
+                                                                                                                                                                        .map(Permission::getValue)
+                                                                                                                                                                        .collect(Collectors.toList()))))
+                                                                                : CompletableFuture.completedFuture(false)),
+                           allowed -> allowed ? pass(ctx,
+                                                     deadboltHandler,
+                                                     pass,
+                                                     constraintPoint,
+                                                     "roleBasedPermissions")
+                                              : fail.apply(ctx,
+                                                           deadboltHandler,
+                                                           content));
 
     }
 
@@ -263,24 +357,32 @@ public class ConstraintLogic
                                           final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                           final ConstraintPoint constraintPoint)
     {
-        final ExecutionContextExecutor executor = executor();
-        return deadboltHandler.getDynamicResourceHandler(ctx)
-                              .thenApplyAsync(option -> option.orElseGet(() -> ExceptionThrowingDynamicResourceHandler.INSTANCE),
-                                              executor)
-                              .thenComposeAsync(drh -> drh.isAllowed(name,
-                                                                     meta,
-                                                                     deadboltHandler,
-                                                                     ctx),
-                                                executor)
-                              .thenComposeAsync(allowed -> allowed ? pass(ctx,
-                                                                          deadboltHandler,
-                                                                          pass,
-                                                                          constraintPoint,
-                                                                          "dynamic")
-                                                                   : fail.apply(ctx,
-                                                                                deadboltHandler,
-                                                                                content),
-                                                executor);
+        return thenCompose(decideDynamic(ctx,
+                                         deadboltHandler,
+                                         () -> fingerprint("dynamic",
+                                                           name,
+                                                           meta.orElse(null)),
+                                         drh -> drh.isCacheable(name,
+                                                                meta),
+                                         () -> dynamicResourceCache.result(deadboltHandler,
+                                                                           ctx,
+                                                                           () -> fingerprint("dynamic",
+                                                                                             name,
+                                                                                             meta.orElse(null)),
+                                                                           () -> thenCompose(dynamicResourceHandler(ctx,
+                                                                                                                    deadboltHandler),
+                                                                                             drh -> drh.isAllowed(name,
+                                                                                                                  meta,
+                                                                                                                  deadboltHandler,
+                                                                                                                  ctx)))),
+                           allowed -> allowed ? pass(ctx,
+                                                     deadboltHandler,
+                                                     pass,
+                                                     constraintPoint,
+                                                     "dynamic")
+                                              : fail.apply(ctx,
+                                                           deadboltHandler,
+                                                           content));
     }
 
     private <T> CompletionStage<T> custom(final Http.Context ctx,
@@ -293,26 +395,35 @@ public class ConstraintLogic
                                           final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                           final ConstraintPoint constraintPoint)
     {
-        ctx.args.put(ConfigKeys.PATTERN_INVERT,
-                     invert);
-        final ExecutionContextExecutor executor = executor();
-        return deadboltHandler.getDynamicResourceHandler(ctx)
-                              .thenApplyAsync(option -> option.orElseGet(() -> ExceptionThrowingDynamicResourceHandler.INSTANCE),
-                                              executor)
-                              .thenComposeAsync(resourceHandler -> resourceHandler.checkPermission(value,
-                                                                                                   meta,
-                                                                                                   deadboltHandler,
-                                                                                                   ctx),
-                                                executor)
-                              .thenComposeAsync(allowed -> (invert ? !allowed : allowed) ? pass(ctx,
-                                                                                                deadboltHandler,
-                                                                                                pass,
-                                                                                                constraintPoint,
-                                                                                                "pattern - custom")
-                                                                                         : fail.apply(ctx,
-                                                                                                      deadboltHandler,
-                                                                                                      content),
-                                                executor);
+        return thenCompose(decideDynamic(ctx,
+                                         deadboltHandler,
+                                         () -> fingerprint("custom",
+                                                           value,
+                                                           meta.orElse(null),
+                                                           Boolean.toString(invert)),
+                                         drh -> drh.isPermissionCacheable(value,
+                                                                          meta),
+                                         () -> dynamicResourceCache.result(deadboltHandler,
+                                                                           ctx,
+                                                                           () -> fingerprint("custom",
+                                                                                             value,
+                                                                                             meta.orElse(null),
+                                                                                             Boolean.toString(invert)),
+                                                                           () -> thenCompose(dynamicResourceHandler(ctx,
+                                                                                                                    deadboltHandler),
+                                                                                             resourceHandler -> resourceHandler.checkPermission(value,
+                                                                                                                                                meta,
+                                                                                                                                                invert,
+                                                                                                                                                deadboltHandler,
+                                                                                                                                                ctx)))),
+                           allowed -> (invert ? !allowed : allowed) ? pass(ctx,
+                                                                           deadboltHandler,
+                                                                           pass,
+                                                                           constraintPoint,
+                                                                           "pattern - custom")
+                                                                    : fail.apply(ctx,
+                                                                                 deadboltHandler,
+                                                                                 content));
     }
 
     private <T> CompletionStage<T> equality(final Http.Context ctx,
@@ -324,27 +435,34 @@ public class ConstraintLogic
                                             final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                             final ConstraintPoint constraintPoint)
     {
-        final ExecutionContextExecutor executor = executor();
-        return getSubject(ctx,
-                          deadboltHandler)
-                .thenApplyAsync(subject -> subject.isPresent() ? analyzer.checkPatternEquality(subject,
-                                                                                               Optional.ofNullable(value))
-                                                               : invert, // this is a little clumsy - it means no subject + invert is still denied
-                                executor)
-                .thenComposeAsync(equal -> (invert ? !equal : equal) ? pass(ctx,
-                                                                            deadboltHandler,
-                                                                            pass,
-                                                                            constraintPoint,
-                                                                            "pattern - equality")
-                                                                     : fail.apply(ctx,
-                                                                                  deadboltHandler,
-                                                                                  content), executor);
+        return thenCompose(decide(ctx,
+                                  deadboltHandler,
+                                  () -> fingerprint("equality",
+                                                    value),
+                                  subject -> subject.isPresent() ? analyzer.checkPatternEquality(subject,
+                                                                                                 Optional.ofNullable(value))
+                                                                 : invert), // this is a little clumsy - it means no subject + invert is still denied
+                           equal -> (invert ? !equal : equal) ? pass(ctx,
+                                                                     deadboltHandler,
+                                                                     pass,
+                                                                     constraintPoint,
+                                                                     "pattern - equality")
+                                                              : fail.apply(ctx,
+                                                                           deadboltHandler,
+                                                                           content));
+    }
+
+    private CompletionStage<DynamicResourceHandler> dynamicResourceHandler(final Http.Context ctx,
+                                                                           final DeadboltHandler deadboltHandler)
+    {
+        return thenApply(dynamicResourceCache.handler(deadboltHandler,
+                                                      ctx),
+                         option -> option.orElseGet(() -> ExceptionThrowingDynamicResourceHandler.INSTANCE));
     }
 
     protected CompletionStage<Optional<? extends Subject>> getSubject(final Http.Context ctx,
                                                                       final DeadboltHandler deadboltHandler)
     {
-        final ExecutionContextExecutor executor = executor();
         return subjectCache.apply(deadboltHandler,
                                   ctx);
     }
@@ -366,26 +484,213 @@ public class ConstraintLogic
                                          final TriFunction<Http.Context, DeadboltHandler, Optional<String>, CompletionStage<T>> fail,
                                          final ConstraintPoint constraintPoint)
     {
-        final ExecutionContextExecutor executor = executor();
-        return CompletableFuture.supplyAsync(() -> patternCache.apply(value),
-                                             executor)
-                                .thenCombineAsync(getSubject(ctx,
-                                                             deadboltHandler),
-                                                  (patternValue, subject) ->
-                                                          subject.isPresent() ? analyzer.checkRegexPattern(subject,
-                                                                                                           Optional.ofNullable(patternValue))
-                                                                              : invert, // this is a little clumsy - it means no subject + invert is still denied
+        final CompletionStage<Boolean> check;
+        if (decisionCache.isEnabled())
+        {
+            check = decide(ctx,
+                           deadboltHandler,
+                           () -> fingerprint("regex",
+                                             value),
+                           subject -> subject.isPresent() ? analyzer.checkRegexPattern(subject,
+                                                                                       patternCache.compiled(value))
+                                                          : invert); // this is a little clumsy - it means no subject + invert is still denied
+        }
+        else
+        {
+            check = regexCheck(ctx,
+                               deadboltHandler,
+                               value,
+                               invert);
+        }
+
+        return thenCompose(check,
+                           hasPassed -> (invert ? !hasPassed : hasPassed) ? pass(ctx,
+                                                                                 deadboltHandler,
+                                                                                 pass,
+                                                                                 constraintPoint,
+                                                                                 "pattern - regex")
+                                                                          : fail.apply(ctx,
+                                                                                       deadboltHandler,
+                                                                                       content));
+    }
+
+    /**
+     * Checks the regex against the subject's permissions, compiling the pattern in parallel with obtaining the subject
+     * unless the subject is already available.
+     */
+    private CompletionStage<Boolean> regexCheck(final Http.Context ctx,
+                                                final DeadboltHandler deadboltHandler,
+                                                final String value,
+                                                final boolean invert)
+    {
+        final CompletionStage<Optional<? extends Subject>> subjectStage = getSubject(ctx,
+                                                                                    deadboltHandler);
+        final CompletionStage<Boolean> check;
+        if (fastPath && CompletionStages.isCompletedNormally(subjectStage))
+        {
+            check = thenApply(subjectStage,
+                              subject -> subject.isPresent() ? analyzer.checkRegexPattern(subject,
+                                                                                          patternCache.compiled(value))
+                                                             : invert); // this is a little clumsy - it means no subject + invert is still denied
+        }
+        else
+        {
+            final ExecutionContextExecutor executor = executor();
+            check = CompletableFuture.supplyAsync(() -> patternCache.compiled(value),
                                                   executor)
+                                     .thenCombineAsync(subjectStage,
+                                                       (pattern, subject) ->
+                                                               subject.isPresent() ? analyzer.checkRegexPattern(subject,
+                                                                                                                pattern)
+                                                                                   : invert, // this is a little clumsy - it means no subject + invert is still denied
+                                                       executor);
+        }
 
-                                .thenComposeAsync(hasPassed -> (invert ? !hasPassed : hasPassed) ? pass(ctx,
-                                                                                                        deadboltHandler,
-                                                                                                        pass,
-                                                                                                        constraintPoint,
-                                                                                                        "pattern - regex")
-                                                                                                 : fail.apply(ctx,
-                                                                                                              deadboltHandler,
-                                                                                                              content),
-                                                  executor);
+        return check;
+    }
+
+    /**
+     * Makes a decision based on the subject, using the decision cache if it's enabled.
+     */
+    private CompletionStage<Boolean> decide(final Http.Context ctx,
+                                            final DeadboltHandler deadboltHandler,
+                                            final Supplier<String> fingerprint,
+                                            final Function<Optional<? extends Subject>, Boolean> check)
+    {
+        return decisionCache.isEnabled() ? cached(ctx,
+                                                  deadboltHandler,
+                                                  fingerprint,
+                                                  subjectOption -> CompletableFuture.completedFuture(check.apply(subjectOption)))
+                                         : thenApply(getSubject(ctx,
+                                                                deadboltHandler),
+                                                     check);
+    }
+
+    /**
+     * Makes an asynchronous decision based on the subject, using the decision cache if it's enabled.
+     */
+    private CompletionStage<Boolean> decideAsync(final Http.Context ctx,
+                                                 final DeadboltHandler deadboltHandler,
+                                                 final Supplier<String> fingerprint,
+                                                 final Function<Optional<? extends Subject>, CompletionStage<Boolean>> decision)
+    {
+        return decisionCache.isEnabled() ? cached(ctx,
+                                                  deadboltHandler,
+                                                  fingerprint,
+                                                  decision)
+                                         : thenCompose(getSubject(ctx,
+                                                                  deadboltHandler),
+                                                       decision);
+    }
+
+    /**
+     * Makes a decision using the dynamic resource handler.  The decision is cached if dynamic decisions are cached
+     * globally, or if the dynamic resource handler says this constraint can be cached.  The subject is only obtained
+     * if the decision can be cached, as the decision itself doesn't need it.
+     */
+    private CompletionStage<Boolean> decideDynamic(final Http.Context ctx,
+                                                   final DeadboltHandler deadboltHandler,
+                                                   final Supplier<String> fingerprint,
+                                                   final Predicate<DynamicResourceHandler> cacheable,
+                                                   final Supplier<CompletionStage<Boolean>> decision)
+    {
+        return decisionCache.isEnabled() ? thenCompose(dynamicResourceHandler(ctx,
+                                                                              deadboltHandler),
+                                                       drh -> decisionCache.includesDynamic() || cacheable.test(drh) ? cached(ctx,
+                                                                                                                              deadboltHandler,
+                                                                                                                              fingerprint,
+                                                                                                                              subjectOption -> decision.get())
+                                                                                                                     : decision.get())
+                                         : decision.get();
+    }
+
+    /**
+     * Looks up the decision for the subject, making and storing it if necessary.  Decisions for requests without a
+     * subject, or whose subject has no identifier, are never cached.
+     */
+    private CompletionStage<Boolean> cached(final Http.Context ctx,
+                                            final DeadboltHandler deadboltHandler,
+                                            final Supplier<String> fingerprint,
+                                            final Function<Optional<? extends Subject>, CompletionStage<Boolean>> decision)
+    {
+        return thenCompose(getSubject(ctx,
+                                      deadboltHandler),
+                           subjectOption ->
+                           {
+                               final String identifier = subjectOption.map(Subject::getIdentifier)
+                                                                      .orElse(null);
+                               final CompletionStage<Boolean> result;
+                               if (identifier == null)
+                               {
+                                   result = decision.apply(subjectOption);
+                               }
+                               else
+                               {
+                                   final DecisionKey key = new DecisionKey(identifier,
+                                                                           deadboltHandler.handlerName(),
+                                                                           fingerprint.get());
+                                   final Optional<Boolean> cachedDecision = decisionCache.get(key);
+                                   result = cachedDecision.isPresent() ? CompletableFuture.completedFuture(cachedDecision.get())
+                                                                       : thenApply(decision.apply(subjectOption),
+                                                                                   allowed ->
+                                                                                   {
+                                                                                       decisionCache.put(key,
+                                                                                                         allowed);
+                                                                                       return allowed;
+                                                                                   });
+                               }
+                               return result;
+                           });
+    }
+
+    /**
+     * Wraps a supplier so it's only invoked once, however many times the value is needed.
+     */
+    private static <T> Supplier<T> once(final Supplier<T> supplier)
+    {
+        final Object[] value = new Object[1];
+        return () ->
+        {
+            synchronized (value)
+            {
+                if (value[0] == null)
+                {
+                    value[0] = supplier.get();
+                }
+                @SuppressWarnings("unchecked")
+                final T t = (T) value[0];
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Creates a description of a constraint that is unique to its type and parameters.  Every part is prefixed with
+     * its length, so different parameters can never produce the same fingerprint.
+     */
+    static String fingerprint(final String type,
+                              final String... parts)
+    {
+        final StringBuilder sb = new StringBuilder(type);
+        for (String part : parts)
+        {
+            sb.append('|')
+              .append(part == null ? -1 : part.length())
+              .append(':')
+              .append(part);
+        }
+        return sb.toString();
+    }
+
+    static String fingerprint(final String type,
+                              final List<String[]> roleGroups)
+    {
+        return fingerprint(type,
+                           roleGroups.stream()
+                                     .map(roleGroup -> roleGroup == null ? null
+                                                                         : fingerprint("",
+                                                                                       roleGroup))
+                                     .toArray(String[]::new));
     }
 
 
@@ -395,6 +700,32 @@ public class ConstraintLogic
         return HttpExecution.fromThread(executionContext);
     }
 
+    /**
+     * Applies the function to the value of the stage, on the calling thread if fast path evaluation is enabled and
+     * the stage has already completed, or asynchronously otherwise.
+     */
+    private <S, T> CompletionStage<T> thenApply(final CompletionStage<S> stage,
+                                                final Function<? super S, ? extends T> fn)
+    {
+        return CompletionStages.thenApply(fastPath,
+                                          stage,
+                                          fn,
+                                          this::executor);
+    }
+
+    /**
+     * Composes the function with the stage, on the calling thread if fast path evaluation is enabled and the stage
+     * has already completed, or asynchronously otherwise.
+     */
+    private <S, T> CompletionStage<T> thenCompose(final CompletionStage<S> stage,
+                                                  final Function<? super S, ? extends CompletionStage<T>> fn)
+    {
+        return CompletionStages.thenCompose(fastPath,
+                                            stage,
+                                            fn,
+                                            this::executor);
+    }
+
     private <T> CompletionStage<T> pass(final Http.Context context,
                                         final DeadboltHandler handler,
                                         final Function<Http.Context, CompletionStage<T>> pass,
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.actions.AnnotationDescriptor;
+import be.objectify.deadbolt.java.actions.Composite;
+import be.objectify.deadbolt.java.actions.Group;
+import be.objectify.deadbolt.java.actions.Pattern;
+import be.objectify.deadbolt.java.actions.Restrict;
+import be.objectify.deadbolt.java.actions.RoleBasedPermissions;
+import be.objectify.deadbolt.java.cache.CompositeCache;
+import be.objectify.deadbolt.java.cache.HandlerCache;
+import be.objectify.deadbolt.java.cache.PatternCache;
+import be.objectify.deadbolt.java.cache.RolePermissionsCache;
+import be.objectify.deadbolt.java.composite.Constraint;
+import be.objectify.deadbolt.java.composite.ExceptionThrowingConstraint;
+import be.objectify.deadbolt.java.filters.AuthorizedRoutes;
+import be.objectify.deadbolt.java.models.PatternType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Configuration;
+import play.Environment;
+import play.inject.Injector;
+import scala.Tuple3;
+import scala.collection.JavaConversions;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds the Deadbolt annotations of the controllers at startup, and compiles and validates their constraints so the
+ * first request to each action costs the same as any other.  For each annotation,
+ * <ul>
+ * <li>its attributes are read into an {@link AnnotationDescriptor}</li>
+ * <li>its handler key is resolved</li>
+ * <li>role groups are compiled, regular expressions are compiled into the {@link PatternCache}, composite names are
+ * looked up and the permissions of roles are loaded into the {@link RolePermissionsCache}</li>
+ * </ul>
+ * The controllers are those named by the application's routes, plus any listed in
+ * {@link ConfigKeys#SCAN_CONTROLLERS}.  If {@link AuthorizedRoutes} are bound, they are built too.  Problems, such as
+ * an unknown composite or handler key, are logged or, if {@link ConfigKeys#SCAN_FAIL_ON_ERROR} is true, fail startup.
+ * <p>
+ * Constraints given in route comments are only parsed when a request arrives, as the routes don't expose their
+ * comments until then.
+ * <p>
+ * The scan runs when the scanner is built, which is while the application's eager bindings are being created and in
+ * no particular order relative to them.  Composites must be registered with the {@link CompositeCache} before then,
+ * or they are reported as not registered, so the components that register them should be listed in
+ * {@link ConfigKeys#SCAN_AFTER}.  They are got from the injector, and so built, before the scan starts.
+ */
+@Singleton
+public class ConstraintScanner
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConstraintScanner.class);
+
+    private final Injector injector;
+    private final ClassLoader classLoader;
+    private final ConstraintLogic constraintLogic;
+    private final PatternCache patternCache;
+    private final CompositeCache compositeCache;
+    private final RolePermissionsCache rolePermissionsCache;
+
+    @Inject
+    public ConstraintScanner(final Configuration configuration,
+                             final Environment environment,
+                             final Injector injector,
+                             final ConstraintLogic constraintLogic,
+                             final PatternCache patternCache,
+                             final CompositeCache compositeCache,
+                             final RolePermissionsCache rolePermissionsCache)
+    {
+        this(injector,
+             environment.classLoader(),
+             constraintLogic,
+             patternCache,
+             compositeCache,
+             rolePermissionsCache);
+
+        if (configuration.getBoolean(ConfigKeys.SCAN_DEFAULT._1,
+                                     ConfigKeys.SCAN_DEFAULT._2))
+        {
+            configuration.getStringList(ConfigKeys.SCAN_AFTER_DEFAULT._1,
+                                        ConfigKeys.SCAN_AFTER_DEFAULT._2)
+                         .forEach(this::initialise);
+            final Report report = scan(configuration.getStringList(ConfigKeys.SCAN_CONTROLLERS_DEFAULT._1,
+                                                                   ConfigKeys.SCAN_CONTROLLERS_DEFAULT._2));
+            if (!report.problems().isEmpty() && configuration.getBoolean(ConfigKeys.SCAN_FAIL_ON_ERROR_DEFAULT._1,
+                                                                         ConfigKeys.SCAN_FAIL_ON_ERROR_DEFAULT._2))
+            {
+                throw new IllegalStateException(String.format("Invalid Deadbolt constraints: %s",
+                                                              report.problems()));
+            }
+        }
+    }
+
+    public ConstraintScanner(final Injector injector,
+                             final ClassLoader classLoader,
+                             final ConstraintLogic constraintLogic,
+                             final PatternCache patternCache,
+                             final CompositeCache compositeCache,
+                             final RolePermissionsCache rolePermissionsCache)
+    {
+        this.injector = injector;
+        this.classLoader = classLoader;
+        this.constraintLogic = constraintLogic;
+        this.patternCache = patternCache;
+        this.compositeCache = compositeCache;
+        this.rolePermissionsCache = rolePermissionsCache;
+    }
+
+    /**
+     * Scan the controllers named by the routes and the given controllers.
+     *
+     * @param controllerNames the names of additional controller classes
+     * @return the report of the scan
+     */
+    public Report scan(final Collection<String> controllerNames)
+    {
+        final long start = System.nanoTime();
+        final Set<String> problems = new LinkedHashSet<>();
+        final Map<String, Set<String>> methods = routedMethods();
+        controllerNames.forEach(name -> methods.putIfAbsent(name,
+                                                            null));
+
+        final Map<Annotation, String> annotations = new IdentityHashMap<>();
+        methods.forEach((className, methodNames) -> controller(className).ifPresent(controller -> collect(controller,
+                                                                                                          methodNames,
+                                                                                                          annotations)));
+        final Optional<HandlerCache> handlerCache = instance(HandlerCache.class);
+        annotations.forEach((annotation, source) -> precompile(annotation,
+                                                               source,
+                                                               handlerCache,
+                                                               problems));
+
+        // building the routes looks up their composites, so typos in them show up as unregistered names
+        instance(AuthorizedRoutes.class).ifPresent(AuthorizedRoutes::routes);
+        for (String name : compositeCache.unregisteredNames())
+        {
+            final String prefix = String.format("Composite [%s]",
+                                                name);
+            if (problems.stream().noneMatch(problem -> problem.startsWith(prefix)))
+            {
+                problems.add(prefix + " is not registered");
+            }
+        }
+
+        final Report report = new Report(methods.size(),
+                                         annotations.size(),
+                                         new ArrayList<>(problems));
+        LOGGER.info("Deadbolt scanned [{}] annotations on [{}] controllers in [{}]ms",
+                    report.annotations(),
+                    report.controllers(),
+                    (System.nanoTime() - start) / 1000000L);
+        report.problems().forEach(problem -> LOGGER.warn("Deadbolt: {}",
+                                                         problem));
+        return report;
+    }
+
+    /**
+     * Compile and validate the constraint of an annotation, warming the caches it uses.
+     *
+     * @param annotation   the annotation
+     * @param source       where the annotation was found, for problem reports
+     * @param handlerCache an option for the handler cache
+     * @param problems     collects the problems that are found
+     */
+    void precompile(final Annotation annotation,
+                    final String source,
+                    final Optional<HandlerCache> handlerCache,
+                    final Set<String> problems)
+    {
+        final AnnotationDescriptor descriptor = AnnotationDescriptor.of(annotation);
+        final Optional<DeadboltHandler> handler = handlerCache.flatMap(cache -> handler(cache,
+                                                                                        descriptor,
+                                                                                        source,
+                                                                                        problems));
+        try
+        {
+            if (annotation instanceof Restrict)
+            {
+                checkRoleNames((Restrict) annotation,
+                               source,
+                               problems);
+                descriptor.compiledRoleGroups(constraintLogic::compileRoleGroups);
+            }
+            else if (annotation instanceof Pattern && ((Pattern) annotation).patternType() == PatternType.REGEX)
+            {
+                patternCache.compiled(((Pattern) annotation).value());
+            }
+            else if (annotation instanceof Composite)
+            {
+                final Optional<Constraint> constraint = compositeCache.apply(((Composite) annotation).value());
+                if (!constraint.isPresent() || constraint.get() instanceof ExceptionThrowingConstraint)
+                {
+                    problems.add(String.format("Composite [%s] on [%s] is not registered",
+                                               ((Composite) annotation).value(),
+                                               source));
+                }
+            }
+            else if (annotation instanceof RoleBasedPermissions && handler.isPresent())
+            {
+                rolePermissionsCache.get(handler.get(),
+                                         ((RoleBasedPermissions) annotation).value());
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            // this includes PatternSyntaxException
+            problems.add(String.format("Invalid constraint [%s] on [%s]: %s",
+                                       annotation.annotationType().getSimpleName(),
+                                       source,
+                                       e.getMessage()));
+        }
+    }
+
+    /**
+     * Report role names that are empty, or empty once negated.  These are still valid at runtime, where they refer to
+     * a role whose name is empty, but are much more likely to be mistakes.
+     *
+     * @param restrict the annotation
+     * @param source   where the annotation was found, for problem reports
+     * @param problems collects the problems that are found
+     */
+    private static void checkRoleNames(final Restrict restrict,
+                                       final String source,
+                                       final Set<String> problems)
+    {
+        for (Group group : restrict.value())
+        {
+            for (String roleName : group.value())
+            {
+                if (roleName.isEmpty() || "!".equals(roleName))
+                {
+                    problems.add(String.format("Empty role name [%s] in group %s of [Restrict] on [%s]",
+                                               roleName,
+                                               Arrays.toString(group.value()),
+                                               source));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the controller and method name of a route's invocation, e.g. <code>controllers.Application.index(id:Long)</code>
+     * or <code>@controllers.Application.index()</code>.
+     *
+     * @param invocation the invocation
+     * @return an option for the class name and method name
+     */
+    static Optional<String[]> controllerMethod(final String invocation)
+    {
+        String target = invocation.trim();
+        if (target.startsWith("@"))
+        {
+            target = target.substring(1);
+        }
+        final int parameters = target.indexOf('(');
+        if (parameters >= 0)
+        {
+            target = target.substring(0,
+                                      parameters);
+        }
+        final int dot = target.lastIndexOf('.');
+        return dot > 0 && dot < target.length() - 1 ? Optional.of(new String[]{target.substring(0,
+                                                                                                 dot),
+                                                                                target.substring(dot + 1)})
+                                                     : Optional.empty();
+    }
+
+    /**
+     * Collect the Deadbolt annotations of the named methods of the controller, and of the controller itself.
+     *
+     * @param controller  the controller
+     * @param methodNames the names of the methods, or null for every public method
+     * @param annotations collects the annotations, with where they were found
+     */
+    static void collect(final Class<?> controller,
+                        final Set<String> methodNames,
+                        final Map<Annotation, String> annotations)
+    {
+        boolean routed = false;
+        for (Method method : controller.getMethods())
+        {
+            if (method.getDeclaringClass() != Object.class && (methodNames == null || methodNames.contains(method.getName())))
+            {
+                routed = true;
+                collect(method,
+                        controller.getName() + '.' + method.getName(),
+                        annotations);
+            }
+        }
+        if (routed)
+        {
+            collect(controller,
+                    controller.getName(),
+                    annotations);
+        }
+    }
+
+    private static void collect(final AnnotatedElement element,
+                                final String source,
+                                final Map<Annotation, String> annotations)
+    {
+        for (Annotation annotation : element.getAnnotations())
+        {
+            if (annotation.annotationType().getPackage() == Restrict.class.getPackage())
+            {
+                annotations.putIfAbsent(annotation,
+                                        source);
+            }
+        }
+    }
+
+    private Map<String, Set<String>> routedMethods()
+    {
+        final Map<String, Set<String>> methods = new LinkedHashMap<>();
+        instance(play.api.routing.Router.class).ifPresent(router ->
+                                                          {
+                                                              for (Tuple3<String, String, String> route : JavaConversions.seqAsJavaList(router.documentation()))
+                                                              {
+                                                                  controllerMethod(route._3()).ifPresent(target -> methods.computeIfAbsent(target[0],
+                                                                                                                                           name -> new LinkedHashSet<>())
+                                                                                                                          .add(target[1]));
+                                                              }
+                                                          });
+        return methods;
+    }
+
+    private Optional<Class<?>> controller(final String className)
+    {
+        Optional<Class<?>> controller;
+        try
+        {
+            controller = Optional.of(classLoader.loadClass(className));
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            LOGGER.debug("Can't load controller [{}]",
+                         className);
+            controller = Optional.empty();
+        }
+        return controller;
+    }
+
+    /**
+     * Build a component listed in {@link ConfigKeys#SCAN_AFTER}.
+     *
+     * @param className the name of the component's class
+     */
+    private void initialise(final String className)
+    {
+        try
+        {
+            injector.instanceOf(classLoader.loadClass(className));
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new RuntimeException(String.format("Class [%s] given in [%s] can't be loaded",
+                                                     className,
+                                                     ConfigKeys.SCAN_AFTER));
+        }
+    }
+
+    /**
+     * Resolve the handler of an annotation and keep it in the annotation's descriptor, so the first request doesn't
+     * have to resolve it.
+     */
+    private Optional<DeadboltHandler> handler(final HandlerCache handlerCache,
+                                              final AnnotationDescriptor descriptor,
+                                              final String source,
+                                              final Set<String> problems)
+    {
+        final String handlerKey = descriptor.handlerKey();
+        Optional<DeadboltHandler> handler;
+        try
+        {
+            handler = Optional.ofNullable(descriptor.handler(handlerCache,
+                                                             cache -> handlerKey == null || ConfigKeys.DEFAULT_HANDLER_KEY.equals(handlerKey) ? cache.get()
+                                                                                                                                              : cache.apply(handlerKey)));
+        }
+        catch (RuntimeException e)
+        {
+            problems.add(String.format("Handler key [%s] on [%s] can't be resolved: %s",
+                                       handlerKey,
+                                       source,
+                                       e.getMessage()));
+            handler = Optional.empty();
+        }
+        return handler;
+    }
+
+    /**
+     * Optional components, e.g. the router in tests or {@link AuthorizedRoutes} when the route path filter isn't used,
+     * are skipped if they aren't bound.
+     */
+    private <T> Optional<T> instance(final Class<T> type)
+    {
+        Optional<T> instance;
+        try
+        {
+            instance = Optional.ofNullable(injector.instanceOf(type));
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.debug("No [{}] is available to scan",
+                         type.getName());
+            instance = Optional.empty();
+        }
+        return instance;
+    }
+
+    /**
+     * The outcome of a scan.
+     */
+    public static final class Report
+    {
+        private final int controllers;
+        private final int annotations;
+        private final List<String> problems;
+
+        Report(final int controllers,
+               final int annotations,
+               final List<String> problems)
+        {
+            this.controllers = controllers;
+            this.annotations = annotations;
+            this.problems = Collections.unmodifiableList(problems);
+        }
+
+        /**
+         * @return the number of controllers that were scanned
+         */
+        public int controllers()
+        {
+            return controllers;
+        }
+
+        /**
+         * @return the number of distinct annotations that were compiled
+         */
+        public int annotations()
+        {
+            return annotations;
+        }
+
+        /**
+         * @return a description of each problem that was found
+         */
+        public List<String> problems()
+        {
+            return problems;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import be.objectify.deadbolt.java.models.Permission;
 import be.objectify.deadbolt.java.models.Role;
 import be.objectify.deadbolt.java.models.Subject;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -35,6 +36,19 @@ import java.util.stream.Collectors;
 @Singleton
 public class DeadboltAnalyzer
 {
+    private final RoleRegistry roleRegistry;
+
+    public DeadboltAnalyzer()
+    {
+        this(new RoleRegistry());
+    }
+
+    @Inject
+    public DeadboltAnalyzer(final RoleRegistry roleRegistry)
+    {
+        this.roleRegistry = roleRegistry;
+    }
+
     /**
      * Checks if the subject has all the role names.  In other words, this gives AND support.
      *
@@ -51,6 +65,53 @@ public class DeadboltAnalyzer
     }
 
 
+    /**
+     * Checks if the subject satisfies at least one of the role groups.  In other words, this gives OR support
+     * between AND groups.
+     *
+     * @param subjectOption an option for the subject
+     * @param roleGroups    the role groups.  Any role name starting with ! will be negated.
+     * @return true if the subject meets the restrictions of at least one group, otherwise false
+     */
+    public boolean checkAnyRoleGroup(final Optional<? extends Subject> subjectOption,
+                                     final List<String[]> roleGroups)
+    {
+        boolean roleOk = false;
+        for (int i = 0; !roleOk && i < roleGroups.size(); i++)
+        {
+            roleOk = hasAllRoles(subjectOption,
+                                 roleGroups.get(i));
+        }
+        return roleOk;
+    }
+
+    /**
+     * Checks if the subject satisfies at least one of the precompiled role groups.
+     *
+     * @param subjectOption an option for the subject
+     * @param roleGroups    the role groups, as compiled by {@link #compile}
+     * @return true if the subject meets the restrictions of at least one group, otherwise false
+     */
+    public boolean checkAnyRoleGroup(final Optional<? extends Subject> subjectOption,
+                                     final RoleGroups roleGroups)
+    {
+        final RoleGroups compiled = roleGroups.isCompiledBy(roleRegistry) ? roleGroups
+                                                                          : compile(roleGroups.roleNames());
+        return roleRegistry.test(subjectOption,
+                                 compiled);
+    }
+
+    /**
+     * Compiles role groups so they can be checked repeatedly without being parsed again.
+     *
+     * @param roleGroups the role groups.  Any role name starting with ! will be negated.
+     * @return the compiled role groups
+     */
+    public RoleGroups compile(final List<String[]> roleGroups)
+    {
+        return roleRegistry.groups(roleGroups);
+    }
+
     /**
      * Gets the role name of each role held.
      *
@@ -99,8 +160,20 @@ public class DeadboltAnalyzer
     public boolean hasAllRoles(final Optional<? extends Subject> subjectOption,
                                final String[] roleNames)
     {
-        final List<String> heldRoles = getRoleNames(subjectOption);
+        // the held roles must be determined after compilation, so every role name in the group has an id
+        final RoleGroup roleGroup = roleRegistry.cachedGroup(roleNames);
+        return roleGroup != null ? roleRegistry.test(subjectOption,
+                                                     roleGroup)
+                                 : hasAllRoleNames(getRoleNames(subjectOption),
+                                                   roleNames);
+    }
 
+    /**
+     * Checks role names that the registry has no room to compile.
+     */
+    private static boolean hasAllRoleNames(final List<String> heldRoles,
+                                           final String[] roleNames)
+    {
         boolean roleCheckResult = roleNames != null && roleNames.length > 0;
         for (int i = 0; roleCheckResult && i < roleNames.length; i++)
         {
@@ -149,6 +222,48 @@ public class DeadboltAnalyzer
         return roleOk[0];
     }
 
+    /**
+     * Check the pattern for a match against the {@link Permission}s of the user.  Literal, prefix and suffix patterns
+     * are matched without using the regex engine.
+     *
+     * @param subjectOption an option for the subject
+     * @param pattern       the compiled pattern
+     * @return true iff the pattern matches at least one of the subject's permissions
+     */
+    public boolean checkRegexPattern(final Optional<? extends Subject> subjectOption,
+                                     final CompiledPattern pattern)
+    {
+        boolean roleOk = false;
+        if (subjectOption.isPresent() && pattern != null)
+        {
+            final List<? extends Permission> permissions = subjectOption.get().getPermissions();
+            if (permissions != null)
+            {
+                for (Iterator<? extends Permission> iterator = permissions.iterator(); !roleOk && iterator.hasNext(); )
+                {
+                    roleOk = pattern.test(iterator.next().getValue());
+                }
+            }
+        }
+        return roleOk;
+    }
+
+    /**
+     * Check the patterns for a match against the {@link Permission}s of the user.  Each permission is checked against
+     * the whole set at once, instead of each pattern being checked against every permission.
+     *
+     * @param subjectOption an option for the subject
+     * @param patterns      the patterns
+     * @return true iff at least one pattern matches at least one of the subject's permissions
+     */
+    public boolean checkPatternSet(final Optional<? extends Subject> subjectOption,
+                                   final PatternSet patterns)
+    {
+        return subjectOption.isPresent()
+               && patterns != null
+               && patterns.matchesAny(subjectOption.get().getPermissions());
+    }
+
     /**
      * Check the pattern for equality against the {@link Permission}s of the user.
      *
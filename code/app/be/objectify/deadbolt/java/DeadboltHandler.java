@@ -84,6 +84,19 @@ public interface DeadboltHandler
         return getClass().getName();
     }
 
+    /**
+     * Gets a key that identifies the session of the request, e.g. a session id or the hash of an access token.  If
+     * present, the subject may be cached across requests using this key, so the key must change whenever the subject
+     * of the session could.  Defaults to empty, meaning the subject is never cached across requests.
+     *
+     * @param context the HTTP context
+     * @return an option for the session key
+     */
+    default Optional<String> getSessionKey(final Http.Context context)
+    {
+        return Optional.empty();
+    }
+
     /**
      * Invoked when access to a resource is authorized.
      *
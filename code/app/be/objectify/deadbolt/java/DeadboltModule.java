@@ -15,14 +15,26 @@
  */
 package be.objectify.deadbolt.java;
 
+import be.objectify.deadbolt.java.cache.CacheSnapshots;
+import be.objectify.deadbolt.java.cache.CacheStatistics;
 import be.objectify.deadbolt.java.cache.CompositeCache;
+import be.objectify.deadbolt.java.cache.DecisionCache;
 import be.objectify.deadbolt.java.cache.DefaultCompositeCache;
+import be.objectify.deadbolt.java.cache.DefaultDecisionCache;
+import be.objectify.deadbolt.java.cache.DefaultDynamicResourceCache;
 import be.objectify.deadbolt.java.cache.DefaultPatternCache;
+import be.objectify.deadbolt.java.cache.DefaultRolePermissionsCache;
 import be.objectify.deadbolt.java.cache.DefaultSubjectCache;
+import be.objectify.deadbolt.java.cache.DynamicResourceCache;
+import be.objectify.deadbolt.java.cache.InvalidationBus;
+import be.objectify.deadbolt.java.cache.InvalidationTransport;
+import be.objectify.deadbolt.java.cache.InvalidationTransportProvider;
 import be.objectify.deadbolt.java.cache.PatternCache;
+import be.objectify.deadbolt.java.cache.RolePermissionsCache;
 import be.objectify.deadbolt.java.cache.SubjectCache;
 import be.objectify.deadbolt.java.composite.ConstraintBuilders;
 import be.objectify.deadbolt.java.filters.FilterConstraints;
+import be.objectify.deadbolt.java.utils.Timeouts;
 import play.api.Configuration;
 import play.api.Environment;
 import play.api.inject.Binding;
@@ -42,14 +54,24 @@ public class DeadboltModule extends Module
     {
         return seq(subjectCache(),
                    patternCache(),
+                   roleRegistry(),
                    analyzer(),
                    viewSupport(),
                    templateFailureListenerProvider(),
                    executionContextProvider(),
+                   decisionCache(),
+                   dynamicResourceCache(),
+                   rolePermissionsCache(),
+                   cacheSnapshots(),
+                   invalidationTransport(),
+                   invalidationBus(),
+                   cacheStatistics(),
+                   timeouts(),
                    constraintLogic(),
                    compositeCache(),
                    constraintBuilders(),
-                   filterConstraints());
+                   filterConstraints(),
+                   constraintScanner());
     }
 
     /**
@@ -92,6 +114,16 @@ public class DeadboltModule extends Module
         return bind(DeadboltAnalyzer.class).toSelf().in(Singleton.class);
     }
 
+    /**
+     * Create a binding for {@link RoleRegistry}.
+     *
+     * @return the binding
+     */
+    public Binding<RoleRegistry> roleRegistry()
+    {
+        return bind(RoleRegistry.class).toSelf().in(Singleton.class);
+    }
+
     /**
      * Create a binding for {@link ConstraintBuilders}.
      *
@@ -132,6 +164,88 @@ public class DeadboltModule extends Module
         return bind(SubjectCache.class).to(DefaultSubjectCache.class).in(Singleton.class);
     }
 
+    /**
+     * Create a binding for {@link DecisionCache}.
+     *
+     * @return the binding
+     */
+    public Binding<DecisionCache> decisionCache()
+    {
+        return bind(DecisionCache.class).to(DefaultDecisionCache.class).in(Singleton.class);
+    }
+
+    /**
+     * Create a binding for {@link DynamicResourceCache}.
+     *
+     * @return the binding
+     */
+    public Binding<DynamicResourceCache> dynamicResourceCache()
+    {
+        return bind(DynamicResourceCache.class).to(DefaultDynamicResourceCache.class).in(Singleton.class);
+    }
+
+    /**
+     * Create a binding for {@link RolePermissionsCache}.
+     *
+     * @return the binding
+     */
+    public Binding<RolePermissionsCache> rolePermissionsCache()
+    {
+        return bind(RolePermissionsCache.class).to(DefaultRolePermissionsCache.class).in(Singleton.class);
+    }
+
+    /**
+     * Create an eager binding for {@link CacheSnapshots}, so the caches are warmed at startup.
+     *
+     * @return the binding
+     */
+    public Binding<CacheSnapshots> cacheSnapshots()
+    {
+        return bind(CacheSnapshots.class).toSelf().eagerly();
+    }
+
+    /**
+     * Create a binding for {@link InvalidationTransport}.
+     *
+     * @return the binding
+     */
+    public Binding<InvalidationTransport> invalidationTransport()
+    {
+        return bind(InvalidationTransport.class).toProvider(InvalidationTransportProvider.class).in(Singleton.class);
+    }
+
+    /**
+     * Create an eager binding for {@link InvalidationBus}, so invalidations from other nodes are received even if
+     * this node never sends any.
+     *
+     * @return the binding
+     */
+    public Binding<InvalidationBus> invalidationBus()
+    {
+        return bind(InvalidationBus.class).toSelf().eagerly();
+    }
+
+    /**
+     * Create an eager binding for {@link CacheStatistics}, so the statistics are available through JMX from startup
+     * if they are enabled.
+     *
+     * @return the binding
+     */
+    public Binding<CacheStatistics> cacheStatistics()
+    {
+        return bind(CacheStatistics.class).toSelf().eagerly();
+    }
+
+    /**
+     * Create an eager binding for {@link Timeouts}, so an unknown blocking mode is reported at startup.
+     *
+     * @return the binding
+     */
+    public Binding<Timeouts> timeouts()
+    {
+        return bind(Timeouts.class).toSelf().eagerly();
+    }
+
     /**
      * Create a binding for {@link ConstraintLogic}.
      *
@@ -151,4 +265,15 @@ public class DeadboltModule extends Module
     {
         return bind(FilterConstraints.class).toSelf().in(Singleton.class);
     }
+
+    /**
+     * Create an eager binding for {@link ConstraintScanner}, so constraints are compiled before the first request if
+     * scanning is enabled.
+     *
+     * @return the binding
+     */
+    public Binding<ConstraintScanner> constraintScanner()
+    {
+        return bind(ConstraintScanner.class).toSelf().eagerly();
+    }
 }
@@ -84,4 +84,58 @@ public interface DynamicResourceHandler
                                              Optional<String> meta,
                                              DeadboltHandler deadboltHandler,
                                              Http.Context ctx);
+
+    /**
+     * Invoked when a custom pattern needs checking.  The result is inverted by the caller if the pattern is, so this
+     * only needs overriding if the handler's answer itself depends on the invert flag.  Constraints that are
+     * evaluated concurrently may call this at the same time for the same request, so anything the handler keeps in
+     * {@link Http.Context#args} should be accessed while holding its monitor.
+     *
+     * @param permissionValue the permission value
+     * @param meta            additional information on the resource
+     * @param invert          true if the result of the pattern is inverted
+     * @param deadboltHandler the current {@link DeadboltHandler}
+     * @param ctx             the context of the current request
+     * @return true if access based on the permission is  allowed, otherwise false.  By default, the result of
+     * {@link #checkPermission(String, Optional, DeadboltHandler, Http.Context)}.
+     */
+    default CompletionStage<Boolean> checkPermission(final String permissionValue,
+                                                     final Optional<String> meta,
+                                                     final boolean invert,
+                                                     final DeadboltHandler deadboltHandler,
+                                                     final Http.Context ctx)
+    {
+        return checkPermission(permissionValue,
+                               meta,
+                               deadboltHandler,
+                               ctx);
+    }
+
+    /**
+     * Check if the result of {@link #isAllowed} for the named resource depends only on the subject, so it can be held
+     * in the decision cache across requests.  This is only consulted when the decision cache is enabled.
+     *
+     * @param name the resource name
+     * @param meta additional information on the resource
+     * @return true if the decision can be cached.  By default, false.
+     */
+    default boolean isCacheable(final String name,
+                                final Optional<String> meta)
+    {
+        return false;
+    }
+
+    /**
+     * Check if the result of {@link #checkPermission} for the permission value depends only on the subject, so it can
+     * be held in the decision cache across requests.  This is only consulted when the decision cache is enabled.
+     *
+     * @param permissionValue the permission value
+     * @param meta            additional information on the resource
+     * @return true if the decision can be cached.  By default, false.
+     */
+    default boolean isPermissionCacheable(final String permissionValue,
+                                          final Optional<String> meta)
+    {
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.models.Permission;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A set of patterns that is matched as a whole, e.g. the permissions of a role.  Literal, prefix and suffix patterns
+ * without wildcards are held in hash sets grouped by length, so a value is checked against all of them with one
+ * lookup per distinct length.  General regular expressions are combined into a single alternation where that is safe,
+ * and everything else is tested one by one.
+ * <p>
+ * {@link #test} is true iff at least one of the patterns would match the value using
+ * <code>pattern.matcher(value).matches()</code>.
+ */
+public final class PatternSet implements Predicate<String>
+{
+    /**
+     * A set containing no patterns, which matches nothing.
+     */
+    public static final PatternSet EMPTY = new PatternSet(new HashSet<>(),
+                                                          new TreeMap<>(),
+                                                          new TreeMap<>(),
+                                                          new ArrayList<>());
+
+    private final Set<String> literals;
+    private final int[] prefixLengths;
+    private final Set<String>[] prefixes;
+    private final int[] suffixLengths;
+    private final Set<String>[] suffixes;
+    private final Predicate<String>[] others;
+
+    private PatternSet(final Set<String> literals,
+                       final TreeMap<Integer, Set<String>> prefixes,
+                       final TreeMap<Integer, Set<String>> suffixes,
+                       final List<Predicate<String>> others)
+    {
+        this.literals = literals;
+        this.prefixLengths = lengths(prefixes);
+        this.prefixes = values(prefixes);
+        this.suffixLengths = lengths(suffixes);
+        this.suffixes = values(suffixes);
+        this.others = toArray(others);
+    }
+
+    /**
+     * Combine the patterns into a set.  Null patterns are ignored.
+     *
+     * @param patterns the patterns
+     * @return the pattern set
+     */
+    public static PatternSet of(final List<CompiledPattern> patterns)
+    {
+        final Set<String> literals = new HashSet<>();
+        final TreeMap<Integer, Set<String>> prefixes = new TreeMap<>();
+        final TreeMap<Integer, Set<String>> suffixes = new TreeMap<>();
+        final List<CompiledPattern> regexes = new ArrayList<>();
+        final List<Predicate<String>> wildcards = new ArrayList<>();
+        for (CompiledPattern pattern : patterns)
+        {
+            if (pattern == null)
+            {
+                continue;
+            }
+            if (pattern.kind() == CompiledPattern.Kind.REGEX)
+            {
+                regexes.add(pattern);
+            }
+            else if (pattern.hasWildcards())
+            {
+                // matching these character by character is cheaper than adding them to the alternation
+                wildcards.add(pattern);
+            }
+            else if (pattern.kind() == CompiledPattern.Kind.EXACT)
+            {
+                literals.add(pattern.fixed());
+            }
+            else
+            {
+                final TreeMap<Integer, Set<String>> byLength = pattern.kind() == CompiledPattern.Kind.PREFIX ? prefixes
+                                                                                                              : suffixes;
+                byLength.computeIfAbsent(pattern.fixed().length(),
+                                         length -> new HashSet<>())
+                        .add(pattern.fixed());
+            }
+        }
+        final List<Predicate<String>> others = combine(regexes);
+        others.addAll(wildcards);
+        return new PatternSet(literals,
+                              prefixes,
+                              suffixes,
+                              others);
+    }
+
+    /**
+     * Check if the value matches at least one of the patterns.
+     *
+     * @param value the value
+     * @return true iff at least one pattern matches the entire value
+     */
+    @Override
+    public boolean test(final String value)
+    {
+        boolean matches = value != null && literals.contains(value);
+        if (value != null && !matches && (prefixLengths.length > 0 || suffixLengths.length > 0))
+        {
+            // .* doesn't match line terminators, so a prefix is only good if nothing after it is a line terminator
+            // and a suffix is only good if nothing before it is
+            final int length = value.length();
+            int firstTerminator = length;
+            int lastTerminator = -1;
+            for (int i = 0; i < length; i++)
+            {
+                if (CompiledPattern.isLineTerminator(value.charAt(i)))
+                {
+                    firstTerminator = Math.min(firstTerminator,
+                                               i);
+                    lastTerminator = i;
+                }
+            }
+            for (int i = 0; !matches && i < prefixLengths.length && prefixLengths[i] <= length; i++)
+            {
+                matches = lastTerminator < prefixLengths[i]
+                          && prefixes[i].contains(value.substring(0,
+                                                                  prefixLengths[i]));
+            }
+            for (int i = 0; !matches && i < suffixLengths.length && suffixLengths[i] <= length; i++)
+            {
+                matches = firstTerminator >= length - suffixLengths[i]
+                          && suffixes[i].contains(value.substring(length - suffixLengths[i]));
+            }
+        }
+        for (int i = 0; value != null && !matches && i < others.length; i++)
+        {
+            matches = others[i].test(value);
+        }
+        return matches;
+    }
+
+    /**
+     * Check if any of the permissions matches at least one of the patterns.
+     *
+     * @param permissions the permissions
+     * @return true iff a permission matches
+     */
+    public boolean matchesAny(final List<? extends Permission> permissions)
+    {
+        boolean matches = false;
+        if (permissions != null && !isEmpty())
+        {
+            for (Iterator<? extends Permission> iterator = permissions.iterator(); !matches && iterator.hasNext(); )
+            {
+                final Permission permission = iterator.next();
+                matches = permission != null && test(permission.getValue());
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Check if the set contains no patterns.
+     *
+     * @return true iff the set is empty
+     */
+    public boolean isEmpty()
+    {
+        return literals.isEmpty() && prefixLengths.length == 0 && suffixLengths.length == 0 && others.length == 0;
+    }
+
+    /**
+     * Patterns are combined into one alternation unless they use constructs whose meaning would change inside a
+     * group, i.e. flags, inline flags, quoting and back references.  If the combined pattern doesn't compile for any
+     * reason, the patterns are tested separately.
+     */
+    private static List<Predicate<String>> combine(final List<CompiledPattern> regexes)
+    {
+        final List<Predicate<String>> predicates = new ArrayList<>();
+        final List<CompiledPattern> combinable = new ArrayList<>();
+        for (CompiledPattern regex : regexes)
+        {
+            if (isCombinable(regex.pattern()))
+            {
+                combinable.add(regex);
+            }
+            else
+            {
+                predicates.add(regex);
+            }
+        }
+
+        if (combinable.size() == 1)
+        {
+            predicates.add(combinable.get(0));
+        }
+        else if (combinable.size() > 1)
+        {
+            final StringBuilder sb = new StringBuilder();
+            for (CompiledPattern regex : combinable)
+            {
+                if (sb.length() > 0)
+                {
+                    sb.append('|');
+                }
+                sb.append("(?:").append(regex.pattern().pattern()).append(')');
+            }
+            try
+            {
+                final Pattern alternation = Pattern.compile(sb.toString());
+                predicates.add(value -> alternation.matcher(value).matches());
+            }
+            catch (PatternSyntaxException e)
+            {
+                predicates.addAll(combinable);
+            }
+        }
+        return predicates;
+    }
+
+    private static boolean isCombinable(final Pattern pattern)
+    {
+        final String source = pattern.pattern();
+        boolean combinable = pattern.flags() == 0 && !source.contains("(?");
+        for (int i = 0; combinable && i < source.length() - 1; i++)
+        {
+            if (source.charAt(i) == '\\')
+            {
+                final char escaped = source.charAt(i + 1);
+                combinable = escaped != 'Q' && escaped != 'k' && !Character.isDigit(escaped);
+                i++;
+            }
+        }
+        return combinable;
+    }
+
+    private static int[] lengths(final TreeMap<Integer, Set<String>> byLength)
+    {
+        final int[] lengths = new int[byLength.size()];
+        int i = 0;
+        for (Integer length : byLength.keySet())
+        {
+            lengths[i++] = length;
+        }
+        return lengths;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String>[] values(final TreeMap<Integer, Set<String>> byLength)
+    {
+        final Set<String>[] values = new Set[byLength.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Set<String>> entry : byLength.entrySet())
+        {
+            values[i++] = entry.getValue();
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<String>[] toArray(final List<Predicate<String>> predicates)
+    {
+        return predicates.toArray(new Predicate[predicates.size()]);
+    }
+}
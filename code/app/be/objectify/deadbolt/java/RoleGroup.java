@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+/**
+ * A compiled group of role names, as used by {@link be.objectify.deadbolt.java.actions.Restrict} and friends.  Role
+ * names are replaced by their ids in a {@link RoleRegistry}, and held in two bitsets: the roles that are required, and
+ * the roles that are forbidden (i.e. prefixed with !).
+ */
+public final class RoleGroup
+{
+    /**
+     * A group that no subject can satisfy.  This is the result of compiling a null or empty array of role names.
+     */
+    public static final RoleGroup EMPTY = new RoleGroup(new long[0],
+                                                        new long[0],
+                                                        false);
+
+    private final long[] required;
+    private final long[] forbidden;
+    private final boolean satisfiable;
+
+    RoleGroup(final long[] required,
+              final long[] forbidden,
+              final boolean satisfiable)
+    {
+        this.required = required;
+        this.forbidden = forbidden;
+        this.satisfiable = satisfiable;
+    }
+
+    /**
+     * Check if the held roles satisfy this group, i.e. every required role is held and no forbidden role is held.
+     *
+     * @param heldRoles the bitset of held roles, as created by {@link RoleRegistry#heldRoles}
+     * @return true iff the group is satisfied
+     */
+    public boolean test(final long[] heldRoles)
+    {
+        boolean result = satisfiable;
+        for (int i = 0; result && i < required.length; i++)
+        {
+            final long held = i < heldRoles.length ? heldRoles[i] : 0L;
+            result = (held & required[i]) == required[i]
+                    && (held & forbidden[i]) == 0L;
+        }
+        return result;
+    }
+}
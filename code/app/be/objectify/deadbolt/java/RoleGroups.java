@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import java.util.List;
+
+/**
+ * The compiled form of the role groups of a {@link be.objectify.deadbolt.java.actions.Restrict} constraint, which is
+ * satisfied if at least one of its {@link RoleGroup}s is.  Role names are interned and negations parsed when the
+ * groups are compiled, so testing a subject against them allocates nothing but the bitset of held roles.
+ */
+public final class RoleGroups
+{
+    private final RoleRegistry roleRegistry;
+    private final List<String[]> roleNames;
+    private final RoleGroup[] groups;
+    private final String fingerprint;
+
+    RoleGroups(final RoleRegistry roleRegistry,
+               final List<String[]> roleNames,
+               final RoleGroup[] groups)
+    {
+        this.roleRegistry = roleRegistry;
+        this.roleNames = roleNames;
+        this.groups = groups;
+        this.fingerprint = ConstraintLogic.fingerprint("restrict",
+                                                       roleNames);
+    }
+
+    /**
+     * Check if the held roles satisfy at least one of the groups.
+     *
+     * @param heldRoles the bitset of held roles, as created by {@link RoleRegistry#heldRoles}
+     * @return true iff a group is satisfied
+     */
+    public boolean test(final long[] heldRoles)
+    {
+        boolean result = false;
+        for (int i = 0; !result && i < groups.length; i++)
+        {
+            result = groups[i].test(heldRoles);
+        }
+        return result;
+    }
+
+    /**
+     * @return the role names of each group, as they were compiled.  The arrays are shared, so they must not be changed.
+     */
+    public List<String[]> roleNames()
+    {
+        return roleNames;
+    }
+
+    /**
+     * @return the number of groups
+     */
+    public int size()
+    {
+        return groups.length;
+    }
+
+    /**
+     * @return the key that identifies these groups in the decision cache
+     */
+    String fingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * Role ids are only meaningful to the registry that assigned them.
+     */
+    boolean isCompiledBy(final RoleRegistry registry)
+    {
+        return roleRegistry == registry;
+    }
+}
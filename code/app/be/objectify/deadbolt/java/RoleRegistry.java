@@ -0,0 +1,271 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.models.Role;
+import be.objectify.deadbolt.java.models.Subject;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns the role names used by constraints to integer ids, and compiles role name arrays into {@link RoleGroup}s.
+ * Only role names that appear in a constraint are given an id, so roles held by a subject that are never checked
+ * don't take up any space.
+ * <p>
+ * At most {@link #MAX_CACHED_GROUPS} groups are cached.  Once that many have been seen, role name arrays that are
+ * built at runtime are no longer compiled by {@link #cachedGroup}, so they can't make the registry grow without bound;
+ * callers check them by name instead.
+ */
+@Singleton
+public class RoleRegistry
+{
+    /**
+     * The maximum number of compiled groups that are cached.
+     */
+    public static final int MAX_CACHED_GROUPS = 10000;
+
+    private static final long[] NO_ROLES = new long[0];
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private final ConcurrentMap<List<String>, RoleGroup> groups = new ConcurrentHashMap<>();
+
+    /**
+     * A bitset per thread for checks that don't let the held roles escape, so checking a subject allocates nothing.
+     */
+    private final ThreadLocal<long[]> scratch = ThreadLocal.withInitial(() -> NO_ROLES);
+
+    /**
+     * Get the id of the role name, assigning one if necessary.
+     *
+     * @param roleName the role name
+     * @return the id of the role
+     */
+    public int intern(final String roleName)
+    {
+        return ids.computeIfAbsent(roleName,
+                                   name -> nextId.getAndIncrement());
+    }
+
+    /**
+     * Get the id of the role name, without assigning one.
+     *
+     * @param roleName the role name
+     * @return the id of the role, or -1 if the role isn't used by any constraint
+     */
+    public int lookup(final String roleName)
+    {
+        final Integer id = ids.get(roleName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Get the compiled form of the role names.  Role names starting with ! are forbidden, all others are required.
+     * Compiled groups are cached until there are {@link #MAX_CACHED_GROUPS} of them, so repeated calls with equal
+     * arrays usually return the same group.
+     *
+     * @param roleNames the role names
+     * @return the compiled group
+     */
+    public RoleGroup group(final String[] roleNames)
+    {
+        final RoleGroup roleGroup = cachedGroup(roleNames);
+        return roleGroup != null ? roleGroup
+                                 : compile(Arrays.asList(roleNames));
+    }
+
+    /**
+     * As {@link #group}, but a group that isn't already cached is only compiled if it can be cached.
+     *
+     * @param roleNames the role names
+     * @return the compiled group, or null if there are already {@link #MAX_CACHED_GROUPS} cached groups
+     */
+    public RoleGroup cachedGroup(final String[] roleNames)
+    {
+        final RoleGroup roleGroup;
+        if (roleNames == null || roleNames.length == 0)
+        {
+            roleGroup = RoleGroup.EMPTY;
+        }
+        else
+        {
+            final RoleGroup cached = groups.get(Arrays.asList(roleNames));
+            roleGroup = cached != null || groups.size() >= MAX_CACHED_GROUPS ? cached
+                                                                            : groups.computeIfAbsent(Arrays.asList(roleNames.clone()),
+                                                                                                     this::compile);
+        }
+        return roleGroup;
+    }
+
+    /**
+     * Compile the role groups of a constraint, e.g. the {@link be.objectify.deadbolt.java.actions.Group}s of a
+     * {@link be.objectify.deadbolt.java.actions.Restrict}.  This is intended to be done once per constraint, not once
+     * per request.
+     *
+     * @param roleNames the role names of each group.  Any role name starting with ! is forbidden.
+     * @return the compiled groups
+     */
+    public RoleGroups groups(final List<String[]> roleNames)
+    {
+        final List<String[]> copy = new ArrayList<>(roleNames.size());
+        final RoleGroup[] compiled = new RoleGroup[roleNames.size()];
+        for (int i = 0; i < compiled.length; i++)
+        {
+            final String[] group = roleNames.get(i);
+            copy.add(group == null ? null
+                                   : group.clone());
+            compiled[i] = group(group);
+        }
+        return new RoleGroups(this,
+                              Collections.unmodifiableList(copy),
+                              compiled);
+    }
+
+    /**
+     * Get the bitset of roles held by the subject.  Only roles that have been interned are included, so the bitset
+     * must be created after the groups it will be tested against have been compiled.
+     *
+     * @param subjectOption an option for the subject
+     * @return the bitset of held roles
+     */
+    public long[] heldRoles(final Optional<? extends Subject> subjectOption)
+    {
+        final List<? extends Role> roles = roles(subjectOption);
+        return roles.isEmpty() ? NO_ROLES
+                               : fill(new long[words(nextId.get())],
+                                      roles);
+    }
+
+    /**
+     * Check if the subject satisfies the group.  The group must have been compiled by this registry.
+     *
+     * @param subjectOption an option for the subject
+     * @param roleGroup     the group
+     * @return true iff the group is satisfied
+     */
+    boolean test(final Optional<? extends Subject> subjectOption,
+                 final RoleGroup roleGroup)
+    {
+        return roleGroup.test(scratchHeldRoles(subjectOption));
+    }
+
+    /**
+     * Check if the subject satisfies at least one of the groups.  The groups must have been compiled by this registry.
+     *
+     * @param subjectOption an option for the subject
+     * @param roleGroups    the groups
+     * @return true iff a group is satisfied
+     */
+    boolean test(final Optional<? extends Subject> subjectOption,
+                 final RoleGroups roleGroups)
+    {
+        return roleGroups.test(scratchHeldRoles(subjectOption));
+    }
+
+    /**
+     * As {@link #heldRoles}, but in this thread's bitset, which is only valid until the next call on this thread.
+     */
+    private long[] scratchHeldRoles(final Optional<? extends Subject> subjectOption)
+    {
+        final List<? extends Role> roles = roles(subjectOption);
+        long[] heldRoles = NO_ROLES;
+        if (!roles.isEmpty())
+        {
+            final int words = words(nextId.get());
+            heldRoles = scratch.get();
+            if (heldRoles.length < words)
+            {
+                heldRoles = new long[words];
+                scratch.set(heldRoles);
+            }
+            else
+            {
+                Arrays.fill(heldRoles,
+                            0L);
+            }
+            fill(heldRoles,
+                 roles);
+        }
+        return heldRoles;
+    }
+
+    private long[] fill(final long[] heldRoles,
+                        final List<? extends Role> roles)
+    {
+        for (Role role : roles)
+        {
+            if (role != null && role.getName() != null)
+            {
+                final int id = lookup(role.getName());
+                if (id >= 0 && id < heldRoles.length * Long.SIZE)
+                {
+                    heldRoles[id / Long.SIZE] |= 1L << id;
+                }
+            }
+        }
+        return heldRoles;
+    }
+
+    private static List<? extends Role> roles(final Optional<? extends Subject> subjectOption)
+    {
+        final List<? extends Role> roles = subjectOption.isPresent() ? subjectOption.get().getRoles()
+                                                                     : null;
+        return roles == null ? Collections.emptyList()
+                             : roles;
+    }
+
+    private RoleGroup compile(final List<String> roleNames)
+    {
+        final int[] roleIds = new int[roleNames.size()];
+        final boolean[] forbidden = new boolean[roleNames.size()];
+        int maxId = 0;
+        for (int i = 0; i < roleNames.size(); i++)
+        {
+            final String roleName = roleNames.get(i);
+            forbidden[i] = roleName.startsWith("!");
+            roleIds[i] = intern(forbidden[i] ? roleName.substring(1)
+                                             : roleName);
+            maxId = Math.max(maxId,
+                             roleIds[i]);
+        }
+
+        final long[] requiredBits = new long[words(maxId + 1)];
+        final long[] forbiddenBits = new long[requiredBits.length];
+        for (int i = 0; i < roleIds.length; i++)
+        {
+            final long[] bits = forbidden[i] ? forbiddenBits : requiredBits;
+            bits[roleIds[i] / Long.SIZE] |= 1L << roleIds[i];
+        }
+        return new RoleGroup(requiredBits,
+                             forbiddenBits,
+                             true);
+    }
+
+    private static int words(final int bits)
+    {
+        return (bits + Long.SIZE - 1) / Long.SIZE;
+    }
+}
@@ -20,6 +20,7 @@ import be.objectify.deadbolt.java.DeadboltExecutionContextProvider;
 import be.objectify.deadbolt.java.DeadboltHandler;
 import be.objectify.deadbolt.java.ExecutionContextProvider;
 import be.objectify.deadbolt.java.cache.HandlerCache;
+import be.objectify.deadbolt.java.utils.Timeouts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import play.Configuration;
@@ -31,6 +32,8 @@ import play.mvc.Results;
 import scala.concurrent.ExecutionContext;
 import scala.concurrent.ExecutionContextExecutor;
 
+import javax.inject.Inject;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -64,6 +67,24 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
     public final boolean blocking;
     public final long blockingTimeout;
 
+    /**
+     * True if blocking mode applies the timeout to the result instead of waiting for it.
+     */
+    public final boolean asyncBlocking;
+
+    public final boolean fuse;
+
+    /**
+     * The stack this action is evaluated in, if actions are fused.
+     */
+    FusedActions fusedActions;
+
+    /**
+     * Applies the blocking timeout.  This is injected by the injector that creates the action, so it may be null if
+     * the action was created some other way.
+     */
+    private Timeouts timeouts;
+
     protected AbstractDeadboltAction(final HandlerCache handlerCache,
                                      final Configuration config,
                                      final ExecutionContextProvider ecProvider)
@@ -77,6 +98,22 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
                                           ConfigKeys.BLOCKING_DEFAULT._2);
         this.blockingTimeout = this.config.getLong(ConfigKeys.DEFAULT_BLOCKING_TIMEOUT_DEFAULT._1,
                                                    ConfigKeys.DEFAULT_BLOCKING_TIMEOUT_DEFAULT._2);
+        this.asyncBlocking = Timeouts.ASYNC.equals(config.getString(ConfigKeys.BLOCKING_MODE_DEFAULT._1,
+                                                                    ConfigKeys.BLOCKING_MODE_DEFAULT._2));
+        this.fuse = config.getBoolean(ConfigKeys.FUSE_ACTIONS_DEFAULT._1,
+                                      ConfigKeys.FUSE_ACTIONS_DEFAULT._2);
+    }
+
+    /**
+     * Set the timeouts used in blocking mode.  This is a method rather than a constructor parameter so that the
+     * constructors of actions, including those of applications, don't need to change.
+     *
+     * @param timeouts the timeouts
+     */
+    @Inject
+    public void setTimeouts(final Timeouts timeouts)
+    {
+        this.timeouts = timeouts;
     }
 
     /**
@@ -89,6 +126,26 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
      * @return an option for the DeadboltHandler.
      */
     protected <C extends DeadboltHandler> DeadboltHandler getDeadboltHandler(final String handlerKey)
+    {
+        final DeadboltHandler handler;
+        if (configuration != null && Objects.equals(handlerKey,
+                                                    descriptor().handlerKey()))
+        {
+            // the key comes from the annotation, whose descriptor keeps the handler once it's resolved
+            handler = descriptor().handler(handlerCache,
+                                           cache -> resolveHandler(cache,
+                                                                   handlerKey));
+        }
+        else
+        {
+            handler = resolveHandler(handlerCache,
+                                     handlerKey);
+        }
+        return handler;
+    }
+
+    private static DeadboltHandler resolveHandler(final HandlerCache handlerCache,
+                                                  final String handlerKey)
     {
         LOGGER.debug("Getting Deadbolt handler with key [{}]",
                      handlerKey);
@@ -104,16 +161,18 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
     {
         CompletionStage<Result> result;
 
-        Class annClass = configuration.getClass();
         try
         {
             if (isDeferred(ctx))
             {
                 result = getDeferredAction(ctx).call(ctx);
             }
-            else if (!ctx.args.containsKey(IGNORE_DEFERRED_FLAG)
-                    && annClass.isAnnotationPresent(Deferrable.class)
-                    && (Boolean) annClass.getMethod("deferred").invoke(configuration))
+            else if (fuse)
+            {
+                result = FusedActions.of(this).call(ctx);
+            }
+            else if (!isIgnoringDeferred(ctx)
+                    && descriptor().deferred())
             {
                 defer(ctx,
                       this);
@@ -133,6 +192,28 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
         }
     }
 
+    /**
+     * Get the attributes of the annotation that configures this action, which are read once per annotation rather
+     * than on every request.
+     *
+     * @return the descriptor of the annotation
+     */
+    protected AnnotationDescriptor descriptor()
+    {
+        return AnnotationDescriptor.of(configuration);
+    }
+
+    /**
+     * Check if, when actions are fused, this action can be skipped once a more specific action has authorised the
+     * request.  This is only true for actions that would do nothing in that case but call their delegate.
+     *
+     * @return true iff the action only passes an authorised request on
+     */
+    protected boolean passesWhenAuthorised()
+    {
+        return false;
+    }
+
     /**
      * Execute the action.
      *
@@ -247,6 +328,28 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
         return ctx.args.containsKey(ACTION_DEFERRED);
     }
 
+    /**
+     * Check if deferred flags are ignored, because a deferred action has already been picked up.
+     *
+     * @param ctx the request context
+     * @return true iff deferred flags are ignored
+     */
+    boolean isIgnoringDeferred(final Http.Context ctx)
+    {
+        return ctx.args.containsKey(IGNORE_DEFERRED_FLAG);
+    }
+
+    /**
+     * Ignore deferred flags for the rest of the request.
+     *
+     * @param ctx the request context
+     */
+    void ignoreDeferred(final Http.Context ctx)
+    {
+        ctx.args.put(IGNORE_DEFERRED_FLAG,
+                     true);
+    }
+
     /**
      * Get the deferred action from the context.
      *
@@ -262,8 +365,7 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
             action = (AbstractDeadboltAction) o;
 
             ctx.args.remove(ACTION_DEFERRED);
-            ctx.args.put(IGNORE_DEFERRED_FLAG,
-                         true);
+            ignoreDeferred(ctx);
         }
         return action;
     }
@@ -272,8 +374,21 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
                                                      final Http.Context ctx,
                                                      final DeadboltHandler deadboltHandler)
     {
-        return forcePreAuthCheck ? deadboltHandler.beforeAuthCheck(ctx)
-                                 : CompletableFuture.completedFuture(Optional.empty());
+        final CompletionStage<Optional<Result>> result;
+        if (!forcePreAuthCheck)
+        {
+            result = CompletableFuture.completedFuture(Optional.empty());
+        }
+        else if (fusedActions != null)
+        {
+            result = fusedActions.beforeAuthCheck(ctx,
+                                                  deadboltHandler);
+        }
+        else
+        {
+            result = deadboltHandler.beforeAuthCheck(ctx);
+        }
+        return result;
     }
 
     protected ExecutionContextExecutor executor()
@@ -327,13 +442,45 @@ public abstract class AbstractDeadboltAction<T> extends Action<T>
         }
     }
 
+    /**
+     * In blocking mode, make the result available within the blocking timeout.  By default the calling thread waits
+     * for the result.  If deadbolt.java.blocking-mode is "async", the result instead fails if it isn't available in
+     * time, and whatever depends on it runs on the HTTP execution context so the request's thread-local state is
+     * preserved; no thread is parked in the meantime.  An action that hasn't been given {@link Timeouts} always waits.
+     */
     CompletionStage<Result> maybeBlock(CompletionStage<Result> eventualResult) throws InterruptedException,
                                                                                       ExecutionException,
                                                                                       TimeoutException
     {
-        return blocking ? CompletableFuture.completedFuture(eventualResult.toCompletableFuture().get(blockingTimeout,
-                                                                                                     TimeUnit.MILLISECONDS))
-                        : eventualResult;
+        final CompletionStage<Result> result;
+        if (!blocking)
+        {
+            result = eventualResult;
+        }
+        else if (asyncBlocking && timeouts != null)
+        {
+            result = timeouts.within(eventualResult,
+                                     blockingTimeout,
+                                     TimeUnit.MILLISECONDS,
+                                     executor());
+        }
+        else
+        {
+            try
+            {
+                result = CompletableFuture.completedFuture(eventualResult.toCompletableFuture().get(blockingTimeout,
+                                                                                                    TimeUnit.MILLISECONDS));
+            }
+            catch (TimeoutException e)
+            {
+                if (timeouts != null)
+                {
+                    timeouts.recordTimeout();
+                }
+                throw e;
+            }
+        }
+        return result;
     }
 
     private static RuntimeException sneakyThrow(final Throwable t)
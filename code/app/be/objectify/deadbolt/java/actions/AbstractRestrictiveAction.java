@@ -70,6 +70,15 @@ public abstract class AbstractRestrictiveAction<T> extends AbstractDeadboltActio
         return maybeBlock(result);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean passesWhenAuthorised()
+    {
+        return true;
+    }
+
     /**
      * Get the key of a specific DeadboltHandler instance.
      *
@@ -82,6 +82,15 @@ public abstract class AbstractSubjectAction<T> extends AbstractDeadboltAction<T>
         return maybeBlock(result);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean passesWhenAuthorised()
+    {
+        return true;
+    }
+
     abstract Supplier<CompletableFuture<Result>> testSubject(final ConstraintLogic constraintLogic,
                                                               final Http.Context context,
                                                               final Config config,
@@ -103,13 +112,11 @@ public abstract class AbstractSubjectAction<T> extends AbstractDeadboltAction<T>
         public final String handlerKey;
         public final Optional<String> content;
 
-        Config(final boolean forceBeforeAuthCheck,
-               final String handlerKey,
-               final String content)
+        Config(final AnnotationDescriptor descriptor)
         {
-            this.forceBeforeAuthCheck = forceBeforeAuthCheck;
-            this.handlerKey = handlerKey;
-            this.content = Optional.ofNullable(content);
+            this.forceBeforeAuthCheck = descriptor.forceBeforeAuthCheck();
+            this.handlerKey = descriptor.handlerKey();
+            this.content = descriptor.content();
         }
     }
 }
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.actions;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.RoleGroups;
+import be.objectify.deadbolt.java.cache.HandlerCache;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The attributes of a Deadbolt annotation that every action needs, read once per annotation instance.  Reading an
+ * attribute of an annotation goes through a dynamic proxy, and arrays are cloned on every read, so actions read the
+ * descriptor instead.  Attributes the annotation doesn't have take their default values.
+ * <p>
+ * Descriptors are kept in an identity table that is copied when a descriptor is added, so a lookup takes no lock and
+ * doesn't call the annotation's hashCode, which is itself computed reflectively.  Annotation instances come from
+ * the controller classes, so the table stops growing once every annotated action has been called.  The annotations
+ * are only weakly referenced, and descriptors don't reference the annotation or its classes, so the table doesn't
+ * keep the classes of a stopped application alive; entries for collected annotations are dropped on the next copy.
+ */
+public final class AnnotationDescriptor
+{
+    /**
+     * Annotations created at runtime, e.g. by tests, could fill the map, so it is capped.
+     */
+    private static final int MAX_CACHED = 10000;
+
+    private static final Object LOCK = new Object();
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * An open addressing table, which is never more than half full.
+     */
+    private static volatile Entry[] descriptors = new Entry[INITIAL_CAPACITY];
+
+    private final boolean deferred;
+    private final String handlerKey;
+    private final Optional<String> content;
+    private final Optional<String> meta;
+    private final boolean forceBeforeAuthCheck;
+    private final List<String[]> roleGroups;
+
+    private volatile RoleGroups compiledRoleGroups;
+
+    private volatile ResolvedHandler resolvedHandler;
+
+    private AnnotationDescriptor(final boolean deferred,
+                                 final String handlerKey,
+                                 final Optional<String> content,
+                                 final Optional<String> meta,
+                                 final boolean forceBeforeAuthCheck,
+                                 final List<String[]> roleGroups)
+    {
+        this.deferred = deferred;
+        this.handlerKey = handlerKey;
+        this.content = content;
+        this.meta = meta;
+        this.forceBeforeAuthCheck = forceBeforeAuthCheck;
+        this.roleGroups = roleGroups;
+    }
+
+    /**
+     * Get the descriptor of an annotation.
+     *
+     * @param annotation the annotation
+     * @return the descriptor
+     */
+    public static AnnotationDescriptor of(final Object annotation)
+    {
+        AnnotationDescriptor descriptor = find(descriptors,
+                                               annotation);
+        if (descriptor == null)
+        {
+            descriptor = describe(annotation);
+            synchronized (LOCK)
+            {
+                final AnnotationDescriptor existing = find(descriptors,
+                                                           annotation);
+                if (existing != null)
+                {
+                    descriptor = existing;
+                }
+                else
+                {
+                    descriptors = copyWith(descriptors,
+                                           new Entry(annotation,
+                                                     descriptor));
+                }
+            }
+        }
+        return descriptor;
+    }
+
+    private static AnnotationDescriptor find(final Entry[] table,
+                                             final Object annotation)
+    {
+        final int mask = table.length - 1;
+        AnnotationDescriptor descriptor = null;
+        for (int i = System.identityHashCode(annotation) & mask; descriptor == null && table[i] != null; i = (i + 1) & mask)
+        {
+            if (table[i].get() == annotation)
+            {
+                descriptor = table[i].descriptor;
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Copy the live entries of the table, adding the entry if there's room for it.
+     */
+    private static Entry[] copyWith(final Entry[] table,
+                                    final Entry entry)
+    {
+        final List<Entry> live = new ArrayList<>();
+        for (Entry existing : table)
+        {
+            if (existing != null && existing.get() != null)
+            {
+                live.add(existing);
+            }
+        }
+        if (live.size() < MAX_CACHED)
+        {
+            live.add(entry);
+        }
+
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < live.size() * 2)
+        {
+            capacity <<= 1;
+        }
+        final int mask = capacity - 1;
+        final Entry[] copy = new Entry[capacity];
+        for (Entry existing : live)
+        {
+            int i = existing.hash & mask;
+            while (copy[i] != null)
+            {
+                i = (i + 1) & mask;
+            }
+            copy[i] = existing;
+        }
+        return copy;
+    }
+
+    /**
+     * @return true iff the annotation is {@link Deferrable} and marked as deferred
+     */
+    public boolean deferred()
+    {
+        return deferred;
+    }
+
+    /**
+     * @return the handler key, which may be null if the annotation doesn't have one
+     */
+    public String handlerKey()
+    {
+        return handlerKey;
+    }
+
+    /**
+     * @return an option for the content type hint
+     */
+    public Optional<String> content()
+    {
+        return content;
+    }
+
+    /**
+     * @return an option for the meta data
+     */
+    public Optional<String> meta()
+    {
+        return meta;
+    }
+
+    /**
+     * @return true iff {@link be.objectify.deadbolt.java.DeadboltHandler#beforeAuthCheck} must be called
+     */
+    public boolean forceBeforeAuthCheck()
+    {
+        return forceBeforeAuthCheck;
+    }
+
+    /**
+     * @return the role names of each {@link Group}, which is empty if the annotation doesn't have groups.  The arrays
+     * are shared, so they must not be changed.
+     */
+    public List<String[]> roleGroups()
+    {
+        return roleGroups;
+    }
+
+    /**
+     * Get the compiled form of the role groups.  They are compiled the first time this is called, and the compiled form
+     * is kept for the life of the descriptor.
+     *
+     * @param compiler compiles the role groups
+     * @return the compiled role groups
+     */
+    public RoleGroups compiledRoleGroups(final Function<List<String[]>, RoleGroups> compiler)
+    {
+        RoleGroups compiled = compiledRoleGroups;
+        if (compiled == null)
+        {
+            // compiling is idempotent, so a race just means the groups are compiled more than once
+            compiled = compiler.apply(roleGroups);
+            compiledRoleGroups = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Get the handler for the handler key.  The handler is resolved the first time this is called with a handler cache,
+     * and reused for as long as the same handler cache is used.  Both are only weakly referenced, so the descriptor
+     * doesn't keep a stopped application's handlers alive.
+     *
+     * @param handlerCache the handler cache
+     * @param resolver     gets the handler from the handler cache
+     * @return the handler
+     */
+    public DeadboltHandler handler(final HandlerCache handlerCache,
+                                   final Function<HandlerCache, DeadboltHandler> resolver)
+    {
+        final ResolvedHandler resolved = resolvedHandler;
+        DeadboltHandler handler = resolved != null && resolved.handlerCache.get() == handlerCache ? resolved.handler.get()
+                                                                                                  : null;
+        if (handler == null)
+        {
+            // resolving is idempotent, so a race just means the handler is resolved more than once
+            handler = resolver.apply(handlerCache);
+            resolvedHandler = new ResolvedHandler(handlerCache,
+                                                  handler);
+        }
+        return handler;
+    }
+
+    private static AnnotationDescriptor describe(final Object annotation)
+    {
+        final Class<?> type = annotationType(annotation);
+        final Group[] groups = read(annotation,
+                                    type,
+                                    "value",
+                                    Group[].class);
+        final List<String[]> roleGroups = new ArrayList<>();
+        if (groups != null)
+        {
+            for (Group group : groups)
+            {
+                roleGroups.add(group.value());
+            }
+        }
+        final Boolean deferred = read(annotation,
+                                      type,
+                                      "deferred",
+                                      Boolean.class);
+        final Boolean forceBeforeAuthCheck = read(annotation,
+                                                  type,
+                                                  "forceBeforeAuthCheck",
+                                                  Boolean.class);
+        return new AnnotationDescriptor(type != null && type.isAnnotationPresent(Deferrable.class) && Boolean.TRUE.equals(deferred),
+                                        read(annotation,
+                                             type,
+                                             "handlerKey",
+                                             String.class),
+                                        Optional.ofNullable(read(annotation,
+                                                                 type,
+                                                                 "content",
+                                                                 String.class)),
+                                        Optional.ofNullable(read(annotation,
+                                                                 type,
+                                                                 "meta",
+                                                                 String.class)),
+                                        Boolean.TRUE.equals(forceBeforeAuthCheck),
+                                        Collections.unmodifiableList(roleGroups));
+    }
+
+    /**
+     * The annotation type is declared by the annotation itself but, for an implementation such as a mock that doesn't
+     * declare it, is taken from the interfaces of its class.
+     */
+    private static Class<?> annotationType(final Object annotation)
+    {
+        Class<?> type = annotation instanceof Annotation ? ((Annotation) annotation).annotationType()
+                                                         : null;
+        for (Class<?> candidate = annotation.getClass(); type == null && candidate != null; candidate = candidate.getSuperclass())
+        {
+            for (Class<?> implemented : candidate.getInterfaces())
+            {
+                if (type == null && implemented.isAnnotation())
+                {
+                    type = implemented;
+                }
+            }
+        }
+        return type;
+    }
+
+    private static <V> V read(final Object annotation,
+                              final Class<?> type,
+                              final String attribute,
+                              final Class<V> valueType)
+    {
+        V value = null;
+        if (type != null)
+        {
+            try
+            {
+                final Method method = type.getMethod(attribute);
+                final Object result = method.invoke(annotation);
+                if (valueType.isInstance(result))
+                {
+                    value = valueType.cast(result);
+                }
+            }
+            catch (NoSuchMethodException e)
+            {
+                // the annotation doesn't have this attribute
+            }
+            catch (IllegalAccessException | InvocationTargetException e)
+            {
+                throw new RuntimeException(String.format("Could not read [%s] of [%s]",
+                                                         attribute,
+                                                         type.getName()),
+                                           e);
+            }
+        }
+        return value;
+    }
+
+    private static final class ResolvedHandler
+    {
+        private final WeakReference<HandlerCache> handlerCache;
+        private final WeakReference<DeadboltHandler> handler;
+
+        private ResolvedHandler(final HandlerCache handlerCache,
+                                final DeadboltHandler handler)
+        {
+            this.handlerCache = new WeakReference<>(handlerCache);
+            this.handler = new WeakReference<>(handler);
+        }
+    }
+
+    private static final class Entry extends WeakReference<Object>
+    {
+        private final int hash;
+        private final AnnotationDescriptor descriptor;
+
+        private Entry(final Object annotation,
+                      final AnnotationDescriptor descriptor)
+        {
+            super(annotation);
+            this.hash = System.identityHashCode(annotation);
+            this.descriptor = descriptor;
+        }
+    }
+}
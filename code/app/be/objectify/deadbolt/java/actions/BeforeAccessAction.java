@@ -57,7 +57,7 @@ public class BeforeAccessAction extends AbstractDeadboltAction<BeforeAccess>
         }
         else
         {
-            final DeadboltHandler deadboltHandler = getDeadboltHandler(configuration.handlerKey());
+            final DeadboltHandler deadboltHandler = getDeadboltHandler(descriptor().handlerKey());
             final ExecutionContextExecutor executor = executor();
             result = preAuth(true,
                              ctx,
@@ -68,4 +68,13 @@ public class BeforeAccessAction extends AbstractDeadboltAction<BeforeAccess>
         }
         return maybeBlock(result);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean passesWhenAuthorised()
+    {
+        return !configuration.alwaysExecute();
+    }
 }
@@ -15,7 +15,6 @@
  */
 package be.objectify.deadbolt.java.actions;
 
-import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 import javax.inject.Inject;
 import be.objectify.deadbolt.java.ConstraintLogic;
@@ -62,28 +61,28 @@ public class CompositeAction extends AbstractRestrictiveAction<Composite>
                                       return constraint.test(ctx,
                                                              handler,
                                                              executor,
-                                                             Optional.ofNullable(getMeta()),
+                                                             descriptor().meta(),
                                                              (globalMd, localMd) -> preferGlobalMeta ? globalMd.isPresent() ? globalMd : localMd
                                                                                                      : localMd.isPresent() ? localMd : globalMd)
                                                        .thenComposeAsync(allowed -> allowed ? authorizeAndExecute(ctx,
                                                                                                                   handler)
                                                                                             : unauthorizeAndFail(ctx,
                                                                                                                  handler,
-                                                                                                                 Optional.ofNullable(configuration.content())),
+                                                                                                                 descriptor().content()),
                                                                          executor);
                                   })
                              .orElseGet(() ->
                                         {
                                             markActionAsUnauthorised(ctx);
                                             return onAuthFailure(handler,
-                                                                 Optional.ofNullable(configuration.content()),
+                                                                 descriptor().content(),
                                                                  ctx);
                                         });
     }
 
     public String getMeta()
     {
-        return configuration.meta();
+        return descriptor().meta().orElse(null);
     }
 
     public String getValue()
@@ -103,6 +102,6 @@ public class CompositeAction extends AbstractRestrictiveAction<Composite>
     @Override
     public String getHandlerKey()
     {
-        return configuration.handlerKey();
+        return descriptor().handlerKey();
     }
 }
@@ -70,7 +70,7 @@ public class DynamicAction extends AbstractRestrictiveAction<Dynamic>
     {
         return constraintLogic.dynamic(ctx,
                                        deadboltHandler,
-                                       Optional.ofNullable(configuration.content()),
+                                       descriptor().content(),
                                        getValue(),
                                        getMeta(),
                                        this::authorizeAndExecute,
@@ -80,7 +80,7 @@ public class DynamicAction extends AbstractRestrictiveAction<Dynamic>
 
     public Optional<String> getMeta()
     {
-        return Optional.ofNullable(configuration.meta());
+        return descriptor().meta();
     }
 
     public String getValue()
@@ -91,6 +91,6 @@ public class DynamicAction extends AbstractRestrictiveAction<Dynamic>
     @Override
     public String getHandlerKey()
     {
-        return configuration.handlerKey();
+        return descriptor().handlerKey();
     }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.actions;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import play.mvc.Action;
+import play.mvc.Http;
+import play.mvc.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Evaluates a stack of Deadbolt actions, e.g. those of a method-level {@link SubjectPresent} on a controller with
+ * {@link Restrict} and {@link BeforeAccess}, as a single action.  The stack is every Deadbolt action that directly
+ * follows the first one in the chain Play builds for a request; it ends at the first action that isn't a Deadbolt
+ * action, which is called once the stack has let the request through.
+ * <p>
+ * The result is the same as calling the actions one after the other, but
+ * <ul>
+ * <li>an action that would only pass the request on, because a more specific action has already authorised it, is
+ * not called at all</li>
+ * <li>{@link DeferredDeadbolt} actions are not called, because a deferred action is evaluated at the point it would
+ * have been picked up</li>
+ * <li>{@link DeadboltHandler#beforeAuthCheck} is called at most once per handler</li>
+ * </ul>
+ * A deferred action at the end of the stack has nothing in the stack to pick it up, so it is deferred through the
+ * context as usual for a later Deadbolt action.
+ */
+final class FusedActions
+{
+    private final AbstractDeadboltAction<?>[] actions;
+    private final Action<?> terminal;
+
+    private final List<DeadboltHandler> checkedHandlers = new ArrayList<>(2);
+    private final List<CompletionStage<Optional<Result>>> checks = new ArrayList<>(2);
+
+    private FusedActions(final AbstractDeadboltAction<?>[] actions,
+                         final Action<?> terminal)
+    {
+        this.actions = actions;
+        this.terminal = terminal;
+    }
+
+    /**
+     * Collect the stack of Deadbolt actions starting with the given one.
+     *
+     * @param first the first action of the stack
+     * @return the fused actions
+     */
+    static FusedActions of(final AbstractDeadboltAction<?> first)
+    {
+        final List<AbstractDeadboltAction<?>> actions = new ArrayList<>();
+        Action<?> action = first;
+        while (action instanceof AbstractDeadboltAction)
+        {
+            actions.add((AbstractDeadboltAction<?>) action);
+            action = action.delegate;
+        }
+        return new FusedActions(actions.toArray(new AbstractDeadboltAction<?>[actions.size()]),
+                                action);
+    }
+
+    /**
+     * Evaluate the stack.
+     *
+     * @param ctx the request context
+     * @return the result
+     * @throws Exception if something bad happens
+     */
+    CompletionStage<Result> call(final Http.Context ctx) throws Exception
+    {
+        return evaluate(0,
+                        ctx);
+    }
+
+    /**
+     * @return the number of Deadbolt actions in the stack
+     */
+    int size()
+    {
+        return actions.length;
+    }
+
+    /**
+     * Call {@link DeadboltHandler#beforeAuthCheck}, unless an earlier action of the stack already called it for the
+     * same handler.  An earlier call that returned a result would have ended the evaluation, so the stage that is
+     * reused is always one that let the request through.
+     *
+     * @param ctx     the request context
+     * @param handler the handler
+     * @return the result of the check
+     */
+    CompletionStage<Optional<Result>> beforeAuthCheck(final Http.Context ctx,
+                                                      final DeadboltHandler handler)
+    {
+        CompletionStage<Optional<Result>> check = null;
+        for (int i = 0; check == null && i < checkedHandlers.size(); i++)
+        {
+            if (checkedHandlers.get(i) == handler)
+            {
+                check = checks.get(i);
+            }
+        }
+        if (check == null)
+        {
+            check = handler.beforeAuthCheck(ctx);
+            checkedHandlers.add(handler);
+            checks.add(check);
+        }
+        return check;
+    }
+
+    private CompletionStage<Result> evaluate(final int from,
+                                             final Http.Context ctx) throws Exception
+    {
+        int index = from;
+        while (index < actions.length && isPassThrough(actions[index],
+                                                       ctx))
+        {
+            index++;
+        }
+
+        final CompletionStage<Result> result;
+        if (index == actions.length)
+        {
+            result = terminal.call(ctx);
+        }
+        else
+        {
+            final AbstractDeadboltAction<?> action = actions[index];
+            final int next = index + 1;
+            final boolean deferred = !action.isIgnoringDeferred(ctx) && action.descriptor().deferred();
+            if (deferred && next == actions.length)
+            {
+                action.defer(ctx,
+                             action);
+                result = terminal.call(ctx);
+            }
+            else
+            {
+                if (deferred)
+                {
+                    // the next action would pick it up straight away, so it is evaluated in place
+                    action.ignoreDeferred(ctx);
+                }
+                action.fusedActions = this;
+                action.delegate = new Continuation(next);
+                result = action.execute(ctx);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isPassThrough(final AbstractDeadboltAction<?> action,
+                                         final Http.Context ctx)
+    {
+        return action instanceof DeferredDeadboltAction
+               || (action.passesWhenAuthorised() && action.isActionAuthorised(ctx) && !action.isActionUnauthorised(ctx));
+    }
+
+    /**
+     * Continues the evaluation with the rest of the stack.
+     */
+    private final class Continuation extends Action<Void>
+    {
+        private final int next;
+
+        private Continuation(final int next)
+        {
+            this.next = next;
+        }
+
+        @Override
+        public CompletionStage<Result> call(final Http.Context ctx)
+        {
+            try
+            {
+                return evaluate(next,
+                                ctx);
+            }
+            catch (RuntimeException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
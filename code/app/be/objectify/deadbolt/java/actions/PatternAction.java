@@ -67,7 +67,7 @@ public class PatternAction extends AbstractRestrictiveAction<Pattern>
     {
         return constraintLogic.pattern(ctx,
                                        deadboltHandler,
-                                       Optional.ofNullable(configuration.content()),
+                                       descriptor().content(),
                                        getValue(),
                                        configuration.patternType(),
                                        getMeta(),
@@ -84,12 +84,12 @@ public class PatternAction extends AbstractRestrictiveAction<Pattern>
 
     public Optional<String> getMeta()
     {
-        return Optional.ofNullable(configuration.meta());
+        return descriptor().meta();
     }
 
     @Override
     public String getHandlerKey()
     {
-        return configuration.handlerKey();
+        return descriptor().handlerKey();
     }
 }
@@ -26,9 +26,7 @@ import play.mvc.Http;
 import play.mvc.Result;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 
 /**
@@ -72,8 +70,8 @@ public class RestrictAction extends AbstractRestrictiveAction<Restrict>
     {
         return constraintLogic.restrict(ctx,
                                         deadboltHandler,
-                                        Optional.ofNullable(configuration.content()),
-                                        this::getRoleGroups,
+                                        descriptor().content(),
+                                        descriptor().compiledRoleGroups(constraintLogic::compileRoleGroups),
                                         this::authorizeAndExecute,
                                         this::unauthorizeAndFail,
                                         ConstraintPoint.CONTROLLER);
@@ -81,17 +79,12 @@ public class RestrictAction extends AbstractRestrictiveAction<Restrict>
 
     public List<String[]> getRoleGroups()
     {
-        final List<String[]> roleGroups = new ArrayList<>();
-        for (Group group : configuration.value())
-        {
-            roleGroups.add(group.value());
-        }
-        return roleGroups;
+        return descriptor().roleGroups();
     }
 
     @Override
     public String getHandlerKey()
     {
-        return configuration.handlerKey();
+        return descriptor().handlerKey();
     }
 }
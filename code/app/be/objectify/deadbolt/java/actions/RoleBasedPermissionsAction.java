@@ -26,7 +26,6 @@ import play.mvc.Http;
 import play.mvc.Result;
 
 import javax.inject.Inject;
-import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 
 /**
@@ -71,7 +70,7 @@ public class RoleBasedPermissionsAction extends AbstractRestrictiveAction<RoleBa
     {
         return constraintLogic.roleBasedPermissions(ctx,
                                                     deadboltHandler,
-                                                    Optional.ofNullable(configuration.content()),
+                                                    descriptor().content(),
                                                     configuration.value(),
                                                     this::authorizeAndExecute,
                                                     this::unauthorizeAndFail,
@@ -81,6 +80,6 @@ public class RoleBasedPermissionsAction extends AbstractRestrictiveAction<RoleBa
     @Override
     public String getHandlerKey()
     {
-        return configuration.handlerKey();
+        return descriptor().handlerKey();
     }
 }
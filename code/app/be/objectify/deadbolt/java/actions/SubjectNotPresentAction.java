@@ -57,9 +57,7 @@ public class SubjectNotPresentAction extends AbstractSubjectAction<SubjectNotPre
     @Override
     Config config()
     {
-        return new Config(configuration.forceBeforeAuthCheck(),
-                          configuration.handlerKey(),
-                          configuration.content());
+        return new Config(descriptor());
     }
 
     /**
@@ -53,9 +53,7 @@ public class SubjectPresentAction extends AbstractSubjectAction<SubjectPresent>
     @Override
     Config config()
     {
-        return new Config(configuration.forceBeforeAuthCheck(),
-                          configuration.handlerKey(),
-                          configuration.content());
+        return new Config(descriptor());
     }
 
     /**
@@ -23,7 +23,6 @@ import play.mvc.Result;
 import scala.concurrent.ExecutionContextExecutor;
 
 import javax.inject.Inject;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
@@ -54,12 +53,19 @@ public class UnrestrictedAction extends AbstractDeadboltAction<Unrestricted>
         final CompletableFuture<Result> eventualResult = CompletableFuture.supplyAsync(() -> isActionUnauthorised(ctx),
                                                                                        executor)
                                                                           .thenComposeAsync(unauthorised -> unauthorised ? unauthorizeAndFail(ctx,
-                                                                                                                                              getDeadboltHandler(configuration
-                                                                                                                                                                         .handlerKey()),
-                                                                                                                                              Optional.ofNullable(configuration
-                                                                                                                                                                          .content()))
+                                                                                                                                              getDeadboltHandler(descriptor().handlerKey()),
+                                                                                                                                              descriptor().content())
                                                                                                                          : authorizeAndExecute(ctx)
                                                                                   , executor);
         return maybeBlock(eventualResult);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean passesWhenAuthorised()
+    {
+        return true;
+    }
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * A size-bounded, in-memory cache.  When the cache is full the least recently used entry is evicted.  Entries can
+ * also expire a fixed time after they are written, and a fixed time after they were last read.
+ * <p>
+ * The cache is split into segments by key, each with its own lock, so threads working with different keys rarely
+ * contend.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class BoundedCache<K, V>
+{
+    private static final int SEGMENTS = 16;
+
+    private final long ttlNanos;
+    private final long idleNanos;
+    private final LongSupplier clock;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize    the maximum number of entries
+     * @param ttlMillis  the number of milliseconds after an entry is written that it expires, or 0 if it doesn't
+     * @param idleMillis the number of milliseconds after an entry is last read that it expires, or 0 if it doesn't
+     * @param clock      the source of the current time, in nanoseconds
+     */
+    public BoundedCache(final long maxSize,
+                        final long ttlMillis,
+                        final long idleMillis,
+                        final LongSupplier clock)
+    {
+        this.ttlNanos = ttlMillis > 0L ? TimeUnit.MILLISECONDS.toNanos(ttlMillis)
+                                       : Long.MAX_VALUE;
+        this.idleNanos = idleMillis > 0L ? TimeUnit.MILLISECONDS.toNanos(idleMillis)
+                                         : Long.MAX_VALUE;
+        this.clock = clock;
+
+        // every segment must be able to hold at least one entry, so small caches use fewer segments
+        final int segmentCount = (int) Math.max(1L,
+                                                Math.min(SEGMENTS,
+                                                         maxSize));
+        this.segments = new BoundedCache.Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            final long capacity = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param key the key
+     * @return an option for the value, which is empty if there is no entry or it has expired
+     */
+    public Optional<V> get(final K key)
+    {
+        final Optional<V> value = segmentFor(key).get(key,
+                                                      clock.getAsLong());
+        if (value.isPresent())
+        {
+            hits.increment();
+        }
+        else
+        {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Store a value, replacing any existing value for the key.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(final K key,
+                    final V value)
+    {
+        segmentFor(key).put(key,
+                            value,
+                            clock.getAsLong());
+    }
+
+    /**
+     * Remove the entry for a key.
+     *
+     * @param key the key
+     */
+    public void remove(final K key)
+    {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Remove every entry that matches the predicate.
+     *
+     * @param predicate tests the key and value of each entry
+     */
+    public void removeIf(final BiPredicate<? super K, ? super V> predicate)
+    {
+        for (Segment segment : segments)
+        {
+            segment.removeIf(predicate);
+        }
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Get the number of entries, which may include entries that have expired but not yet been removed.
+     *
+     * @return the number of entries
+     */
+    public long size()
+    {
+        long size = 0L;
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the statistics of the cache.
+     *
+     * @return the statistics
+     */
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              evictions.sum(),
+                              size());
+    }
+
+    private Segment segmentFor(final K key)
+    {
+        final int hash = key.hashCode();
+        return segments[((hash ^ (hash >>> 16)) & 0x7fffffff) % segments.length];
+    }
+
+    private final class Entry
+    {
+        private final V value;
+        private final long writtenAt;
+        private long readAt;
+
+        private Entry(final V value,
+                      final long now)
+        {
+            this.value = value;
+            this.writtenAt = now;
+            this.readAt = now;
+        }
+
+        private boolean isExpired(final long now)
+        {
+            return now - writtenAt >= ttlNanos || now - readAt >= idleNanos;
+        }
+    }
+
+    private final class Segment
+    {
+        private final LinkedHashMap<K, Entry> entries;
+
+        private Segment(final long capacity)
+        {
+            this.entries = new LinkedHashMap<K, Entry>(16,
+                                                       0.75f,
+                                                       true)
+            {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<K, Entry> eldest)
+                {
+                    final boolean evict = size() > capacity;
+                    if (evict)
+                    {
+                        evictions.increment();
+                    }
+                    return evict;
+                }
+            };
+        }
+
+        private synchronized Optional<V> get(final K key,
+                                             final long now)
+        {
+            Optional<V> value = Optional.empty();
+            final Entry entry = entries.get(key);
+            if (entry != null)
+            {
+                if (entry.isExpired(now))
+                {
+                    entries.remove(key);
+                    evictions.increment();
+                }
+                else
+                {
+                    entry.readAt = now;
+                    value = Optional.of(entry.value);
+                }
+            }
+            return value;
+        }
+
+        private synchronized void put(final K key,
+                                      final V value,
+                                      final long now)
+        {
+            entries.put(key,
+                        new Entry(value,
+                                  now));
+        }
+
+        private synchronized void remove(final K key)
+        {
+            entries.remove(key);
+        }
+
+        private synchronized void removeIf(final BiPredicate<? super K, ? super V> predicate)
+        {
+            for (Iterator<Map.Entry<K, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); )
+            {
+                final Map.Entry<K, Entry> entry = iterator.next();
+                if (predicate.test(entry.getKey(),
+                                   entry.getValue().value))
+                {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized void clear()
+        {
+            entries.clear();
+        }
+
+        private synchronized int size()
+        {
+            return entries.size();
+        }
+    }
+}
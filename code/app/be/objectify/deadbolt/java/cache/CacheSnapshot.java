@@ -0,0 +1,328 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.models.Permission;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The contents of the pattern and role permission caches at a point in time, which can be written to a file and read
+ * back to warm the caches of a new instance.  Only pattern values and permission values are saved, so a snapshot
+ * never contains application objects.
+ */
+public final class CacheSnapshot
+{
+    private static final int MAGIC = 0x44424353;
+    private static final int FORMAT = 1;
+
+    private final String version;
+    private final long createdAt;
+    private final List<String> patterns;
+    private final Map<String, Map<String, List<String>>> rolePermissions;
+
+    /**
+     * @param version         the version of the application that created the snapshot
+     * @param createdAt       when the snapshot was created, in milliseconds since the epoch
+     * @param patterns        the pattern values
+     * @param rolePermissions the permission values, keyed by handler name and then by role name
+     */
+    public CacheSnapshot(final String version,
+                         final long createdAt,
+                         final List<String> patterns,
+                         final Map<String, Map<String, List<String>>> rolePermissions)
+    {
+        this.version = version;
+        this.createdAt = createdAt;
+        this.patterns = Collections.unmodifiableList(patterns);
+        this.rolePermissions = Collections.unmodifiableMap(rolePermissions);
+    }
+
+    /**
+     * Take a snapshot of the caches.
+     *
+     * @param version              the version of the application
+     * @param createdAt            the current time, in milliseconds since the epoch
+     * @param patternCache         the pattern cache
+     * @param rolePermissionsCache the role permissions cache
+     * @return the snapshot
+     */
+    public static CacheSnapshot capture(final String version,
+                                        final long createdAt,
+                                        final PatternCache patternCache,
+                                        final RolePermissionsCache rolePermissionsCache)
+    {
+        return new CacheSnapshot(version,
+                                 createdAt,
+                                 new ArrayList<>(patternCache.patternValues()),
+                                 rolePermissionsCache.loaded());
+    }
+
+    /**
+     * Read a snapshot from a file, which is memory-mapped rather than read into the heap.
+     *
+     * @param path the path of the file
+     * @return an option for the snapshot, which is empty if the file doesn't exist or doesn't contain a snapshot in a
+     * format this version understands
+     * @throws IOException if the file can't be read
+     */
+    public static Optional<CacheSnapshot> read(final Path path) throws IOException
+    {
+        Optional<CacheSnapshot> snapshot = Optional.empty();
+        if (Files.isRegularFile(path))
+        {
+            try (FileChannel channel = FileChannel.open(path,
+                                                        StandardOpenOption.READ))
+            {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                            0L,
+                                                            channel.size());
+                if (buffer.remaining() >= Integer.BYTES * 2 && buffer.getInt() == MAGIC && buffer.getInt() == FORMAT)
+                {
+                    snapshot = Optional.of(decode(buffer));
+                }
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e)
+            {
+                // a truncated or corrupt file is treated as no snapshot
+                snapshot = Optional.empty();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Write the snapshot to a file.  The snapshot is written to a temporary file that then replaces the target, so a
+     * reader never sees a partial snapshot.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file can't be written
+     */
+    public void write(final Path path) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            writeString(out,
+                        version);
+            out.writeLong(createdAt);
+            writeStrings(out,
+                         patterns);
+            out.writeInt(rolePermissions.size());
+            for (Map.Entry<String, Map<String, List<String>>> handler : rolePermissions.entrySet())
+            {
+                writeString(out,
+                            handler.getKey());
+                out.writeInt(handler.getValue().size());
+                for (Map.Entry<String, List<String>> role : handler.getValue().entrySet())
+                {
+                    writeString(out,
+                                role.getKey());
+                    writeStrings(out,
+                                 role.getValue());
+                }
+            }
+        }
+
+        final Path absolute = path.toAbsolutePath();
+        if (absolute.getParent() == null || absolute.getFileName() == null)
+        {
+            throw new IOException(String.format("[%s] is not a file path",
+                                                path));
+        }
+        final Path temp = Files.createTempFile(absolute.getParent(),
+                                               absolute.getFileName().toString(),
+                                               ".tmp");
+        try
+        {
+            Files.write(temp,
+                        bytes.toByteArray());
+            try
+            {
+                Files.move(temp,
+                           absolute,
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp,
+                           absolute,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Check if the snapshot can be used to warm the caches.
+     *
+     * @param currentVersion the version of the running application
+     * @param now            the current time, in milliseconds since the epoch
+     * @param maxAgeMillis   the maximum age of a usable snapshot, in milliseconds
+     * @return true iff the snapshot was created by the same version of the application, and is not too old
+     */
+    public boolean isUsable(final String currentVersion,
+                            final long now,
+                            final long maxAgeMillis)
+    {
+        return version.equals(currentVersion) && createdAt <= now && now - createdAt <= maxAgeMillis;
+    }
+
+    /**
+     * Warm the caches with the contents of the snapshot.  Permissions are at least as old as the snapshot, so they
+     * aren't cached if the snapshot is older than the role permissions cache's TTL.
+     *
+     * @param patternCache         the pattern cache
+     * @param rolePermissionsCache the role permissions cache
+     * @param now                  the current time, in milliseconds since the epoch
+     */
+    public void restore(final PatternCache patternCache,
+                        final RolePermissionsCache rolePermissionsCache,
+                        final long now)
+    {
+        patternCache.warm(patterns);
+        final long ageMillis = now - createdAt;
+        rolePermissions.forEach((handlerName, roles) -> roles.forEach((roleName, values) -> rolePermissionsCache.preload(handlerName,
+                                                                                                                    roleName,
+                                                                                                                    values.stream()
+                                                                                                                          .map(value -> (Permission) () -> value)
+                                                                                                                          .collect(Collectors.toList()),
+                                                                                                                    ageMillis)));
+    }
+
+    /**
+     * @return the version of the application that created the snapshot
+     */
+    public String version()
+    {
+        return version;
+    }
+
+    /**
+     * @return when the snapshot was created, in milliseconds since the epoch
+     */
+    public long createdAt()
+    {
+        return createdAt;
+    }
+
+    /**
+     * @return the pattern values
+     */
+    public List<String> patterns()
+    {
+        return patterns;
+    }
+
+    /**
+     * @return the permission values, keyed by handler name and then by role name
+     */
+    public Map<String, Map<String, List<String>>> rolePermissions()
+    {
+        return rolePermissions;
+    }
+
+    private static CacheSnapshot decode(final ByteBuffer buffer)
+    {
+        final String version = readString(buffer);
+        final long createdAt = buffer.getLong();
+        final List<String> patterns = readStrings(buffer);
+        final Map<String, Map<String, List<String>>> rolePermissions = new HashMap<>();
+        for (int handlers = buffer.getInt(); handlers > 0; handlers--)
+        {
+            final Map<String, List<String>> roles = new HashMap<>();
+            rolePermissions.put(readString(buffer),
+                                roles);
+            for (int count = buffer.getInt(); count > 0; count--)
+            {
+                roles.put(readString(buffer),
+                          readStrings(buffer));
+            }
+        }
+        return new CacheSnapshot(version,
+                                 createdAt,
+                                 patterns,
+                                 rolePermissions);
+    }
+
+    private static void writeString(final DataOutputStream out,
+                                    final String value) throws IOException
+    {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(final DataOutputStream out,
+                                     final List<String> values) throws IOException
+    {
+        out.writeInt(values.size());
+        for (String value : values)
+        {
+            writeString(out,
+                        value);
+        }
+    }
+
+    private static String readString(final ByteBuffer buffer)
+    {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+        {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes,
+                          StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(final ByteBuffer buffer)
+    {
+        final int count = buffer.getInt();
+        final List<String> values = new ArrayList<>(Math.min(count,
+                                                             buffer.remaining() / Integer.BYTES));
+        for (int i = 0; i < count; i++)
+        {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Configuration;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Warms the caches from a {@link CacheSnapshot} when the application starts, and saves a new snapshot when it stops.
+ * This only happens if {@link ConfigKeys#SNAPSHOT_PATH} is set.  A snapshot is ignored if it was written by a
+ * different {@link ConfigKeys#SNAPSHOT_VERSION} of the application, or is older than
+ * {@link ConfigKeys#SNAPSHOT_MAX_AGE} milliseconds.  Role permissions from a snapshot keep their age, so they are
+ * not restored if the snapshot is older than the role permissions cache's TTL.
+ */
+@Singleton
+public class CacheSnapshots
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshots.class);
+
+    private final Optional<Path> path;
+    private final String version;
+    private final long maxAgeMillis;
+    private final PatternCache patternCache;
+    private final RolePermissionsCache rolePermissionsCache;
+
+    @Inject
+    public CacheSnapshots(final Configuration configuration,
+                          final PatternCache patternCache,
+                          final RolePermissionsCache rolePermissionsCache,
+                          final ApplicationLifecycle lifecycle)
+    {
+        this.path = Optional.ofNullable(configuration.getString(ConfigKeys.SNAPSHOT_PATH))
+                            .map(Paths::get);
+        this.version = configuration.getString(ConfigKeys.SNAPSHOT_VERSION_DEFAULT._1,
+                                               ConfigKeys.SNAPSHOT_VERSION_DEFAULT._2);
+        this.maxAgeMillis = configuration.getLong(ConfigKeys.SNAPSHOT_MAX_AGE_DEFAULT._1,
+                                                  ConfigKeys.SNAPSHOT_MAX_AGE_DEFAULT._2);
+        this.patternCache = patternCache;
+        this.rolePermissionsCache = rolePermissionsCache;
+
+        if (path.isPresent())
+        {
+            restore();
+            lifecycle.addStopHook(() ->
+                                  {
+                                      save();
+                                      return CompletableFuture.completedFuture(null);
+                                  });
+        }
+    }
+
+    /**
+     * Warm the caches from the snapshot file, if it exists and is usable.
+     *
+     * @return true iff the caches were warmed
+     */
+    public boolean restore()
+    {
+        boolean restored = false;
+        if (path.isPresent())
+        {
+            try
+            {
+                final Optional<CacheSnapshot> snapshot = CacheSnapshot.read(path.get());
+                final long now = System.currentTimeMillis();
+                if (snapshot.isPresent() && snapshot.get().isUsable(version,
+                                                                    now,
+                                                                    maxAgeMillis))
+                {
+                    snapshot.get().restore(patternCache,
+                                           rolePermissionsCache,
+                                           now);
+                    restored = true;
+                }
+                else
+                {
+                    LOGGER.info("Deadbolt: no usable cache snapshot at [{}]",
+                                path.get());
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                // a snapshot is only an optimisation, so starting cold is always an option
+                LOGGER.warn("Deadbolt: could not restore cache snapshot from [{}]",
+                            path.get(),
+                            e);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Save a snapshot of the caches to the snapshot file.
+     *
+     * @return true iff the snapshot was saved
+     */
+    public boolean save()
+    {
+        boolean saved = false;
+        if (path.isPresent())
+        {
+            try
+            {
+                CacheSnapshot.capture(version,
+                                      System.currentTimeMillis(),
+                                      patternCache,
+                                      rolePermissionsCache)
+                             .write(path.get());
+                saved = true;
+            }
+            catch (IOException | RuntimeException e)
+            {
+                LOGGER.warn("Deadbolt: could not save cache snapshot to [{}]",
+                            path.get(),
+                            e);
+            }
+        }
+        return saved;
+    }
+}
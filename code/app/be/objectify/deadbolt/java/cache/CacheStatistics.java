@@ -0,0 +1,248 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Configuration;
+import play.inject.ApplicationLifecycle;
+import play.inject.Injector;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Gathers the statistics of every Deadbolt cache in one place, so caches can be sized from data and a cache that has
+ * stopped paying for itself, e.g. one with a hit rate near zero, can be spotted.  Applications can render
+ * {@link #snapshot()} from a controller of their own; if {@link ConfigKeys#CACHE_STATS_JMX} is true, the statistics
+ * are also registered as a JMX bean named {@link #OBJECT_NAME}.
+ * <p>
+ * The caches are named <code>subject</code>, <code>pattern</code>, <code>composite</code>, <code>decision</code>,
+ * <code>role-permissions</code>, <code>dynamic-resource</code> and, if the application binds a
+ * {@link HandlerCache}, <code>handler</code>.
+ */
+@Singleton
+public class CacheStatistics implements DeadboltCacheStatsMXBean
+{
+    /**
+     * The name of the JMX bean.
+     */
+    public static final String OBJECT_NAME = "be.objectify.deadbolt:type=CacheStatistics";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheStatistics.class);
+
+    private final Map<String, DeadboltCacheStats> caches;
+
+    @Inject
+    public CacheStatistics(final Configuration configuration,
+                           final Injector injector,
+                           final SubjectCache subjectCache,
+                           final PatternCache patternCache,
+                           final CompositeCache compositeCache,
+                           final DecisionCache decisionCache,
+                           final RolePermissionsCache rolePermissionsCache,
+                           final DynamicResourceCache dynamicResourceCache,
+                           final ApplicationLifecycle lifecycle)
+    {
+        this(caches(injector,
+                    subjectCache,
+                    patternCache,
+                    compositeCache,
+                    decisionCache,
+                    rolePermissionsCache,
+                    dynamicResourceCache));
+
+        if (configuration.getBoolean(ConfigKeys.CACHE_STATS_JMX_DEFAULT._1,
+                                     ConfigKeys.CACHE_STATS_JMX_DEFAULT._2))
+        {
+            register();
+            lifecycle.addStopHook(() ->
+                                  {
+                                      unregister();
+                                      return CompletableFuture.completedFuture(null);
+                                  });
+        }
+    }
+
+    /**
+     * @param caches the caches, keyed by name
+     */
+    public CacheStatistics(final Map<String, ? extends DeadboltCacheStats> caches)
+    {
+        this.caches = Collections.unmodifiableMap(new LinkedHashMap<>(caches));
+    }
+
+    /**
+     * Get the current statistics of every cache.
+     *
+     * @return the statistics, keyed by cache name
+     */
+    public Map<String, CacheStats> snapshot()
+    {
+        final Map<String, CacheStats> snapshot = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> snapshot.put(name,
+                                                     cache.stats()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    @Override
+    public Map<String, Long> getHitCounts()
+    {
+        return collect(CacheStats::hitCount);
+    }
+
+    @Override
+    public Map<String, Long> getMissCounts()
+    {
+        return collect(CacheStats::missCount);
+    }
+
+    @Override
+    public Map<String, Double> getHitRates()
+    {
+        return collect(CacheStats::hitRate);
+    }
+
+    @Override
+    public Map<String, Long> getEvictionCounts()
+    {
+        return collect(CacheStats::evictionCount);
+    }
+
+    @Override
+    public Map<String, Long> getSizes()
+    {
+        return collect(CacheStats::size);
+    }
+
+    @Override
+    public Map<String, Long> getLoadCounts()
+    {
+        return collect(CacheStats::loadCount);
+    }
+
+    @Override
+    public Map<String, Double> getAverageLoadPenaltyNanos()
+    {
+        return collect(CacheStats::averageLoadPenaltyNanos);
+    }
+
+    @Override
+    public Map<String, Long> getEstimatedBytes()
+    {
+        final Map<String, Long> bytes = new LinkedHashMap<>();
+        snapshot().forEach((name, stats) ->
+                           {
+                               if (stats.estimatedBytes() != CacheStats.UNKNOWN_BYTES)
+                               {
+                                   bytes.put(name,
+                                             stats.estimatedBytes());
+                               }
+                           });
+        return bytes;
+    }
+
+    private <T> Map<String, T> collect(final Function<CacheStats, T> metric)
+    {
+        final Map<String, T> values = new LinkedHashMap<>();
+        snapshot().forEach((name, stats) -> values.put(name,
+                                                       metric.apply(stats)));
+        return values;
+    }
+
+    private void register()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            // a previous instance of the application in the same JVM, e.g. in dev mode, may not have cleaned up
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this,
+                                 name);
+        }
+        catch (JMException e)
+        {
+            LOGGER.warn("Deadbolt: could not register cache statistics with JMX",
+                        e);
+        }
+    }
+
+    private void unregister()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (JMException e)
+        {
+            LOGGER.warn("Deadbolt: could not unregister cache statistics from JMX",
+                        e);
+        }
+    }
+
+    private static Map<String, DeadboltCacheStats> caches(final Injector injector,
+                                                          final SubjectCache subjectCache,
+                                                          final PatternCache patternCache,
+                                                          final CompositeCache compositeCache,
+                                                          final DecisionCache decisionCache,
+                                                          final RolePermissionsCache rolePermissionsCache,
+                                                          final DynamicResourceCache dynamicResourceCache)
+    {
+        final Map<String, DeadboltCacheStats> caches = new LinkedHashMap<>();
+        caches.put("subject",
+                   subjectCache);
+        caches.put("pattern",
+                   patternCache);
+        caches.put("composite",
+                   compositeCache);
+        caches.put("decision",
+                   decisionCache);
+        caches.put("role-permissions",
+                   rolePermissionsCache);
+        caches.put("dynamic-resource",
+                   dynamicResourceCache);
+        try
+        {
+            // the handler cache is provided by the application, so it may not be bound
+            caches.put("handler",
+                       injector.instanceOf(HandlerCache.class));
+        }
+        catch (Exception e)
+        {
+            LOGGER.debug("Deadbolt: no HandlerCache is bound, so it has no statistics");
+        }
+        return caches;
+    }
+}
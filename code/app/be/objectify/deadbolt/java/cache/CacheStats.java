@@ -0,0 +1,201 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+/**
+ * A snapshot of the statistics of a cache.
+ */
+public final class CacheStats
+{
+    /**
+     * Statistics for a cache that has never been used.
+     */
+    public static final CacheStats EMPTY = new CacheStats(0L,
+                                                          0L,
+                                                          0L,
+                                                          0L);
+
+    /**
+     * The value of {@link #estimatedBytes()} for a cache that doesn't measure its memory footprint.
+     */
+    public static final long UNKNOWN_BYTES = -1L;
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+    private final long loadCount;
+    private final long totalLoadTimeNanos;
+    private final long estimatedBytes;
+
+    public CacheStats(final long hitCount,
+                      final long missCount,
+                      final long evictionCount,
+                      final long size)
+    {
+        this(hitCount,
+             missCount,
+             evictionCount,
+             size,
+             0L,
+             0L,
+             UNKNOWN_BYTES);
+    }
+
+    public CacheStats(final long hitCount,
+                      final long missCount,
+                      final long evictionCount,
+                      final long size,
+                      final long loadCount,
+                      final long totalLoadTimeNanos,
+                      final long estimatedBytes)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.loadCount = loadCount;
+        this.totalLoadTimeNanos = totalLoadTimeNanos;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * The number of lookups that found a value.
+     *
+     * @return the number of hits
+     */
+    public long hitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * The number of lookups that didn't find a value.
+     *
+     * @return the number of misses
+     */
+    public long missCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * The number of entries removed to make space or because they expired.
+     *
+     * @return the number of evictions
+     */
+    public long evictionCount()
+    {
+        return evictionCount;
+    }
+
+    /**
+     * The number of entries in the cache when the snapshot was taken.
+     *
+     * @return the number of entries
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * The proportion of lookups that found a value.
+     *
+     * @return the hit rate, or 1.0 if there have been no lookups
+     */
+    public double hitRate()
+    {
+        final long requests = hitCount + missCount;
+        return requests == 0L ? 1.0D
+                              : (double) hitCount / requests;
+    }
+
+    /**
+     * The number of times a value was loaded, e.g. from a {@link be.objectify.deadbolt.java.DeadboltHandler}, because
+     * it wasn't cached or was due for a refresh.
+     *
+     * @return the number of loads
+     */
+    public long loadCount()
+    {
+        return loadCount;
+    }
+
+    /**
+     * The total time spent loading values.
+     *
+     * @return the load time, in nanoseconds
+     */
+    public long totalLoadTimeNanos()
+    {
+        return totalLoadTimeNanos;
+    }
+
+    /**
+     * The average time taken to load a value.
+     *
+     * @return the average load time in nanoseconds, or 0.0 if nothing has been loaded
+     */
+    public double averageLoadPenaltyNanos()
+    {
+        return loadCount == 0L ? 0.0D
+                               : (double) totalLoadTimeNanos / loadCount;
+    }
+
+    /**
+     * An estimate of the memory held by the cache.
+     *
+     * @return the number of bytes, or {@link #UNKNOWN_BYTES} if the cache doesn't measure it
+     */
+    public long estimatedBytes()
+    {
+        return estimatedBytes;
+    }
+
+    /**
+     * Combine these statistics with those of another cache, e.g. for a cache made up of several others.
+     *
+     * @param other the other statistics
+     * @return the combined statistics
+     */
+    public CacheStats plus(final CacheStats other)
+    {
+        return new CacheStats(hitCount + other.hitCount,
+                              missCount + other.missCount,
+                              evictionCount + other.evictionCount,
+                              size + other.size,
+                              loadCount + other.loadCount,
+                              totalLoadTimeNanos + other.totalLoadTimeNanos,
+                              estimatedBytes == UNKNOWN_BYTES ? other.estimatedBytes
+                                                              : other.estimatedBytes == UNKNOWN_BYTES ? estimatedBytes
+                                                                                                      : estimatedBytes + other.estimatedBytes);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CacheStats{" +
+               "hitCount=" + hitCount +
+               ", missCount=" + missCount +
+               ", evictionCount=" + evictionCount +
+               ", size=" + size +
+               ", loadCount=" + loadCount +
+               ", totalLoadTimeNanos=" + totalLoadTimeNanos +
+               ", estimatedBytes=" + estimatedBytes +
+               '}';
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A size-bounded, in-memory cache for values that are read far more often than they are written, such as compiled
+ * patterns.  Reads never take a lock: a hit is a map lookup plus setting a flag on the entry.
+ * <p>
+ * Least recently used entries are approximated with the CLOCK algorithm.  When the cache grows past its maximum size,
+ * one thread moves the clock hand over the entries, evicting those that haven't been read since the hand last passed
+ * them and clearing the flag on those that have.  The hand carries on from where it stopped, so every entry gets the
+ * same second chance.  Other threads don't wait for the sweep, so the cache may briefly hold more than its maximum
+ * size.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class ClockCache<K, V>
+{
+    private final long maxSize;
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * The clock hand.  This is only used by the thread that holds {@link #evicting}.
+     */
+    private Iterator<Map.Entry<K, Entry<V>>> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries
+     */
+    public ClockCache(final long maxSize)
+    {
+        this.maxSize = Math.max(1L,
+                                maxSize);
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param key the key
+     * @return an option for the value
+     */
+    public Optional<V> get(final K key)
+    {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null)
+        {
+            misses.increment();
+        }
+        else
+        {
+            entry.touch();
+            hits.increment();
+        }
+        return entry == null ? Optional.empty()
+                             : Optional.ofNullable(entry.value);
+    }
+
+    /**
+     * Get a value, loading and storing it if there is no entry for the key.  The loader is called without any lock
+     * held, so concurrent misses for the same key may each load the value; only one of the values is kept, and all
+     * callers receive that one.
+     *
+     * @param key    the key
+     * @param loader loads the value for the key
+     * @return the value
+     */
+    public V computeIfAbsent(final K key,
+                             final Function<? super K, ? extends V> loader)
+    {
+        final Entry<V> entry = entries.get(key);
+        final V value;
+        if (entry == null)
+        {
+            misses.increment();
+            final long start = System.nanoTime();
+            final V loaded;
+            try
+            {
+                loaded = loader.apply(key);
+            }
+            finally
+            {
+                loads.increment();
+                loadNanos.add(System.nanoTime() - start);
+            }
+            value = putIfAbsent(key,
+                                loaded);
+        }
+        else
+        {
+            entry.touch();
+            hits.increment();
+            value = entry.value;
+        }
+        return value;
+    }
+
+    /**
+     * Store a value, unless there is already an entry for the key.  This doesn't count as a hit or a miss.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the value held for the key, which is the given value unless there was already an entry
+     */
+    public V putIfAbsent(final K key,
+                         final V value)
+    {
+        final Entry<V> entry = new Entry<>(value);
+        final Entry<V> existing = entries.putIfAbsent(key,
+                                                      entry);
+        if (existing == null && entries.size() > maxSize)
+        {
+            evict();
+        }
+        return existing == null ? value
+                                : existing.value;
+    }
+
+    /**
+     * Remove the entry for a key.
+     *
+     * @param key the key
+     */
+    public void remove(final K key)
+    {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Get the keys of the entries.
+     *
+     * @return a copy of the keys
+     */
+    public Set<K> keys()
+    {
+        return new HashSet<>(entries.keySet());
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries
+     */
+    public long size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Get the statistics of the cache.
+     *
+     * @return the statistics
+     */
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              evictions.sum(),
+                              size(),
+                              loads.sum(),
+                              loadNanos.sum(),
+                              CacheStats.UNKNOWN_BYTES);
+    }
+
+    private void evict()
+    {
+        if (evicting.compareAndSet(false,
+                                   true))
+        {
+            try
+            {
+                // the first revolution may do nothing but clear flags, but the second is then certain to find victims
+                for (long steps = 2L * (entries.size() + 1); steps > 0 && entries.size() > maxSize; steps--)
+                {
+                    if (hand == null || !hand.hasNext())
+                    {
+                        hand = entries.entrySet().iterator();
+                    }
+                    if (hand.hasNext())
+                    {
+                        final Map.Entry<K, Entry<V>> candidate = hand.next();
+                        final Entry<V> entry = candidate.getValue();
+                        if (entry.referenced)
+                        {
+                            entry.referenced = false;
+                        }
+                        else if (entries.remove(candidate.getKey(),
+                                                entry))
+                        {
+                            evictions.increment();
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                evicting.set(false);
+            }
+        }
+    }
+
+    private static final class Entry<V>
+    {
+        private final V value;
+        private volatile boolean referenced = true;
+
+        private Entry(final V value)
+        {
+            this.value = value;
+        }
+
+        private void touch()
+        {
+            // avoid the write, and the cache line traffic that comes with it, if the flag is already set
+            if (!referenced)
+            {
+                referenced = true;
+            }
+        }
+    }
+}
@@ -17,14 +17,69 @@ package be.objectify.deadbolt.java.cache;
 
 import be.objectify.deadbolt.java.composite.Constraint;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
  * @author Steve Chaloner (steve@objectify.be)
  */
-public interface CompositeCache extends Function<String, Optional<Constraint>>
+public interface CompositeCache extends Function<String, Optional<Constraint>>,
+                                        DeadboltCacheStats
 {
+    /**
+     * Register a constraint.  If constraints are checked at startup by the
+     * {@link be.objectify.deadbolt.java.ConstraintScanner}, they must be registered before it runs; see
+     * {@link be.objectify.deadbolt.java.ConfigKeys#SCAN_AFTER}.
+     *
+     * @param name       the name of the constraint
+     * @param constraint the constraint
+     */
     void register(String name,
                   Constraint constraint);
+
+    /**
+     * Replace every registered constraint with the given constraints, e.g. when policies are reloaded.  Implementations
+     * should make the change atomically, so a lookup sees either the old set or the new one and never a mixture.  The
+     * default implementation registers each constraint in turn, and doesn't remove constraints that are not given.
+     *
+     * @param constraints the constraints, keyed by name
+     */
+    default void replaceAll(final Map<String, Constraint> constraints)
+    {
+        constraints.forEach(this::register);
+    }
+
+    /**
+     * Get the registered constraints.
+     *
+     * @return an immutable view of the constraints, keyed by name
+     */
+    default Map<String, Constraint> constraints()
+    {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Get the version of the registered constraints, which changes whenever a constraint is registered or replaced.
+     *
+     * @return the version
+     */
+    default long version()
+    {
+        return 0L;
+    }
+
+    /**
+     * Get the names that have been looked up but aren't registered, which usually means a typo in an annotation or a
+     * route.
+     *
+     * @return the unregistered names, which is empty if the implementation doesn't track them
+     */
+    default Set<String> unregisteredNames()
+    {
+        return Collections.emptySet();
+    }
 }
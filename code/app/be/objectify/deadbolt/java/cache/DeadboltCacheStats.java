@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+/**
+ * Implemented by every Deadbolt cache, so they can all be monitored and sized in the same way, e.g. through
+ * {@link CacheStatistics}.
+ */
+public interface DeadboltCacheStats
+{
+    /**
+     * Get the statistics of the cache.  The default implementation is for caches that don't keep statistics.
+     *
+     * @return the statistics
+     */
+    default CacheStats stats()
+    {
+        return CacheStats.EMPTY;
+    }
+}
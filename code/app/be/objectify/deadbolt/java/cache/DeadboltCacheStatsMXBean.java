@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.Map;
+
+/**
+ * Exposes the statistics of the Deadbolt caches through JMX, keyed by cache name.
+ */
+public interface DeadboltCacheStatsMXBean
+{
+    /**
+     * @return the number of lookups that found a value
+     */
+    Map<String, Long> getHitCounts();
+
+    /**
+     * @return the number of lookups that didn't find a value
+     */
+    Map<String, Long> getMissCounts();
+
+    /**
+     * @return the proportion of lookups that found a value
+     */
+    Map<String, Double> getHitRates();
+
+    /**
+     * @return the number of entries removed to make space or because they expired
+     */
+    Map<String, Long> getEvictionCounts();
+
+    /**
+     * @return the number of entries
+     */
+    Map<String, Long> getSizes();
+
+    /**
+     * @return the number of values loaded
+     */
+    Map<String, Long> getLoadCounts();
+
+    /**
+     * @return the average time taken to load a value, in nanoseconds
+     */
+    Map<String, Double> getAverageLoadPenaltyNanos();
+
+    /**
+     * @return the estimated memory held by each cache that measures it, in bytes
+     */
+    Map<String, Long> getEstimatedBytes();
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.Optional;
+
+/**
+ * Holds the outcome of authorization decisions across requests, so the same subject passing through the same
+ * constraint doesn't need to be re-evaluated every time.  Only the pass/fail outcome is cached; success and failure
+ * handling still happens on every request.
+ */
+public interface DecisionCache extends DeadboltCacheStats
+{
+    /**
+     * Check if decisions should be cached at all.
+     *
+     * @return true iff the cache is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Check if the decisions of dynamic and custom pattern constraints may be cached.  These depend on the
+     * {@link be.objectify.deadbolt.java.DynamicResourceHandler}, which may take the request into account, so they
+     * are only cached if explicitly requested, either here for every constraint or by the handler for individual
+     * constraints.
+     *
+     * @return true iff every dynamic decision can be cached
+     */
+    boolean includesDynamic();
+
+    /**
+     * Get a decision.
+     *
+     * @param key the key of the decision
+     * @return an option for the decision
+     */
+    Optional<Boolean> get(DecisionKey key);
+
+    /**
+     * Store a decision.
+     *
+     * @param key     the key of the decision
+     * @param allowed the decision
+     */
+    void put(DecisionKey key,
+             boolean allowed);
+
+    /**
+     * Remove every decision made for a subject, e.g. because its roles or permissions have changed.
+     *
+     * @param subjectIdentifier the identifier of the subject
+     */
+    void invalidate(String subjectIdentifier);
+
+    /**
+     * Remove every decision.
+     */
+    void invalidateAll();
+
+    /**
+     * Get the statistics of the cache.
+     *
+     * @return the statistics
+     */
+    CacheStats stats();
+}
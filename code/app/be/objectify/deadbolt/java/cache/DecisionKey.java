@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+/**
+ * Identifies an authorization decision: who asked, through which handler, and against which constraint.
+ */
+public final class DecisionKey
+{
+    private final String subjectIdentifier;
+    private final String handlerName;
+    private final String fingerprint;
+    private final int hashCode;
+
+    /**
+     * @param subjectIdentifier the identifier of the subject
+     * @param handlerName       the name of the handler
+     * @param fingerprint       a stable description of the constraint, including every parameter that affects the
+     *                          decision
+     */
+    public DecisionKey(final String subjectIdentifier,
+                       final String handlerName,
+                       final String fingerprint)
+    {
+        this.subjectIdentifier = subjectIdentifier;
+        this.handlerName = handlerName;
+        this.fingerprint = fingerprint;
+
+        int result = subjectIdentifier.hashCode();
+        result = 31 * result + handlerName.hashCode();
+        result = 31 * result + fingerprint.hashCode();
+        this.hashCode = result;
+    }
+
+    public String subjectIdentifier()
+    {
+        return subjectIdentifier;
+    }
+
+    public String handlerName()
+    {
+        return handlerName;
+    }
+
+    public String fingerprint()
+    {
+        return fingerprint;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass())
+        {
+            return false;
+        }
+        final DecisionKey that = (DecisionKey) o;
+        return hashCode == that.hashCode
+               && subjectIdentifier.equals(that.subjectIdentifier)
+               && handlerName.equals(that.handlerName)
+               && fingerprint.equals(that.fingerprint);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DecisionKey{" +
+               "subjectIdentifier='" + subjectIdentifier + '\'' +
+               ", handlerName='" + handlerName + '\'' +
+               ", fingerprint='" + fingerprint + '\'' +
+               '}';
+    }
+}
@@ -19,33 +19,179 @@ import be.objectify.deadbolt.java.composite.Constraint;
 import be.objectify.deadbolt.java.composite.ExceptionThrowingConstraint;
 
 import javax.inject.Singleton;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Holds composite constraints in an immutable snapshot that is replaced, never modified, so lookups are plain reads
+ * and can run at the same time as {@link #register} or {@link #replaceAll} without seeing a partial update.  Each
+ * change creates a new snapshot with a higher version.
+ *
  * @author Steve Chaloner (steve@objectify.be)
  */
 @Singleton
 public class DefaultCompositeCache implements CompositeCache
 {
-    private static final String NAMESPACE = "composite.constraint.";
+    /**
+     * The number of unregistered names whose failing constraints are kept, which is more than enough for the names
+     * used by annotations and routes.
+     */
+    private static final int MAX_MISSING = 1000;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(0L,
+                                                                                          Collections.emptyMap()));
 
-    private final Map<String, Constraint> constraints = new HashMap<>();
+    private final ConcurrentMap<String, Optional<Constraint>> missing = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
 
     @Override
     public Optional<Constraint> apply(final String name)
     {
-        final Constraint constraint = constraints.get(NAMESPACE + name);
-        return Optional.of(constraint != null ? constraint
-                                              : new ExceptionThrowingConstraint(name));
+        final Optional<Constraint> constraint = snapshot.get().constraints.get(name);
+        final Optional<Constraint> result;
+        if (constraint != null)
+        {
+            hits.increment();
+            result = constraint;
+        }
+        else
+        {
+            misses.increment();
+            result = missing(name);
+        }
+        return result;
     }
 
+    /**
+     * Registering a null constraint removes any constraint registered with the name, so lookups of it fail as they
+     * would if it had never been registered.
+     */
     @Override
     public void register(final String name,
                          final Constraint constraint)
     {
-        constraints.put(NAMESPACE + name,
-                        constraint);
+        Snapshot current;
+        Snapshot next;
+        do
+        {
+            current = snapshot.get();
+            final Map<String, Optional<Constraint>> constraints = new HashMap<>(current.constraints);
+            if (constraint == null)
+            {
+                constraints.remove(name);
+            }
+            else
+            {
+                constraints.put(name,
+                                Optional.of(constraint));
+            }
+            next = new Snapshot(current.version + 1,
+                                constraints);
+        }
+        while (!snapshot.compareAndSet(current,
+                                       next));
+    }
+
+    /**
+     * As with {@link #register}, names given a null constraint are not registered.
+     */
+    @Override
+    public void replaceAll(final Map<String, Constraint> constraints)
+    {
+        final Map<String, Optional<Constraint>> replacements = new HashMap<>();
+        constraints.forEach((name, constraint) ->
+                            {
+                                if (constraint != null)
+                                {
+                                    replacements.put(name,
+                                                     Optional.of(constraint));
+                                }
+                            });
+        Snapshot current;
+        do
+        {
+            current = snapshot.get();
+        }
+        while (!snapshot.compareAndSet(current,
+                                       new Snapshot(current.version + 1,
+                                                    replacements)));
+    }
+
+    @Override
+    public Map<String, Constraint> constraints()
+    {
+        final Map<String, Constraint> constraints = new HashMap<>();
+        snapshot.get().constraints.forEach((name, constraint) -> constraints.put(name,
+                                                                                 constraint.get()));
+        return Collections.unmodifiableMap(constraints);
+    }
+
+    @Override
+    public long version()
+    {
+        return snapshot.get().version;
+    }
+
+    /**
+     * Only the first {@value #MAX_MISSING} unregistered names are tracked.
+     */
+    @Override
+    public Set<String> unregisteredNames()
+    {
+        final Set<String> names = new TreeSet<>(missing.keySet());
+        names.removeAll(snapshot.get().constraints.keySet());
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * A miss is a lookup of a name that isn't registered, so a rising miss count points to a typo in an annotation or
+     * a constraint that was never registered.
+     */
+    @Override
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              0L,
+                              snapshot.get().constraints.size());
+    }
+
+    private Optional<Constraint> missing(final String name)
+    {
+        Optional<Constraint> constraint = name == null ? null
+                                                       : missing.get(name);
+        if (constraint == null)
+        {
+            constraint = Optional.of(new ExceptionThrowingConstraint(name));
+            if (name != null && missing.size() < MAX_MISSING)
+            {
+                missing.putIfAbsent(name,
+                                    constraint);
+            }
+        }
+        return constraint;
+    }
+
+    private static final class Snapshot
+    {
+        private final long version;
+        private final Map<String, Optional<Constraint>> constraints;
+
+        private Snapshot(final long version,
+                         final Map<String, Optional<Constraint>> constraints)
+        {
+            this.version = version;
+            this.constraints = constraints;
+        }
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import play.Configuration;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, in-memory decision cache.  Entries expire a fixed time after they are written, and when the cache is full
+ * the least recently used entry is evicted.
+ */
+@Singleton
+public class DefaultDecisionCache implements DecisionCache
+{
+    private final boolean enabled;
+    private final boolean includesDynamic;
+    private final BoundedCache<DecisionKey, Boolean> decisions;
+
+    @Inject
+    public DefaultDecisionCache(final Configuration configuration)
+    {
+        this(configuration.getBoolean(ConfigKeys.DECISION_CACHE_DEFAULT._1,
+                                      ConfigKeys.DECISION_CACHE_DEFAULT._2),
+             configuration.getBoolean(ConfigKeys.DECISION_CACHE_DYNAMIC_DEFAULT._1,
+                                      ConfigKeys.DECISION_CACHE_DYNAMIC_DEFAULT._2),
+             configuration.getLong(ConfigKeys.DECISION_CACHE_MAX_SIZE_DEFAULT._1,
+                                   ConfigKeys.DECISION_CACHE_MAX_SIZE_DEFAULT._2),
+             configuration.getLong(ConfigKeys.DECISION_CACHE_TTL_DEFAULT._1,
+                                   ConfigKeys.DECISION_CACHE_TTL_DEFAULT._2),
+             System::nanoTime);
+    }
+
+    /**
+     * @param enabled         true if decisions should be cached
+     * @param includesDynamic true if dynamic and custom decisions may be cached
+     * @param maxSize         the maximum number of decisions to hold
+     * @param ttlMillis       the number of milliseconds a decision is held for
+     * @param clock           the source of the current time, in nanoseconds
+     */
+    public DefaultDecisionCache(final boolean enabled,
+                                final boolean includesDynamic,
+                                final long maxSize,
+                                final long ttlMillis,
+                                final LongSupplier clock)
+    {
+        this.enabled = enabled;
+        this.includesDynamic = includesDynamic;
+        this.decisions = new BoundedCache<>(maxSize,
+                                            ttlMillis,
+                                            0L,
+                                            clock);
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public boolean includesDynamic()
+    {
+        return includesDynamic;
+    }
+
+    @Override
+    public Optional<Boolean> get(final DecisionKey key)
+    {
+        return enabled ? decisions.get(key)
+                       : Optional.empty();
+    }
+
+    @Override
+    public void put(final DecisionKey key,
+                    final boolean allowed)
+    {
+        if (enabled)
+        {
+            decisions.put(key,
+                          allowed);
+        }
+    }
+
+    @Override
+    public void invalidate(final String subjectIdentifier)
+    {
+        decisions.removeIf((key, allowed) -> key.subjectIdentifier().equals(subjectIdentifier));
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        decisions.clear();
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return decisions.stats();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DynamicResourceHandler;
+import play.Configuration;
+import play.mvc.Http;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Stores the memoized stages in the args of the request context, next to the subject cached by
+ * {@link DefaultSubjectCache}.  Stages are stored as soon as they are created, so constraints evaluated while a check
+ * is still in flight share its result; a stage that fails is removed, so a later constraint can try again.
+ */
+@Singleton
+public class DefaultDynamicResourceCache implements DynamicResourceCache
+{
+    private static final String HANDLER_PREFIX = "handler|";
+    private static final String RESULT_PREFIX = "result|";
+
+    private final boolean enabled;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Inject
+    public DefaultDynamicResourceCache(final Configuration configuration)
+    {
+        this(configuration.getBoolean(ConfigKeys.CACHE_DYNAMIC_DEFAULT._1,
+                                      ConfigKeys.CACHE_DYNAMIC_DEFAULT._2));
+    }
+
+    public DefaultDynamicResourceCache(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public CompletionStage<Optional<DynamicResourceHandler>> handler(final DeadboltHandler deadboltHandler,
+                                                                     final Http.Context context)
+    {
+        return memoize(context,
+                       HANDLER_PREFIX + deadboltHandler.handlerName(),
+                       () -> deadboltHandler.getDynamicResourceHandler(context));
+    }
+
+    @Override
+    public CompletionStage<Boolean> result(final DeadboltHandler deadboltHandler,
+                                           final Http.Context context,
+                                           final Supplier<String> key,
+                                           final Supplier<CompletionStage<Boolean>> check)
+    {
+        return enabled ? memoize(context,
+                                 RESULT_PREFIX + deadboltHandler.handlerName() + '|' + key.get(),
+                                 check)
+                       : check.get();
+    }
+
+    /**
+     * Memoized stages only live as long as their request, so the cache never has a size.
+     */
+    @Override
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              0L,
+                              0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletionStage<T> memoize(final Http.Context context,
+                                           final String key,
+                                           final Supplier<CompletionStage<T>> supplier)
+    {
+        final CompletionStage<T> result;
+        final ConcurrentMap<String, CompletionStage<?>> memo = enabled ? memo(context)
+                                                                       : null;
+        if (memo == null)
+        {
+            result = supplier.get();
+        }
+        else
+        {
+            final CompletionStage<T> memoized = (CompletionStage<T>) memo.get(key);
+            if (memoized != null)
+            {
+                hits.increment();
+                result = memoized;
+            }
+            else
+            {
+                misses.increment();
+                // the supplier isn't called inside the map, as it may itself use the memo
+                final CompletionStage<T> stage = supplier.get();
+                final CompletionStage<T> existing = (CompletionStage<T>) memo.putIfAbsent(key,
+                                                                                          stage);
+                if (existing == null)
+                {
+                    stage.whenComplete((value, t) ->
+                                       {
+                                           if (t != null)
+                                           {
+                                               memo.remove(key,
+                                                           stage);
+                                           }
+                                       });
+                    result = stage;
+                }
+                else
+                {
+                    result = existing;
+                }
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<String, CompletionStage<?>> memo(final Http.Context context)
+    {
+        ConcurrentMap<String, CompletionStage<?>> memo = null;
+        if (context != null && context.args != null)
+        {
+            synchronized (context.args)
+            {
+                memo = (ConcurrentMap<String, CompletionStage<?>>) context.args.get(ConfigKeys.CACHE_DYNAMIC_DEFAULT._1);
+                if (memo == null)
+                {
+                    memo = new ConcurrentHashMap<>();
+                    context.args.put(ConfigKeys.CACHE_DYNAMIC_DEFAULT._1,
+                                     memo);
+                }
+            }
+        }
+        return memo;
+    }
+}
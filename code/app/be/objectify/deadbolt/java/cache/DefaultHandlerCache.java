@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.utils.PerfectHashMap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link HandlerCache} for a fixed set of handlers, keyed by {@link DeadboltHandler#handlerName()} or by explicit
+ * keys.  The keys are resolved when the cache is created, and looked up in a {@link PerfectHashMap}.
+ * {@link ConfigKeys#DEFAULT_HANDLER_KEY} always resolves to the default handler.
+ * <p>
+ * Applications usually only need to extend this with a constructor that is given the handlers by the injector, e.g.
+ * <pre>
+ * public class MyHandlerCache extends DefaultHandlerCache
+ * {
+ *     &#64;Inject
+ *     public MyHandlerCache(&#64;MainHandler final DeadboltHandler handler,
+ *                           &#64;SomeOtherHandler final DeadboltHandler otherHandler)
+ *     {
+ *         super(handler,
+ *               Arrays.asList(handler,
+ *                             otherHandler));
+ *     }
+ * }
+ * </pre>
+ */
+public class DefaultHandlerCache implements HandlerCache
+{
+    private final DeadboltHandler defaultHandler;
+    private final PerfectHashMap<DeadboltHandler> handlers;
+
+    /**
+     * @param defaultHandler the handler to use when no key is given
+     * @param handlers       the handlers, keyed by their names
+     */
+    public DefaultHandlerCache(final DeadboltHandler defaultHandler,
+                               final Collection<? extends DeadboltHandler> handlers)
+    {
+        this(defaultHandler,
+             byName(handlers));
+    }
+
+    /**
+     * @param defaultHandler the handler to use when no key is given
+     * @param handlers       the handlers, keyed by the keys used in annotations
+     */
+    public DefaultHandlerCache(final DeadboltHandler defaultHandler,
+                               final Map<String, ? extends DeadboltHandler> handlers)
+    {
+        this.defaultHandler = defaultHandler;
+        final Map<String, DeadboltHandler> keyed = new HashMap<>(handlers);
+        keyed.put(ConfigKeys.DEFAULT_HANDLER_KEY,
+                  defaultHandler);
+        this.handlers = PerfectHashMap.of(keyed);
+    }
+
+    /**
+     * Get the handler mapped to the given key.
+     *
+     * @param handlerKey the key of the handler
+     * @return the handler
+     * @throws RuntimeException if no handler is mapped to the key
+     */
+    @Override
+    public DeadboltHandler apply(final String handlerKey)
+    {
+        final DeadboltHandler handler = handlers.get(handlerKey);
+        if (handler == null)
+        {
+            throw new RuntimeException(String.format("A handler with key [%s] is specified but is not registered",
+                                                     handlerKey));
+        }
+        return handler;
+    }
+
+    /**
+     * Get the default handler.
+     *
+     * @return the default handler
+     */
+    @Override
+    public DeadboltHandler get()
+    {
+        return defaultHandler;
+    }
+
+    /**
+     * Lookups are not counted, as they are meant to cost nothing; only the number of keys is given.
+     */
+    @Override
+    public CacheStats stats()
+    {
+        return new CacheStats(0L,
+                              0L,
+                              0L,
+                              handlers.size());
+    }
+
+    private static Map<String, DeadboltHandler> byName(final Collection<? extends DeadboltHandler> handlers)
+    {
+        final Map<String, DeadboltHandler> byName = new HashMap<>();
+        for (DeadboltHandler handler : handlers)
+        {
+            byName.put(handler.handlerName(),
+                       handler);
+        }
+        return byName;
+    }
+}
@@ -15,30 +15,111 @@
  */
 package be.objectify.deadbolt.java.cache;
 
+import be.objectify.deadbolt.java.CompiledPattern;
+import be.objectify.deadbolt.java.ConfigKeys;
+import be.objectify.deadbolt.java.PatternSet;
+import play.Configuration;
 import play.cache.CacheApi;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
+ * Holds compiled patterns, and sets of them, in dedicated in-process caches bounded by
+ * {@link ConfigKeys#PATTERN_CACHE_MAX_SIZE}.  Patterns are looked up by their value, so a hit doesn't allocate.  Any
+ * patterns listed in {@link ConfigKeys#PATTERN_CACHE_WARM} are compiled when the cache is created.
+ *
  * @author Steve Chaloner (steve@objectify.be)
  */
 @Singleton
 public class DefaultPatternCache implements PatternCache
 {
-    private final CacheApi cache;
+    private final ClockCache<String, CompiledPattern> patterns;
+    private final ClockCache<List<String>, PatternSet> patternSets;
 
     @Inject
+    public DefaultPatternCache(final Configuration configuration)
+    {
+        this(configuration.getLong(ConfigKeys.PATTERN_CACHE_MAX_SIZE_DEFAULT._1,
+                                   ConfigKeys.PATTERN_CACHE_MAX_SIZE_DEFAULT._2));
+        // warm() can be overridden, so it mustn't be called while constructing
+        configuration.getStringList(ConfigKeys.PATTERN_CACHE_WARM,
+                                    Collections.emptyList())
+                     .forEach(this::compile);
+    }
+
+    /**
+     * @param cache no longer used; patterns are held in a dedicated cache of the default size
+     * @deprecated use {@link #DefaultPatternCache(long)}
+     */
+    @Deprecated
     public DefaultPatternCache(final CacheApi cache)
     {
-        this.cache = cache;
+        this(ConfigKeys.PATTERN_CACHE_MAX_SIZE_DEFAULT._2);
+    }
+
+    /**
+     * @param maxSize the maximum number of patterns, and separately of pattern sets, to hold
+     */
+    public DefaultPatternCache(final long maxSize)
+    {
+        this.patterns = new ClockCache<>(maxSize);
+        this.patternSets = new ClockCache<>(maxSize);
     }
 
     @Override
     public Pattern apply(final String patternValue)
     {
-        return cache.getOrElse("Deadbolt." + patternValue,
-                               () -> Pattern.compile(patternValue));
+        final CompiledPattern compiled = compiled(patternValue);
+        return compiled == null ? null
+                                : compiled.pattern();
+    }
+
+    @Override
+    public CompiledPattern compiled(final String patternValue)
+    {
+        return compile(patternValue);
+    }
+
+    private CompiledPattern compile(final String patternValue)
+    {
+        return patterns.computeIfAbsent(patternValue,
+                                        value -> CompiledPattern.of(Pattern.compile(value)));
+    }
+
+    @Override
+    public PatternSet compiledSet(final List<String> patternValues)
+    {
+        // the key is copied on a miss, so a caller changing its list later can't corrupt the cache
+        return patternSets.get(patternValues)
+                          .orElseGet(() -> patternSets.putIfAbsent(Collections.unmodifiableList(new ArrayList<>(patternValues)),
+                                                                   PatternSet.of(patternValues.stream()
+                                                                                              .map(this::compiled)
+                                                                                              .collect(Collectors.toList()))));
+    }
+
+    @Override
+    public Collection<String> patternValues()
+    {
+        return patterns.keys();
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        patterns.clear();
+        patternSets.clear();
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return patterns.stats().plus(patternSets.stats());
     }
 }
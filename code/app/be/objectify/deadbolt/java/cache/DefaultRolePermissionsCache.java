@@ -0,0 +1,331 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.Permission;
+import play.Configuration;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Caches role permissions for a fixed time after they are loaded.
+ * <ul>
+ * <li>Concurrent requests for a role that isn't cached share a single call to the handler.</li>
+ * <li>Once an entry is older than the refresh time, the cached permissions are still returned but a reload is started
+ * in the background, so busy roles are never seen to expire.  If the reload fails, the old permissions are kept until
+ * they expire.</li>
+ * <li>A load that fails isn't cached, so the next request tries again.</li>
+ * </ul>
+ */
+@Singleton
+public class DefaultRolePermissionsCache implements RolePermissionsCache
+{
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long refreshNanos;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<List<String>, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    @Inject
+    public DefaultRolePermissionsCache(final Configuration configuration)
+    {
+        this(configuration.getBoolean(ConfigKeys.ROLE_PERMISSIONS_CACHE_DEFAULT._1,
+                                      ConfigKeys.ROLE_PERMISSIONS_CACHE_DEFAULT._2),
+             configuration.getLong(ConfigKeys.ROLE_PERMISSIONS_CACHE_TTL_DEFAULT._1,
+                                   ConfigKeys.ROLE_PERMISSIONS_CACHE_TTL_DEFAULT._2),
+             configuration.getLong(ConfigKeys.ROLE_PERMISSIONS_CACHE_REFRESH_DEFAULT._1,
+                                   ConfigKeys.ROLE_PERMISSIONS_CACHE_REFRESH_DEFAULT._2),
+             System::nanoTime);
+    }
+
+    /**
+     * @param enabled       true if permissions should be cached
+     * @param ttlMillis     the number of milliseconds permissions are cached for
+     * @param refreshMillis the age in milliseconds after which permissions are reloaded in the background.  If this
+     *                      isn't less than the TTL, permissions are only reloaded when they expire.
+     * @param clock         the source of the current time, in nanoseconds
+     */
+    public DefaultRolePermissionsCache(final boolean enabled,
+                                       final long ttlMillis,
+                                       final long refreshMillis,
+                                       final LongSupplier clock)
+    {
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        this.clock = clock;
+    }
+
+    @Override
+    public CompletionStage<List<? extends Permission>> get(final DeadboltHandler deadboltHandler,
+                                                           final String roleName)
+    {
+        final CompletionStage<List<? extends Permission>> result;
+        if (enabled)
+        {
+            final List<String> key = Arrays.asList(deadboltHandler.handlerName(),
+                                                   roleName);
+            final long now = clock.getAsLong();
+            final Entry entry = entries.get(key);
+            if (entry == null || entry.isExpired(now))
+            {
+                misses.increment();
+                if (entry != null && entries.remove(key,
+                                                    entry))
+                {
+                    evictions.increment();
+                }
+                result = load(key,
+                              deadboltHandler,
+                              roleName);
+            }
+            else
+            {
+                hits.increment();
+                if (entry.isStale(now))
+                {
+                    refresh(key,
+                            entry,
+                            deadboltHandler,
+                            roleName);
+                }
+                result = entry.value;
+            }
+        }
+        else
+        {
+            result = deadboltHandler.getPermissionsForRole(roleName);
+        }
+        // callers get their own stage, so the shared one can't be completed by them
+        return result.thenApply(permissions -> permissions);
+    }
+
+    @Override
+    public void invalidate(final String roleName)
+    {
+        entries.keySet().removeIf(key -> key.get(1).equals(roleName));
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        entries.clear();
+    }
+
+    @Override
+    public Map<String, Map<String, List<String>>> loaded()
+    {
+        final long now = clock.getAsLong();
+        final Map<String, Map<String, List<String>>> loaded = new HashMap<>();
+        entries.forEach((key, entry) ->
+                        {
+                            final List<? extends Permission> permissions = entry.loadedAt == Long.MAX_VALUE || entry.isExpired(now)
+                                                                           ? null
+                                                                           : entry.value.getNow(null);
+                            if (permissions != null)
+                            {
+                                loaded.computeIfAbsent(key.get(0),
+                                                       handlerName -> new HashMap<>())
+                                      .put(key.get(1),
+                                           permissions.stream()
+                                                      .map(Permission::getValue)
+                                                      .collect(Collectors.toList()));
+                            }
+                        });
+        return loaded;
+    }
+
+    /**
+     * Preloaded permissions keep their age, so they expire no later than they would have done in the cache they came
+     * from.  They may have been loaded some time before they were obtained, so they are also treated as due for a
+     * refresh, and the first request for them starts a reload in the background.
+     */
+    @Override
+    public void preload(final String handlerName,
+                        final String roleName,
+                        final List<? extends Permission> permissions,
+                        final long ageMillis)
+    {
+        final long ageNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(ageMillis,
+                                                                     0L));
+        if (enabled && ageNanos < ttlNanos)
+        {
+            final long now = clock.getAsLong();
+            entries.putIfAbsent(Arrays.asList(handlerName,
+                                              roleName),
+                                new Entry(CompletableFuture.completedFuture(permissions),
+                                          now - (refreshNanos < ttlNanos ? Math.max(ageNanos,
+                                                                                    refreshNanos)
+                                                                         : ageNanos)));
+        }
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              evictions.sum(),
+                              entries.size(),
+                              loads.sum(),
+                              loadNanos.sum(),
+                              CacheStats.UNKNOWN_BYTES);
+    }
+
+    /**
+     * Loads the permissions, unless another request is already loading them in which case its result is shared.
+     */
+    private CompletionStage<List<? extends Permission>> load(final List<String> key,
+                                                             final DeadboltHandler deadboltHandler,
+                                                             final String roleName)
+    {
+        final CompletableFuture<List<? extends Permission>> future = new CompletableFuture<>();
+        final Entry entry = new Entry(future,
+                                      Long.MAX_VALUE);
+        final Entry existing = entries.putIfAbsent(key,
+                                                   entry);
+        final CompletionStage<List<? extends Permission>> result;
+        if (existing != null)
+        {
+            result = existing.value;
+        }
+        else
+        {
+            call(deadboltHandler,
+                 roleName).whenComplete((permissions, t) ->
+                                        {
+                                            if (t == null)
+                                            {
+                                                entries.replace(key,
+                                                                entry,
+                                                                new Entry(future,
+                                                                          clock.getAsLong()));
+                                                future.complete(permissions);
+                                            }
+                                            else
+                                            {
+                                                entries.remove(key,
+                                                               entry);
+                                                future.completeExceptionally(t);
+                                            }
+                                        });
+            result = future;
+        }
+        return result;
+    }
+
+    private void refresh(final List<String> key,
+                         final Entry entry,
+                         final DeadboltHandler deadboltHandler,
+                         final String roleName)
+    {
+        if (entry.refreshing.compareAndSet(false,
+                                           true))
+        {
+            call(deadboltHandler,
+                 roleName).whenComplete((permissions, t) ->
+                                        {
+                                            if (t == null)
+                                            {
+                                                entries.replace(key,
+                                                                entry,
+                                                                new Entry(CompletableFuture.completedFuture(permissions),
+                                                                          clock.getAsLong()));
+                                            }
+                                            else
+                                            {
+                                                entry.refreshing.set(false);
+                                            }
+                                        });
+        }
+    }
+
+    private CompletionStage<List<? extends Permission>> call(final DeadboltHandler deadboltHandler,
+                                                             final String roleName)
+    {
+        final long start = System.nanoTime();
+        CompletionStage<List<? extends Permission>> stage;
+        try
+        {
+            stage = deadboltHandler.getPermissionsForRole(roleName);
+        }
+        catch (RuntimeException e)
+        {
+            final CompletableFuture<List<? extends Permission>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            stage = failed;
+        }
+        // the stage is returned as it is, so a failure reaches the caller unwrapped
+        stage.whenComplete((permissions, t) ->
+                           {
+                               loads.increment();
+                               loadNanos.add(System.nanoTime() - start);
+                           });
+        return stage;
+    }
+
+    private final class Entry
+    {
+        private final CompletableFuture<List<? extends Permission>> value;
+
+        /**
+         * When the permissions were loaded, or {@link Long#MAX_VALUE} while they're still loading.
+         */
+        private final long loadedAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(final CompletableFuture<List<? extends Permission>> value,
+                      final long loadedAt)
+        {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired(final long now)
+        {
+            return loadedAt != Long.MAX_VALUE && now - loadedAt >= ttlNanos;
+        }
+
+        private boolean isStale(final long now)
+        {
+            return loadedAt != Long.MAX_VALUE && refreshNanos < ttlNanos && now - loadedAt >= refreshNanos;
+        }
+    }
+}
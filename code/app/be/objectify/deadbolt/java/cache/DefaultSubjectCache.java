@@ -28,25 +28,153 @@ import scala.concurrent.ExecutionContextExecutor;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
+ * Caches subjects at two levels.  If {@link ConfigKeys#CACHE_DEADBOLT_USER} is true, the subject is cached in the
+ * request for the lifetime of the request.  If {@link ConfigKeys#SUBJECT_CACHE} is true, the subject is also cached
+ * across requests, keyed by the handler name and {@link DeadboltHandler#getSessionKey}; entries expire after
+ * {@link ConfigKeys#SUBJECT_CACHE_TTL} milliseconds, or {@link ConfigKeys#SUBJECT_CACHE_IDLE} milliseconds without
+ * being used, whichever is sooner.  Requests without a session key always go to the handler.  Subjects are held on
+ * the heap, or in a {@link OffHeapSubjectStore} if {@link ConfigKeys#SUBJECT_CACHE_OFF_HEAP} is true.
+ * <p>
+ * Absent subjects, e.g. for anonymous users, can be cached too.  If {@link ConfigKeys#CACHE_ABSENT_USER} is true as
+ * well as {@link ConfigKeys#CACHE_DEADBOLT_USER}, a request that has no subject remembers that for the rest of the
+ * request.  If {@link ConfigKeys#SUBJECT_CACHE_ABSENT_TTL}
+ * is greater than zero, the absence is also remembered for that many milliseconds across requests of the same session;
+ * keep this short, or make sure the session key changes (or {@link #invalidate} is called) when a user logs in.
+ * <p>
+ * If {@link ConfigKeys#SUBJECT_CACHE_SINGLE_FLIGHT} is true, concurrent loads for the same session share a single call
+ * to {@link DeadboltHandler#getSubject}, made with the context of the first request.  The shared load is forgotten as
+ * soon as it completes, so a failure is seen by every request waiting on it but not by later requests.
+ * <p>
+ * A load that is in flight when any subject is invalidated may have read the data the invalidation was for, so its
+ * result is given to the requests waiting for it but not cached across requests, and later requests start a new load.
+ *
  * @author Steve Chaloner (steve@objectify.be)
  */
 @Singleton
 public class DefaultSubjectCache implements SubjectCache
 {
     private final boolean cacheUserPerRequestEnabled;
+    private final boolean cacheAbsentPerRequestEnabled;
+    private final boolean cacheAcrossRequestsEnabled;
+    private final boolean cacheAbsentAcrossRequestsEnabled;
+    private final boolean singleFlightEnabled;
+    private final SubjectStore subjects;
+    private final BoundedCache<List<String>, Boolean> absentSubjects;
+    private final ConcurrentMap<List<String>, CompletableFuture<Optional<? extends Subject>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented by every invalidation, so a load can tell if one happened while it was in flight.
+     */
+    private final AtomicLong generation = new AtomicLong();
     private final DeadboltExecutionContextProvider executionContextProvider;
 
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
     @Inject
     public DefaultSubjectCache(final Configuration configuration,
                                final ExecutionContextProvider ecProvider)
     {
-        this.cacheUserPerRequestEnabled = configuration.getBoolean(ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._1,
-                                                                   ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._2);
+        this(configuration.getBoolean(ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._1,
+                                      ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._2),
+             configuration.getBoolean(ConfigKeys.CACHE_ABSENT_USER_DEFAULT._1,
+                                      ConfigKeys.CACHE_ABSENT_USER_DEFAULT._2),
+             configuration.getBoolean(ConfigKeys.SUBJECT_CACHE_DEFAULT._1,
+                                      ConfigKeys.SUBJECT_CACHE_DEFAULT._2),
+             configuration.getBoolean(ConfigKeys.SUBJECT_CACHE_SINGLE_FLIGHT_DEFAULT._1,
+                                      ConfigKeys.SUBJECT_CACHE_SINGLE_FLIGHT_DEFAULT._2),
+             store(configuration),
+             configuration.getLong(ConfigKeys.SUBJECT_CACHE_MAX_SIZE_DEFAULT._1,
+                                   ConfigKeys.SUBJECT_CACHE_MAX_SIZE_DEFAULT._2),
+             configuration.getLong(ConfigKeys.SUBJECT_CACHE_ABSENT_TTL_DEFAULT._1,
+                                   ConfigKeys.SUBJECT_CACHE_ABSENT_TTL_DEFAULT._2),
+             System::nanoTime,
+             ecProvider);
+    }
+
+    /**
+     * @param cacheUserPerRequestEnabled   true if the subject should be cached for the lifetime of the request
+     * @param cacheAbsentPerRequestEnabled true if an absent subject should be cached for the lifetime of the request
+     * @param cacheAcrossRequestsEnabled   true if the subject should be cached across requests of the same session
+     * @param singleFlightEnabled          true if concurrent loads for the same session should be coalesced
+     * @param maxSize                      the maximum number of subjects to hold across requests
+     * @param ttlMillis                    the number of milliseconds a subject is held for
+     * @param idleMillis                   the number of milliseconds an unused subject is held for
+     * @param absentTtlMillis              the number of milliseconds an absent subject is held for across requests, or
+     *                                     0 if absent subjects should not be cached across requests
+     * @param clock                        the source of the current time, in nanoseconds
+     * @param ecProvider                   the execution context provider
+     */
+    public DefaultSubjectCache(final boolean cacheUserPerRequestEnabled,
+                               final boolean cacheAbsentPerRequestEnabled,
+                               final boolean cacheAcrossRequestsEnabled,
+                               final boolean singleFlightEnabled,
+                               final long maxSize,
+                               final long ttlMillis,
+                               final long idleMillis,
+                               final long absentTtlMillis,
+                               final LongSupplier clock,
+                               final ExecutionContextProvider ecProvider)
+    {
+        this(cacheUserPerRequestEnabled,
+             cacheAbsentPerRequestEnabled,
+             cacheAcrossRequestsEnabled,
+             singleFlightEnabled,
+             new HeapSubjectStore(maxSize,
+                                  ttlMillis,
+                                  idleMillis,
+                                  clock),
+             maxSize,
+             absentTtlMillis,
+             clock,
+             ecProvider);
+    }
+
+    /**
+     * @param cacheUserPerRequestEnabled   true if the subject should be cached for the lifetime of the request
+     * @param cacheAbsentPerRequestEnabled true if an absent subject should be cached for the lifetime of the request
+     * @param cacheAcrossRequestsEnabled   true if the subject should be cached across requests of the same session
+     * @param singleFlightEnabled          true if concurrent loads for the same session should be coalesced
+     * @param subjects                     holds subjects across requests
+     * @param maxAbsent                    the maximum number of absent subjects to hold across requests
+     * @param absentTtlMillis              the number of milliseconds an absent subject is held for across requests, or
+     *                                     0 if absent subjects should not be cached across requests
+     * @param clock                        the source of the current time, in nanoseconds
+     * @param ecProvider                   the execution context provider
+     */
+    public DefaultSubjectCache(final boolean cacheUserPerRequestEnabled,
+                               final boolean cacheAbsentPerRequestEnabled,
+                               final boolean cacheAcrossRequestsEnabled,
+                               final boolean singleFlightEnabled,
+                               final SubjectStore subjects,
+                               final long maxAbsent,
+                               final long absentTtlMillis,
+                               final LongSupplier clock,
+                               final ExecutionContextProvider ecProvider)
+    {
+        this.cacheUserPerRequestEnabled = cacheUserPerRequestEnabled;
+        this.cacheAbsentPerRequestEnabled = cacheAbsentPerRequestEnabled;
+        this.cacheAcrossRequestsEnabled = cacheAcrossRequestsEnabled;
+        this.cacheAbsentAcrossRequestsEnabled = cacheAcrossRequestsEnabled && absentTtlMillis > 0L;
+        this.singleFlightEnabled = singleFlightEnabled;
+        this.subjects = subjects;
+        this.absentSubjects = new BoundedCache<>(maxAbsent,
+                                                 absentTtlMillis,
+                                                 0L,
+                                                 clock);
         this.executionContextProvider = ecProvider.get();
     }
 
@@ -55,24 +183,42 @@ public class DefaultSubjectCache implements SubjectCache
                                                               final Http.Context context)
     {
         final CompletionStage<Optional<? extends Subject>> promise;
-        if (cacheUserPerRequestEnabled)
+        if (cacheUserPerRequestEnabled || cacheAcrossRequestsEnabled || singleFlightEnabled)
         {
-            final Optional<? extends Subject> cachedUser = Optional.ofNullable((Subject) context.args.get(ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._1));
-            if (cachedUser.isPresent())
+            // the outer option is empty if nothing is known about the subject, the inner one is the subject itself
+            final Optional<Optional<? extends Subject>> requestUser = fromRequest(context);
+            final Optional<List<String>> key = (cacheAcrossRequestsEnabled || singleFlightEnabled) && !requestUser.isPresent()
+                                               ? deadboltHandler.getSessionKey(context)
+                                                                .map(sessionKey -> Arrays.asList(deadboltHandler.handlerName(),
+                                                                                                 sessionKey))
+                                               : Optional.empty();
+            final Optional<Optional<? extends Subject>> sessionUser = key.flatMap(this::fromSession);
+            if (requestUser.isPresent())
+            {
+                promise = CompletableFuture.completedFuture(requestUser.get());
+            }
+            else if (sessionUser.isPresent())
             {
-                promise = CompletableFuture.completedFuture(cachedUser);
+                storeInRequest(context,
+                               sessionUser.get());
+                promise = CompletableFuture.completedFuture(sessionUser.get());
             }
             else
             {
                 final ExecutionContext executionContext = executionContextProvider.get();
                 final ExecutionContextExecutor executor = HttpExecution.fromThread(executionContext);
-                promise = deadboltHandler.getSubject(context)
-                                         .thenApplyAsync(subjectOption ->
-                                                         {
-                                                             subjectOption.ifPresent(subject -> context.args.put(ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._1,
-                                                                                                                 subject));
-                                                             return subjectOption;
-                                                         }, executor);
+                final CompletionStage<Optional<? extends Subject>> load = singleFlightEnabled && key.isPresent() ? loadOnce(key.get(),
+                                                                                                                          deadboltHandler,
+                                                                                                                          context)
+                                                                                                                 : load(key,
+                                                                                                                        deadboltHandler,
+                                                                                                                        context);
+                promise = load.thenApplyAsync(subjectOption ->
+                                              {
+                                                  storeInRequest(context,
+                                                                 subjectOption);
+                                                  return subjectOption;
+                                              }, executor);
             }
         }
         else
@@ -82,4 +228,220 @@ public class DefaultSubjectCache implements SubjectCache
 
         return promise;
     }
+
+    @Override
+    public void invalidate(final String sessionKey)
+    {
+        generation.incrementAndGet();
+        inFlight.keySet().removeIf(key -> key.get(1).equals(sessionKey));
+        subjects.invalidate(sessionKey);
+        absentSubjects.removeIf((key, absent) -> key.get(1).equals(sessionKey));
+    }
+
+    @Override
+    public void invalidateSubject(final String subjectIdentifier)
+    {
+        // the session of an in-flight load isn't known to belong to the subject until the load completes
+        generation.incrementAndGet();
+        inFlight.clear();
+        subjects.invalidateSubject(subjectIdentifier);
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        generation.incrementAndGet();
+        inFlight.clear();
+        subjects.invalidateAll();
+        absentSubjects.clear();
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return subjects.stats()
+                       .plus(new CacheStats(0L,
+                                            0L,
+                                            0L,
+                                            0L,
+                                            loads.sum(),
+                                            loadNanos.sum(),
+                                            CacheStats.UNKNOWN_BYTES));
+    }
+
+    /**
+     * Load the subject, unless a load for the same session is already in flight.  The shared load is removed before it
+     * completes, so requests arriving after that start a new load - or find the subject in the cross-request cache.
+     */
+    private CompletionStage<Optional<? extends Subject>> loadOnce(final List<String> key,
+                                                                  final DeadboltHandler deadboltHandler,
+                                                                  final Http.Context context)
+    {
+        final CompletableFuture<Optional<? extends Subject>> flight = new CompletableFuture<>();
+        final CompletableFuture<Optional<? extends Subject>> existing = inFlight.putIfAbsent(key,
+                                                                                            flight);
+        if (existing == null)
+        {
+            try
+            {
+                load(Optional.of(key),
+                     deadboltHandler,
+                     context).whenComplete((subjectOption, throwable) ->
+                                           {
+                                               inFlight.remove(key,
+                                                               flight);
+                                               if (throwable == null)
+                                               {
+                                                   flight.complete(subjectOption);
+                                               }
+                                               else
+                                               {
+                                                   flight.completeExceptionally(throwable);
+                                               }
+                                           });
+            }
+            catch (RuntimeException e)
+            {
+                inFlight.remove(key,
+                                flight);
+                flight.completeExceptionally(e);
+            }
+        }
+
+        // every caller gets its own stage, so one caller can't complete or cancel the shared load for the others
+        return (existing == null ? flight : existing).thenApply(Function.identity());
+    }
+
+    private CompletionStage<Optional<? extends Subject>> load(final Optional<List<String>> key,
+                                                              final DeadboltHandler deadboltHandler,
+                                                              final Http.Context context)
+    {
+        final long start = System.nanoTime();
+        final long loadGeneration = generation.get();
+        return deadboltHandler.getSubject(context)
+                              .whenComplete((subjectOption, t) ->
+                                            {
+                                                loads.increment();
+                                                loadNanos.add(System.nanoTime() - start);
+                                            })
+                              .thenApply(subjectOption ->
+                                         {
+                                             if (key.isPresent() && generation.get() == loadGeneration)
+                                             {
+                                                 store(key.get(),
+                                                       subjectOption);
+                                                 if (generation.get() != loadGeneration)
+                                                 {
+                                                     // an invalidation raced with the store, so it may have missed it
+                                                     forget(key.get());
+                                                 }
+                                             }
+                                             return subjectOption;
+                                         });
+    }
+
+    private void store(final List<String> key,
+                       final Optional<? extends Subject> subjectOption)
+    {
+        if (subjectOption.isPresent() && cacheAcrossRequestsEnabled)
+        {
+            subjects.put(key.get(0),
+                         key.get(1),
+                         subjectOption.get());
+        }
+        else if (!subjectOption.isPresent() && cacheAbsentAcrossRequestsEnabled)
+        {
+            absentSubjects.put(key,
+                               Boolean.TRUE);
+        }
+    }
+
+    private void forget(final List<String> key)
+    {
+        subjects.invalidate(key.get(1));
+        absentSubjects.remove(key);
+    }
+
+    private Optional<Optional<? extends Subject>> fromRequest(final Http.Context context)
+    {
+        Optional<Optional<? extends Subject>> known = Optional.empty();
+        if (cacheUserPerRequestEnabled)
+        {
+            // concurrently-evaluated constraints can look up the subject from different threads
+            synchronized (context.args)
+            {
+                final Subject subject = (Subject) context.args.get(ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._1);
+                if (subject != null)
+                {
+                    known = Optional.of(Optional.of(subject));
+                }
+                else if (cacheAbsentPerRequestEnabled && context.args.containsKey(ConfigKeys.CACHE_ABSENT_USER_DEFAULT._1))
+                {
+                    known = Optional.of(Optional.empty());
+                }
+            }
+        }
+        return known;
+    }
+
+    private Optional<Optional<? extends Subject>> fromSession(final List<String> key)
+    {
+        Optional<Optional<? extends Subject>> known = Optional.empty();
+        if (cacheAcrossRequestsEnabled)
+        {
+            final Optional<Subject> subject = subjects.get(key.get(0),
+                                                           key.get(1));
+            if (subject.isPresent())
+            {
+                known = Optional.of(subject);
+            }
+            else if (cacheAbsentAcrossRequestsEnabled && absentSubjects.get(key).isPresent())
+            {
+                known = Optional.of(Optional.empty());
+            }
+        }
+        return known;
+    }
+
+    private void storeInRequest(final Http.Context context,
+                                final Optional<? extends Subject> subjectOption)
+    {
+        if (cacheUserPerRequestEnabled && subjectOption.isPresent())
+        {
+            synchronized (context.args)
+            {
+                context.args.put(ConfigKeys.CACHE_DEADBOLT_USER_DEFAULT._1,
+                                 subjectOption.get());
+            }
+        }
+        else if (cacheUserPerRequestEnabled && cacheAbsentPerRequestEnabled)
+        {
+            // a sentinel, as the absence of the subject can't be stored under the subject's key
+            synchronized (context.args)
+            {
+                context.args.put(ConfigKeys.CACHE_ABSENT_USER_DEFAULT._1,
+                                 Boolean.TRUE);
+            }
+        }
+    }
+
+    private static SubjectStore store(final Configuration configuration)
+    {
+        final long ttlMillis = configuration.getLong(ConfigKeys.SUBJECT_CACHE_TTL_DEFAULT._1,
+                                                     ConfigKeys.SUBJECT_CACHE_TTL_DEFAULT._2);
+        final long idleMillis = configuration.getLong(ConfigKeys.SUBJECT_CACHE_IDLE_DEFAULT._1,
+                                                      ConfigKeys.SUBJECT_CACHE_IDLE_DEFAULT._2);
+        return configuration.getBoolean(ConfigKeys.SUBJECT_CACHE_OFF_HEAP_DEFAULT._1,
+                                        ConfigKeys.SUBJECT_CACHE_OFF_HEAP_DEFAULT._2)
+               ? new OffHeapSubjectStore(configuration.getLong(ConfigKeys.SUBJECT_CACHE_OFF_HEAP_SIZE_DEFAULT._1,
+                                                               ConfigKeys.SUBJECT_CACHE_OFF_HEAP_SIZE_DEFAULT._2),
+                                         ttlMillis,
+                                         idleMillis,
+                                         System::nanoTime)
+               : new HeapSubjectStore(configuration.getLong(ConfigKeys.SUBJECT_CACHE_MAX_SIZE_DEFAULT._1,
+                                                            ConfigKeys.SUBJECT_CACHE_MAX_SIZE_DEFAULT._2),
+                                      ttlMillis,
+                                      idleMillis,
+                                      System::nanoTime);
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DynamicResourceHandler;
+import play.mvc.Http;
+
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes the {@link DynamicResourceHandler} of a request, and the results it gives, for the lifetime of the request.
+ */
+public interface DynamicResourceCache extends DeadboltCacheStats
+{
+    /**
+     * Get the dynamic resource handler for the request.
+     *
+     * @param deadboltHandler the handler that provides the dynamic resource handler
+     * @param context         the request context
+     * @return a future for an option of the dynamic resource handler
+     */
+    CompletionStage<Optional<DynamicResourceHandler>> handler(DeadboltHandler deadboltHandler,
+                                                              Http.Context context);
+
+    /**
+     * Get the result of a dynamic resource handler check for the request, performing the check if it hasn't already
+     * been made.
+     *
+     * @param deadboltHandler the handler the check is made for
+     * @param context         the request context
+     * @param key             a description of the check, including every parameter that affects the result
+     * @param check           performs the check
+     * @return a future for the result of the check
+     */
+    CompletionStage<Boolean> result(DeadboltHandler deadboltHandler,
+                                    Http.Context context,
+                                    Supplier<String> key,
+                                    Supplier<CompletionStage<Boolean>> check);
+}
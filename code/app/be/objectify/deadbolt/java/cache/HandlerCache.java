@@ -24,6 +24,7 @@ import java.util.function.Supplier;
  * @author Steve Chaloner (steve@objectify.be)
  */
 public interface HandlerCache extends Function<String, DeadboltHandler>,
-                                      Supplier<DeadboltHandler>
+                                      Supplier<DeadboltHandler>,
+                                      DeadboltCacheStats
 {
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.models.Subject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds subjects as they are given, in a {@link BoundedCache} on the heap.
+ */
+public class HeapSubjectStore implements SubjectStore
+{
+    private final BoundedCache<List<String>, Subject> subjects;
+
+    /**
+     * @param maxSize    the maximum number of subjects to hold
+     * @param ttlMillis  the number of milliseconds a subject is held for
+     * @param idleMillis the number of milliseconds an unused subject is held for
+     * @param clock      the source of the current time, in nanoseconds
+     */
+    public HeapSubjectStore(final long maxSize,
+                            final long ttlMillis,
+                            final long idleMillis,
+                            final LongSupplier clock)
+    {
+        this.subjects = new BoundedCache<>(maxSize,
+                                           ttlMillis,
+                                           idleMillis,
+                                           clock);
+    }
+
+    @Override
+    public Optional<Subject> get(final String handlerName,
+                                 final String sessionKey)
+    {
+        return subjects.get(Arrays.asList(handlerName,
+                                          sessionKey));
+    }
+
+    @Override
+    public void put(final String handlerName,
+                    final String sessionKey,
+                    final Subject subject)
+    {
+        subjects.put(Arrays.asList(handlerName,
+                                   sessionKey),
+                     subject);
+    }
+
+    @Override
+    public void invalidate(final String sessionKey)
+    {
+        subjects.removeIf((key, subject) -> key.get(1).equals(sessionKey));
+    }
+
+    @Override
+    public void invalidateSubject(final String subjectIdentifier)
+    {
+        subjects.removeIf((key, subject) -> subjectIdentifier.equals(subject.getIdentifier()));
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        subjects.clear();
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return subjects.stats();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.Objects;
+
+/**
+ * A request to remove cached data, as carried between nodes by an {@link InvalidationTransport}.
+ */
+public final class Invalidation
+{
+    /**
+     * The data that is removed.
+     */
+    public enum Type
+    {
+        /**
+         * The subject cached for a session.
+         */
+        SESSION,
+
+        /**
+         * Every cached instance of a subject, and the decisions made for it.
+         */
+        SUBJECT,
+
+        /**
+         * The permissions of a role, and the decisions that may have depended on them.
+         */
+        ROLE,
+
+        /**
+         * Everything.
+         */
+        ALL
+    }
+
+    private static final Invalidation ALL = new Invalidation(Type.ALL,
+                                                             "");
+
+    private final Type type;
+    private final String key;
+
+    private Invalidation(final Type type,
+                         final String key)
+    {
+        this.type = Objects.requireNonNull(type);
+        this.key = Objects.requireNonNull(key);
+    }
+
+    /**
+     * @param sessionKey the session key, as given by {@link be.objectify.deadbolt.java.DeadboltHandler#getSessionKey}
+     * @return an invalidation of the subject cached for the session
+     */
+    public static Invalidation session(final String sessionKey)
+    {
+        return new Invalidation(Type.SESSION,
+                                sessionKey);
+    }
+
+    /**
+     * @param subjectIdentifier the identifier of the subject
+     * @return an invalidation of the subject
+     */
+    public static Invalidation subject(final String subjectIdentifier)
+    {
+        return new Invalidation(Type.SUBJECT,
+                                subjectIdentifier);
+    }
+
+    /**
+     * @param roleName the name of the role
+     * @return an invalidation of the role
+     */
+    public static Invalidation role(final String roleName)
+    {
+        return new Invalidation(Type.ROLE,
+                                roleName);
+    }
+
+    /**
+     * @return an invalidation of everything
+     */
+    public static Invalidation all()
+    {
+        return ALL;
+    }
+
+    /**
+     * Create an invalidation from its parts, e.g. when it has been received from another node.
+     *
+     * @param type the type
+     * @param key  the key, which is ignored for {@link Type#ALL}
+     * @return the invalidation
+     */
+    public static Invalidation of(final Type type,
+                                  final String key)
+    {
+        return type == Type.ALL ? ALL
+                                : new Invalidation(type,
+                                                   key);
+    }
+
+    /**
+     * @return the type of data that is removed
+     */
+    public Type type()
+    {
+        return type;
+    }
+
+    /**
+     * @return the session key, subject identifier or role name, depending on the type
+     */
+    public String key()
+    {
+        return key;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass())
+        {
+            return false;
+        }
+        final Invalidation that = (Invalidation) o;
+        return type == that.type && key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * type.hashCode() + key.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Invalidation{type=" + type + ", key='" + key + "'}";
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Configuration;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes stale data from the caches of every node.  An invalidation is applied to the local caches immediately, and
+ * is sent to the other nodes through the {@link InvalidationTransport}.
+ * <p>
+ * Invalidations are batched rather than sent one by one: a batch is sent {@link ConfigKeys#INVALIDATION_BATCH_WINDOW}
+ * milliseconds after its first invalidation, or as soon as it holds {@link ConfigKeys#INVALIDATION_BATCH_MAX_SIZE}
+ * invalidations.  Duplicates within a batch are sent once, and once a batch contains {@link Invalidation#all()}
+ * nothing else is added to it, so a bulk change doesn't flood the network.
+ */
+@Singleton
+public class InvalidationBus
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final SubjectCache subjectCache;
+    private final DecisionCache decisionCache;
+    private final RolePermissionsCache rolePermissionsCache;
+    private final PatternCache patternCache;
+    private final InvalidationTransport transport;
+    private final long windowMillis;
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private Set<Invalidation> pending = new LinkedHashSet<>();
+
+    @Inject
+    public InvalidationBus(final Configuration configuration,
+                           final SubjectCache subjectCache,
+                           final DecisionCache decisionCache,
+                           final RolePermissionsCache rolePermissionsCache,
+                           final PatternCache patternCache,
+                           final InvalidationTransport transport,
+                           final ApplicationLifecycle lifecycle)
+    {
+        this(subjectCache,
+             decisionCache,
+             rolePermissionsCache,
+             patternCache,
+             transport,
+             configuration.getLong(ConfigKeys.INVALIDATION_BATCH_WINDOW_DEFAULT._1,
+                                   ConfigKeys.INVALIDATION_BATCH_WINDOW_DEFAULT._2),
+             configuration.getInt(ConfigKeys.INVALIDATION_BATCH_MAX_SIZE_DEFAULT._1,
+                                  ConfigKeys.INVALIDATION_BATCH_MAX_SIZE_DEFAULT._2));
+        lifecycle.addStopHook(() ->
+                              {
+                                  close();
+                                  return CompletableFuture.completedFuture(null);
+                              });
+    }
+
+    /**
+     * @param subjectCache         the subject cache
+     * @param decisionCache        the decision cache
+     * @param rolePermissionsCache the role permissions cache
+     * @param patternCache         the pattern cache
+     * @param transport            the transport to the other nodes
+     * @param windowMillis         how long to collect invalidations before sending them, in milliseconds
+     * @param maxBatchSize         the number of invalidations that causes a batch to be sent immediately
+     */
+    public InvalidationBus(final SubjectCache subjectCache,
+                           final DecisionCache decisionCache,
+                           final RolePermissionsCache rolePermissionsCache,
+                           final PatternCache patternCache,
+                           final InvalidationTransport transport,
+                           final long windowMillis,
+                           final int maxBatchSize)
+    {
+        this.subjectCache = subjectCache;
+        this.decisionCache = decisionCache;
+        this.rolePermissionsCache = rolePermissionsCache;
+        this.patternCache = patternCache;
+        this.transport = transport;
+        this.windowMillis = Math.max(0L,
+                                     windowMillis);
+        this.maxBatchSize = Math.max(1,
+                                     maxBatchSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+                                                                    {
+                                                                        final Thread thread = new Thread(runnable,
+                                                                                                         "deadbolt-invalidation-bus");
+                                                                        thread.setDaemon(true);
+                                                                        return thread;
+                                                                    });
+        transport.subscribe(this::receive);
+    }
+
+    /**
+     * Remove the subject cached for a session, on every node.
+     *
+     * @param sessionKey the session key, as given by {@link be.objectify.deadbolt.java.DeadboltHandler#getSessionKey}
+     */
+    public void invalidateSession(final String sessionKey)
+    {
+        invalidate(Invalidation.session(sessionKey));
+    }
+
+    /**
+     * Remove every cached instance of a subject, and the decisions made for it, on every node.  Use this when the
+     * roles or permissions of a subject change.
+     *
+     * @param subjectIdentifier the identifier of the subject
+     */
+    public void invalidateSubject(final String subjectIdentifier)
+    {
+        invalidate(Invalidation.subject(subjectIdentifier));
+    }
+
+    /**
+     * Remove the cached permissions of a role, and every cached decision, on every node.  Use this when the
+     * permissions of a role change.
+     *
+     * @param roleName the name of the role
+     */
+    public void invalidateRole(final String roleName)
+    {
+        invalidate(Invalidation.role(roleName));
+    }
+
+    /**
+     * Remove everything cached, on every node.
+     */
+    public void invalidateAll()
+    {
+        invalidate(Invalidation.all());
+    }
+
+    /**
+     * Apply an invalidation to the local caches, and queue it for sending to the other nodes.
+     *
+     * @param invalidation the invalidation
+     */
+    public void invalidate(final Invalidation invalidation)
+    {
+        apply(invalidation);
+
+        final boolean first;
+        final boolean full;
+        synchronized (lock)
+        {
+            first = pending.isEmpty();
+            if (!pending.contains(Invalidation.all()))
+            {
+                if (invalidation.type() == Invalidation.Type.ALL)
+                {
+                    pending.clear();
+                }
+                pending.add(invalidation);
+            }
+            full = pending.size() >= maxBatchSize;
+        }
+
+        if (full)
+        {
+            flush();
+        }
+        else if (first && !scheduler.isShutdown())
+        {
+            try
+            {
+                scheduler.schedule(this::flush,
+                                   windowMillis,
+                                   TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the bus was closed concurrently
+            }
+        }
+    }
+
+    /**
+     * Send the queued invalidations now.
+     */
+    public void flush()
+    {
+        final Set<Invalidation> batch;
+        synchronized (lock)
+        {
+            batch = pending;
+            pending = new LinkedHashSet<>();
+        }
+
+        if (!batch.isEmpty())
+        {
+            try
+            {
+                transport.publish(nodeId,
+                                  new ArrayList<>(batch));
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.error("Deadbolt: could not publish [{}] invalidations",
+                             batch.size(),
+                             e);
+            }
+        }
+    }
+
+    /**
+     * Send any queued invalidations and stop the scheduler.  Invalidations are still applied locally afterwards, but
+     * are no longer sent.
+     */
+    public void close()
+    {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    private void receive(final String origin,
+                         final List<Invalidation> invalidations)
+    {
+        // this node's own invalidations were applied when they were made
+        if (!nodeId.equals(origin))
+        {
+            invalidations.forEach(this::apply);
+        }
+    }
+
+    private void apply(final Invalidation invalidation)
+    {
+        switch (invalidation.type())
+        {
+            case SESSION:
+                subjectCache.invalidate(invalidation.key());
+                break;
+            case SUBJECT:
+                subjectCache.invalidateSubject(invalidation.key());
+                decisionCache.invalidate(invalidation.key());
+                break;
+            case ROLE:
+                // decisions aren't indexed by role, so any of them may depend on the role's permissions
+                rolePermissionsCache.invalidate(invalidation.key());
+                decisionCache.invalidateAll();
+                break;
+            default:
+                subjectCache.invalidateAll();
+                decisionCache.invalidateAll();
+                rolePermissionsCache.invalidateAll();
+                patternCache.invalidateAll();
+                break;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Carries batches of {@link Invalidation}s between the nodes of a deployment, so a change made on one node removes the
+ * stale data cached on every node.  Delivery is best effort; cached data still expires, so a lost batch only means
+ * stale data is served until then.
+ */
+public interface InvalidationTransport
+{
+    /**
+     * Send a batch to every node, possibly including the sender.
+     *
+     * @param origin        the identifier of the sending node
+     * @param invalidations the invalidations
+     */
+    void publish(String origin,
+                 List<Invalidation> invalidations);
+
+    /**
+     * Register a listener for batches sent by any node.  Listeners may be called on a thread owned by the transport,
+     * so they should not block.
+     *
+     * @param listener receives the identifier of the sending node, and the invalidations
+     */
+    void subscribe(BiConsumer<String, List<Invalidation>> listener);
+
+    /**
+     * Release any resources held by the transport.  No batches are sent or received afterwards.
+     */
+    default void close()
+    {
+        // no-op
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import play.Configuration;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Provides the {@link InvalidationTransport} named by {@link ConfigKeys#INVALIDATION_TRANSPORT}, which is either
+ * <code>loopback</code> for a single node or <code>udp</code> for several.  The transport is closed when the
+ * application stops.
+ * <p>
+ * The <code>udp</code> transport only receives on the loopback interface unless
+ * {@link ConfigKeys#INVALIDATION_UDP_BIND} is set, and can't be used without a
+ * {@link ConfigKeys#INVALIDATION_UDP_SECRET}.
+ */
+@Singleton
+public class InvalidationTransportProvider implements Provider<InvalidationTransport>
+{
+    private final InvalidationTransport transport;
+
+    @Inject
+    public InvalidationTransportProvider(final Configuration configuration,
+                                         final ApplicationLifecycle lifecycle)
+    {
+        final String type = configuration.getString(ConfigKeys.INVALIDATION_TRANSPORT_DEFAULT._1,
+                                                    ConfigKeys.INVALIDATION_TRANSPORT_DEFAULT._2);
+        switch (type)
+        {
+            case "loopback":
+                transport = new LoopbackInvalidationTransport();
+                break;
+            case "udp":
+                transport = udp(configuration.getString(ConfigKeys.INVALIDATION_UDP_BIND_DEFAULT._1,
+                                                        ConfigKeys.INVALIDATION_UDP_BIND_DEFAULT._2),
+                                configuration.getStringList(ConfigKeys.INVALIDATION_UDP_TARGETS_DEFAULT._1,
+                                                            ConfigKeys.INVALIDATION_UDP_TARGETS_DEFAULT._2),
+                                configuration.getString(ConfigKeys.INVALIDATION_UDP_SECRET_DEFAULT._1,
+                                                        ConfigKeys.INVALIDATION_UDP_SECRET_DEFAULT._2));
+                break;
+            default:
+                throw new RuntimeException(String.format("Unknown invalidation transport [%s] specified in [%s]",
+                                                         type,
+                                                         ConfigKeys.INVALIDATION_TRANSPORT));
+        }
+        lifecycle.addStopHook(() ->
+                              {
+                                  transport.close();
+                                  return CompletableFuture.completedFuture(null);
+                              });
+    }
+
+    @Override
+    public InvalidationTransport get()
+    {
+        return transport;
+    }
+
+    private static InvalidationTransport udp(final String bind,
+                                             final List<String> targets,
+                                             final String secret)
+    {
+        if (secret.isEmpty())
+        {
+            throw new RuntimeException(String.format("A shared secret must be specified in [%s] to use the udp invalidation transport",
+                                                     ConfigKeys.INVALIDATION_UDP_SECRET));
+        }
+        try
+        {
+            return new UdpInvalidationTransport(address(bind),
+                                                targets.stream()
+                                                       .map(InvalidationTransportProvider::address)
+                                                       .collect(Collectors.toList()),
+                                                secret.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(String.format("Could not open an invalidation socket on [%s]",
+                                                     bind),
+                                       e);
+        }
+    }
+
+    /**
+     * Parse an address of the form <code>host:port</code>.
+     */
+    private static InetSocketAddress address(final String value)
+    {
+        final int separator = value.lastIndexOf(':');
+        if (separator < 0)
+        {
+            throw new RuntimeException(String.format("Invalidation address [%s] is not of the form host:port",
+                                                     value));
+        }
+        return new InetSocketAddress(value.substring(0,
+                                                     separator),
+                                     Integer.parseInt(value.substring(separator + 1)));
+    }
+}
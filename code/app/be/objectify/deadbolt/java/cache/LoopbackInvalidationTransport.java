@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * An {@link InvalidationTransport} that delivers batches to the listeners in this JVM, on the publishing thread.  This
+ * is all a single node needs, and an instance can be shared to connect several nodes in one JVM, e.g. in tests.
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport
+{
+    private final List<BiConsumer<String, List<Invalidation>>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(final String origin,
+                        final List<Invalidation> invalidations)
+    {
+        listeners.forEach(listener -> listener.accept(origin,
+                                                      invalidations));
+    }
+
+    @Override
+    public void subscribe(final BiConsumer<String, List<Invalidation>> listener)
+    {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close()
+    {
+        listeners.clear();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import java.util.Optional;
+
+/**
+ * A decision cache that never holds anything.
+ */
+public final class NoOpDecisionCache implements DecisionCache
+{
+    public static final NoOpDecisionCache INSTANCE = new NoOpDecisionCache();
+
+    private NoOpDecisionCache()
+    {
+        // no-op
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean includesDynamic()
+    {
+        return false;
+    }
+
+    @Override
+    public Optional<Boolean> get(final DecisionKey key)
+    {
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(final DecisionKey key,
+                    final boolean allowed)
+    {
+        // no-op
+    }
+
+    @Override
+    public void invalidate(final String subjectIdentifier)
+    {
+        // no-op
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        // no-op
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return CacheStats.EMPTY;
+    }
+}
@@ -0,0 +1,725 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.models.Permission;
+import be.objectify.deadbolt.java.models.Role;
+import be.objectify.deadbolt.java.models.Subject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Holds subjects outside the heap, for applications with so many sessions that caching the subjects' object graphs
+ * would put pressure on the garbage collector.  Each subject is reduced to its identifier and the ids of its roles
+ * and permissions, and written to a direct buffer; reads decode it into a lightweight {@link Subject}.  The only
+ * per-entry data on the heap is a pair of longs in an index.
+ * <p>
+ * Because only the identifier, roles and permissions are kept, the subjects returned by this store are not the
+ * instances given by the handler and can't be cast to the application's own subject class.  Don't use this store if
+ * dynamic resource handlers or templates rely on that.
+ * <p>
+ * Role names and permission values are interned in dictionaries, which suits the usual case of a modest number of
+ * distinct roles and permissions shared by many subjects.  The dictionaries are never trimmed, so each holds at most
+ * {@link #MAX_INTERNED} names; once it is full, further names are written into the records themselves.
+ * <p>
+ * The buffer is split into segments, each written as a ring: when a segment is full, the oldest entries are
+ * overwritten.  Entries also expire a fixed time after they are written, and a fixed time after they were last read.
+ */
+public class OffHeapSubjectStore implements SubjectStore
+{
+    private static final int SEGMENTS = 16;
+
+    /**
+     * The number of distinct role names, and of distinct permission values, that are interned.
+     */
+    static final int MAX_INTERNED = 4096;
+
+    /**
+     * Length, written time, read time.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Long.BYTES;
+    private static final int READ_AT_OFFSET = Integer.BYTES + Long.BYTES;
+
+    private final long ttlNanos;
+    private final long idleNanos;
+    private final LongSupplier clock;
+    private final Segment[] segments;
+
+    private final Dictionary<Role> roles = new Dictionary<>(name -> () -> name);
+    private final Dictionary<Permission> permissions = new Dictionary<>(value -> () -> value);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacityBytes the number of bytes of direct memory to use
+     * @param ttlMillis     the number of milliseconds after a subject is written that it expires, or 0 if it doesn't
+     * @param idleMillis    the number of milliseconds after a subject is last read that it expires, or 0 if it doesn't
+     * @param clock         the source of the current time, in nanoseconds
+     */
+    public OffHeapSubjectStore(final long capacityBytes,
+                               final long ttlMillis,
+                               final long idleMillis,
+                               final LongSupplier clock)
+    {
+        this.ttlNanos = ttlMillis > 0L ? TimeUnit.MILLISECONDS.toNanos(ttlMillis)
+                                       : Long.MAX_VALUE;
+        this.idleNanos = idleMillis > 0L ? TimeUnit.MILLISECONDS.toNanos(idleMillis)
+                                         : Long.MAX_VALUE;
+        this.clock = clock;
+
+        final int segmentCapacity = (int) Math.min(Integer.MAX_VALUE,
+                                                   Math.max(1024L,
+                                                            capacityBytes / SEGMENTS));
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+        {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    @Override
+    public Optional<Subject> get(final String handlerName,
+                                 final String sessionKey)
+    {
+        final long hash = hash(handlerName,
+                               sessionKey);
+        final byte[] record = segmentFor(hash).read(hash,
+                                                    clock.getAsLong());
+        Optional<Subject> subject = Optional.empty();
+        if (record != null)
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(record);
+            if (handlerName.equals(readString(buffer)) && sessionKey.equals(readString(buffer)))
+            {
+                subject = Optional.of(decode(buffer));
+            }
+        }
+
+        if (subject.isPresent())
+        {
+            hits.increment();
+        }
+        else
+        {
+            misses.increment();
+        }
+        return subject;
+    }
+
+    @Override
+    public void put(final String handlerName,
+                    final String sessionKey,
+                    final Subject subject)
+    {
+        final long hash = hash(handlerName,
+                               sessionKey);
+        segmentFor(hash).write(hash,
+                               encode(handlerName,
+                                      sessionKey,
+                                      subject),
+                               clock.getAsLong());
+    }
+
+    @Override
+    public void invalidate(final String sessionKey)
+    {
+        removeIf(buffer ->
+                 {
+                     readString(buffer);
+                     return sessionKey.equals(readString(buffer));
+                 });
+    }
+
+    @Override
+    public void invalidateSubject(final String subjectIdentifier)
+    {
+        removeIf(buffer ->
+                 {
+                     readString(buffer);
+                     readString(buffer);
+                     return subjectIdentifier.equals(readString(buffer));
+                 });
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        long size = 0L;
+        long bytes = 0L;
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+            bytes += segment.capacity;
+        }
+        return new CacheStats(hits.sum(),
+                              misses.sum(),
+                              evictions.sum(),
+                              size,
+                              0L,
+                              0L,
+                              bytes);
+    }
+
+    private void removeIf(final Predicate<ByteBuffer> predicate)
+    {
+        for (Segment segment : segments)
+        {
+            segment.removeIf(predicate);
+        }
+    }
+
+    private Segment segmentFor(final long hash)
+    {
+        return segments[(int) ((hash >>> 32) & 0x7fffffffL) % SEGMENTS];
+    }
+
+    /**
+     * The record body is the key, followed by the identifier and the ids of the roles and permissions.
+     */
+    private byte[] encode(final String handlerName,
+                          final String sessionKey,
+                          final Subject subject)
+    {
+        final byte[] handlerBytes = handlerName.getBytes(StandardCharsets.UTF_8);
+        final byte[] sessionBytes = sessionKey.getBytes(StandardCharsets.UTF_8);
+        final byte[] identifierBytes = subject.getIdentifier() == null ? null
+                                                                       : subject.getIdentifier().getBytes(StandardCharsets.UTF_8);
+        final byte[] roleBytes = values(subject.getRoles(),
+                                        Role::getName,
+                                        roles);
+        final byte[] permissionBytes = values(subject.getPermissions(),
+                                              Permission::getValue,
+                                              permissions);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 3
+                                                      + handlerBytes.length
+                                                      + sessionBytes.length
+                                                      + (identifierBytes == null ? 0 : identifierBytes.length)
+                                                      + roleBytes.length
+                                                      + permissionBytes.length);
+        writeBytes(buffer,
+                   handlerBytes);
+        writeBytes(buffer,
+                   sessionBytes);
+        writeBytes(buffer,
+                   identifierBytes);
+        buffer.put(roleBytes);
+        buffer.put(permissionBytes);
+        return buffer.array();
+    }
+
+    private Subject decode(final ByteBuffer buffer)
+    {
+        final String identifier = readString(buffer);
+        final List<Role> subjectRoles = readValues(buffer,
+                                                   roles);
+        final List<Permission> subjectPermissions = readValues(buffer,
+                                                               permissions);
+        return new Subject()
+        {
+            @Override
+            public List<? extends Role> getRoles()
+            {
+                return subjectRoles;
+            }
+
+            @Override
+            public List<? extends Permission> getPermissions()
+            {
+                return subjectPermissions;
+            }
+
+            @Override
+            public String getIdentifier()
+            {
+                return identifier;
+            }
+        };
+    }
+
+    /**
+     * A count, followed by an int for each value: either its id in the dictionary, or if the dictionary is full, -1
+     * minus the length of the name followed by the name itself.
+     */
+    private static <T> byte[] values(final List<? extends T> values,
+                                     final Function<T, String> name,
+                                     final Dictionary<?> dictionary)
+    {
+        final int size = values == null ? 0 : values.size();
+        final int[] ids = new int[size];
+        final byte[][] names = new byte[size][];
+        int count = 0;
+        int length = Integer.BYTES;
+        for (int i = 0; i < size; i++)
+        {
+            final T value = values.get(i);
+            final String valueName = value == null ? null : name.apply(value);
+            if (valueName != null)
+            {
+                ids[count] = dictionary.id(valueName);
+                if (ids[count] < 0)
+                {
+                    names[count] = valueName.getBytes(StandardCharsets.UTF_8);
+                    length += names[count].length;
+                }
+                length += Integer.BYTES;
+                count++;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++)
+        {
+            if (ids[i] < 0)
+            {
+                buffer.putInt(-1 - names[i].length);
+                buffer.put(names[i]);
+            }
+            else
+            {
+                buffer.putInt(ids[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static <T> List<T> readValues(final ByteBuffer buffer,
+                                          final Dictionary<T> dictionary)
+    {
+        final int count = buffer.getInt();
+        final List<T> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            final int id = buffer.getInt();
+            if (id < 0)
+            {
+                final int length = -1 - id;
+                values.add(dictionary.create(new String(buffer.array(),
+                                                        buffer.arrayOffset() + buffer.position(),
+                                                        length,
+                                                        StandardCharsets.UTF_8)));
+                buffer.position(buffer.position() + length);
+            }
+            else
+            {
+                values.add(dictionary.value(id));
+            }
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    private static void writeBytes(final ByteBuffer buffer,
+                                   final byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            buffer.putInt(-1);
+        }
+        else
+        {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String readString(final ByteBuffer buffer)
+    {
+        final int length = buffer.getInt();
+        String value = null;
+        if (length >= 0)
+        {
+            value = new String(buffer.array(),
+                               buffer.arrayOffset() + buffer.position(),
+                               length,
+                               StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        return value;
+    }
+
+    /**
+     * FNV-1a over both parts of the key, with the length of the first mixed in so the boundary between them counts,
+     * followed by the MurmurHash3 finalizer.
+     */
+    private static long hash(final String handlerName,
+                             final String sessionKey)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < handlerName.length(); i++)
+        {
+            hash = (hash ^ handlerName.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ handlerName.length()) * 0x100000001b3L;
+        for (int i = 0; i < sessionKey.length(); i++)
+        {
+            hash = (hash ^ sessionKey.charAt(i)) * 0x100000001b3L;
+        }
+        // FNV leaves the high bits, which pick the segment, poorly mixed for keys that differ only at the end
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        // 0 marks an empty slot in the index
+        return hash == 0L ? 1L : hash;
+    }
+
+    /**
+     * A ring of records in a direct buffer, with an index from key hash to the absolute position of the record.  A
+     * record written at absolute position p is intact as long as nothing has been written at or beyond p + capacity.
+     */
+    private final class Segment
+    {
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private Index index = new Index();
+        private long head;
+
+        private Segment(final int capacity)
+        {
+            this.capacity = capacity;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        private synchronized byte[] read(final long hash,
+                                         final long now)
+        {
+            final long position = index.get(hash);
+            byte[] record = null;
+            if (position >= 0L)
+            {
+                final int offset = (int) (position % capacity);
+                final int length = buffer.getInt(offset);
+                final long writtenAt = buffer.getLong(offset + Integer.BYTES);
+                final long readAt = buffer.getLong(offset + READ_AT_OFFSET);
+                if (!isIntact(position) || now - writtenAt >= ttlNanos || now - readAt >= idleNanos)
+                {
+                    index.remove(hash);
+                    evictions.increment();
+                }
+                else
+                {
+                    buffer.putLong(offset + READ_AT_OFFSET,
+                                   now);
+                    record = new byte[length - HEADER_SIZE];
+                    final ByteBuffer view = buffer.duplicate();
+                    view.position(offset + HEADER_SIZE);
+                    view.get(record);
+                }
+            }
+            return record;
+        }
+
+        private synchronized void write(final long hash,
+                                        final byte[] body,
+                                        final long now)
+        {
+            final int length = HEADER_SIZE + body.length;
+            if (length <= capacity)
+            {
+                if (head % capacity + length > capacity)
+                {
+                    // records never wrap around the end of the buffer, so skip to the start
+                    head += capacity - head % capacity;
+                }
+                if (head % capacity == 0L && head > 0L)
+                {
+                    purge();
+                }
+                final int offset = (int) (head % capacity);
+                buffer.putInt(offset,
+                              length);
+                buffer.putLong(offset + Integer.BYTES,
+                               now);
+                buffer.putLong(offset + READ_AT_OFFSET,
+                               now);
+                final ByteBuffer view = buffer.duplicate();
+                view.position(offset + HEADER_SIZE);
+                view.put(body);
+                index.put(hash,
+                          head);
+                head += length;
+            }
+        }
+
+        private synchronized void removeIf(final Predicate<ByteBuffer> predicate)
+        {
+            final Index retained = new Index();
+            index.forEach((hash, position) ->
+                          {
+                              if (isIntact(position))
+                              {
+                                  final int offset = (int) (position % capacity);
+                                  final byte[] body = new byte[buffer.getInt(offset) - HEADER_SIZE];
+                                  final ByteBuffer view = buffer.duplicate();
+                                  view.position(offset + HEADER_SIZE);
+                                  view.get(body);
+                                  if (!predicate.test(ByteBuffer.wrap(body)))
+                                  {
+                                      retained.put(hash,
+                                                   position);
+                                  }
+                              }
+                          });
+            index = retained;
+        }
+
+        private synchronized void clear()
+        {
+            index = new Index();
+        }
+
+        private synchronized long size()
+        {
+            return index.size();
+        }
+
+        /**
+         * Called each time the ring wraps, so the index never holds more than one lap's worth of overwritten records.
+         */
+        private void purge()
+        {
+            final Index retained = new Index();
+            index.forEach((hash, position) ->
+                          {
+                              // the records in the first part of the buffer are about to be overwritten, but that's
+                              // dealt with when they are read
+                              if (isIntact(position))
+                              {
+                                  retained.put(hash,
+                                               position);
+                              }
+                              else
+                              {
+                                  evictions.increment();
+                              }
+                          });
+            index = retained;
+        }
+
+        private boolean isIntact(final long position)
+        {
+            return head <= position + capacity;
+        }
+    }
+
+    /**
+     * An open-addressing hash map from non-zero long keys to non-negative long values.
+     */
+    private static final class Index
+    {
+        private long[] keys = new long[16];
+        private long[] values = new long[16];
+        private int size;
+
+        private long get(final long key)
+        {
+            final int mask = keys.length - 1;
+            long value = -1L;
+            for (int i = slot(key, mask); value < 0L && keys[i] != 0L; i = (i + 1) & mask)
+            {
+                if (keys[i] == key)
+                {
+                    value = values[i];
+                }
+            }
+            return value;
+        }
+
+        private void put(final long key,
+                         final long value)
+        {
+            if ((size + 1) * 4 > keys.length * 3)
+            {
+                resize();
+            }
+            final int mask = keys.length - 1;
+            int i = slot(key,
+                         mask);
+            while (keys[i] != 0L && keys[i] != key)
+            {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0L)
+            {
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+        }
+
+        private void remove(final long key)
+        {
+            final int mask = keys.length - 1;
+            int i = slot(key,
+                         mask);
+            while (keys[i] != 0L && keys[i] != key)
+            {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] != 0L)
+            {
+                size--;
+                // shift later entries of the same run back, so lookups never stop early at the hole
+                for (int j = (i + 1) & mask; keys[j] != 0L; j = (j + 1) & mask)
+                {
+                    final int home = slot(keys[j],
+                                          mask);
+                    final boolean reachable = i <= j ? home > i && home <= j
+                                                     : home > i || home <= j;
+                    if (!reachable)
+                    {
+                        keys[i] = keys[j];
+                        values[i] = values[j];
+                        i = j;
+                    }
+                }
+                keys[i] = 0L;
+            }
+        }
+
+        private int size()
+        {
+            return size;
+        }
+
+        private void forEach(final Entries entries)
+        {
+            for (int i = 0; i < keys.length; i++)
+            {
+                if (keys[i] != 0L)
+                {
+                    entries.accept(keys[i],
+                                   values[i]);
+                }
+            }
+        }
+
+        private void resize()
+        {
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != 0L)
+                {
+                    put(oldKeys[i],
+                        oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(final long key,
+                                final int mask)
+        {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Entries
+    {
+        void accept(long key,
+                    long value);
+    }
+
+    /**
+     * Interns up to {@link #MAX_INTERNED} names to ids, and holds a single shared view for each name.
+     */
+    private static final class Dictionary<T>
+    {
+        private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Function<String, T> factory;
+        private volatile Object[] values = new Object[16];
+        private volatile boolean full;
+
+        private Dictionary(final Function<String, T> factory)
+        {
+            this.factory = factory;
+        }
+
+        private int id(final String name)
+        {
+            final Integer id = ids.get(name);
+            return id != null ? id
+                              : full ? -1
+                                     : assign(name);
+        }
+
+        /**
+         * @return the id of the name, or -1 if the dictionary is full
+         */
+        private synchronized int assign(final String name)
+        {
+            Integer id = ids.get(name);
+            if (id == null && ids.size() >= MAX_INTERNED)
+            {
+                full = true;
+                id = -1;
+            }
+            else if (id == null)
+            {
+                id = ids.size();
+                final Object[] current = id < values.length ? values
+                                                            : Arrays.copyOf(values,
+                                                                            values.length * 2);
+                current[id] = factory.apply(name);
+                // the volatile write publishes the new value before its id can be seen
+                values = current;
+                ids.put(name,
+                        id);
+            }
+            return id;
+        }
+
+        private T create(final String name)
+        {
+            return factory.apply(name);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T value(final int id)
+        {
+            return (T) values[id];
+        }
+    }
+}
@@ -15,12 +15,76 @@
  */
 package be.objectify.deadbolt.java.cache;
 
+import be.objectify.deadbolt.java.CompiledPattern;
+import be.objectify.deadbolt.java.PatternSet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Function;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * @author Steve Chaloner (steve@objectify.be)
  */
-public interface PatternCache extends Function<String, Pattern>
+public interface PatternCache extends Function<String, Pattern>,
+                                      DeadboltCacheStats
 {
+    /**
+     * Get the classified form of the pattern.  Implementations should override this to cache the result, as the
+     * default implementation classifies the pattern on every call.
+     *
+     * @param patternValue the pattern value
+     * @return the compiled pattern
+     */
+    default CompiledPattern compiled(final String patternValue)
+    {
+        final Pattern pattern = apply(patternValue);
+        return pattern == null ? null
+                               : CompiledPattern.of(pattern);
+    }
+
+    /**
+     * Get the patterns combined into a set, so they can be matched against a value in one pass.  Implementations
+     * should override this to cache the result, as the default implementation builds the set on every call.
+     *
+     * @param patternValues the pattern values
+     * @return the pattern set
+     */
+    default PatternSet compiledSet(final List<String> patternValues)
+    {
+        return PatternSet.of(patternValues.stream()
+                                          .map(this::compiled)
+                                          .collect(Collectors.toList()));
+    }
+
+    /**
+     * Compile the patterns ahead of their first use, e.g. at startup, so the first requests that use them don't pay
+     * for compilation.
+     *
+     * @param patternValues the pattern values
+     */
+    default void warm(final Collection<String> patternValues)
+    {
+        patternValues.forEach(this::compiled);
+    }
+
+    /**
+     * Get the values of the patterns that are currently compiled, e.g. to warm another cache with them.
+     *
+     * @return the pattern values
+     */
+    default Collection<String> patternValues()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Remove every compiled pattern, e.g. to release memory.  Patterns are compiled again when they are next used.
+     */
+    default void invalidateAll()
+    {
+        // no-op
+    }
 }
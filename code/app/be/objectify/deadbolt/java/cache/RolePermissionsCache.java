@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.Permission;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Caches the permissions associated with roles, as provided by {@link DeadboltHandler#getPermissionsForRole(String)}.
+ */
+public interface RolePermissionsCache extends DeadboltCacheStats
+{
+    /**
+     * Get the permissions associated with a role.
+     *
+     * @param deadboltHandler the handler that provides the permissions
+     * @param roleName        the name of the role
+     * @return a future for the permissions
+     */
+    CompletionStage<List<? extends Permission>> get(DeadboltHandler deadboltHandler,
+                                                    String roleName);
+
+    /**
+     * Remove the permissions of a role, for every handler.
+     *
+     * @param roleName the name of the role
+     */
+    void invalidate(String roleName);
+
+    /**
+     * Remove the permissions of every role.
+     */
+    void invalidateAll();
+
+    /**
+     * Get the permissions that are currently cached, e.g. to save them in a {@link CacheSnapshot}.
+     *
+     * @return the permission values, keyed by handler name and then by role name
+     */
+    default Map<String, Map<String, List<String>>> loaded()
+    {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Cache permissions that were obtained elsewhere, e.g. from a {@link CacheSnapshot}.  Existing entries are kept,
+     * and permissions that are already too old to be cached are ignored.
+     *
+     * @param handlerName the name of the handler that provided the permissions
+     * @param roleName    the name of the role
+     * @param permissions the permissions
+     * @param ageMillis   how long ago the permissions were obtained, in milliseconds
+     */
+    default void preload(final String handlerName,
+                         final String roleName,
+                         final List<? extends Permission> permissions,
+                         final long ageMillis)
+    {
+        // no-op
+    }
+
+    /**
+     * Get the statistics of the cache.
+     *
+     * @return the statistics
+     */
+    CacheStats stats();
+}
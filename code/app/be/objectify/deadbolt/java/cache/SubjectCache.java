@@ -26,6 +26,35 @@ import java.util.function.BiFunction;
 /**
  * @author Steve Chaloner (steve@objectify.be)
  */
-public interface SubjectCache extends BiFunction<DeadboltHandler, Http.Context, CompletionStage<Optional<? extends Subject>>>
+public interface SubjectCache extends BiFunction<DeadboltHandler, Http.Context, CompletionStage<Optional<? extends Subject>>>,
+                                      DeadboltCacheStats
 {
+    /**
+     * Remove the subject cached for a session, if subjects are cached across requests.
+     *
+     * @param sessionKey the session key, as given by {@link DeadboltHandler#getSessionKey}
+     */
+    default void invalidate(final String sessionKey)
+    {
+        // no-op
+    }
+
+    /**
+     * Remove every cached instance of a subject, if subjects are cached across requests, e.g. because its roles or
+     * permissions have changed.
+     *
+     * @param subjectIdentifier the identifier of the subject
+     */
+    default void invalidateSubject(final String subjectIdentifier)
+    {
+        // no-op
+    }
+
+    /**
+     * Remove every subject cached across requests.
+     */
+    default void invalidateAll()
+    {
+        // no-op
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.models.Subject;
+
+import java.util.Optional;
+
+/**
+ * Holds subjects across requests for {@link DefaultSubjectCache}, keyed by the name of the handler that loaded them
+ * and the session key given by {@link be.objectify.deadbolt.java.DeadboltHandler#getSessionKey}.
+ */
+public interface SubjectStore extends DeadboltCacheStats
+{
+    /**
+     * Get a subject.
+     *
+     * @param handlerName the name of the handler
+     * @param sessionKey  the session key
+     * @return an option for the subject, which is empty if there is no entry or it has expired
+     */
+    Optional<Subject> get(String handlerName,
+                          String sessionKey);
+
+    /**
+     * Store a subject, replacing any existing subject for the key.
+     *
+     * @param handlerName the name of the handler
+     * @param sessionKey  the session key
+     * @param subject     the subject
+     */
+    void put(String handlerName,
+             String sessionKey,
+             Subject subject);
+
+    /**
+     * Remove the subjects stored for a session, whichever handler loaded them.
+     *
+     * @param sessionKey the session key
+     */
+    void invalidate(String sessionKey);
+
+    /**
+     * Remove every stored instance of a subject.
+     *
+     * @param subjectIdentifier the identifier of the subject
+     */
+    void invalidateSubject(String subjectIdentifier);
+
+    /**
+     * Remove every subject.
+     */
+    void invalidateAll();
+
+    /**
+     * Get the statistics of the store.
+     *
+     * @return the statistics
+     */
+    CacheStats stats();
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * An {@link InvalidationTransport} that sends batches as UDP datagrams.  Each batch is sent to every target; a
+ * multicast target reaches every node that has joined the group, and the socket joins any multicast group it targets.
+ * Unicast targets, e.g. other processes listening on the loopback interface, can be used where multicast is not
+ * available.
+ * <p>
+ * Batches are split so no datagram is larger than {@link #MAX_PAYLOAD} bytes, which avoids fragmentation on common
+ * networks.  An invalidation that can't fit in a datagram by itself is sent as {@link Invalidation#all()}, so it is
+ * never silently lost.
+ * <p>
+ * Every datagram is signed with an HMAC of a secret shared by the nodes, and carries the time it was sent.  Datagrams
+ * with a missing or wrong signature, or sent more than {@link #MAX_CLOCK_SKEW_MILLIS} milliseconds away from the
+ * receiver's clock, are ignored.
+ * <p>
+ * Delivery is best effort.  UDP doesn't retry, so if a datagram is lost the other nodes keep the subjects, roles or
+ * decisions it would have removed until they expire.  Use TTLs short enough that this is acceptable, or a transport
+ * with guaranteed delivery.
+ */
+public class UdpInvalidationTransport implements InvalidationTransport
+{
+    /**
+     * The maximum size of a datagram, in bytes.
+     */
+    public static final int MAX_PAYLOAD = 1400;
+
+    /**
+     * How far, in milliseconds, the time a datagram was sent can be from the receiver's clock.
+     */
+    public static final long MAX_CLOCK_SKEW_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UdpInvalidationTransport.class);
+
+    private static final int MAGIC = 0x44424956;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final int MAC_LENGTH = 32;
+
+    private static final Invalidation.Type[] TYPES = Invalidation.Type.values();
+
+    private final MulticastSocket socket;
+    private final List<InetSocketAddress> targets;
+    private final SecretKeySpec key;
+    private final List<BiConsumer<String, List<Invalidation>>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param bind    the local address to receive datagrams on
+     * @param targets the addresses to send datagrams to
+     * @param secret  the secret shared by every node, used to sign datagrams
+     * @throws IOException if the socket can't be opened, or a multicast group can't be joined
+     */
+    public UdpInvalidationTransport(final InetSocketAddress bind,
+                                    final List<InetSocketAddress> targets,
+                                    final byte[] secret) throws IOException
+    {
+        if (secret == null || secret.length == 0)
+        {
+            throw new IllegalArgumentException("A secret is required to sign invalidations");
+        }
+        this.key = new SecretKeySpec(secret,
+                                     MAC_ALGORITHM);
+        this.targets = Collections.unmodifiableList(new ArrayList<>(targets));
+        this.socket = new MulticastSocket(bind);
+        try
+        {
+            for (InetSocketAddress target : targets)
+            {
+                if (target.getAddress().isMulticastAddress())
+                {
+                    socket.joinGroup(target.getAddress());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        final Thread receiver = new Thread(this::receive,
+                                           "deadbolt-invalidation-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * @return the local address datagrams are received on, which gives the port if the socket was bound to port 0
+     */
+    public InetSocketAddress localAddress()
+    {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    @Override
+    public void publish(final String origin,
+                        final List<Invalidation> invalidations)
+    {
+        try
+        {
+            for (byte[] payload : encode(origin,
+                                         invalidations,
+                                         System.currentTimeMillis(),
+                                         key))
+            {
+                for (InetSocketAddress target : targets)
+                {
+                    socket.send(new DatagramPacket(payload,
+                                                   payload.length,
+                                                   target));
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Deadbolt: could not send [{}] invalidations",
+                        invalidations.size(),
+                        e);
+        }
+    }
+
+    @Override
+    public void subscribe(final BiConsumer<String, List<Invalidation>> listener)
+    {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close()
+    {
+        socket.close();
+        listeners.clear();
+    }
+
+    private void receive()
+    {
+        final byte[] buffer = new byte[65535];
+        while (!socket.isClosed())
+        {
+            final DatagramPacket packet = new DatagramPacket(buffer,
+                                                             buffer.length);
+            try
+            {
+                socket.receive(packet);
+            }
+            catch (IOException e)
+            {
+                // closing the socket is the normal way to stop receiving
+                if (!socket.isClosed())
+                {
+                    LOGGER.warn("Deadbolt: could not receive invalidations",
+                                e);
+                }
+                continue;
+            }
+
+            if (!isAuthentic(packet))
+            {
+                LOGGER.debug("Deadbolt: ignoring a datagram from [{}] that isn't signed with the shared secret",
+                             packet.getSocketAddress());
+                continue;
+            }
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(),
+                                                                                   packet.getOffset(),
+                                                                                   packet.getLength() - MAC_LENGTH)))
+            {
+                if (in.readInt() == MAGIC)
+                {
+                    final long sentAt = in.readLong();
+                    final String origin = in.readUTF();
+                    final int count = in.readUnsignedShort();
+                    final List<Invalidation> invalidations = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++)
+                    {
+                        invalidations.add(Invalidation.of(TYPES[in.readUnsignedByte()],
+                                                          in.readUTF()));
+                    }
+                    if (Math.abs(System.currentTimeMillis() - sentAt) <= MAX_CLOCK_SKEW_MILLIS)
+                    {
+                        deliver(origin,
+                                invalidations);
+                    }
+                    else
+                    {
+                        LOGGER.debug("Deadbolt: ignoring invalidations from [{}] sent at [{}]",
+                                     origin,
+                                     sentAt);
+                    }
+                }
+            }
+            catch (IOException | ArrayIndexOutOfBoundsException e)
+            {
+                LOGGER.debug("Deadbolt: ignoring a datagram that doesn't contain invalidations",
+                             e);
+            }
+        }
+    }
+
+    private boolean isAuthentic(final DatagramPacket packet)
+    {
+        final int length = packet.getLength() - MAC_LENGTH;
+        if (length < Integer.BYTES)
+        {
+            return false;
+        }
+        final Mac mac = mac(key);
+        mac.update(packet.getData(),
+                   packet.getOffset(),
+                   length);
+        final byte[] signature = new byte[MAC_LENGTH];
+        System.arraycopy(packet.getData(),
+                         packet.getOffset() + length,
+                         signature,
+                         0,
+                         MAC_LENGTH);
+        return MessageDigest.isEqual(mac.doFinal(),
+                                     signature);
+    }
+
+    private void deliver(final String origin,
+                         final List<Invalidation> invalidations)
+    {
+        for (BiConsumer<String, List<Invalidation>> listener : listeners)
+        {
+            try
+            {
+                listener.accept(origin,
+                                invalidations);
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.error("Deadbolt: invalidation listener failed",
+                             e);
+            }
+        }
+    }
+
+    static List<byte[]> encode(final String origin,
+                               final List<Invalidation> invalidations,
+                               final long sentAt,
+                               final SecretKeySpec key) throws IOException
+    {
+        final List<byte[]> payloads = new ArrayList<>();
+        final int headerSize = Integer.BYTES + Long.BYTES + utfSize(origin) + Short.BYTES + MAC_LENGTH;
+        List<Invalidation> batch = new ArrayList<>();
+        int size = headerSize;
+        for (Invalidation invalidation : invalidations)
+        {
+            int entrySize = Byte.BYTES + utfSize(invalidation.key());
+            Invalidation entry = invalidation;
+            if (headerSize + entrySize > MAX_PAYLOAD)
+            {
+                entry = Invalidation.all();
+                entrySize = Byte.BYTES + utfSize(entry.key());
+            }
+            if (size + entrySize > MAX_PAYLOAD || batch.size() == 0xFFFF)
+            {
+                payloads.add(payload(origin,
+                                     batch,
+                                     sentAt,
+                                     key));
+                batch = new ArrayList<>();
+                size = headerSize;
+            }
+            batch.add(entry);
+            size += entrySize;
+        }
+        if (!batch.isEmpty())
+        {
+            payloads.add(payload(origin,
+                                 batch,
+                                 sentAt,
+                                 key));
+        }
+        return payloads;
+    }
+
+    private static byte[] payload(final String origin,
+                                  final List<Invalidation> batch,
+                                  final long sentAt,
+                                  final SecretKeySpec key) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(MAX_PAYLOAD);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(MAGIC);
+            out.writeLong(sentAt);
+            out.writeUTF(origin);
+            out.writeShort(batch.size());
+            for (Invalidation invalidation : batch)
+            {
+                out.writeByte(invalidation.type().ordinal());
+                out.writeUTF(invalidation.key());
+            }
+            out.flush();
+            out.write(mac(key).doFinal(bytes.toByteArray()));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A {@link Mac} isn't thread-safe, so each use gets its own.
+     */
+    private static Mac mac(final SecretKeySpec key)
+    {
+        try
+        {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        }
+        catch (GeneralSecurityException e)
+        {
+            // every Java platform is required to support HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The size of the string as written by {@link DataOutputStream#writeUTF}.
+     */
+    private static int utfSize(final String value)
+    {
+        int size = Short.BYTES;
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            size += c >= 0x0001 && c <= 0x007F ? 1
+                                               : c <= 0x07FF ? 2
+                                                             : 3;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import play.mvc.Http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link DecisionPlan} whose constraints are reordered as statistics about them are gathered.  For each constraint,
+ * the plan records how long it takes and how often it decides the result of the tree (i.e. fails for
+ * {@link Operator#AND}, passes for {@link Operator#OR}).  Every few evaluations the constraints are sorted by their
+ * average cost divided by their chance of deciding, which is the order that minimises the expected cost of a
+ * short-circuiting evaluation, and the plan is recompiled.
+ * <p>
+ * Constraints that have never been evaluated are treated as free, so they are moved forward and measured.  Older
+ * statistics are given half the weight at every reordering, so the order follows changes in behaviour; a constraint
+ * that stops being evaluated keeps its average cost, but its chance of deciding drifts back towards even.
+ */
+final class AdaptivePlan
+{
+    /**
+     * The default number of evaluations between reorderings.
+     */
+    static final int DEFAULT_INTERVAL = 100;
+
+    private final Operator operator;
+    private final List<Measured> measured;
+    private final int interval;
+    private final AtomicLong evaluations = new AtomicLong();
+
+    private volatile Ordering ordering;
+
+    /**
+     * @param operator    the operator combining the constraints
+     * @param constraints the constraints
+     * @param interval    the number of evaluations between reorderings
+     * @param clock       the source of the current time, in nanoseconds
+     */
+    AdaptivePlan(final Operator operator,
+                 final List<Constraint> constraints,
+                 final int interval,
+                 final LongSupplier clock)
+    {
+        this.operator = operator;
+        this.interval = interval;
+        final List<Measured> wrapped = new ArrayList<>(constraints.size());
+        for (Constraint constraint : constraints)
+        {
+            wrapped.add(new Measured(constraint,
+                                     operator == Operator.OR,
+                                     clock));
+        }
+        this.measured = Collections.unmodifiableList(wrapped);
+        this.ordering = new Ordering(this.measured,
+                                     DecisionPlan.compile(operator,
+                                                          new ArrayList<>(this.measured)));
+    }
+
+    CompletionStage<Boolean> test(final Http.Context context,
+                                  final DeadboltHandler handler,
+                                  final Executor executor,
+                                  final Optional<String> globalMetaData,
+                                  final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        if (evaluations.incrementAndGet() % interval == 0)
+        {
+            reorder();
+        }
+        return ordering.plan.test(context,
+                                  handler,
+                                  executor,
+                                  globalMetaData,
+                                  metaFn);
+    }
+
+    /**
+     * The constraints, in the order they are currently evaluated.
+     *
+     * @return the constraints
+     */
+    List<Constraint> order()
+    {
+        final List<Constraint> order = new ArrayList<>();
+        for (Measured m : ordering.order)
+        {
+            order.add(m.constraint);
+        }
+        return order;
+    }
+
+    private synchronized void reorder()
+    {
+        final double[] scores = new double[measured.size()];
+        for (int i = 0; i < scores.length; i++)
+        {
+            scores[i] = measured.get(i).score();
+        }
+        final Integer[] indices = new Integer[scores.length];
+        for (int i = 0; i < indices.length; i++)
+        {
+            indices[i] = i;
+        }
+        // a stable sort, so equally-scored constraints keep their declared order
+        Arrays.sort(indices,
+                    Comparator.comparingDouble(i -> scores[i]));
+
+        final List<Measured> order = new ArrayList<>(indices.length);
+        for (Integer index : indices)
+        {
+            order.add(measured.get(index));
+        }
+        if (!order.equals(ordering.order))
+        {
+            ordering = new Ordering(order,
+                                    DecisionPlan.compile(operator,
+                                                         new ArrayList<>(order)));
+        }
+    }
+
+    private static final class Ordering
+    {
+        private final List<Measured> order;
+        private final DecisionPlan plan;
+
+        private Ordering(final List<Measured> order,
+                         final DecisionPlan plan)
+        {
+            this.order = order;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * Wraps a constraint to record its cost and how often it's decisive.  The stage returned by the constraint is
+     * passed through untouched.
+     */
+    private static final class Measured implements Constraint
+    {
+        private final Constraint constraint;
+        private final boolean decisiveResult;
+        private final LongSupplier clock;
+
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder decisions = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        // decayed totals from earlier intervals, only accessed while reordering
+        private double pastInvocations;
+        private double pastDecisions;
+        private double pastNanos;
+
+        private Measured(final Constraint constraint,
+                         final boolean decisiveResult,
+                         final LongSupplier clock)
+        {
+            this.constraint = constraint;
+            this.decisiveResult = decisiveResult;
+            this.clock = clock;
+        }
+
+        @Override
+        public CompletionStage<Boolean> test(final Http.Context context,
+                                             final DeadboltHandler handler,
+                                             final Executor executor,
+                                             final Optional<String> globalMetaData,
+                                             final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+        {
+            final long start = clock.getAsLong();
+            final CompletionStage<Boolean> stage;
+            try
+            {
+                stage = constraint.test(context,
+                                        handler,
+                                        executor,
+                                        globalMetaData,
+                                        metaFn);
+            }
+            catch (RuntimeException e)
+            {
+                record(start,
+                       false);
+                throw e;
+            }
+            stage.whenComplete((passed, t) -> record(start,
+                                                     t == null && Boolean.TRUE.equals(passed) == decisiveResult));
+            return stage;
+        }
+
+        private void record(final long start,
+                            final boolean decisive)
+        {
+            nanos.add(clock.getAsLong() - start);
+            invocations.increment();
+            if (decisive)
+            {
+                decisions.increment();
+            }
+        }
+
+        /**
+         * The expected cost of evaluating this constraint per decision it makes.  Lower is better.
+         */
+        private double score()
+        {
+            pastInvocations = pastInvocations / 2 + invocations.sumThenReset();
+            pastDecisions = pastDecisions / 2 + decisions.sumThenReset();
+            pastNanos = pastNanos / 2 + nanos.sumThenReset();
+
+            final double score;
+            if (pastInvocations == 0.0D)
+            {
+                score = 0.0D;
+            }
+            else
+            {
+                final double averageCost = pastNanos / pastInvocations;
+                // add-one smoothing, so a constraint that has never decided still has a chance of doing so
+                final double probability = (pastDecisions + 1.0D) / (pastInvocations + 2.0D);
+                score = averageCost / probability;
+            }
+            return score;
+        }
+    }
+}
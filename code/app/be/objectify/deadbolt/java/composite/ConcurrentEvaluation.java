@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.utils.CompletionStages;
+import play.mvc.Http;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Evaluates constraints at the same time instead of one after the other.  The result is known as soon as any
+ * constraint gives the deciding value - true for {@link Operator#OR}, false for {@link Operator#AND} - or once every
+ * constraint has completed without giving it.  Constraints still in flight when the result is known are left to
+ * finish, and their results are ignored.
+ * <p>
+ * If a constraint fails before the result is known, the result fails with the same exception.  A constraint that
+ * completes with null is treated as having failed to pass.
+ */
+final class ConcurrentEvaluation
+{
+    private ConcurrentEvaluation()
+    {
+        // no-op
+    }
+
+    static CompletionStage<Boolean> test(final Operator operator,
+                                         final List<Constraint> constraints,
+                                         final Http.Context context,
+                                         final DeadboltHandler handler,
+                                         final Executor executor,
+                                         final Optional<String> globalMetaData,
+                                         final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        final boolean decisive = operator == Operator.OR;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(constraints.size());
+        if (constraints.isEmpty())
+        {
+            result.complete(false);
+        }
+        for (int i = 0; !result.isDone() && i < constraints.size(); i++)
+        {
+            CompletionStage<Boolean> stage;
+            try
+            {
+                stage = constraints.get(i).test(context,
+                                                handler,
+                                                executor,
+                                                globalMetaData,
+                                                metaFn);
+            }
+            catch (Exception e)
+            {
+                stage = CompletionStages.failed(e);
+            }
+            stage.whenComplete((passed, t) ->
+                               {
+                                   if (t != null)
+                                   {
+                                       result.completeExceptionally(t);
+                                   }
+                                   else if (Boolean.TRUE.equals(passed) == decisive)
+                                   {
+                                       result.complete(decisive);
+                                   }
+                                   else if (remaining.decrementAndGet() == 0)
+                                   {
+                                       result.complete(!decisive);
+                                   }
+                               });
+        }
+        return result;
+    }
+}
@@ -18,6 +18,7 @@ package be.objectify.deadbolt.java.composite;
 import be.objectify.deadbolt.java.DeadboltHandler;
 import play.mvc.Http;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -58,6 +59,26 @@ public interface Constraint
                                                                              executor);
     }
 
+    /**
+     * Combine this constraint with another, evaluating both at the same time.  The result is false as soon as either
+     * constraint fails to pass, without waiting for the other.
+     *
+     * @param other the other constraint
+     * @return the combined constraint
+     */
+    default Constraint andConcurrently(final Constraint other)
+    {
+        Objects.requireNonNull(other);
+        return (ctx, handler, executor, global, fMeta) -> ConcurrentEvaluation.test(Operator.AND,
+                                                                                    Arrays.asList(this,
+                                                                                                  other),
+                                                                                    ctx,
+                                                                                    handler,
+                                                                                    executor,
+                                                                                    global,
+                                                                                    fMeta);
+    }
+
     default Constraint negate()
     {
         return (ctx, handler, executor, global, fMeta) -> test(ctx, handler, executor, global, fMeta).thenApplyAsync(p -> !p);
@@ -72,4 +93,24 @@ public interface Constraint
                                                                                                                                                                    executor),
                                                                              executor);
     }
+
+    /**
+     * Combine this constraint with another, evaluating both at the same time.  The result is true as soon as either
+     * constraint passes, without waiting for the other.
+     *
+     * @param other the other constraint
+     * @return the combined constraint
+     */
+    default Constraint orConcurrently(final Constraint other)
+    {
+        Objects.requireNonNull(other);
+        return (ctx, handler, executor, global, fMeta) -> ConcurrentEvaluation.test(Operator.OR,
+                                                                                    Arrays.asList(this,
+                                                                                                  other),
+                                                                                    ctx,
+                                                                                    handler,
+                                                                                    executor,
+                                                                                    global,
+                                                                                    fMeta);
+    }
 }
@@ -19,17 +19,27 @@ import be.objectify.deadbolt.java.DeadboltHandler;
 import play.mvc.Http;
 
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
 /**
  * A list of constraints combined by {@link Operator}.  Those constraints may themselves be trees.
+ * <p>
+ * How the constraints are evaluated depends on the tree's {@link Evaluation}.  By default they are evaluated in the
+ * order they were declared, using a {@link DecisionPlan} compiled when the tree is created so evaluating it doesn't
+ * rebuild the operator chain on every call.  A concurrent tree instead evaluates all of its constraints at the same
+ * time, and decides as soon as one of them gives a deciding result; this is useful when constraints wait on remote
+ * calls, but means every constraint may be evaluated even when an earlier one would have short-circuited the tree.  An
+ * adaptive tree evaluates its constraints one at a time, but reorders them based on how expensive and how decisive
+ * they have been.
  *
  * @author Steve Chaloner (steve@objectify.be)
  */
@@ -37,15 +47,72 @@ public class ConstraintTree implements Constraint
 {
     private final Operator operator;
 
-    private final List<Constraint> constraints = new LinkedList<>();
+    private final List<Constraint> constraints;
 
+    private final Evaluation evaluation;
+
+    private final DecisionPlan plan;
+
+    private final AdaptivePlan adaptivePlan;
+
+    public ConstraintTree(final Operator operator,
+                          final Constraint... constraints)
+    {
+        this(operator,
+             Evaluation.IN_ORDER,
+             constraints);
+    }
+
+    /**
+     * @param operator    the operator combining the constraints
+     * @param concurrent  if true, the constraints are evaluated at the same time instead of in order
+     * @param constraints the constraints
+     */
+    public ConstraintTree(final Operator operator,
+                          final boolean concurrent,
+                          final Constraint... constraints)
+    {
+        this(operator,
+             concurrent ? Evaluation.CONCURRENT
+                        : Evaluation.IN_ORDER,
+             constraints);
+    }
+
+    /**
+     * @param operator    the operator combining the constraints
+     * @param evaluation  how the constraints are evaluated
+     * @param constraints the constraints
+     */
     public ConstraintTree(final Operator operator,
+                          final Evaluation evaluation,
                           final Constraint... constraints)
+    {
+        this(operator,
+             evaluation,
+             AdaptivePlan.DEFAULT_INTERVAL,
+             System::nanoTime,
+             constraints);
+    }
+
+    ConstraintTree(final Operator operator,
+                   final Evaluation evaluation,
+                   final int adaptiveInterval,
+                   final LongSupplier clock,
+                   final Constraint... constraints)
     {
         this.operator = operator;
-        Arrays.stream(constraints)
-              .filter(c -> c != null)
-              .collect(Collectors.toCollection(() -> this.constraints));
+        this.evaluation = evaluation;
+        this.constraints = Collections.unmodifiableList(Arrays.stream(constraints)
+                                                              .filter(Objects::nonNull)
+                                                              .collect(Collectors.toList()));
+        this.plan = evaluation == Evaluation.IN_ORDER && !this.constraints.isEmpty() ? DecisionPlan.compile(operator,
+                                                                                                            this.constraints)
+                                                                                     : null;
+        this.adaptivePlan = evaluation == Evaluation.ADAPTIVE && !this.constraints.isEmpty() ? new AdaptivePlan(operator,
+                                                                                                                this.constraints,
+                                                                                                                adaptiveInterval,
+                                                                                                                clock)
+                                                                                             : null;
     }
 
     @Override
@@ -60,20 +127,72 @@ public class ConstraintTree implements Constraint
         {
             result = CompletableFuture.completedFuture(false);
         }
+        else if (evaluation == Evaluation.CONCURRENT)
+        {
+            result = ConcurrentEvaluation.test(operator,
+                                               constraints,
+                                               context,
+                                               handler,
+                                               executor,
+                                               globalMetaData,
+                                               metaFn);
+        }
+        else if (evaluation == Evaluation.ADAPTIVE)
+        {
+            result = adaptivePlan.test(context,
+                                       handler,
+                                       executor,
+                                       globalMetaData,
+                                       metaFn);
+        }
         else
         {
-            Constraint current = constraints.get(0);
-            for (int i = 1; i < constraints.size(); i++)
-            {
-                current = operator.apply(current,
-                                         constraints.get(i));
-            }
-            result = current.test(context,
-                                  handler,
-                                  executor,
-                                  globalMetaData,
-                                  metaFn);
+            result = plan.test(context,
+                               handler,
+                               executor,
+                               globalMetaData,
+                               metaFn);
         }
         return result;
     }
+
+    /**
+     * Check if the constraints of this tree are evaluated at the same time.
+     *
+     * @return true iff the tree is concurrent
+     */
+    public boolean isConcurrent()
+    {
+        return evaluation == Evaluation.CONCURRENT;
+    }
+
+    /**
+     * Get how the constraints of this tree are evaluated.
+     *
+     * @return the evaluation
+     */
+    public Evaluation evaluation()
+    {
+        return evaluation;
+    }
+
+    /**
+     * The constraints in the order they are currently evaluated.  This only differs from the declared order for
+     * adaptive trees.
+     */
+    List<Constraint> currentOrder()
+    {
+        return adaptivePlan == null ? constraints
+                                    : adaptivePlan.order();
+    }
+
+    Operator operator()
+    {
+        return operator;
+    }
+
+    List<Constraint> constraints()
+    {
+        return constraints;
+    }
 }
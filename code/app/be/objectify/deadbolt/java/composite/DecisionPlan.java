@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.utils.CompletionStages;
+import play.mvc.Http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * An immutable, flattened form of a {@link ConstraintTree}.  Every leaf constraint of the tree, including the leaves
+ * of nested in-order trees, becomes a node in an array.  Each node records the index of the node to evaluate next if the
+ * leaf passes and if it fails, so short-circuiting is a jump instead of a chain of {@link Constraint#and} and
+ * {@link Constraint#or} lambdas.
+ * <p>
+ * Leaves whose result is already available are evaluated on the calling thread; the executor is only used to resume
+ * the plan when a leaf returns a pending stage.
+ */
+final class DecisionPlan
+{
+    /**
+     * Jump target indicating the plan has passed.
+     */
+    static final int ACCEPT = -1;
+
+    /**
+     * Jump target indicating the plan has failed.
+     */
+    static final int REJECT = -2;
+
+    /**
+     * Stands in for an empty tree, which has always evaluated to false.
+     */
+    private static final Constraint ALWAYS_FALSE = (ctx, handler, executor, global, fMeta) -> CompletableFuture.completedFuture(false);
+
+    private final Node[] nodes;
+
+    private DecisionPlan(final Node[] nodes)
+    {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Compile the operator and constraints of a tree into a plan.
+     *
+     * @param operator    the operator combining the constraints
+     * @param constraints the constraints
+     * @return the plan
+     */
+    static DecisionPlan compile(final Operator operator,
+                                final List<Constraint> constraints)
+    {
+        final List<Node> nodes = new ArrayList<>();
+        emit(operator,
+             constraints,
+             ACCEPT,
+             REJECT,
+             nodes);
+        return new DecisionPlan(nodes.toArray(new Node[nodes.size()]));
+    }
+
+    /**
+     * The number of nodes in the plan.
+     *
+     * @return the number of nodes
+     */
+    int size()
+    {
+        return nodes.length;
+    }
+
+    CompletionStage<Boolean> test(final Http.Context context,
+                                  final DeadboltHandler handler,
+                                  final Executor executor,
+                                  final Optional<String> globalMetaData,
+                                  final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        // the first leaf is invoked directly, so an exception it throws reaches the caller just as it always has
+        final Node first = nodes[0];
+        final CompletionStage<Boolean> stage = first.constraint.test(context,
+                                                                     handler,
+                                                                     executor,
+                                                                     globalMetaData,
+                                                                     metaFn);
+        return resume(first,
+                      stage,
+                      context,
+                      handler,
+                      executor,
+                      globalMetaData,
+                      metaFn);
+    }
+
+    private CompletionStage<Boolean> run(int pc,
+                                         final Http.Context context,
+                                         final DeadboltHandler handler,
+                                         final Executor executor,
+                                         final Optional<String> globalMetaData,
+                                         final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        while (pc >= 0)
+        {
+            final Node node = nodes[pc];
+            final CompletionStage<Boolean> stage;
+            try
+            {
+                stage = node.constraint.test(context,
+                                             handler,
+                                             executor,
+                                             globalMetaData,
+                                             metaFn);
+            }
+            catch (Exception e)
+            {
+                return CompletionStages.failed(e);
+            }
+
+            if (!CompletionStages.isCompletedNormally(stage))
+            {
+                return stage.thenComposeAsync(passed -> run(node.next(passed),
+                                                            context,
+                                                            handler,
+                                                            executor,
+                                                            globalMetaData,
+                                                            metaFn),
+                                              executor);
+            }
+            pc = node.next(CompletionStages.getNow(stage));
+        }
+        return CompletableFuture.completedFuture(pc == ACCEPT);
+    }
+
+    private CompletionStage<Boolean> resume(final Node node,
+                                            final CompletionStage<Boolean> stage,
+                                            final Http.Context context,
+                                            final DeadboltHandler handler,
+                                            final Executor executor,
+                                            final Optional<String> globalMetaData,
+                                            final BiFunction<Optional<String>, Optional<String>, Optional<String>> metaFn)
+    {
+        return CompletionStages.isCompletedNormally(stage) ? run(node.next(CompletionStages.getNow(stage)),
+                                                                 context,
+                                                                 handler,
+                                                                 executor,
+                                                                 globalMetaData,
+                                                                 metaFn)
+                                                           : stage.thenComposeAsync(passed -> run(node.next(passed),
+                                                                                                  context,
+                                                                                                  handler,
+                                                                                                  executor,
+                                                                                                  globalMetaData,
+                                                                                                  metaFn),
+                                                                                    executor);
+    }
+
+    /**
+     * Emit the nodes for a list of constraints combined by an operator.  Every child starts immediately after the
+     * previous one, so the jump to the next child is the current size of the node list plus the size of the child.
+     */
+    private static void emit(final Operator operator,
+                             final List<Constraint> constraints,
+                             final int onTrue,
+                             final int onFalse,
+                             final List<Node> nodes)
+    {
+        if (constraints.isEmpty())
+        {
+            nodes.add(new Node(ALWAYS_FALSE,
+                               onTrue,
+                               onFalse));
+        }
+        else
+        {
+            for (int i = 0; i < constraints.size(); i++)
+            {
+                final Constraint constraint = constraints.get(i);
+                final boolean last = i == constraints.size() - 1;
+                final int next = last ? -1 : nodes.size() + sizeOf(constraint);
+                final int childOnTrue;
+                final int childOnFalse;
+                if (operator == Operator.AND)
+                {
+                    childOnTrue = last ? onTrue : next;
+                    childOnFalse = onFalse;
+                }
+                else
+                {
+                    childOnTrue = onTrue;
+                    childOnFalse = last ? onFalse : next;
+                }
+                emit(constraint,
+                     childOnTrue,
+                     childOnFalse,
+                     nodes);
+            }
+        }
+    }
+
+    private static void emit(final Constraint constraint,
+                             final int onTrue,
+                             final int onFalse,
+                             final List<Node> nodes)
+    {
+        if (isSequentialTree(constraint))
+        {
+            final ConstraintTree tree = (ConstraintTree) constraint;
+            emit(tree.operator(),
+                 tree.constraints(),
+                 onTrue,
+                 onFalse,
+                 nodes);
+        }
+        else
+        {
+            nodes.add(new Node(constraint,
+                               onTrue,
+                               onFalse));
+        }
+    }
+
+    private static int sizeOf(final Constraint constraint)
+    {
+        int size = 1;
+        if (isSequentialTree(constraint))
+        {
+            final List<Constraint> children = ((ConstraintTree) constraint).constraints();
+            if (!children.isEmpty())
+            {
+                size = 0;
+                for (Constraint child : children)
+                {
+                    size += sizeOf(child);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Concurrent and adaptive trees are kept as leaves, so they're still evaluated their own way.
+     */
+    private static boolean isSequentialTree(final Constraint constraint)
+    {
+        return constraint instanceof ConstraintTree && ((ConstraintTree) constraint).evaluation() == Evaluation.IN_ORDER;
+    }
+
+    private static final class Node
+    {
+        private final Constraint constraint;
+        private final int onTrue;
+        private final int onFalse;
+
+        private Node(final Constraint constraint,
+                     final int onTrue,
+                     final int onFalse)
+        {
+            this.constraint = constraint;
+            this.onTrue = onTrue;
+            this.onFalse = onFalse;
+        }
+
+        private int next(final boolean passed)
+        {
+            return passed ? onTrue : onFalse;
+        }
+    }
+}
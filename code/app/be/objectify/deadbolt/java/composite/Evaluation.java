@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.composite;
+
+/**
+ * How the constraints of a {@link ConstraintTree} are evaluated.
+ */
+public enum Evaluation
+{
+    /**
+     * One at a time, in the order they were declared, stopping as soon as the result is known.
+     */
+    IN_ORDER,
+
+    /**
+     * All at the same time, completing as soon as the result is known.  Dynamic and custom pattern constraints may
+     * then call the {@link be.objectify.deadbolt.java.DynamicResourceHandler} at the same time for the same request.
+     */
+    CONCURRENT,
+
+    /**
+     * One at a time, stopping as soon as the result is known, but periodically reordered so that constraints that
+     * are cheap and usually decide the result are evaluated first.  Only use this if the constraints have no side
+     * effects that depend on the order they are evaluated in.
+     */
+    ADAPTIVE
+}
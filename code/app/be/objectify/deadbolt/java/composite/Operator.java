@@ -30,6 +30,13 @@ public enum Operator implements BiFunction<Constraint, Constraint, Constraint>
                 {
                     return c1.and(c2);
                 }
+
+                @Override
+                public Constraint applyConcurrently(final Constraint c1,
+                                                    final Constraint c2)
+                {
+                    return c1.andConcurrently(c2);
+                }
             },
     OR
             {
@@ -39,5 +46,22 @@ public enum Operator implements BiFunction<Constraint, Constraint, Constraint>
                 {
                     return c1.or(c2);
                 }
-            }
+
+                @Override
+                public Constraint applyConcurrently(final Constraint c1,
+                                                    final Constraint c2)
+                {
+                    return c1.orConcurrently(c2);
+                }
+            };
+
+    /**
+     * Combine the constraints so they're evaluated at the same time, instead of the second waiting for the first.
+     *
+     * @param c1 the first constraint
+     * @param c2 the second constraint
+     * @return the combined constraint
+     */
+    public abstract Constraint applyConcurrently(Constraint c1,
+                                                 Constraint c2);
 }
@@ -28,6 +28,7 @@ import be.objectify.deadbolt.java.ConstraintPoint;
 import be.objectify.deadbolt.java.DeadboltExecutionContextProvider;
 import be.objectify.deadbolt.java.DeadboltHandler;
 import be.objectify.deadbolt.java.ExecutionContextProvider;
+import be.objectify.deadbolt.java.RoleGroups;
 import be.objectify.deadbolt.java.cache.CompositeCache;
 import be.objectify.deadbolt.java.composite.Constraint;
 import be.objectify.deadbolt.java.models.PatternType;
@@ -138,7 +139,7 @@ public class FilterConstraints
      *
      * @param roleGroups
      * @return a function that wraps the constraint
-     * @see ConstraintLogic#restrict(Http.Context, DeadboltHandler, Optional, Supplier, Function, TriFunction, ConstraintPoint)
+     * @see ConstraintLogic#restrict(Http.Context, DeadboltHandler, Optional, RoleGroups, Function, TriFunction, ConstraintPoint)
      */
     public FilterFunction restrict(final List<String[]> roleGroups)
     {
@@ -152,11 +153,12 @@ public class FilterConstraints
      * @param roleGroups
      * @param content    is passed to {@link DeadboltHandler#onAuthFailure(Http.Context, Optional)} if the authorization fails
      * @return a function that wraps the constraint
-     * @see ConstraintLogic#restrict(Http.Context, DeadboltHandler, Optional, Supplier, Function, TriFunction, ConstraintPoint)
+     * @see ConstraintLogic#restrict(Http.Context, DeadboltHandler, Optional, RoleGroups, Function, TriFunction, ConstraintPoint)
      */
     public FilterFunction restrict(final List<String[]> roleGroups,
                                    final Optional<String> content)
     {
+        final RoleGroups compiled = constraintLogic.compileRoleGroups(roleGroups);
         final ExecutionContextExecutor executor = executor();
         return (Http.Context context,
                 Http.RequestHeader requestHeader,
@@ -167,7 +169,7 @@ public class FilterConstraints
                                                                      .orElseGet(() -> constraintLogic.restrict(context,
                                                                                                                handler,
                                                                                                                content,
-                                                                                                               () -> roleGroups,
+                                                                                                               compiled,
                                                                                                                ctx -> next.apply(requestHeader),
                                                                                                                (ctx, hdlr, cntent) -> hdlr.onAuthFailure(ctx,
                                                                                                                                                          cntent),
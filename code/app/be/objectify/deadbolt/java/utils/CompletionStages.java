@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for chaining {@link CompletionStage}s that can skip the executor hop when the upstream stage has
+ * already completed.
+ */
+public final class CompletionStages
+{
+    private CompletionStages()
+    {
+        // no-op
+    }
+
+    /**
+     * Checks if the stage is known to have completed without an exception.  Only {@link CompletableFuture}s can be
+     * inspected; any other stage is treated as pending.
+     *
+     * @param stage the stage
+     * @return true iff the stage has completed normally
+     */
+    public static boolean isCompletedNormally(final CompletionStage<?> stage)
+    {
+        if (stage instanceof CompletableFuture)
+        {
+            final CompletableFuture<?> future = (CompletableFuture<?>) stage;
+            return future.isDone() && !future.isCompletedExceptionally();
+        }
+        return false;
+    }
+
+    /**
+     * Gets the value of a stage that {@link #isCompletedNormally has completed normally}.
+     *
+     * @param stage the stage
+     * @param <T>   the type of the value
+     * @return the value
+     */
+    public static <T> T getNow(final CompletionStage<T> stage)
+    {
+        return stage.toCompletableFuture().join();
+    }
+
+    /**
+     * Creates a stage that has completed exceptionally.
+     *
+     * @param t   the cause of the failure
+     * @param <T> the type of the stage
+     * @return the failed stage
+     */
+    public static <T> CompletionStage<T> failed(final Throwable t)
+    {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * Equivalent to {@link CompletionStage#thenApplyAsync(Function, Executor)}, except that when
+     * <code>inline</code> is true and the stage has already completed the function is applied on the calling thread.
+     *
+     * @param inline   true if completed stages can be evaluated on the calling thread
+     * @param stage    the stage
+     * @param fn       the function to apply to the value of the stage
+     * @param executor provides the executor used when the stage is still pending.  This is only invoked when needed,
+     *                 and always on the calling thread.
+     * @param <T>      the type of the stage
+     * @param <U>      the type of the result
+     * @return the resulting stage
+     */
+    public static <T, U> CompletionStage<U> thenApply(final boolean inline,
+                                                      final CompletionStage<T> stage,
+                                                      final Function<? super T, ? extends U> fn,
+                                                      final Supplier<? extends Executor> executor)
+    {
+        if (inline && isCompletedNormally(stage))
+        {
+            try
+            {
+                return CompletableFuture.completedFuture(fn.apply(getNow(stage)));
+            }
+            catch (Throwable t)
+            {
+                return failed(t);
+            }
+        }
+        return stage.thenApplyAsync(fn,
+                                    executor.get());
+    }
+
+    /**
+     * Equivalent to {@link CompletionStage#thenComposeAsync(Function, Executor)}, except that when
+     * <code>inline</code> is true and the stage has already completed the function is applied on the calling thread.
+     * As with <code>thenComposeAsync</code>, anything thrown by the function, or a null stage returned by it, fails the
+     * resulting stage.
+     *
+     * @param inline   true if completed stages can be evaluated on the calling thread
+     * @param stage    the stage
+     * @param fn       the function to apply to the value of the stage
+     * @param executor provides the executor used when the stage is still pending.  This is only invoked when needed,
+     *                 and always on the calling thread.
+     * @param <T>      the type of the stage
+     * @param <U>      the type of the result
+     * @return the resulting stage
+     */
+    public static <T, U> CompletionStage<U> thenCompose(final boolean inline,
+                                                        final CompletionStage<T> stage,
+                                                        final Function<? super T, ? extends CompletionStage<U>> fn,
+                                                        final Supplier<? extends Executor> executor)
+    {
+        if (inline && isCompletedNormally(stage))
+        {
+            try
+            {
+                final CompletionStage<U> result = fn.apply(getNow(stage));
+                return result == null ? failed(new NullPointerException())
+                                      : result;
+            }
+            catch (Throwable t)
+            {
+                return failed(t);
+            }
+        }
+        return stage.thenComposeAsync(fn,
+                                      executor.get());
+    }
+}
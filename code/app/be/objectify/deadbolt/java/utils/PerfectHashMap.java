@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable map from strings to values, for small key sets that are known up front and read on every request, such
+ * as handler keys.  The table is sized and seeded when the map is built so that every key has a slot of its own, so a
+ * lookup is one multiplication on the string's cached hash code, one array read and one {@link String#equals}, with
+ * no probing and no allocation.
+ * <p>
+ * If no collision-free seed can be found, e.g. because two keys have the same hash code, the map falls back to a
+ * {@link HashMap}.  Null keys and values are not supported.
+ *
+ * @param <V> the type of the values
+ */
+public final class PerfectHashMap<V>
+{
+    private static final int SEEDS_PER_SIZE = 64;
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int seed;
+    private final int shift;
+    private final Map<String, V> fallback;
+    private final int size;
+
+    private PerfectHashMap(final String[] keys,
+                           final Object[] values,
+                           final int seed,
+                           final int shift,
+                           final Map<String, V> fallback,
+                           final int size)
+    {
+        this.keys = keys;
+        this.values = values;
+        this.seed = seed;
+        this.shift = shift;
+        this.fallback = fallback;
+        this.size = size;
+    }
+
+    /**
+     * Build a map containing the given entries.
+     *
+     * @param entries the entries
+     * @param <V>     the type of the values
+     * @return the map
+     */
+    public static <V> PerfectHashMap<V> of(final Map<String, ? extends V> entries)
+    {
+        final String[] sourceKeys = new String[entries.size()];
+        final Object[] sourceValues = new Object[entries.size()];
+        int i = 0;
+        for (Map.Entry<String, ? extends V> entry : entries.entrySet())
+        {
+            sourceKeys[i] = Objects.requireNonNull(entry.getKey());
+            sourceValues[i] = Objects.requireNonNull(entry.getValue());
+            i++;
+        }
+
+        // a table of n^2 slots makes a collision-free seed likely, and the limit keeps the search short
+        final int maxBits = Math.max(1,
+                                     Math.min(20,
+                                              bits(4L * sourceKeys.length * sourceKeys.length)));
+        for (int bits = Math.max(1,
+                                 bits(sourceKeys.length)); bits <= maxBits; bits++)
+        {
+            final String[] keys = new String[1 << bits];
+            final Object[] values = new Object[1 << bits];
+            for (int seed = 1; seed <= SEEDS_PER_SIZE; seed++)
+            {
+                if (fill(sourceKeys,
+                         sourceValues,
+                         keys,
+                         values,
+                         seed,
+                         32 - bits))
+                {
+                    return new PerfectHashMap<>(keys,
+                                                values,
+                                                seed,
+                                                32 - bits,
+                                                null,
+                                                sourceKeys.length);
+                }
+            }
+        }
+        return new PerfectHashMap<>(null,
+                                    null,
+                                    0,
+                                    0,
+                                    Collections.unmodifiableMap(new HashMap<>(entries)),
+                                    sourceKeys.length);
+    }
+
+    /**
+     * Get the value for a key.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final String key)
+    {
+        final V value;
+        if (key == null)
+        {
+            value = null;
+        }
+        else if (fallback != null)
+        {
+            value = fallback.get(key);
+        }
+        else
+        {
+            final int index = index(key,
+                                    seed,
+                                    shift);
+            value = key.equals(keys[index]) ? (V) values[index]
+                                            : null;
+        }
+        return value;
+    }
+
+    /**
+     * Check if the map contains a key.
+     *
+     * @param key the key
+     * @return true iff the map contains the key
+     */
+    public boolean containsKey(final String key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private static boolean fill(final String[] sourceKeys,
+                                final Object[] sourceValues,
+                                final String[] keys,
+                                final Object[] values,
+                                final int seed,
+                                final int shift)
+    {
+        Arrays.fill(keys,
+                    null);
+        Arrays.fill(values,
+                    null);
+        boolean collisionFree = true;
+        for (int i = 0; collisionFree && i < sourceKeys.length; i++)
+        {
+            final int index = index(sourceKeys[i],
+                                    seed,
+                                    shift);
+            collisionFree = keys[index] == null;
+            keys[index] = sourceKeys[i];
+            values[index] = sourceValues[i];
+        }
+        return collisionFree;
+    }
+
+    private static int index(final String key,
+                             final int seed,
+                             final int shift)
+    {
+        // Fibonacci hashing: the high bits of the product depend on every bit of the hash code
+        return ((key.hashCode() ^ seed) * 0x9E3779B9) >>> shift;
+    }
+
+    private static int bits(final long n)
+    {
+        return 64 - Long.numberOfLeadingZeros(Math.max(1L,
+                                                        n - 1));
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Configuration;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies timeouts to {@link CompletionStage}s without parking a thread while waiting.  A single daemon thread fails
+ * the stages whose timeouts expire, and counts how often that happens.  The thread is stopped with the application.
+ * <p>
+ * As this is created at startup, it also checks {@link ConfigKeys#BLOCKING_MODE} so a mistyped mode stops the
+ * application from starting instead of silently falling back to waiting.
+ * <p>
+ * If {@link ConfigKeys#TIMEOUTS_JMX} is true, the count is also registered as a JMX bean named {@link #OBJECT_NAME}.
+ */
+@Singleton
+public class Timeouts implements DeadboltTimeoutsMXBean
+{
+    /**
+     * The name of the JMX bean.
+     */
+    public static final String OBJECT_NAME = "be.objectify.deadbolt:type=Timeouts";
+
+    /**
+     * The blocking mode in which the calling thread waits for the result.
+     */
+    public static final String WAIT = "wait";
+
+    /**
+     * The blocking mode in which the result fails if it isn't available in time.
+     */
+    public static final String ASYNC = "async";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Timeouts.class);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+                                                                                                  {
+                                                                                                      final Thread thread = new Thread(runnable,
+                                                                                                                                       "deadbolt-timeouts");
+                                                                                                      thread.setDaemon(true);
+                                                                                                      return thread;
+                                                                                                  });
+
+    private final LongAdder fired = new LongAdder();
+
+    @Inject
+    public Timeouts(final Configuration configuration,
+                    final ApplicationLifecycle lifecycle)
+    {
+        checkBlockingMode(configuration.getString(ConfigKeys.BLOCKING_MODE_DEFAULT._1,
+                                                  ConfigKeys.BLOCKING_MODE_DEFAULT._2));
+        final boolean jmx = configuration.getBoolean(ConfigKeys.TIMEOUTS_JMX_DEFAULT._1,
+                                                     ConfigKeys.TIMEOUTS_JMX_DEFAULT._2);
+        if (jmx)
+        {
+            register();
+        }
+        lifecycle.addStopHook(() ->
+                              {
+                                  shutdown();
+                                  if (jmx)
+                                  {
+                                      unregister();
+                                  }
+                                  return CompletableFuture.completedFuture(null);
+                              });
+    }
+
+    public Timeouts()
+    {
+        // no-op
+    }
+
+    /**
+     * Check the value of {@link ConfigKeys#BLOCKING_MODE}.
+     *
+     * @param mode the blocking mode
+     * @throws RuntimeException if the blocking mode is neither {@link #WAIT} nor {@link #ASYNC}
+     */
+    static void checkBlockingMode(final String mode)
+    {
+        if (!WAIT.equals(mode) && !ASYNC.equals(mode))
+        {
+            throw new RuntimeException(String.format("Unknown blocking mode [%s] specified in [%s]; expected [%s] or [%s]",
+                                                     mode,
+                                                     ConfigKeys.BLOCKING_MODE,
+                                                     WAIT,
+                                                     ASYNC));
+        }
+    }
+
+    /**
+     * Get a stage that completes as the given stage does, or fails with a {@link TimeoutException} if the given stage
+     * hasn't completed within the timeout.  Dependent stages of the result run on the executor, so they see the same
+     * thread-local state as they would if the caller had waited for the stage.
+     *
+     * @param stage    the stage
+     * @param timeout  the timeout
+     * @param unit     the unit of the timeout
+     * @param executor the executor used to complete the result
+     * @param <T>      the type of the stage
+     * @return the stage with a timeout
+     */
+    public <T> CompletionStage<T> within(final CompletionStage<T> stage,
+                                         final long timeout,
+                                         final TimeUnit unit,
+                                         final Executor executor)
+    {
+        final CompletionStage<T> result;
+        if (stage.toCompletableFuture().isDone())
+        {
+            result = stage;
+        }
+        else
+        {
+            final CompletableFuture<T> timed = new CompletableFuture<>();
+            final ScheduledFuture<?> expiry = scheduler.schedule(() ->
+                                                                 {
+                                                                     // counted first, so the count is up to date by the time anyone sees the failure
+                                                                     fired.increment();
+                                                                     if (!timed.completeExceptionally(new TimeoutException(String.format("Not completed within [%d] %s",
+                                                                                                                                         timeout,
+                                                                                                                                         unit))))
+                                                                     {
+                                                                         fired.decrement();
+                                                                     }
+                                                                 },
+                                                                 timeout,
+                                                                 unit);
+            stage.whenComplete((value, t) ->
+                               {
+                                   expiry.cancel(false);
+                                   if (t == null)
+                                   {
+                                       timed.complete(value);
+                                   }
+                                   else
+                                   {
+                                       timed.completeExceptionally(t);
+                                   }
+                               });
+            result = timed.whenCompleteAsync((value, t) -> {},
+                                             executor);
+        }
+        return result;
+    }
+
+    /**
+     * Record a timeout that was detected by waiting, rather than by {@link #within}.
+     */
+    public void recordTimeout()
+    {
+        fired.increment();
+    }
+
+    /**
+     * Get the number of timeouts that have fired.
+     *
+     * @return the number of timeouts
+     */
+    public long fired()
+    {
+        return fired.sum();
+    }
+
+    @Override
+    public long getBlockingTimeouts()
+    {
+        return fired();
+    }
+
+    /**
+     * Stop the thread that fails expired stages.  Stages that are still waiting will no longer time out.
+     */
+    public void shutdown()
+    {
+        scheduler.shutdownNow();
+    }
+
+    private void register()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            // a previous instance of the application in the same JVM, e.g. in dev mode, may not have cleaned up
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this,
+                                 name);
+        }
+        catch (JMException e)
+        {
+            LOGGER.warn("Deadbolt: could not register blocking timeouts with JMX",
+                        e);
+        }
+    }
+
+    private void unregister()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (JMException e)
+        {
+            LOGGER.warn("Deadbolt: could not unregister blocking timeouts from JMX",
+                        e);
+        }
+    }
+}
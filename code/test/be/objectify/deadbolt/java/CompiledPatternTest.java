@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+public class CompiledPatternTest
+{
+    @Test
+    public void testKind_exact()
+    {
+        assertKind("foo",
+                   CompiledPattern.Kind.EXACT);
+        assertKind("foo.bar",
+                   CompiledPattern.Kind.EXACT);
+        assertKind("foo\\.bar",
+                   CompiledPattern.Kind.EXACT);
+    }
+
+    @Test
+    public void testKind_prefix()
+    {
+        assertKind("killer.undead.*",
+                   CompiledPattern.Kind.PREFIX);
+        assertKind(".*",
+                   CompiledPattern.Kind.PREFIX);
+    }
+
+    @Test
+    public void testKind_suffix()
+    {
+        assertKind(".*\\.bar",
+                   CompiledPattern.Kind.SUFFIX);
+    }
+
+    @Test
+    public void testKind_regex()
+    {
+        assertKind("a.[bgj].c",
+                   CompiledPattern.Kind.REGEX);
+        assertKind("foo.*bar",
+                   CompiledPattern.Kind.REGEX);
+        assertKind(".*foo.*",
+                   CompiledPattern.Kind.REGEX);
+        assertKind("\\d+",
+                   CompiledPattern.Kind.REGEX);
+        assertKind("(?i)foo",
+                   CompiledPattern.Kind.REGEX);
+        Assert.assertEquals(CompiledPattern.Kind.REGEX,
+                            CompiledPattern.of(Pattern.compile("foo",
+                                                               Pattern.CASE_INSENSITIVE)).kind());
+    }
+
+    @Test
+    public void testPrefix_dotIsAWildcard()
+    {
+        assertMatches("killer.undead.*",
+                      "killer.undead.zombie",
+                      "killerXundeadYzombie",
+                      "killer.undead");
+        assertDoesNotMatch("killer.undead.*",
+                           "killer.undea",
+                           "killer\nundead.zombie",
+                           "killer.undead.zom\nbie",
+                           "vampire.undead.zombie");
+    }
+
+    @Test
+    public void testExact_escapedDot()
+    {
+        assertMatches("foo\\.bar",
+                      "foo.bar");
+        assertDoesNotMatch("foo\\.bar",
+                           "fooXbar",
+                           "foo.barX");
+    }
+
+    @Test
+    public void testSuffix()
+    {
+        assertMatches(".*\\.bar",
+                      ".bar",
+                      "foo.bar");
+        assertDoesNotMatch(".*\\.bar",
+                           "foo\n.bar",
+                           "foo.baz");
+    }
+
+    @Test
+    public void testSupplementaryCharacters()
+    {
+        assertMatches("a.b",
+                      "a\uD83D\uDE00b");
+        assertDoesNotMatch("a..b",
+                           "a\uD83D\uDE00b");
+        assertMatches("a.*",
+                      "a\uD83D\uDE00");
+    }
+
+    private void assertKind(final String regex,
+                            final CompiledPattern.Kind kind)
+    {
+        Assert.assertEquals(regex,
+                            kind,
+                            CompiledPattern.of(Pattern.compile(regex)).kind());
+    }
+
+    private void assertMatches(final String regex,
+                               final String... values)
+    {
+        final CompiledPattern pattern = CompiledPattern.of(Pattern.compile(regex));
+        for (String value : values)
+        {
+            Assert.assertTrue(value,
+                              Pattern.matches(regex,
+                                              value));
+            Assert.assertTrue(value,
+                              pattern.test(value));
+        }
+    }
+
+    private void assertDoesNotMatch(final String regex,
+                                    final String... values)
+    {
+        final CompiledPattern pattern = CompiledPattern.of(Pattern.compile(regex));
+        for (String value : values)
+        {
+            Assert.assertFalse(value,
+                               Pattern.matches(regex,
+                                               value));
+            Assert.assertFalse(value,
+                               pattern.test(value));
+        }
+    }
+}
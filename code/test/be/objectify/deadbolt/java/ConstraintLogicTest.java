@@ -15,9 +15,15 @@
  */
 package be.objectify.deadbolt.java;
 
+import akka.dispatch.ExecutionContexts;
+import be.objectify.deadbolt.java.cache.DefaultDecisionCache;
+import be.objectify.deadbolt.java.cache.DefaultDynamicResourceCache;
 import be.objectify.deadbolt.java.cache.DefaultPatternCache;
+import be.objectify.deadbolt.java.cache.DefaultRolePermissionsCache;
 import be.objectify.deadbolt.java.cache.HandlerCache;
+import be.objectify.deadbolt.java.cache.NoOpDecisionCache;
 import be.objectify.deadbolt.java.cache.SubjectCache;
+import be.objectify.deadbolt.java.models.PatternType;
 import be.objectify.deadbolt.java.models.Permission;
 import be.objectify.deadbolt.java.models.Subject;
 import be.objectify.deadbolt.java.testsupport.FakeCache;
@@ -37,6 +43,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -107,6 +114,126 @@ public class ConstraintLogicTest extends AbstractFakeApplicationTest
 
     }
 
+    @Test
+    public void testRestrict_fastPath_pass() throws Exception
+    {
+        assertCompletedInline(true,
+                              fastPathLogic().restrict(context(),
+                                                       handler(() -> null),
+                                                       Optional.of("json"),
+                                                       () -> Collections.singletonList(new String[]{"foo"}),
+                                                       ctx -> CompletableFuture.completedFuture(true),
+                                                       (ctx, handler, content) -> CompletableFuture.completedFuture(false),
+                                                       ConstraintPoint.CONTROLLER));
+    }
+
+    @Test
+    public void testRestrict_fastPath_fail() throws Exception
+    {
+        assertCompletedInline(false,
+                              fastPathLogic().restrict(context(),
+                                                       handler(() -> null),
+                                                       Optional.of("json"),
+                                                       () -> Collections.singletonList(new String[]{"bar"}),
+                                                       ctx -> CompletableFuture.completedFuture(true),
+                                                       (ctx, handler, content) -> CompletableFuture.completedFuture(false),
+                                                       ConstraintPoint.CONTROLLER));
+    }
+
+    @Test
+    public void testPattern_fastPath_equality() throws Exception
+    {
+        assertCompletedInline(true,
+                              fastPathLogic().pattern(context(),
+                                                      handler(() -> null),
+                                                      Optional.of("json"),
+                                                      "a.b.c",
+                                                      PatternType.EQUALITY,
+                                                      Optional.empty(),
+                                                      false,
+                                                      ctx -> CompletableFuture.completedFuture(true),
+                                                      (ctx, handler, content) -> CompletableFuture.completedFuture(false),
+                                                      ConstraintPoint.CONTROLLER));
+    }
+
+    @Test
+    public void testPattern_fastPath_regex() throws Exception
+    {
+        assertCompletedInline(true,
+                              fastPathLogic().pattern(context(),
+                                                      handler(() -> null),
+                                                      Optional.of("json"),
+                                                      "a\\.[bgj]\\.c",
+                                                      PatternType.REGEX,
+                                                      Optional.empty(),
+                                                      false,
+                                                      ctx -> CompletableFuture.completedFuture(true),
+                                                      (ctx, handler, content) -> CompletableFuture.completedFuture(false),
+                                                      ConstraintPoint.CONTROLLER));
+    }
+
+    @Test
+    public void testSubjectPresent_fastPath() throws Exception
+    {
+        assertCompletedInline(true,
+                              fastPathLogic().subjectPresent(context(),
+                                                             handler(() -> null),
+                                                             Optional.of("json"),
+                                                             (ctx, handler, content) -> CompletableFuture.completedFuture(true),
+                                                             (ctx, handler, content) -> CompletableFuture.completedFuture(false),
+                                                             ConstraintPoint.CONTROLLER));
+    }
+
+    @Test
+    public void testRoleBasedPermissions_fastPath() throws Exception
+    {
+        assertCompletedInline(true,
+                              fastPathLogic().roleBasedPermissions(context(),
+                                                                   handler(() -> null,
+                                                                           Collections.singletonList(new TestPermission("a.b.*"))),
+                                                                   Optional.of("json"),
+                                                                   "foo",
+                                                                   ctx -> CompletableFuture.completedFuture(true),
+                                                                   (ctx, handler, content) -> CompletableFuture.completedFuture(false),
+                                                                   ConstraintPoint.CONTROLLER));
+    }
+
+    /**
+     * A constraint logic with the fast path enabled, whose executor never runs anything.  The subject is already
+     * available, so anything that completes does so without being handed to the executor.
+     */
+    private ConstraintLogic fastPathLogic()
+    {
+        final ExecutionContextProvider ecProvider = Mockito.mock(ExecutionContextProvider.class);
+        Mockito.when(ecProvider.get()).thenReturn(() -> ExecutionContexts.fromExecutor(runnable -> {}));
+        final SubjectCache subjectCache = Mockito.mock(SubjectCache.class);
+        Mockito.when(subjectCache.apply(Mockito.any(DeadboltHandler.class),
+                                        Mockito.any(Http.Context.class)))
+               .thenReturn(CompletableFuture.completedFuture(Optional.of(new TestSubject.Builder().role(new TestRole("foo"))
+                                                                                                 .permission(new TestPermission("a.b.c"))
+                                                                                                 .build())));
+        return new ConstraintLogic(new DeadboltAnalyzer(),
+                                   subjectCache,
+                                   new DefaultPatternCache(100L),
+                                   ecProvider,
+                                   true,
+                                   NoOpDecisionCache.INSTANCE,
+                                   new DefaultDynamicResourceCache(false),
+                                   new DefaultRolePermissionsCache(false,
+                                                                   0L,
+                                                                   0L,
+                                                                   System::nanoTime));
+    }
+
+    private static void assertCompletedInline(final boolean expected,
+                                              final CompletionStage<Boolean> result) throws Exception
+    {
+        // checked before waiting, so a stage that is only completed by the executor fails the test
+        Assert.assertTrue(result.toCompletableFuture().isDone());
+        Assert.assertEquals(expected,
+                            result.toCompletableFuture().get());
+    }
+
     @Test
     public void testDynamic_pass() throws Exception
     {
@@ -157,6 +284,148 @@ public class ConstraintLogicTest extends AbstractFakeApplicationTest
 
     }
 
+    @Test
+    public void testDynamic_decisionCache_includesDynamic() throws Exception
+    {
+        Assert.assertEquals(1,
+                            testDynamicDecisionCache(true,
+                                                     false));
+    }
+
+    @Test
+    public void testDynamic_decisionCache_excludesDynamic() throws Exception
+    {
+        Assert.assertEquals(2,
+                            testDynamicDecisionCache(false,
+                                                     false));
+    }
+
+    @Test
+    public void testDynamic_decisionCache_cacheableByHandler() throws Exception
+    {
+        Assert.assertEquals(1,
+                            testDynamicDecisionCache(false,
+                                                     true));
+    }
+
+    private int testDynamicDecisionCache(final boolean includesDynamic,
+                                         final boolean cacheable) throws Exception
+    {
+        final ExecutionContextProvider ecProvider = Mockito.mock(ExecutionContextProvider.class);
+        Mockito.when(ecProvider.get()).thenReturn(new DefaultDeadboltExecutionContextProvider());
+        final SubjectCache subjectCache = Mockito.mock(SubjectCache.class);
+        Mockito.when(subjectCache.apply(Mockito.any(DeadboltHandler.class),
+                                        Mockito.any(Http.Context.class)))
+               .thenReturn(CompletableFuture.completedFuture(Optional.of(new TestSubject.Builder().identifier("foo").build())));
+        final DefaultDecisionCache decisionCache = new DefaultDecisionCache(true,
+                                                                            includesDynamic,
+                                                                            100L,
+                                                                            60000L,
+                                                                            System::nanoTime);
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          subjectCache,
+                                                          new DefaultPatternCache(100L),
+                                                          ecProvider,
+                                                          false,
+                                                          decisionCache,
+                                                          new DefaultDynamicResourceCache(false),
+                                                          new DefaultRolePermissionsCache(false,
+                                                                                          0L,
+                                                                                          0L,
+                                                                                          System::nanoTime));
+        final AtomicInteger calls = new AtomicInteger();
+        final DeadboltHandler handler = withDrh(() -> new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> isAllowed(final String name,
+                                                      final Optional<String> meta,
+                                                      final DeadboltHandler deadboltHandler,
+                                                      final Http.Context ctx)
+            {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture(true);
+            }
+
+            @Override
+            public boolean isCacheable(final String name,
+                                       final Optional<String> meta)
+            {
+                return cacheable && "foo".equals(name);
+            }
+        });
+
+        for (int i = 0; i < 2; i++)
+        {
+            pass.accept(logic.dynamic(context(),
+                                      handler,
+                                      Optional.of("json"),
+                                      "foo",
+                                      Optional.of("bar"),
+                                      ctx -> CompletableFuture.completedFuture(true),
+                                      (ctx, hdlr, content) -> CompletableFuture.completedFuture(false),
+                                      ConstraintPoint.CONTROLLER));
+        }
+        return calls.get();
+    }
+
+    @Test
+    public void testDynamic_memoizedPerRequest() throws Exception
+    {
+        Assert.assertEquals(1,
+                            testDynamicMemo(true));
+    }
+
+    @Test
+    public void testDynamic_notMemoized() throws Exception
+    {
+        Assert.assertEquals(2,
+                            testDynamicMemo(false));
+    }
+
+    private int testDynamicMemo(final boolean memoize) throws Exception
+    {
+        final ExecutionContextProvider ecProvider = Mockito.mock(ExecutionContextProvider.class);
+        Mockito.when(ecProvider.get()).thenReturn(new DefaultDeadboltExecutionContextProvider());
+        final ConstraintLogic logic = new ConstraintLogic(new DeadboltAnalyzer(),
+                                                          Mockito.mock(SubjectCache.class),
+                                                          new DefaultPatternCache(100L),
+                                                          ecProvider,
+                                                          false,
+                                                          NoOpDecisionCache.INSTANCE,
+                                                          new DefaultDynamicResourceCache(memoize),
+                                                          new DefaultRolePermissionsCache(false,
+                                                                                          0L,
+                                                                                          0L,
+                                                                                          System::nanoTime));
+        final AtomicInteger calls = new AtomicInteger();
+        final DeadboltHandler handler = withDrh(() -> new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> isAllowed(final String name,
+                                                      final Optional<String> meta,
+                                                      final DeadboltHandler deadboltHandler,
+                                                      final Http.Context ctx)
+            {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture(true);
+            }
+        });
+
+        final Http.Context context = context();
+        for (int i = 0; i < 2; i++)
+        {
+            pass.accept(logic.dynamic(context,
+                                      handler,
+                                      Optional.of("json"),
+                                      "foo",
+                                      Optional.of("bar"),
+                                      ctx -> CompletableFuture.completedFuture(true),
+                                      (ctx, hdlr, content) -> CompletableFuture.completedFuture(false),
+                                      ConstraintPoint.CONTROLLER));
+        }
+        return calls.get();
+    }
+
     @Test
     public void testRoleBasedPermissions_noAssociatedRoles()
     {
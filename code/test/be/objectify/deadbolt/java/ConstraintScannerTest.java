@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.actions.AnnotationDescriptor;
+import be.objectify.deadbolt.java.actions.Composite;
+import be.objectify.deadbolt.java.actions.Group;
+import be.objectify.deadbolt.java.actions.Pattern;
+import be.objectify.deadbolt.java.actions.Restrict;
+import be.objectify.deadbolt.java.actions.SubjectPresent;
+import be.objectify.deadbolt.java.cache.DefaultCompositeCache;
+import be.objectify.deadbolt.java.cache.DefaultPatternCache;
+import be.objectify.deadbolt.java.cache.DefaultRolePermissionsCache;
+import be.objectify.deadbolt.java.composite.Constraint;
+import be.objectify.deadbolt.java.models.PatternType;
+import be.objectify.deadbolt.java.testsupport.TestHandlerCache;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.inject.Injector;
+
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+public class ConstraintScannerTest
+{
+    private final DefaultPatternCache patternCache = new DefaultPatternCache(100L);
+
+    private final DefaultCompositeCache compositeCache = new DefaultCompositeCache();
+
+    private final ConstraintScanner scanner = new ConstraintScanner(Mockito.mock(Injector.class),
+                                                                    getClass().getClassLoader(),
+                                                                    new ConstraintLogic(new DeadboltAnalyzer(),
+                                                                                        null,
+                                                                                        patternCache,
+                                                                                        Mockito.mock(ExecutionContextProvider.class)),
+                                                                    patternCache,
+                                                                    compositeCache,
+                                                                    new DefaultRolePermissionsCache(false,
+                                                                                                    0L,
+                                                                                                    0L,
+                                                                                                    System::currentTimeMillis));
+
+    @Test
+    public void testControllerMethod()
+    {
+        Assert.assertArrayEquals(new String[]{"controllers.Application", "index"},
+                                 ConstraintScanner.controllerMethod("controllers.Application.index").get());
+        Assert.assertArrayEquals(new String[]{"controllers.Application", "show"},
+                                 ConstraintScanner.controllerMethod("controllers.Application.show(id:Long, name:String)").get());
+        Assert.assertArrayEquals(new String[]{"controllers.Application", "index"},
+                                 ConstraintScanner.controllerMethod("@controllers.Application.index()").get());
+        Assert.assertFalse(ConstraintScanner.controllerMethod("index").isPresent());
+    }
+
+    @Test
+    public void testCollect()
+    {
+        final Map<Annotation, String> annotations = new IdentityHashMap<>();
+        ConstraintScanner.collect(ValidController.class,
+                                  Collections.singleton("index"),
+                                  annotations);
+        Assert.assertEquals(2,
+                            annotations.size());
+    }
+
+    @Test
+    public void testCollect_unroutedController()
+    {
+        final Map<Annotation, String> annotations = new IdentityHashMap<>();
+        ConstraintScanner.collect(ValidController.class,
+                                  Collections.singleton("hurdy"),
+                                  annotations);
+        Assert.assertTrue(annotations.isEmpty());
+    }
+
+    @Test
+    public void testScan_valid()
+    {
+        compositeCache.register("curatorOrSubscriber",
+                                Mockito.mock(Constraint.class));
+
+        final ConstraintScanner.Report report = scanner.scan(Collections.singletonList(ValidController.class.getName()));
+
+        Assert.assertEquals(1,
+                            report.controllers());
+        Assert.assertEquals(4,
+                            report.annotations());
+        Assert.assertTrue(report.problems().isEmpty());
+        Assert.assertTrue(patternCache.patternValues().contains("printers\\..*"));
+    }
+
+    @Test
+    public void testScan_problems()
+    {
+        final ConstraintScanner.Report report = scanner.scan(Collections.singletonList(InvalidController.class.getName()));
+
+        Assert.assertEquals(3,
+                            report.problems().size());
+        Assert.assertTrue(report.problems().stream().anyMatch(problem -> problem.contains("[curatorOrSubscribr]")));
+    }
+
+    @Test
+    public void testPrecompile_keepsHandler() throws Exception
+    {
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        final TestHandlerCache handlerCache = new TestHandlerCache(handler,
+                                                                   Collections.emptyMap());
+        final Annotation annotation = ValidController.class.getMethod("index").getAnnotation(SubjectPresent.class);
+        final Set<String> problems = new HashSet<>();
+
+        scanner.precompile(annotation,
+                           "index",
+                           Optional.of(handlerCache),
+                           problems);
+
+        Assert.assertTrue(problems.isEmpty());
+        Assert.assertSame(handler,
+                          AnnotationDescriptor.of(annotation).handler(handlerCache,
+                                                                      cache -> null));
+    }
+
+    @Test
+    public void testScan_unknownController()
+    {
+        final ConstraintScanner.Report report = scanner.scan(Collections.singletonList("controllers.DoesNotExist"));
+
+        Assert.assertEquals(0,
+                            report.annotations());
+        Assert.assertTrue(report.problems().isEmpty());
+    }
+
+    @Restrict(@Group("foo"))
+    public static class ValidController
+    {
+        @SubjectPresent
+        public void index()
+        {
+        }
+
+        @Pattern(value = "printers\\..*",
+                 patternType = PatternType.REGEX)
+        public void printers()
+        {
+        }
+
+        @Composite("curatorOrSubscriber")
+        public void composite()
+        {
+        }
+    }
+
+    public static class InvalidController
+    {
+        @Restrict(@Group("!"))
+        public void restrict()
+        {
+        }
+
+        @Pattern(value = "printers[",
+                 patternType = PatternType.REGEX)
+        public void printers()
+        {
+        }
+
+        @Composite("curatorOrSubscribr")
+        public void composite()
+        {
+        }
+    }
+}
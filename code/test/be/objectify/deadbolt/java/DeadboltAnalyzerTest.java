@@ -23,6 +23,7 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -461,6 +462,57 @@ public class DeadboltAnalyzerTest
                                                                       Optional.of("printers.edit")));
     }
 
+    @Test
+    public void testHasAllRoles_registryFull()
+    {
+        final RoleRegistry registry = new RoleRegistry();
+        for (int i = 0; i < RoleRegistry.MAX_CACHED_GROUPS; i++)
+        {
+            registry.cachedGroup(new String[]{"role" + i});
+        }
+        final DeadboltAnalyzer analyzer = new DeadboltAnalyzer(registry);
+        final Optional<Subject> subject = Optional.of(new TestSubject.Builder().roles(Collections.singletonList(new TestRole("admin")))
+                                                                               .build());
+
+        Assert.assertTrue(analyzer.hasAllRoles(subject,
+                                               new String[]{"admin", "!editor"}));
+        Assert.assertFalse(analyzer.hasAllRoles(subject,
+                                                new String[]{"admin", "editor"}));
+        Assert.assertTrue(analyzer.checkAnyRoleGroup(subject,
+                                                     Arrays.asList(new String[]{"editor"},
+                                                                   new String[]{"!editor"})));
+        Assert.assertEquals(-1,
+                            registry.lookup("admin"));
+    }
+
+    @Test
+    public void testCheckAnyRoleGroup_compiled()
+    {
+        final DeadboltAnalyzer analyzer = new DeadboltAnalyzer();
+        final RoleGroups roleGroups = analyzer.compile(Arrays.asList(new String[]{"foo", "!bar"},
+                                                                     new String[]{"hurdy"}));
+        Assert.assertTrue(analyzer.checkAnyRoleGroup(Optional.of(new TestSubject.Builder().roles(Collections.singletonList(new TestRole("foo")))
+                                                                                          .build()),
+                                                     roleGroups));
+        Assert.assertFalse(analyzer.checkAnyRoleGroup(Optional.of(new TestSubject.Builder().roles(Arrays.asList(new TestRole("foo"),
+                                                                                                                new TestRole("bar")))
+                                                                                           .build()),
+                                                      roleGroups));
+    }
+
+    @Test
+    public void testCheckAnyRoleGroup_compiledByAnotherAnalyzer()
+    {
+        // role ids belong to the registry that assigned them, so groups compiled elsewhere are compiled again
+        final DeadboltAnalyzer other = new DeadboltAnalyzer();
+        other.compile(Collections.singletonList(new String[]{"bar"}));
+        final RoleGroups roleGroups = other.compile(Collections.singletonList(new String[]{"foo"}));
+
+        Assert.assertTrue(new DeadboltAnalyzer().checkAnyRoleGroup(Optional.of(new TestSubject.Builder().roles(Collections.singletonList(new TestRole("foo")))
+                                                                                                        .build()),
+                                                                   roleGroups));
+    }
+
     private static class TestSubject implements Subject
     {
         private String identifier;
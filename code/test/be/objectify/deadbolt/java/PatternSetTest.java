@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.testsupport.TestPermission;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class PatternSetTest
+{
+    private static final List<String> PATTERNS = Arrays.asList("printers.view",
+                                                               "killer.undead.*",
+                                                               "printers\\.admin\\..*",
+                                                               ".*\\.read",
+                                                               "a.[bgj].c",
+                                                               "(?i)ADMIN",
+                                                               "(x)\\1",
+                                                               "\\d+");
+
+    @Test
+    public void testEmpty()
+    {
+        Assert.assertTrue(PatternSet.EMPTY.isEmpty());
+        Assert.assertFalse(PatternSet.EMPTY.test("foo"));
+        Assert.assertTrue(PatternSet.of(Collections.singletonList(null)).isEmpty());
+    }
+
+    @Test
+    public void testMatchesLikeEachPattern()
+    {
+        final PatternSet set = set(PATTERNS);
+        for (String value : Arrays.asList("printers.view",
+                                          "printersXview",
+                                          "printers.vie",
+                                          "killer.undead",
+                                          "killerXundeadYzombie",
+                                          "killer.undead.zom\nbie",
+                                          "printers.admin.",
+                                          "printers.admin.edit",
+                                          "printersXadmin.edit",
+                                          "foo.read",
+                                          "foo\n.read",
+                                          ".read",
+                                          "read",
+                                          "a.g.c",
+                                          "a.h.c",
+                                          "admin",
+                                          "xx",
+                                          "xy",
+                                          "12345",
+                                          ""))
+        {
+            boolean expected = false;
+            for (String pattern : PATTERNS)
+            {
+                expected |= Pattern.matches(pattern,
+                                            value);
+            }
+            Assert.assertEquals(value,
+                                expected,
+                                set.test(value));
+        }
+    }
+
+    @Test
+    public void testMatchesAny()
+    {
+        final PatternSet set = set(PATTERNS);
+        Assert.assertTrue(set.matchesAny(Arrays.asList(new TestPermission("foo"),
+                                                       new TestPermission("killer.undead.vampire"))));
+        Assert.assertFalse(set.matchesAny(Arrays.asList(new TestPermission("foo"),
+                                                        new TestPermission("bar"))));
+        Assert.assertFalse(set.matchesAny(Collections.emptyList()));
+        Assert.assertFalse(set.matchesAny(null));
+    }
+
+    @Test
+    public void testNullValue()
+    {
+        Assert.assertFalse(set(PATTERNS).test(null));
+    }
+
+    private static PatternSet set(final List<String> patterns)
+    {
+        return PatternSet.of(patterns.stream()
+                                     .map(Pattern::compile)
+                                     .map(CompiledPattern::of)
+                                     .collect(Collectors.toList()));
+    }
+}
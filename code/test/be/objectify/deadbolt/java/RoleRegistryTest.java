@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java;
+
+import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.testsupport.TestRole;
+import be.objectify.deadbolt.java.testsupport.TestSubject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+public class RoleRegistryTest
+{
+    private final RoleRegistry registry = new RoleRegistry();
+
+    @Test
+    public void testIntern()
+    {
+        final int foo = registry.intern("foo");
+        final int bar = registry.intern("bar");
+        Assert.assertTrue(foo != bar);
+        Assert.assertEquals(foo,
+                            registry.intern("foo"));
+        Assert.assertEquals(foo,
+                            registry.lookup("foo"));
+        Assert.assertEquals(-1,
+                            registry.lookup("hurdy"));
+    }
+
+    @Test
+    public void testGroup_cached()
+    {
+        Assert.assertSame(registry.group(new String[]{"foo", "!bar"}),
+                          registry.group(new String[]{"foo", "!bar"}));
+    }
+
+    @Test
+    public void testGroup_empty()
+    {
+        Assert.assertSame(RoleGroup.EMPTY,
+                          registry.group(null));
+        Assert.assertSame(RoleGroup.EMPTY,
+                          registry.group(new String[0]));
+        Assert.assertFalse(RoleGroup.EMPTY.test(registry.heldRoles(subject("foo"))));
+    }
+
+    @Test
+    public void testGroup_required()
+    {
+        final RoleGroup group = registry.group(new String[]{"foo", "bar"});
+        Assert.assertTrue(group.test(registry.heldRoles(subject("foo", "bar", "hurdy"))));
+        Assert.assertFalse(group.test(registry.heldRoles(subject("foo"))));
+        Assert.assertFalse(group.test(registry.heldRoles(Optional.empty())));
+    }
+
+    @Test
+    public void testGroup_forbidden()
+    {
+        final RoleGroup group = registry.group(new String[]{"foo", "!bar"});
+        Assert.assertTrue(group.test(registry.heldRoles(subject("foo"))));
+        Assert.assertFalse(group.test(registry.heldRoles(subject("foo", "bar"))));
+        Assert.assertFalse(group.test(registry.heldRoles(subject("bar"))));
+    }
+
+    @Test
+    public void testGroup_requiredAndForbidden()
+    {
+        final RoleGroup group = registry.group(new String[]{"foo", "!foo"});
+        Assert.assertFalse(group.test(registry.heldRoles(subject("foo"))));
+        Assert.assertFalse(group.test(registry.heldRoles(subject("bar"))));
+    }
+
+    @Test
+    public void testGroup_manyRoles()
+    {
+        for (int i = 0; i < 200; i++)
+        {
+            registry.intern("role" + i);
+        }
+        final RoleGroup group = registry.group(new String[]{"role3", "role150", "!role199"});
+        Assert.assertTrue(group.test(registry.heldRoles(subject("role3", "role150", "role198"))));
+        Assert.assertFalse(group.test(registry.heldRoles(subject("role3", "role150", "role199"))));
+        Assert.assertFalse(group.test(registry.heldRoles(subject("role3"))));
+    }
+
+    @Test
+    public void testHeldRoles_newRolesAfterSubject()
+    {
+        // bitsets created before a role name is interned can't contain it
+        final long[] heldRoles = registry.heldRoles(subject("foo"));
+        Assert.assertFalse(registry.group(new String[]{"foo"}).test(heldRoles));
+        Assert.assertTrue(registry.group(new String[]{"foo"}).test(registry.heldRoles(subject("foo"))));
+    }
+
+    @Test
+    public void testCachedGroup_bounded()
+    {
+        for (int i = 0; i < RoleRegistry.MAX_CACHED_GROUPS; i++)
+        {
+            Assert.assertNotNull(registry.cachedGroup(new String[]{"role" + (i % 10), "!other" + i}));
+        }
+        Assert.assertNull(registry.cachedGroup(new String[]{"adhoc"}));
+        Assert.assertEquals(-1,
+                            registry.lookup("adhoc"));
+        Assert.assertNotNull(registry.cachedGroup(new String[]{"role1", "!other1"}));
+
+        // compiling is still possible, it just isn't cached
+        final RoleGroup group = registry.group(new String[]{"adhoc"});
+        Assert.assertNotSame(group,
+                             registry.group(new String[]{"adhoc"}));
+        Assert.assertTrue(group.test(registry.heldRoles(subject("adhoc"))));
+    }
+
+    @Test
+    public void testTest_reusesBitset()
+    {
+        final RoleGroup foo = registry.group(new String[]{"foo"});
+        final RoleGroup bar = registry.group(new String[]{"bar"});
+        Assert.assertTrue(registry.test(subject("foo"),
+                                        foo));
+        Assert.assertFalse(registry.test(subject("bar"),
+                                         foo));
+        Assert.assertTrue(registry.test(subject("bar"),
+                                        bar));
+        Assert.assertFalse(registry.test(Optional.empty(),
+                                         bar));
+        Assert.assertTrue(registry.test(subject("foo", "bar"),
+                                        registry.groups(Arrays.asList(new String[]{"hurdy"},
+                                                                      new String[]{"foo", "bar"}))));
+    }
+
+    @Test
+    public void testGroups()
+    {
+        final RoleGroups groups = registry.groups(Arrays.asList(new String[]{"foo", "bar"},
+                                                                new String[]{"hurdy", "!gurdy"}));
+        Assert.assertEquals(2,
+                            groups.size());
+        Assert.assertTrue(groups.test(registry.heldRoles(subject("foo", "bar"))));
+        Assert.assertTrue(groups.test(registry.heldRoles(subject("hurdy"))));
+        Assert.assertFalse(groups.test(registry.heldRoles(subject("foo", "gurdy"))));
+        Assert.assertFalse(groups.test(registry.heldRoles(Optional.empty())));
+    }
+
+    @Test
+    public void testGroups_empty()
+    {
+        final RoleGroups groups = registry.groups(Arrays.asList(new String[0],
+                                                                null));
+        Assert.assertFalse(groups.test(registry.heldRoles(subject("foo"))));
+    }
+
+    @Test
+    public void testGroups_roleNamesAreCopied()
+    {
+        final String[] roleNames = {"foo"};
+        final RoleGroups groups = registry.groups(Arrays.<String[]>asList(roleNames));
+        roleNames[0] = "bar";
+        Assert.assertTrue(groups.test(registry.heldRoles(subject("foo"))));
+        Assert.assertEquals("foo",
+                            groups.roleNames().get(0)[0]);
+    }
+
+    @Test
+    public void testGroups_fingerprint()
+    {
+        final List<String[]> roleNames = Arrays.asList(new String[]{"foo", "!bar"},
+                                                       new String[]{"hurdy"});
+        Assert.assertEquals(ConstraintLogic.fingerprint("restrict",
+                                                        roleNames),
+                            registry.groups(roleNames).fingerprint());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testGroups_nullRoleName()
+    {
+        registry.groups(Arrays.<String[]>asList(new String[]{"foo", null}));
+    }
+
+    @Test
+    public void testGroups_emptyNegation()
+    {
+        final RoleGroups groups = registry.groups(Arrays.<String[]>asList(new String[]{"foo", "!"}));
+
+        Assert.assertTrue(groups.test(registry.heldRoles(subject("foo"))));
+        Assert.assertFalse(groups.test(registry.heldRoles(subject("foo",
+                                                                  ""))));
+    }
+
+    @Test
+    public void testGroups_emptyRoleName()
+    {
+        final RoleGroups groups = registry.groups(Arrays.<String[]>asList(new String[]{""}));
+
+        Assert.assertFalse(groups.test(registry.heldRoles(subject("foo"))));
+        Assert.assertTrue(groups.test(registry.heldRoles(subject(""))));
+    }
+
+    private Optional<Subject> subject(final String... roleNames)
+    {
+        final TestSubject.Builder builder = new TestSubject.Builder();
+        for (String roleName : roleNames)
+        {
+            builder.role(new TestRole(roleName));
+        }
+        return Optional.of(builder.build());
+    }
+}
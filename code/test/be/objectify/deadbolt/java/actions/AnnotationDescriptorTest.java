@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.actions;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.cache.HandlerCache;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class AnnotationDescriptorTest
+{
+    @Test
+    public void testRestrict() throws NoSuchMethodException
+    {
+        final AnnotationDescriptor descriptor = AnnotationDescriptor.of(annotation("restricted",
+                                                                                   Restrict.class));
+
+        Assert.assertTrue(descriptor.deferred());
+        Assert.assertEquals("foo",
+                            descriptor.handlerKey());
+        Assert.assertEquals(Optional.of("json"),
+                            descriptor.content());
+        Assert.assertEquals(2,
+                            descriptor.roleGroups().size());
+        Assert.assertArrayEquals(new String[]{"foo", "bar"},
+                                 descriptor.roleGroups().get(0));
+        Assert.assertArrayEquals(new String[]{"hurdy"},
+                                 descriptor.roleGroups().get(1));
+    }
+
+    @Test
+    public void testDefaults() throws NoSuchMethodException
+    {
+        final AnnotationDescriptor descriptor = AnnotationDescriptor.of(annotation("present",
+                                                                                   SubjectPresent.class));
+
+        Assert.assertFalse(descriptor.deferred());
+        Assert.assertTrue(descriptor.forceBeforeAuthCheck());
+        Assert.assertEquals(ConfigKeys.DEFAULT_HANDLER_KEY,
+                            descriptor.handlerKey());
+        Assert.assertEquals(Optional.of(""),
+                            descriptor.content());
+        Assert.assertEquals(Optional.empty(),
+                            descriptor.meta());
+        Assert.assertTrue(descriptor.roleGroups().isEmpty());
+    }
+
+    @Test
+    public void testMeta() throws NoSuchMethodException
+    {
+        final AnnotationDescriptor descriptor = AnnotationDescriptor.of(annotation("patterned",
+                                                                                   Pattern.class));
+
+        Assert.assertEquals(Optional.of("hurdy"),
+                            descriptor.meta());
+    }
+
+    @Test
+    public void testOf_cachedPerInstance() throws NoSuchMethodException
+    {
+        final Restrict restrict = annotation("restricted",
+                                             Restrict.class);
+
+        Assert.assertSame(AnnotationDescriptor.of(restrict),
+                          AnnotationDescriptor.of(restrict));
+    }
+
+    @Test
+    public void testOf_notAnAnnotation()
+    {
+        final AnnotationDescriptor descriptor = AnnotationDescriptor.of(new Object());
+
+        Assert.assertFalse(descriptor.deferred());
+        Assert.assertNull(descriptor.handlerKey());
+        Assert.assertEquals(Optional.empty(),
+                            descriptor.content());
+    }
+
+    @Test
+    public void testOf_manyAnnotations()
+    {
+        final List<Object> annotations = new ArrayList<>();
+        final List<AnnotationDescriptor> descriptors = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            annotations.add(new Object());
+            descriptors.add(AnnotationDescriptor.of(annotations.get(i)));
+        }
+
+        for (int i = 0; i < annotations.size(); i++)
+        {
+            Assert.assertSame(descriptors.get(i),
+                              AnnotationDescriptor.of(annotations.get(i)));
+        }
+    }
+
+    @Test
+    public void testOf_annotationNotRetained() throws InterruptedException
+    {
+        Object annotation = new Object();
+        final WeakReference<Object> reference = new WeakReference<>(annotation);
+        AnnotationDescriptor.of(annotation);
+
+        annotation = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(reference.get());
+    }
+
+    @Test
+    public void testHandler_resolvedOncePerHandlerCache()
+    {
+        final AnnotationDescriptor descriptor = AnnotationDescriptor.of(new Object());
+        final HandlerCache first = Mockito.mock(HandlerCache.class);
+        final HandlerCache second = Mockito.mock(HandlerCache.class);
+        final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+        final AtomicInteger resolutions = new AtomicInteger();
+        final Function<HandlerCache, DeadboltHandler> resolver = handlerCache ->
+        {
+            resolutions.incrementAndGet();
+            return handler;
+        };
+
+        Assert.assertSame(handler,
+                          descriptor.handler(first,
+                                             resolver));
+        Assert.assertSame(handler,
+                          descriptor.handler(first,
+                                             resolver));
+        Assert.assertEquals(1,
+                            resolutions.get());
+
+        Assert.assertSame(handler,
+                          descriptor.handler(second,
+                                             resolver));
+        Assert.assertEquals(2,
+                            resolutions.get());
+    }
+
+    private static <A extends Annotation> A annotation(final String methodName,
+                                                       final Class<A> type) throws NoSuchMethodException
+    {
+        return Annotated.class.getDeclaredMethod(methodName).getAnnotation(type);
+    }
+
+    private static class Annotated
+    {
+        @Restrict(value = {@Group({"foo", "bar"}), @Group("hurdy")},
+                  content = "json",
+                  handlerKey = "foo",
+                  deferred = true)
+        public void restricted()
+        {
+        }
+
+        @SubjectPresent(forceBeforeAuthCheck = true)
+        public void present()
+        {
+        }
+
+        @Pattern(value = "foo",
+                 meta = "hurdy")
+        public void patterned()
+        {
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.actions;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.ExecutionContextProvider;
+import be.objectify.deadbolt.java.cache.HandlerCache;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.Configuration;
+import play.mvc.Action;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FusedActionsTest
+{
+    private final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
+
+    private final Http.Context ctx = Mockito.mock(Http.Context.class);
+
+    private final AtomicInteger terminalCalls = new AtomicInteger();
+
+    private final Action<Void> terminal = new Action<Void>()
+    {
+        @Override
+        public CompletionStage<Result> call(final Http.Context context)
+        {
+            terminalCalls.incrementAndGet();
+            return CompletableFuture.completedFuture(Results.ok());
+        }
+    };
+
+    @Before
+    public void setUp()
+    {
+        ctx.args = new HashMap<>();
+        Mockito.when(handler.beforeAuthCheck(ctx))
+               .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    }
+
+    @Test
+    public void testOf()
+    {
+        final TestAction first = action(true,
+                                        false);
+        final TestAction second = action(true,
+                                         false);
+        first.delegate = second;
+        second.delegate = terminal;
+
+        Assert.assertEquals(2,
+                            FusedActions.of(first).size());
+    }
+
+    @Test
+    public void testCall_authorisedActionsArePassedThrough() throws Exception
+    {
+        final TestAction method = action(true,
+                                         false);
+        final TestAction controller = action(true,
+                                             false);
+        method.delegate = controller;
+        controller.delegate = terminal;
+
+        FusedActions.of(method).call(ctx);
+
+        Assert.assertEquals(1,
+                            method.executions.get());
+        Assert.assertEquals(0,
+                            controller.executions.get());
+        Assert.assertEquals(1,
+                            terminalCalls.get());
+    }
+
+    @Test
+    public void testCall_beforeAuthCheckOncePerHandler() throws Exception
+    {
+        final TestAction first = action(false,
+                                        false);
+        final TestAction second = action(true,
+                                         false);
+        first.delegate = second;
+        second.delegate = terminal;
+
+        FusedActions.of(first).call(ctx);
+
+        Assert.assertEquals(1,
+                            first.executions.get());
+        Assert.assertEquals(1,
+                            second.executions.get());
+        Mockito.verify(handler,
+                       Mockito.times(1)).beforeAuthCheck(ctx);
+        Assert.assertEquals(1,
+                            terminalCalls.get());
+    }
+
+    @Test
+    public void testCall_deferredInPlace() throws Exception
+    {
+        final TestAction deferred = action(false,
+                                           true);
+        final TestAction next = action(true,
+                                       false);
+        deferred.delegate = next;
+        next.delegate = terminal;
+
+        FusedActions.of(deferred).call(ctx);
+
+        Assert.assertEquals(1,
+                            deferred.executions.get());
+        Assert.assertEquals(1,
+                            next.executions.get());
+        Assert.assertFalse(deferred.isDeferred(ctx));
+        Assert.assertTrue(deferred.isIgnoringDeferred(ctx));
+    }
+
+    @Test
+    public void testCall_deferredAtEndOfStack() throws Exception
+    {
+        final TestAction first = action(false,
+                                        false);
+        final TestAction deferred = action(true,
+                                           true);
+        first.delegate = deferred;
+        deferred.delegate = terminal;
+
+        FusedActions.of(first).call(ctx);
+
+        Assert.assertEquals(0,
+                            deferred.executions.get());
+        Assert.assertSame(deferred,
+                          deferred.getDeferredAction(ctx));
+        Assert.assertEquals(1,
+                            terminalCalls.get());
+    }
+
+    private TestAction action(final boolean authorises,
+                              final boolean deferred)
+    {
+        final Restrict restrict = Mockito.mock(Restrict.class);
+        Mockito.when(restrict.deferred())
+               .thenReturn(deferred);
+        final TestAction action = new TestAction(authorises);
+        action.configuration = restrict;
+        return action;
+    }
+
+    private final class TestAction extends AbstractDeadboltAction<Restrict>
+    {
+        private final boolean authorises;
+        private final AtomicInteger executions = new AtomicInteger();
+
+        private TestAction(final boolean authorises)
+        {
+            super(Mockito.mock(HandlerCache.class),
+                  Mockito.mock(Configuration.class),
+                  Mockito.mock(ExecutionContextProvider.class));
+            this.authorises = authorises;
+        }
+
+        @Override
+        public CompletionStage<Result> execute(final Http.Context context) throws Exception
+        {
+            executions.incrementAndGet();
+            return preAuth(true,
+                           context,
+                           handler).thenCompose(preAuthResult -> authorises ? authorizeAndExecute(context)
+                                                                            : delegate.call(context));
+        }
+
+        @Override
+        protected boolean passesWhenAuthorised()
+        {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BoundedCacheTest
+{
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testGet_idleExpired()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10L,
+                                                                      1000L,
+                                                                      100L,
+                                                                      now::get);
+        cache.put("foo",
+                  "bar");
+        advance(100L);
+        Assert.assertEquals(Optional.empty(),
+                            cache.get("foo"));
+        Assert.assertEquals(1L,
+                            cache.stats().evictionCount());
+    }
+
+    @Test
+    public void testGet_readExtendsIdle()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10L,
+                                                                      1000L,
+                                                                      100L,
+                                                                      now::get);
+        cache.put("foo",
+                  "bar");
+        for (int i = 0; i < 5; i++)
+        {
+            advance(90L);
+            Assert.assertEquals(Optional.of("bar"),
+                                cache.get("foo"));
+        }
+        // the ttl still applies however often the entry is read
+        advance(600L);
+        Assert.assertEquals(Optional.empty(),
+                            cache.get("foo"));
+    }
+
+    @Test
+    public void testPut_leastRecentlyUsedIsEvicted()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(1L,
+                                                                      0L,
+                                                                      0L,
+                                                                      now::get);
+        cache.put("foo",
+                  "bar");
+        cache.put("hurdy",
+                  "gurdy");
+        Assert.assertEquals(Optional.empty(),
+                            cache.get("foo"));
+        Assert.assertEquals(Optional.of("gurdy"),
+                            cache.get("hurdy"));
+        Assert.assertEquals(1L,
+                            cache.size());
+    }
+
+    @Test
+    public void testRemoveIf()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10L,
+                                                                      0L,
+                                                                      0L,
+                                                                      now::get);
+        cache.put("foo",
+                  "bar");
+        cache.put("hurdy",
+                  "gurdy");
+        cache.removeIf((key, value) -> value.equals("bar"));
+        Assert.assertEquals(Optional.empty(),
+                            cache.get("foo"));
+        Assert.assertEquals(Optional.of("gurdy"),
+                            cache.get("hurdy"));
+    }
+
+    private void advance(final long millis)
+    {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.testsupport.TestPermission;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class CacheSnapshotTest
+{
+    @Test
+    public void testWriteAndRead() throws IOException
+    {
+        final Path path = Files.createTempFile("deadbolt",
+                                               ".snapshot");
+        try
+        {
+            final CacheSnapshot written = new CacheSnapshot("1.0",
+                                                            1000L,
+                                                            Arrays.asList("foo.*",
+                                                                          "bar"),
+                                                            Collections.singletonMap("handler",
+                                                                                     Collections.singletonMap("admin",
+                                                                                                              Arrays.asList("printer.print",
+                                                                                                                            "printer.\u00e9"))));
+            written.write(path);
+
+            final CacheSnapshot read = CacheSnapshot.read(path).get();
+            Assert.assertEquals("1.0",
+                                read.version());
+            Assert.assertEquals(1000L,
+                                read.createdAt());
+            Assert.assertEquals(written.patterns(),
+                                read.patterns());
+            Assert.assertEquals(written.rolePermissions(),
+                                read.rolePermissions());
+        }
+        finally
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testRead_notASnapshot() throws IOException
+    {
+        final Path path = Files.createTempFile("deadbolt",
+                                              ".snapshot");
+        try
+        {
+            Files.write(path,
+                        "hurdy gurdy".getBytes("UTF-8"));
+            Assert.assertEquals(Optional.empty(),
+                                CacheSnapshot.read(path));
+            Assert.assertEquals(Optional.empty(),
+                                CacheSnapshot.read(path.resolveSibling(path.getFileName() + ".missing")));
+        }
+        finally
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testRead_corruptLength() throws IOException
+    {
+        final Path path = Files.createTempFile("deadbolt",
+                                               ".snapshot");
+        try
+        {
+            Files.write(path,
+                        ByteBuffer.allocate(Integer.BYTES * 3)
+                                  .putInt(0x44424353)
+                                  .putInt(1)
+                                  .putInt(Integer.MAX_VALUE)
+                                  .array());
+            Assert.assertEquals(Optional.empty(),
+                                CacheSnapshot.read(path));
+        }
+        finally
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrite_rootPath() throws IOException
+    {
+        new CacheSnapshot("1.0",
+                          1000L,
+                          Collections.emptyList(),
+                          Collections.emptyMap()).write(Paths.get("/"));
+    }
+
+    @Test
+    public void testIsUsable()
+    {
+        final CacheSnapshot snapshot = new CacheSnapshot("1.0",
+                                                         1000L,
+                                                         Collections.emptyList(),
+                                                         Collections.emptyMap());
+        Assert.assertTrue(snapshot.isUsable("1.0",
+                                            1500L,
+                                            1000L));
+        Assert.assertFalse(snapshot.isUsable("1.1",
+                                             1500L,
+                                             1000L));
+        Assert.assertFalse(snapshot.isUsable("1.0",
+                                             2500L,
+                                             1000L));
+        Assert.assertFalse(snapshot.isUsable("1.0",
+                                             500L,
+                                             1000L));
+    }
+
+    @Test
+    public void testCaptureAndRestore()
+    {
+        final DefaultPatternCache patternCache = new DefaultPatternCache(100L);
+        patternCache.compiled("foo.*");
+        final DefaultRolePermissionsCache rolePermissionsCache = new DefaultRolePermissionsCache(true,
+                                                                                                 60000L,
+                                                                                                 30000L,
+                                                                                                 System::nanoTime);
+        rolePermissionsCache.preload("handler",
+                                     "admin",
+                                     Collections.singletonList(new TestPermission("printer.print")),
+                                     0L);
+
+        final CacheSnapshot snapshot = CacheSnapshot.capture("1.0",
+                                                             1000L,
+                                                             patternCache,
+                                                             rolePermissionsCache);
+
+        final DefaultPatternCache newPatternCache = new DefaultPatternCache(100L);
+        final DefaultRolePermissionsCache newRolePermissionsCache = new DefaultRolePermissionsCache(true,
+                                                                                                    60000L,
+                                                                                                    30000L,
+                                                                                                    System::nanoTime);
+        snapshot.restore(newPatternCache,
+                         newRolePermissionsCache,
+                         2000L);
+        Assert.assertEquals(new HashSet<>(Collections.singletonList("foo.*")),
+                            new HashSet<>(newPatternCache.patternValues()));
+        final Map<String, Map<String, List<String>>> loaded = newRolePermissionsCache.loaded();
+        Assert.assertEquals(Collections.singletonList("printer.print"),
+                            loaded.get("handler").get("admin"));
+    }
+
+    @Test
+    public void testRestore_permissionsOlderThanTtl()
+    {
+        final CacheSnapshot snapshot = new CacheSnapshot("1.0",
+                                                         1000L,
+                                                         Collections.singletonList("foo.*"),
+                                                         Collections.singletonMap("handler",
+                                                                                  Collections.singletonMap("admin",
+                                                                                                           Collections.singletonList("printer.print"))));
+        final DefaultPatternCache patternCache = new DefaultPatternCache(100L);
+        final DefaultRolePermissionsCache rolePermissionsCache = new DefaultRolePermissionsCache(true,
+                                                                                                 60000L,
+                                                                                                 30000L,
+                                                                                                 System::nanoTime);
+        snapshot.restore(patternCache,
+                         rolePermissionsCache,
+                         61000L);
+        Assert.assertEquals(new HashSet<>(Collections.singletonList("foo.*")),
+                            new HashSet<>(patternCache.patternValues()));
+        Assert.assertTrue(rolePermissionsCache.loaded().isEmpty());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CacheStatisticsTest
+{
+    @Test
+    public void testSnapshot()
+    {
+        final CacheStatistics statistics = new CacheStatistics(caches());
+
+        final Map<String, CacheStats> snapshot = statistics.snapshot();
+
+        Assert.assertEquals(Arrays.asList("pattern",
+                                          "empty",
+                                          "off-heap"),
+                            new ArrayList<>(snapshot.keySet()));
+        Assert.assertEquals(2L,
+                            snapshot.get("pattern").hitCount());
+        Assert.assertEquals(1L,
+                            snapshot.get("pattern").missCount());
+        Assert.assertEquals(1L,
+                            snapshot.get("pattern").loadCount());
+        Assert.assertEquals(CacheStats.EMPTY.hitCount(),
+                            snapshot.get("empty").hitCount());
+    }
+
+    @Test
+    public void testMetrics()
+    {
+        final CacheStatistics statistics = new CacheStatistics(caches());
+
+        Assert.assertEquals(2.0D / 3.0D,
+                            statistics.getHitRates().get("pattern"),
+                            0.0001D);
+        Assert.assertEquals(Long.valueOf(1L),
+                            statistics.getSizes().get("pattern"));
+        Assert.assertEquals(Long.valueOf(0L),
+                            statistics.getEvictionCounts().get("pattern"));
+        Assert.assertEquals(Long.valueOf(4096L),
+                            statistics.getEstimatedBytes().get("off-heap"));
+        // caches that don't measure their footprint are left out rather than reported as zero
+        Assert.assertFalse(statistics.getEstimatedBytes().containsKey("pattern"));
+    }
+
+    @Test
+    public void testJmx() throws Exception
+    {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(CacheStatistics.OBJECT_NAME + ",test=true");
+        server.registerMBean(new CacheStatistics(caches()),
+                             name);
+        try
+        {
+            Assert.assertNotNull(server.getAttribute(name,
+                                                     "HitCounts"));
+            Assert.assertNotNull(server.getAttribute(name,
+                                                     "AverageLoadPenaltyNanos"));
+        }
+        finally
+        {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private static Map<String, DeadboltCacheStats> caches()
+    {
+        final DefaultPatternCache patternCache = new DefaultPatternCache(10L);
+        for (int i = 0; i < 3; i++)
+        {
+            patternCache.compiled("foo");
+        }
+
+        final Map<String, DeadboltCacheStats> caches = new LinkedHashMap<>();
+        caches.put("pattern",
+                   patternCache);
+        caches.put("empty",
+                   new DeadboltCacheStats()
+                   {
+                   });
+        caches.put("off-heap",
+                   new DeadboltCacheStats()
+                   {
+                       @Override
+                       public CacheStats stats()
+                       {
+                           return new CacheStats(0L,
+                                                 0L,
+                                                 0L,
+                                                 0L,
+                                                 0L,
+                                                 0L,
+                                                 4096L);
+                       }
+                   });
+        return caches;
+    }
+}
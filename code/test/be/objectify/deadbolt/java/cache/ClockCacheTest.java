@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClockCacheTest
+{
+    @Test
+    public void testComputeIfAbsent_loadsOnce()
+    {
+        final ClockCache<String, String> cache = new ClockCache<>(10L);
+        final AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++)
+        {
+            Assert.assertEquals("FOO",
+                                cache.computeIfAbsent("foo",
+                                                      key ->
+                                                      {
+                                                          loads.incrementAndGet();
+                                                          return key.toUpperCase();
+                                                      }));
+        }
+        Assert.assertEquals(1,
+                            loads.get());
+        Assert.assertEquals(2L,
+                            cache.stats().hitCount());
+        Assert.assertEquals(1L,
+                            cache.stats().missCount());
+        Assert.assertEquals(1L,
+                            cache.stats().loadCount());
+    }
+
+    @Test
+    public void testPutIfAbsent_keepsExistingValue()
+    {
+        final ClockCache<String, String> cache = new ClockCache<>(10L);
+        Assert.assertEquals("bar",
+                            cache.putIfAbsent("foo",
+                                              "bar"));
+        Assert.assertEquals("bar",
+                            cache.putIfAbsent("foo",
+                                              "hurdy"));
+        Assert.assertEquals(0L,
+                            cache.stats().missCount());
+    }
+
+    @Test
+    public void testEviction_boundedSize()
+    {
+        final ClockCache<Integer, Integer> cache = new ClockCache<>(10L);
+        for (int i = 0; i < 100; i++)
+        {
+            cache.putIfAbsent(i,
+                              i);
+        }
+        Assert.assertEquals(10L,
+                            cache.size());
+        Assert.assertEquals(90L,
+                            cache.stats().evictionCount());
+    }
+
+    @Test
+    public void testEviction_recentlyReadEntrySurvives()
+    {
+        final ClockCache<Integer, Integer> cache = new ClockCache<>(2L);
+        cache.putIfAbsent(1,
+                          1);
+        cache.putIfAbsent(2,
+                          2);
+        // the third entry forces a sweep, which clears every flag before evicting
+        cache.putIfAbsent(3,
+                          3);
+        final int survivor = cache.get(1).isPresent() ? 1 : 2;
+        cache.get(survivor);
+        cache.putIfAbsent(4,
+                          4);
+        Assert.assertEquals(Optional.of(survivor),
+                            cache.get(survivor));
+        Assert.assertEquals(2L,
+                            cache.size());
+    }
+
+    @Test
+    public void testEviction_handCarriesOn()
+    {
+        // small integer keys are visited in ascending order
+        final ClockCache<Integer, Integer> cache = new ClockCache<>(4L);
+        for (int i = 0; i < 5; i++)
+        {
+            cache.putIfAbsent(i,
+                              i);
+        }
+        Assert.assertFalse(cache.keys().contains(0));
+
+        // the hand is past 0, so the new entry for 0 keeps its flag while 1 is evicted
+        cache.putIfAbsent(0,
+                          0);
+        Assert.assertFalse(cache.keys().contains(1));
+
+        // the hand carries on from 2 instead of starting again at 0
+        cache.putIfAbsent(5,
+                          5);
+        Assert.assertTrue(cache.keys().contains(0));
+        Assert.assertFalse(cache.keys().contains(2));
+    }
+}
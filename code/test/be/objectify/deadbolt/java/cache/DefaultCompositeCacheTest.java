@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.composite.Constraint;
+import be.objectify.deadbolt.java.composite.ExceptionThrowingConstraint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public class DefaultCompositeCacheTest
+{
+    private final Constraint foo = (context, handler, executor, globalMetaData, metaFn) -> CompletableFuture.completedFuture(true);
+
+    private final Constraint bar = (context, handler, executor, globalMetaData, metaFn) -> CompletableFuture.completedFuture(false);
+
+    @Test
+    public void testApply_registered()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.register("foo",
+                       foo);
+        Assert.assertSame(foo,
+                          cache.apply("foo").get());
+        Assert.assertEquals(1L,
+                            cache.version());
+    }
+
+    @Test
+    public void testApply_missingIsPreallocated()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        final Optional<Constraint> first = cache.apply("foo");
+        Assert.assertTrue(first.get() instanceof ExceptionThrowingConstraint);
+        Assert.assertSame(first,
+                          cache.apply("foo"));
+    }
+
+    @Test
+    public void testApply_missingThenRegistered()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.apply("foo");
+        cache.register("foo",
+                       foo);
+        Assert.assertSame(foo,
+                          cache.apply("foo").get());
+    }
+
+    @Test
+    public void testRegister_null()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.register("foo",
+                       foo);
+        cache.register("foo",
+                       null);
+        Assert.assertTrue(cache.apply("foo").get() instanceof ExceptionThrowingConstraint);
+        Assert.assertTrue(cache.constraints().isEmpty());
+    }
+
+    @Test
+    public void testReplaceAll_null()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        final Map<String, Constraint> constraints = new HashMap<>();
+        constraints.put("foo",
+                        null);
+        constraints.put("bar",
+                        bar);
+        cache.replaceAll(constraints);
+        Assert.assertTrue(cache.apply("foo").get() instanceof ExceptionThrowingConstraint);
+        Assert.assertEquals(Collections.singleton("bar"),
+                            cache.constraints().keySet());
+    }
+
+    @Test
+    public void testReplaceAll()
+    {
+        final DefaultCompositeCache cache = new DefaultCompositeCache();
+        cache.register("foo",
+                       foo);
+        cache.replaceAll(Collections.singletonMap("bar",
+                                                  bar));
+        Assert.assertSame(bar,
+                          cache.apply("bar").get());
+        Assert.assertTrue(cache.apply("foo").get() instanceof ExceptionThrowingConstraint);
+        Assert.assertEquals(Collections.singleton("bar"),
+                            cache.constraints().keySet());
+        Assert.assertEquals(2L,
+                            cache.version());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DefaultDecisionCacheTest
+{
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testGet_miss()
+    {
+        final DefaultDecisionCache cache = cache(10L);
+        Assert.assertEquals(Optional.empty(),
+                            cache.get(key("foo",
+                                          "restrict")));
+        Assert.assertEquals(1L,
+                            cache.stats().missCount());
+    }
+
+    @Test
+    public void testGet_hit()
+    {
+        final DefaultDecisionCache cache = cache(10L);
+        cache.put(key("foo",
+                      "restrict"),
+                  true);
+        cache.put(key("bar",
+                      "restrict"),
+                  false);
+        Assert.assertEquals(Optional.of(true),
+                            cache.get(key("foo",
+                                          "restrict")));
+        Assert.assertEquals(Optional.of(false),
+                            cache.get(key("bar",
+                                          "restrict")));
+        Assert.assertEquals(2L,
+                            cache.stats().hitCount());
+        Assert.assertEquals(2L,
+                            cache.stats().size());
+    }
+
+    @Test
+    public void testGet_expired()
+    {
+        final DefaultDecisionCache cache = cache(10L);
+        cache.put(key("foo",
+                      "restrict"),
+                  true);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000L));
+        Assert.assertEquals(Optional.empty(),
+                            cache.get(key("foo",
+                                          "restrict")));
+        Assert.assertEquals(1L,
+                            cache.stats().evictionCount());
+        Assert.assertEquals(0L,
+                            cache.stats().size());
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsed()
+    {
+        final DefaultDecisionCache cache = cache(1L);
+        cache.put(key("foo",
+                      "restrict"),
+                  true);
+        cache.put(key("bar",
+                      "restrict"),
+                  true);
+        Assert.assertEquals(1L,
+                            cache.stats().size());
+        Assert.assertEquals(1L,
+                            cache.stats().evictionCount());
+        Assert.assertEquals(Optional.of(true),
+                            cache.get(key("bar",
+                                          "restrict")));
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        final DefaultDecisionCache cache = cache(100L);
+        cache.put(key("foo",
+                      "restrict"),
+                  true);
+        cache.put(key("foo",
+                      "dynamic"),
+                  true);
+        cache.put(key("bar",
+                      "restrict"),
+                  true);
+        cache.invalidate("foo");
+        Assert.assertEquals(Optional.empty(),
+                            cache.get(key("foo",
+                                          "restrict")));
+        Assert.assertEquals(Optional.empty(),
+                            cache.get(key("foo",
+                                          "dynamic")));
+        Assert.assertEquals(Optional.of(true),
+                            cache.get(key("bar",
+                                          "restrict")));
+
+        cache.invalidateAll();
+        Assert.assertEquals(0L,
+                            cache.stats().size());
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        final DefaultDecisionCache cache = new DefaultDecisionCache(false,
+                                                                    false,
+                                                                    10L,
+                                                                    500L,
+                                                                    now::get);
+        cache.put(key("foo",
+                      "restrict"),
+                  true);
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertEquals(Optional.empty(),
+                            cache.get(key("foo",
+                                          "restrict")));
+    }
+
+    private DefaultDecisionCache cache(final long maxSize)
+    {
+        return new DefaultDecisionCache(true,
+                                        false,
+                                        maxSize,
+                                        500L,
+                                        now::get);
+    }
+
+    private static DecisionKey key(final String subjectIdentifier,
+                                   final String fingerprint)
+    {
+        return new DecisionKey(subjectIdentifier,
+                               "handler",
+                               fingerprint);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.ConfigKeys;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DynamicResourceHandler;
+import be.objectify.deadbolt.java.models.Subject;
+import org.junit.Assert;
+import org.junit.Test;
+import play.mvc.Http;
+import play.mvc.Result;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class DefaultHandlerCacheTest
+{
+    @Test
+    public void testApply_byHandlerName()
+    {
+        final DeadboltHandler main = new NamedHandler("main");
+        final DeadboltHandler other = new NamedHandler("other");
+        final DefaultHandlerCache cache = new DefaultHandlerCache(main,
+                                                                  Arrays.asList(main,
+                                                                                other));
+
+        Assert.assertSame(main,
+                          cache.apply("main"));
+        Assert.assertSame(other,
+                          cache.apply("other"));
+    }
+
+    @Test
+    public void testApply_byKey()
+    {
+        final DeadboltHandler main = new NamedHandler("main");
+        final DefaultHandlerCache cache = new DefaultHandlerCache(main,
+                                                                  Collections.singletonMap("foo",
+                                                                                           main));
+
+        Assert.assertSame(main,
+                          cache.apply("foo"));
+    }
+
+    @Test
+    public void testApply_defaultKey()
+    {
+        final DeadboltHandler main = new NamedHandler("main");
+        final DefaultHandlerCache cache = new DefaultHandlerCache(main,
+                                                                  Collections.emptyList());
+
+        Assert.assertSame(main,
+                          cache.get());
+        Assert.assertSame(main,
+                          cache.apply(ConfigKeys.DEFAULT_HANDLER_KEY));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testApply_unknownKey()
+    {
+        final DeadboltHandler main = new NamedHandler("main");
+        new DefaultHandlerCache(main,
+                                Collections.singletonList(main)).apply("other");
+    }
+
+    private static final class NamedHandler implements DeadboltHandler
+    {
+        private final String name;
+
+        private NamedHandler(final String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String handlerName()
+        {
+            return name;
+        }
+
+        @Override
+        public CompletionStage<Optional<Result>> beforeAuthCheck(final Http.Context context)
+        {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        @Override
+        public CompletionStage<Optional<? extends Subject>> getSubject(final Http.Context context)
+        {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        @Override
+        public CompletionStage<Result> onAuthFailure(final Http.Context context,
+                                                     final Optional<String> content)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Optional<DynamicResourceHandler>> getDynamicResourceHandler(final Http.Context context)
+        {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DynamicResourceHandler;
+import be.objectify.deadbolt.java.models.Permission;
+import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.testsupport.TestPermission;
+import org.junit.Assert;
+import org.junit.Test;
+import play.mvc.Http;
+import play.mvc.Result;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class DefaultRolePermissionsCacheTest
+{
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void testGet_cached() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = cache();
+        final DeadboltHandler handler = handler(() -> CompletableFuture.completedFuture(permissions("a.b")));
+        Assert.assertEquals("a.b",
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().get(0).getValue());
+        Assert.assertEquals("a.b",
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().get(0).getValue());
+        Assert.assertEquals(1,
+                            calls.get());
+        Assert.assertEquals(1L,
+                            cache.stats().hitCount());
+        Assert.assertEquals(1L,
+                            cache.stats().missCount());
+    }
+
+    @Test
+    public void testGet_singleFlight() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = cache();
+        final CompletableFuture<List<? extends Permission>> pending = new CompletableFuture<>();
+        final DeadboltHandler handler = handler(() -> pending);
+        final CompletionStage<List<? extends Permission>> first = cache.get(handler,
+                                                                            "foo");
+        final CompletionStage<List<? extends Permission>> second = cache.get(handler,
+                                                                             "foo");
+        pending.complete(permissions("a.b"));
+        Assert.assertEquals(1,
+                            first.toCompletableFuture().get().size());
+        Assert.assertEquals(1,
+                            second.toCompletableFuture().get().size());
+        Assert.assertEquals(1,
+                            calls.get());
+    }
+
+    @Test
+    public void testGet_expired() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = cache();
+        final DeadboltHandler handler = handler(() -> CompletableFuture.completedFuture(permissions("a.b")));
+        cache.get(handler,
+                  "foo").toCompletableFuture().get();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000L));
+        cache.get(handler,
+                  "foo").toCompletableFuture().get();
+        Assert.assertEquals(2,
+                            calls.get());
+        Assert.assertEquals(1L,
+                            cache.stats().evictionCount());
+    }
+
+    @Test
+    public void testGet_refreshAhead() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = cache();
+        final AtomicInteger version = new AtomicInteger();
+        final DeadboltHandler handler = handler(() -> CompletableFuture.completedFuture(permissions("v" + version.incrementAndGet())));
+        Assert.assertEquals("v1",
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().get(0).getValue());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600L));
+        // the stale value is returned while the reload happens
+        Assert.assertEquals("v1",
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().get(0).getValue());
+        Assert.assertEquals("v2",
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().get(0).getValue());
+        Assert.assertEquals(2,
+                            calls.get());
+    }
+
+    @Test
+    public void testGet_failureIsNotCached() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = cache();
+        final AtomicInteger attempts = new AtomicInteger();
+        final DeadboltHandler handler = handler(() ->
+                                                {
+                                                    final CompletableFuture<List<? extends Permission>> future = new CompletableFuture<>();
+                                                    if (attempts.incrementAndGet() == 1)
+                                                    {
+                                                        future.completeExceptionally(new IllegalStateException("foo"));
+                                                    }
+                                                    else
+                                                    {
+                                                        future.complete(permissions("a.b"));
+                                                    }
+                                                    return future;
+                                                });
+        Assert.assertTrue(cache.get(handler,
+                                    "foo").toCompletableFuture().isCompletedExceptionally());
+        Assert.assertEquals(1,
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().size());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = cache();
+        final DeadboltHandler handler = handler(() -> CompletableFuture.completedFuture(permissions("a.b")));
+        cache.get(handler,
+                  "foo").toCompletableFuture().get();
+        cache.get(handler,
+                  "bar").toCompletableFuture().get();
+        cache.invalidate("foo");
+        Assert.assertEquals(1L,
+                            cache.stats().size());
+        cache.get(handler,
+                  "foo").toCompletableFuture().get();
+        Assert.assertEquals(3,
+                            calls.get());
+    }
+
+    @Test
+    public void testPreload_keepsAge() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = cache();
+        final DeadboltHandler handler = handler(() -> CompletableFuture.completedFuture(permissions("a.b")));
+        cache.preload(handler.handlerName(),
+                      "foo",
+                      permissions("c.d"),
+                      800L);
+        cache.preload(handler.handlerName(),
+                      "bar",
+                      permissions("c.d"),
+                      1000L);
+        Assert.assertEquals(Collections.singleton("foo"),
+                            cache.loaded().get(handler.handlerName()).keySet());
+
+        // due for a refresh, so the preloaded value is returned while it reloads
+        Assert.assertEquals("c.d",
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().get(0).getValue());
+        Assert.assertEquals(1,
+                            calls.get());
+
+        cache.invalidateAll();
+        cache.preload(handler.handlerName(),
+                      "foo",
+                      permissions("c.d"),
+                      800L);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200L));
+        Assert.assertEquals("a.b",
+                            cache.get(handler,
+                                      "foo").toCompletableFuture().get().get(0).getValue());
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        final DefaultRolePermissionsCache cache = new DefaultRolePermissionsCache(false,
+                                                                                  1000L,
+                                                                                  500L,
+                                                                                  now::get);
+        final DeadboltHandler handler = handler(() -> CompletableFuture.completedFuture(permissions("a.b")));
+        cache.get(handler,
+                  "foo").toCompletableFuture().get();
+        cache.get(handler,
+                  "foo").toCompletableFuture().get();
+        Assert.assertEquals(2,
+                            calls.get());
+    }
+
+    private DefaultRolePermissionsCache cache()
+    {
+        return new DefaultRolePermissionsCache(true,
+                                               1000L,
+                                               500L,
+                                               now::get);
+    }
+
+    private static List<? extends Permission> permissions(final String value)
+    {
+        return Collections.singletonList(new TestPermission(value));
+    }
+
+    private DeadboltHandler handler(final Supplier<CompletionStage<List<? extends Permission>>> permissions)
+    {
+        return new DeadboltHandler()
+        {
+            @Override
+            public CompletionStage<Optional<Result>> beforeAuthCheck(final Http.Context context)
+            {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+
+            @Override
+            public CompletionStage<Optional<? extends Subject>> getSubject(final Http.Context context)
+            {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+
+            @Override
+            public CompletionStage<Result> onAuthFailure(final Http.Context context,
+                                                         final Optional<String> content)
+            {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletionStage<Optional<DynamicResourceHandler>> getDynamicResourceHandler(final Http.Context context)
+            {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+
+            @Override
+            public CompletionStage<List<? extends Permission>> getPermissionsForRole(final String roleName)
+            {
+                calls.incrementAndGet();
+                return permissions.get();
+            }
+        };
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.AbstractFakeApplicationTest;
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.NoPreAuthDeadboltHandler;
+import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.testsupport.TestHandlerCache;
+import be.objectify.deadbolt.java.testsupport.TestSubject;
+import org.junit.Assert;
+import org.junit.Test;
+import play.mvc.Http;
+
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DefaultSubjectCacheTest extends AbstractFakeApplicationTest
+{
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicReference<CompletableFuture<Optional<? extends Subject>>> load = new AtomicReference<>();
+
+    @Test
+    public void testApply_cachedAcrossRequests() throws Exception
+    {
+        final DefaultSubjectCache subjectCache = subjectCache(true,
+                                                              false);
+        final DeadboltHandler handler = handler(Optional.of("session"));
+        load.set(CompletableFuture.completedFuture(Optional.of(new TestSubject.Builder().identifier("foo").build())));
+
+        for (int i = 0; i < 2; i++)
+        {
+            Assert.assertEquals("foo",
+                                subjectCache.apply(handler,
+                                                   context())
+                                            .toCompletableFuture()
+                                            .get()
+                                            .get()
+                                            .getIdentifier());
+        }
+        Assert.assertEquals(1,
+                            calls.get());
+
+        subjectCache.invalidateSubject("foo");
+        subjectCache.apply(handler,
+                           context())
+                    .toCompletableFuture()
+                    .get();
+        Assert.assertEquals(2,
+                            calls.get());
+    }
+
+    @Test
+    public void testApply_noSessionKey() throws Exception
+    {
+        final DefaultSubjectCache subjectCache = subjectCache(true,
+                                                              true);
+        final DeadboltHandler handler = handler(Optional.empty());
+        load.set(CompletableFuture.completedFuture(Optional.of(new TestSubject.Builder().identifier("foo").build())));
+
+        for (int i = 0; i < 2; i++)
+        {
+            subjectCache.apply(handler,
+                               context())
+                        .toCompletableFuture()
+                        .get();
+        }
+        Assert.assertEquals(2,
+                            calls.get());
+    }
+
+    @Test
+    public void testApply_singleFlight() throws Exception
+    {
+        final DefaultSubjectCache subjectCache = subjectCache(false,
+                                                              true);
+        final DeadboltHandler handler = handler(Optional.of("session"));
+        load.set(new CompletableFuture<>());
+
+        final CompletionStage<Optional<? extends Subject>> first = subjectCache.apply(handler,
+                                                                                      context());
+        final CompletionStage<Optional<? extends Subject>> second = subjectCache.apply(handler,
+                                                                                       context());
+        load.get().complete(Optional.of(new TestSubject.Builder().identifier("foo").build()));
+
+        Assert.assertEquals("foo",
+                            first.toCompletableFuture().get().get().getIdentifier());
+        Assert.assertEquals("foo",
+                            second.toCompletableFuture().get().get().getIdentifier());
+        Assert.assertEquals(1,
+                            calls.get());
+    }
+
+    @Test
+    public void testApply_singleFlight_failureIsNotCached() throws Exception
+    {
+        final DefaultSubjectCache subjectCache = subjectCache(false,
+                                                              true);
+        final DeadboltHandler handler = handler(Optional.of("session"));
+        load.set(new CompletableFuture<>());
+
+        final CompletionStage<Optional<? extends Subject>> first = subjectCache.apply(handler,
+                                                                                      context());
+        final CompletionStage<Optional<? extends Subject>> second = subjectCache.apply(handler,
+                                                                                       context());
+        load.get().completeExceptionally(new IllegalStateException("user store is down"));
+        assertFails(first);
+        assertFails(second);
+
+        load.set(CompletableFuture.completedFuture(Optional.of(new TestSubject.Builder().identifier("foo").build())));
+        Assert.assertEquals("foo",
+                            subjectCache.apply(handler,
+                                               context())
+                                        .toCompletableFuture()
+                                        .get()
+                                        .get()
+                                        .getIdentifier());
+        Assert.assertEquals(2,
+                            calls.get());
+    }
+
+    @Test
+    public void testApply_invalidatedWhileLoading() throws Exception
+    {
+        final DefaultSubjectCache subjectCache = subjectCache(true,
+                                                              true);
+        final DeadboltHandler handler = handler(Optional.of("session"));
+        load.set(new CompletableFuture<>());
+
+        final CompletionStage<Optional<? extends Subject>> stale = subjectCache.apply(handler,
+                                                                                      context());
+        subjectCache.invalidateSubject("foo");
+        load.get().complete(Optional.of(new TestSubject.Builder().identifier("foo").build()));
+        Assert.assertEquals("foo",
+                            stale.toCompletableFuture().get().get().getIdentifier());
+
+        load.set(CompletableFuture.completedFuture(Optional.of(new TestSubject.Builder().identifier("bar").build())));
+        for (int i = 0; i < 2; i++)
+        {
+            Assert.assertEquals("bar",
+                                subjectCache.apply(handler,
+                                                   context())
+                                            .toCompletableFuture()
+                                            .get()
+                                            .get()
+                                            .getIdentifier());
+        }
+        Assert.assertEquals(2,
+                            calls.get());
+    }
+
+    @Test
+    public void testApply_singleFlight_invalidateStartsNewLoad() throws Exception
+    {
+        final DefaultSubjectCache subjectCache = subjectCache(false,
+                                                              true);
+        final DeadboltHandler handler = handler(Optional.of("session"));
+        final CompletableFuture<Optional<? extends Subject>> stale = new CompletableFuture<>();
+        load.set(stale);
+
+        final CompletionStage<Optional<? extends Subject>> first = subjectCache.apply(handler,
+                                                                                      context());
+        subjectCache.invalidate("session");
+        load.set(CompletableFuture.completedFuture(Optional.of(new TestSubject.Builder().identifier("bar").build())));
+        final CompletionStage<Optional<? extends Subject>> second = subjectCache.apply(handler,
+                                                                                       context());
+        stale.complete(Optional.of(new TestSubject.Builder().identifier("foo").build()));
+
+        Assert.assertEquals("foo",
+                            first.toCompletableFuture().get().get().getIdentifier());
+        Assert.assertEquals("bar",
+                            second.toCompletableFuture().get().get().getIdentifier());
+        Assert.assertEquals(2,
+                            calls.get());
+    }
+
+    @Test
+    public void testApply_absentCachedPerRequest() throws Exception
+    {
+        Assert.assertEquals(1,
+                            absentSubjectLoads(true,
+                                               0L));
+    }
+
+    @Test
+    public void testApply_absentNotCached() throws Exception
+    {
+        Assert.assertEquals(2,
+                            absentSubjectLoads(false,
+                                               0L));
+    }
+
+    @Test
+    public void testApply_absentCachedAcrossRequests() throws Exception
+    {
+        Assert.assertEquals(1,
+                            absentSubjectLoads(false,
+                                               1000L));
+    }
+
+    private int absentSubjectLoads(final boolean cacheAbsentPerRequest,
+                                   final long absentTtl) throws Exception
+    {
+        final DefaultSubjectCache subjectCache = new DefaultSubjectCache(true,
+                                                                         cacheAbsentPerRequest,
+                                                                         true,
+                                                                         false,
+                                                                         100L,
+                                                                         60000L,
+                                                                         60000L,
+                                                                         absentTtl,
+                                                                         System::nanoTime,
+                                                                         ecProvider());
+        final DeadboltHandler handler = handler(Optional.of("anonymous"));
+        load.set(CompletableFuture.completedFuture(Optional.empty()));
+
+        for (int i = 0; i < 2; i++)
+        {
+            Assert.assertFalse(subjectCache.apply(handler,
+                                                  context())
+                                           .toCompletableFuture()
+                                           .get()
+                                           .isPresent());
+        }
+        return calls.get();
+    }
+
+    private void assertFails(final CompletionStage<Optional<? extends Subject>> stage) throws InterruptedException
+    {
+        try
+        {
+            stage.toCompletableFuture().get();
+            Assert.fail("Expected the load to fail");
+        }
+        catch (ExecutionException e)
+        {
+            // expected
+        }
+    }
+
+    private DefaultSubjectCache subjectCache(final boolean cacheAcrossRequests,
+                                             final boolean singleFlight)
+    {
+        return new DefaultSubjectCache(false,
+                                       false,
+                                       cacheAcrossRequests,
+                                       singleFlight,
+                                       100L,
+                                       60000L,
+                                       60000L,
+                                       0L,
+                                       System::nanoTime,
+                                       ecProvider());
+    }
+
+    private DeadboltHandler handler(final Optional<String> sessionKey)
+    {
+        return new NoPreAuthDeadboltHandler(ecProvider())
+        {
+            @Override
+            public CompletionStage<Optional<? extends Subject>> getSubject(final Http.Context context)
+            {
+                calls.incrementAndGet();
+                return load.get();
+            }
+
+            @Override
+            public Optional<String> getSessionKey(final Http.Context context)
+            {
+                return sessionKey;
+            }
+        };
+    }
+
+    @Override
+    public HandlerCache handlers()
+    {
+        return new TestHandlerCache(null,
+                                    new HashMap<>());
+    }
+}
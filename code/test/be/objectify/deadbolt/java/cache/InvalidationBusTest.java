@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.Permission;
+import be.objectify.deadbolt.java.models.Subject;
+import org.junit.Assert;
+import org.junit.Test;
+import play.mvc.Http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+public class InvalidationBusTest
+{
+    @Test
+    public void testInvalidate_appliedLocallyBeforeSending()
+    {
+        final Node node = new Node(new RecordingTransport(),
+                                   60000L,
+                                   1000);
+
+        node.bus.invalidateSubject("bob");
+
+        Assert.assertEquals(Arrays.asList("subject:bob",
+                                          "decision:bob"),
+                            node.events);
+        Assert.assertTrue(((RecordingTransport) node.transport).batches.isEmpty());
+    }
+
+    @Test
+    public void testInvalidate_appliedOnOtherNodes()
+    {
+        final LoopbackInvalidationTransport transport = new LoopbackInvalidationTransport();
+        final Node a = new Node(transport,
+                                60000L,
+                                1000);
+        final Node b = new Node(transport,
+                                60000L,
+                                1000);
+
+        a.bus.invalidateRole("admin");
+        Assert.assertTrue(b.events.isEmpty());
+
+        a.bus.flush();
+        Assert.assertEquals(Arrays.asList("role:admin",
+                                          "decision:*"),
+                            b.events);
+        // the sender doesn't apply its own invalidations a second time
+        Assert.assertEquals(Arrays.asList("role:admin",
+                                          "decision:*"),
+                            a.events);
+    }
+
+    @Test
+    public void testFlush_coalescesDuplicates()
+    {
+        final RecordingTransport transport = new RecordingTransport();
+        final Node node = new Node(transport,
+                                   60000L,
+                                   1000);
+
+        node.bus.invalidateSubject("bob");
+        node.bus.invalidateSession("s1");
+        node.bus.invalidateSubject("bob");
+        node.bus.flush();
+
+        Assert.assertEquals(Collections.singletonList(Arrays.asList(Invalidation.subject("bob"),
+                                                                    Invalidation.session("s1"))),
+                            transport.batches);
+    }
+
+    @Test
+    public void testFlush_allSubsumesEverythingElse()
+    {
+        final RecordingTransport transport = new RecordingTransport();
+        final Node node = new Node(transport,
+                                   60000L,
+                                   1000);
+
+        node.bus.invalidateSubject("bob");
+        node.bus.invalidateAll();
+        node.bus.invalidateRole("admin");
+        node.bus.flush();
+
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList(Invalidation.all())),
+                            transport.batches);
+    }
+
+    @Test
+    public void testFlush_nothingPending()
+    {
+        final RecordingTransport transport = new RecordingTransport();
+        final Node node = new Node(transport,
+                                   60000L,
+                                   1000);
+
+        node.bus.flush();
+
+        Assert.assertTrue(transport.batches.isEmpty());
+    }
+
+    @Test
+    public void testInvalidate_fullBatchIsSentImmediately()
+    {
+        final RecordingTransport transport = new RecordingTransport();
+        final Node node = new Node(transport,
+                                   60000L,
+                                   2);
+
+        node.bus.invalidateSubject("bob");
+        Assert.assertTrue(transport.batches.isEmpty());
+        node.bus.invalidateSubject("alice");
+
+        Assert.assertEquals(Collections.singletonList(Arrays.asList(Invalidation.subject("bob"),
+                                                                    Invalidation.subject("alice"))),
+                            transport.batches);
+    }
+
+    @Test
+    public void testInvalidate_batchIsSentAfterWindow() throws InterruptedException
+    {
+        final RecordingTransport transport = new RecordingTransport();
+        final Node node = new Node(transport,
+                                   10L,
+                                   1000);
+
+        node.bus.invalidateSession("s1");
+        for (int i = 0; i < 500 && transport.batches.isEmpty(); i++)
+        {
+            Thread.sleep(10L);
+        }
+
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList(Invalidation.session("s1"))),
+                            transport.batches);
+    }
+
+    @Test
+    public void testClose_sendsPendingInvalidations()
+    {
+        final RecordingTransport transport = new RecordingTransport();
+        final Node node = new Node(transport,
+                                   60000L,
+                                   1000);
+
+        node.bus.invalidateSession("s1");
+        node.bus.close();
+
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList(Invalidation.session("s1"))),
+                            transport.batches);
+    }
+
+    @Test
+    public void testInvalidateAll_clearsEveryCache()
+    {
+        final Node node = new Node(new RecordingTransport(),
+                                   60000L,
+                                   1000);
+        node.patternCache.compiled("foo");
+
+        node.bus.invalidateAll();
+
+        Assert.assertEquals(Arrays.asList("subject:*",
+                                          "decision:*",
+                                          "role:*"),
+                            node.events);
+        Assert.assertTrue(node.patternCache.patternValues().isEmpty());
+    }
+
+    private static final class Node
+    {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final DefaultPatternCache patternCache = new DefaultPatternCache(10L);
+        private final InvalidationTransport transport;
+        private final InvalidationBus bus;
+
+        private Node(final InvalidationTransport transport,
+                     final long windowMillis,
+                     final int maxBatchSize)
+        {
+            this.transport = transport;
+            this.bus = new InvalidationBus(new SubjectCache()
+                                           {
+                                               @Override
+                                               public CompletionStage<Optional<? extends Subject>> apply(final DeadboltHandler deadboltHandler,
+                                                                                                         final Http.Context context)
+                                               {
+                                                   return CompletableFuture.completedFuture(Optional.empty());
+                                               }
+
+                                               @Override
+                                               public void invalidate(final String sessionKey)
+                                               {
+                                                   events.add("session:" + sessionKey);
+                                               }
+
+                                               @Override
+                                               public void invalidateSubject(final String subjectIdentifier)
+                                               {
+                                                   events.add("subject:" + subjectIdentifier);
+                                               }
+
+                                               @Override
+                                               public void invalidateAll()
+                                               {
+                                                   events.add("subject:*");
+                                               }
+                                           },
+                                           new DecisionCache()
+                                           {
+                                               @Override
+                                               public boolean isEnabled()
+                                               {
+                                                   return true;
+                                               }
+
+                                               @Override
+                                               public boolean includesDynamic()
+                                               {
+                                                   return false;
+                                               }
+
+                                               @Override
+                                               public Optional<Boolean> get(final DecisionKey key)
+                                               {
+                                                   return Optional.empty();
+                                               }
+
+                                               @Override
+                                               public void put(final DecisionKey key,
+                                                               final boolean allowed)
+                                               {
+                                                   // no-op
+                                               }
+
+                                               @Override
+                                               public void invalidate(final String subjectIdentifier)
+                                               {
+                                                   events.add("decision:" + subjectIdentifier);
+                                               }
+
+                                               @Override
+                                               public void invalidateAll()
+                                               {
+                                                   events.add("decision:*");
+                                               }
+
+                                               @Override
+                                               public CacheStats stats()
+                                               {
+                                                   return CacheStats.EMPTY;
+                                               }
+                                           },
+                                           new RolePermissionsCache()
+                                           {
+                                               @Override
+                                               public CompletionStage<List<? extends Permission>> get(final DeadboltHandler deadboltHandler,
+                                                                                                      final String roleName)
+                                               {
+                                                   return CompletableFuture.completedFuture(Collections.emptyList());
+                                               }
+
+                                               @Override
+                                               public void invalidate(final String roleName)
+                                               {
+                                                   events.add("role:" + roleName);
+                                               }
+
+                                               @Override
+                                               public void invalidateAll()
+                                               {
+                                                   events.add("role:*");
+                                               }
+
+                                               @Override
+                                               public CacheStats stats()
+                                               {
+                                                   return CacheStats.EMPTY;
+                                               }
+                                           },
+                                           patternCache,
+                                           transport,
+                                           windowMillis,
+                                           maxBatchSize);
+        }
+    }
+
+    private static final class RecordingTransport implements InvalidationTransport
+    {
+        private final List<List<Invalidation>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(final String origin,
+                            final List<Invalidation> invalidations)
+        {
+            batches.add(new ArrayList<>(invalidations));
+        }
+
+        @Override
+        public void subscribe(final BiConsumer<String, List<Invalidation>> listener)
+        {
+            // no-op
+        }
+    }
+}
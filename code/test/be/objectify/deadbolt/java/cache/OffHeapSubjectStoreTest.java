@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import be.objectify.deadbolt.java.models.Permission;
+import be.objectify.deadbolt.java.models.Role;
+import be.objectify.deadbolt.java.models.Subject;
+import be.objectify.deadbolt.java.testsupport.TestPermission;
+import be.objectify.deadbolt.java.testsupport.TestRole;
+import be.objectify.deadbolt.java.testsupport.TestSubject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+public class OffHeapSubjectStoreTest
+{
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testGet_roundTrip()
+    {
+        final OffHeapSubjectStore store = store(1024L * 1024L);
+        store.put("handler",
+                  "session",
+                  new TestSubject.Builder().identifier("foo")
+                                           .role(new TestRole("admin"))
+                                           .role(new TestRole("user"))
+                                           .permission(new TestPermission("printer.\u00e9"))
+                                           .build());
+
+        final Subject subject = store.get("handler",
+                                          "session").get();
+        Assert.assertEquals("foo",
+                            subject.getIdentifier());
+        Assert.assertEquals(Arrays.asList("admin",
+                                          "user"),
+                            subject.getRoles().stream().map(Role::getName).collect(Collectors.toList()));
+        Assert.assertEquals(Arrays.asList("printer.\u00e9"),
+                            subject.getPermissions().stream().map(Permission::getValue).collect(Collectors.toList()));
+        Assert.assertEquals(1L,
+                            store.stats().hitCount());
+    }
+
+    @Test
+    public void testGet_dictionaryFull()
+    {
+        final OffHeapSubjectStore store = store(1024L * 1024L);
+        for (int i = 0; i < OffHeapSubjectStore.MAX_INTERNED; i++)
+        {
+            store.put("handler",
+                      "session",
+                      new TestSubject.Builder().role(new TestRole("role" + i)).build());
+        }
+        store.put("handler",
+                  "session",
+                  new TestSubject.Builder().identifier("foo")
+                                           .role(new TestRole("role0"))
+                                           .role(new TestRole("overflow.\u00e9"))
+                                           .build());
+
+        final Subject subject = store.get("handler",
+                                          "session").get();
+        Assert.assertEquals("foo",
+                            subject.getIdentifier());
+        Assert.assertEquals(Arrays.asList("role0",
+                                          "overflow.\u00e9"),
+                            subject.getRoles().stream().map(Role::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testGet_keyIncludesHandler()
+    {
+        final OffHeapSubjectStore store = store(1024L * 1024L);
+        store.put("handler",
+                  "session",
+                  new TestSubject.Builder().identifier("foo").build());
+        Assert.assertEquals(Optional.empty(),
+                            store.get("otherHandler",
+                                      "session"));
+    }
+
+    @Test
+    public void testGet_expired()
+    {
+        final OffHeapSubjectStore store = store(1024L * 1024L);
+        store.put("handler",
+                  "session",
+                  new TestSubject.Builder().identifier("foo").build());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000L));
+        Assert.assertEquals(Optional.empty(),
+                            store.get("handler",
+                                      "session"));
+        Assert.assertEquals(1L,
+                            store.stats().evictionCount());
+    }
+
+    @Test
+    public void testPut_oldestAreOverwritten()
+    {
+        // the minimum of 1k per segment
+        final OffHeapSubjectStore store = store(0L);
+        for (int i = 0; i < 10000; i++)
+        {
+            store.put("handler",
+                      "session" + i,
+                      new TestSubject.Builder().identifier("user" + i).build());
+        }
+        Assert.assertEquals(Optional.empty(),
+                            store.get("handler",
+                                      "session0"));
+        Assert.assertEquals("user9999",
+                            store.get("handler",
+                                      "session9999").get().getIdentifier());
+        Assert.assertTrue(store.stats().size() < 10000L);
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        final OffHeapSubjectStore store = store(1024L * 1024L);
+        store.put("handler",
+                  "session1",
+                  new TestSubject.Builder().identifier("foo").build());
+        store.put("handler",
+                  "session2",
+                  new TestSubject.Builder().identifier("foo").build());
+        store.put("handler",
+                  "session3",
+                  new TestSubject.Builder().identifier("bar").build());
+
+        store.invalidate("session1");
+        Assert.assertEquals(Optional.empty(),
+                            store.get("handler",
+                                      "session1"));
+        Assert.assertTrue(store.get("handler",
+                                    "session2").isPresent());
+
+        store.invalidateSubject("foo");
+        Assert.assertEquals(Optional.empty(),
+                            store.get("handler",
+                                      "session2"));
+        Assert.assertTrue(store.get("handler",
+                                    "session3").isPresent());
+    }
+
+    private OffHeapSubjectStore store(final long capacityBytes)
+    {
+        return new OffHeapSubjectStore(capacityBytes,
+                                       500L,
+                                       0L,
+                                       now::get);
+    }
+}
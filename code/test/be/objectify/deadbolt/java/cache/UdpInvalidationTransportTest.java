@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class UdpInvalidationTransportTest
+{
+    private static final byte[] SECRET = "open sesame".getBytes(StandardCharsets.UTF_8);
+
+    private static final SecretKeySpec KEY = new SecretKeySpec(SECRET,
+                                                               "HmacSHA256");
+
+    @Test
+    public void testPublish_receivedByTarget() throws IOException, InterruptedException
+    {
+        final UdpInvalidationTransport receiver = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1",
+                                                                                                     0),
+                                                                               Collections.emptyList(),
+                                                                               SECRET);
+        final UdpInvalidationTransport sender = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1",
+                                                                                                   0),
+                                                                             Collections.singletonList(receiver.localAddress()),
+                                                                             SECRET);
+        try
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<String> origin = new AtomicReference<>();
+            final AtomicReference<List<Invalidation>> received = new AtomicReference<>();
+            receiver.subscribe((o, invalidations) ->
+                               {
+                                   origin.set(o);
+                                   received.set(invalidations);
+                                   latch.countDown();
+                               });
+
+            final List<Invalidation> invalidations = Arrays.asList(Invalidation.session("s1"),
+                                                                   Invalidation.subject("bob"),
+                                                                   Invalidation.role("admin"),
+                                                                   Invalidation.all());
+            sender.publish("node-a",
+                           invalidations);
+
+            Assert.assertTrue(latch.await(5,
+                                          TimeUnit.SECONDS));
+            Assert.assertEquals("node-a",
+                                origin.get());
+            Assert.assertEquals(invalidations,
+                                received.get());
+        }
+        finally
+        {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testReceive_ignoresUnauthenticatedAndStaleDatagrams() throws IOException, InterruptedException
+    {
+        final UdpInvalidationTransport receiver = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1",
+                                                                                                     0),
+                                                                               Collections.emptyList(),
+                                                                               SECRET);
+        final UdpInvalidationTransport impostor = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1",
+                                                                                                     0),
+                                                                               Collections.singletonList(receiver.localAddress()),
+                                                                               "guess".getBytes(StandardCharsets.UTF_8));
+        try (DatagramSocket socket = new DatagramSocket())
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final List<String> origins = Collections.synchronizedList(new ArrayList<>());
+            receiver.subscribe((o, invalidations) ->
+                               {
+                                   origins.add(o);
+                                   latch.countDown();
+                               });
+
+            impostor.publish("node-b",
+                             Collections.singletonList(Invalidation.all()));
+            final byte[] stale = UdpInvalidationTransport.encode("node-c",
+                                                                 Collections.singletonList(Invalidation.all()),
+                                                                 System.currentTimeMillis() - UdpInvalidationTransport.MAX_CLOCK_SKEW_MILLIS * 2,
+                                                                 KEY).get(0);
+            socket.send(new DatagramPacket(stale,
+                                           stale.length,
+                                           receiver.localAddress()));
+            final byte[] current = UdpInvalidationTransport.encode("node-a",
+                                                                   Collections.singletonList(Invalidation.all()),
+                                                                   System.currentTimeMillis(),
+                                                                   KEY).get(0);
+            socket.send(new DatagramPacket(current,
+                                           current.length,
+                                           receiver.localAddress()));
+
+            Assert.assertTrue(latch.await(5,
+                                          TimeUnit.SECONDS));
+            Assert.assertEquals(Collections.singletonList("node-a"),
+                                origins);
+        }
+        finally
+        {
+            impostor.close();
+            receiver.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_requiresSecret() throws IOException
+    {
+        new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1",
+                                                           0),
+                                     Collections.emptyList(),
+                                     new byte[0]);
+    }
+
+    @Test
+    public void testEncode_splitsLargeBatches() throws IOException
+    {
+        final List<Invalidation> invalidations = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            invalidations.add(Invalidation.subject("subject-" + i));
+        }
+
+        final List<byte[]> payloads = UdpInvalidationTransport.encode("node-a",
+                                                                      invalidations,
+                                                                      0L,
+                                                                      KEY);
+
+        Assert.assertTrue(payloads.size() > 1);
+        for (byte[] payload : payloads)
+        {
+            Assert.assertTrue(payload.length <= UdpInvalidationTransport.MAX_PAYLOAD);
+        }
+    }
+
+    @Test
+    public void testEncode_oversizedInvalidationBecomesAll() throws IOException
+    {
+        final char[] key = new char[UdpInvalidationTransport.MAX_PAYLOAD];
+        Arrays.fill(key,
+                    'x');
+
+        final List<byte[]> payloads = UdpInvalidationTransport.encode("node-a",
+                                                                      Collections.singletonList(Invalidation.subject(new String(key))),
+                                                                      0L,
+                                                                      KEY);
+
+        Assert.assertEquals(1,
+                            payloads.size());
+        Assert.assertTrue(payloads.get(0).length < UdpInvalidationTransport.MAX_PAYLOAD);
+    }
+}
@@ -15,24 +15,37 @@
  */
 package be.objectify.deadbolt.java.composite;
 
+import be.objectify.deadbolt.java.AbstractDynamicResourceHandler;
+import be.objectify.deadbolt.java.ConstraintLogic;
 import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.models.PatternType;
+import be.objectify.deadbolt.java.testsupport.TestPermission;
+import be.objectify.deadbolt.java.testsupport.TestRole;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 import play.libs.F;
 import play.mvc.Http;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 /**
  * @author Steve Chaloner (steve@objectify.be)
  */
-public class ConstraintTreeTest extends AbstractConstraintTest
+public class ConstraintTreeTest extends AbstractConstraintTest implements ConstraintLogicMixin
 {
+    private static final long HANDLER_LATENCY_MILLIS = 500L;
+
     private final Http.Context context = Mockito.mock(Http.Context.class);
     private final DeadboltHandler handler = Mockito.mock(DeadboltHandler.class);
 
@@ -198,6 +211,357 @@ public class ConstraintTreeTest extends AbstractConstraintTest
         Assert.assertTrue(toBoolean(rightResult));
     }
 
+    @Test
+    public void testNested_orWithinAnd() throws Exception
+    {
+        final Constraint pass = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(true);
+        final Constraint fail = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(false);
+        final Constraint tree = new ConstraintTree(Operator.AND,
+                                                   pass,
+                                                   new ConstraintTree(Operator.OR,
+                                                                      fail,
+                                                                      pass));
+
+        final CompletionStage<Boolean> result = tree.test(context,
+                                                          handler,
+                                                          Executors.newSingleThreadExecutor());
+        Assert.assertTrue(toBoolean(result));
+    }
+
+    @Test
+    public void testNested_andWithinOr() throws Exception
+    {
+        final Constraint pass = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(true);
+        final Constraint fail = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(false);
+        final Constraint tree = new ConstraintTree(Operator.OR,
+                                                   new ConstraintTree(Operator.AND,
+                                                                      pass,
+                                                                      fail),
+                                                   fail);
+
+        final CompletionStage<Boolean> result = tree.test(context,
+                                                          handler,
+                                                          Executors.newSingleThreadExecutor());
+        Assert.assertFalse(toBoolean(result));
+    }
+
+    @Test
+    public void testNested_emptyTree() throws Exception
+    {
+        final Constraint pass = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(true);
+
+        Assert.assertFalse(toBoolean(new ConstraintTree(Operator.AND,
+                                                        new ConstraintTree(Operator.OR),
+                                                        pass).test(context,
+                                                                   handler,
+                                                                   Executors.newSingleThreadExecutor())));
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.OR,
+                                                       new ConstraintTree(Operator.OR),
+                                                       pass).test(context,
+                                                                  handler,
+                                                                  Executors.newSingleThreadExecutor())));
+    }
+
+    @Test
+    public void testShortCircuit() throws Exception
+    {
+        final AtomicInteger invocations = new AtomicInteger();
+        final Constraint counting = (c, h, e, gmd, fnM) ->
+        {
+            invocations.incrementAndGet();
+            return CompletableFuture.completedFuture(true);
+        };
+
+        Assert.assertFalse(toBoolean(new ConstraintTree(Operator.AND,
+                                                        (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(false),
+                                                        counting).test(context,
+                                                                       handler,
+                                                                       Executors.newSingleThreadExecutor())));
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.OR,
+                                                       (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(true),
+                                                       counting).test(context,
+                                                                      handler,
+                                                                      Executors.newSingleThreadExecutor())));
+        Assert.assertEquals(0,
+                            invocations.get());
+    }
+
+    @Test
+    public void testPendingStage() throws Exception
+    {
+        final Constraint pending = (c, h, e, gmd, fnM) -> CompletableFuture.supplyAsync(() -> true,
+                                                                                        Executors.newSingleThreadExecutor());
+        final Constraint tree = new ConstraintTree(Operator.AND,
+                                                   pending,
+                                                   pending,
+                                                   pending);
+
+        final CompletionStage<Boolean> result = tree.test(context,
+                                                          handler,
+                                                          Executors.newSingleThreadExecutor());
+        Assert.assertTrue(toBoolean(result));
+    }
+
+    @Test
+    public void testConcurrent_or_doesNotWaitForPendingConstraints() throws Exception
+    {
+        final Constraint never = (c, h, e, gmd, fnM) -> new CompletableFuture<>();
+        final Constraint pass = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(true);
+
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.OR,
+                                                       true,
+                                                       never,
+                                                       pass).test(context,
+                                                                  handler,
+                                                                  Executors.newSingleThreadExecutor())));
+        Assert.assertTrue(toBoolean(Operator.OR.applyConcurrently(never,
+                                                                  pass).test(context,
+                                                                             handler,
+                                                                             Executors.newSingleThreadExecutor())));
+    }
+
+    @Test
+    public void testConcurrent_and_doesNotWaitForPendingConstraints() throws Exception
+    {
+        final Constraint never = (c, h, e, gmd, fnM) -> new CompletableFuture<>();
+        final Constraint fail = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(false);
+
+        Assert.assertFalse(toBoolean(new ConstraintTree(Operator.AND,
+                                                        true,
+                                                        never,
+                                                        fail).test(context,
+                                                                   handler,
+                                                                   Executors.newSingleThreadExecutor())));
+        Assert.assertFalse(toBoolean(Operator.AND.applyConcurrently(never,
+                                                                    fail).test(context,
+                                                                               handler,
+                                                                               Executors.newSingleThreadExecutor())));
+    }
+
+    @Test
+    public void testConcurrent_waitsForAllWhenUndecided() throws Exception
+    {
+        final Constraint pending = (c, h, e, gmd, fnM) -> CompletableFuture.supplyAsync(() -> true,
+                                                                                        Executors.newSingleThreadExecutor());
+        final Constraint fail = (c, h, e, gmd, fnM) -> CompletableFuture.supplyAsync(() -> false,
+                                                                                     Executors.newSingleThreadExecutor());
+
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.AND,
+                                                       true,
+                                                       pending,
+                                                       pending,
+                                                       pending).test(context,
+                                                                     handler,
+                                                                     Executors.newSingleThreadExecutor())));
+        Assert.assertFalse(toBoolean(new ConstraintTree(Operator.OR,
+                                                        true,
+                                                        fail,
+                                                        fail).test(context,
+                                                                   handler,
+                                                                   Executors.newSingleThreadExecutor())));
+        Assert.assertFalse(toBoolean(new ConstraintTree(Operator.OR,
+                                                        true).test(context,
+                                                                   handler,
+                                                                   Executors.newSingleThreadExecutor())));
+    }
+
+    @Test
+    public void testConcurrent_nestedInSequentialTree() throws Exception
+    {
+        final Constraint never = (c, h, e, gmd, fnM) -> new CompletableFuture<>();
+        final Constraint pass = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(true);
+
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.AND,
+                                                       pass,
+                                                       new ConstraintTree(Operator.OR,
+                                                                          true,
+                                                                          never,
+                                                                          pass)).test(context,
+                                                                                      handler,
+                                                                                      Executors.newSingleThreadExecutor())));
+    }
+
+    @Test
+    public void testConcurrent_exception() throws Exception
+    {
+        final Constraint never = (c, h, e, gmd, fnM) -> new CompletableFuture<>();
+        final Constraint throwing = (c, h, e, gmd, fnM) ->
+        {
+            throw new IllegalStateException("foo");
+        };
+
+        final CompletionStage<Boolean> result = new ConstraintTree(Operator.OR,
+                                                                   true,
+                                                                   never,
+                                                                   throwing).test(context,
+                                                                                  handler,
+                                                                                  Executors.newSingleThreadExecutor());
+        Assert.assertTrue(result.toCompletableFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testConcurrent_constraintLogicLeaves() throws Exception
+    {
+        final DeadboltHandler subjectHandler = withSubject(() -> subject(() -> Collections.singletonList(new TestRole("foo")),
+                                                                         () -> Collections.singletonList(new TestPermission("bar"))));
+        final ConstraintLogic logic = logic(subjectHandler);
+        final Constraint restrict = new RestrictConstraint(Collections.singletonList(new String[]{"foo"}),
+                                                           Optional.empty(),
+                                                           logic);
+        final Constraint equality = new PatternConstraint("bar",
+                                                          PatternType.EQUALITY,
+                                                          Optional.empty(),
+                                                          false,
+                                                          Optional.empty(),
+                                                          logic);
+        final Constraint regex = new PatternConstraint("b.r",
+                                                       PatternType.REGEX,
+                                                       Optional.empty(),
+                                                       false,
+                                                       Optional.empty(),
+                                                       logic);
+        final Constraint notFoo = new RestrictConstraint(Collections.singletonList(new String[]{"!foo"}),
+                                                         Optional.empty(),
+                                                         logic);
+
+        Assert.assertTrue(toBoolean(new ConstraintTree(Operator.AND,
+                                                       Evaluation.CONCURRENT,
+                                                       restrict,
+                                                       equality,
+                                                       regex,
+                                                       new SubjectPresentConstraint(Optional.empty(),
+                                                                                    logic)).test(context,
+                                                                                                 subjectHandler,
+                                                                                                 Executors.newFixedThreadPool(4))));
+        Assert.assertFalse(toBoolean(new ConstraintTree(Operator.AND,
+                                                        Evaluation.CONCURRENT,
+                                                        restrict,
+                                                        notFoo,
+                                                        equality).test(context,
+                                                                       subjectHandler,
+                                                                       Executors.newFixedThreadPool(4))));
+        Assert.assertTrue(toBoolean(restrict.orConcurrently(notFoo)
+                                            .test(context,
+                                                  subjectHandler,
+                                                  Executors.newFixedThreadPool(4))));
+    }
+
+    @Test
+    public void testConcurrent_slowDynamicResourceHandlers() throws Exception
+    {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final DeadboltHandler drhHandler = withDrh(new AbstractDynamicResourceHandler()
+        {
+            @Override
+            public CompletionStage<Boolean> isAllowed(final String name,
+                                                      final Optional<String> meta,
+                                                      final DeadboltHandler deadboltHandler,
+                                                      final Http.Context ctx)
+            {
+                return completeLater(scheduler,
+                                     false);
+            }
+
+            @Override
+            public CompletionStage<Boolean> checkPermission(final String permissionValue,
+                                                            final Optional<String> meta,
+                                                            final boolean invert,
+                                                            final DeadboltHandler deadboltHandler,
+                                                            final Http.Context ctx)
+            {
+                // allowed only if the flag arrives, and then inverted to a failure by the constraint
+                return completeLater(scheduler,
+                                     invert);
+            }
+        });
+        final ConstraintLogic logic = logic(drhHandler);
+        final Constraint dynamic = new DynamicConstraint("foo",
+                                                         Optional.empty(),
+                                                         Optional.empty(),
+                                                         logic);
+        final Constraint custom = new PatternConstraint("bar",
+                                                        PatternType.CUSTOM,
+                                                        Optional.empty(),
+                                                        true,
+                                                        Optional.empty(),
+                                                        logic);
+
+        try
+        {
+            final long start = System.nanoTime();
+            // neither passes, so the result is only known once both handlers have answered
+            Assert.assertFalse(toBoolean(dynamic.orConcurrently(custom)
+                                                .test(context,
+                                                      drhHandler,
+                                                      Executors.newFixedThreadPool(2))));
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assert.assertTrue("Took " + elapsed + "ms",
+                              elapsed < 2 * HANDLER_LATENCY_MILLIS);
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static CompletionStage<Boolean> completeLater(final ScheduledExecutorService scheduler,
+                                                          final boolean value)
+    {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        scheduler.schedule(() -> result.complete(value),
+                           HANDLER_LATENCY_MILLIS,
+                           TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    @Test
+    public void testAdaptive_cheapDecisiveConstraintMovesFirst() throws Exception
+    {
+        final AtomicLong clock = new AtomicLong();
+        final Constraint expensive = (c, h, e, gmd, fnM) ->
+        {
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(2L));
+            return CompletableFuture.completedFuture(true);
+        };
+        final Constraint cheap = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(false);
+        final ConstraintTree tree = new ConstraintTree(Operator.AND,
+                                                       Evaluation.ADAPTIVE,
+                                                       5,
+                                                       clock::get,
+                                                       expensive,
+                                                       cheap);
+
+        for (int i = 0; i < 20; i++)
+        {
+            Assert.assertFalse(toBoolean(tree.test(context,
+                                                   handler,
+                                                   Executors.newSingleThreadExecutor())));
+        }
+        Assert.assertEquals(Arrays.asList(cheap,
+                                          expensive),
+                            tree.currentOrder());
+    }
+
+    @Test
+    public void testInOrder_orderIsPinned() throws Exception
+    {
+        final Constraint c1 = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(true);
+        final Constraint c2 = (c, h, e, gmd, fnM) -> CompletableFuture.completedFuture(false);
+        final ConstraintTree tree = new ConstraintTree(Operator.AND,
+                                                       Evaluation.IN_ORDER,
+                                                       c1,
+                                                       c2);
+        for (int i = 0; i < 200; i++)
+        {
+            Assert.assertFalse(toBoolean(tree.test(context,
+                                                   handler,
+                                                   Executors.newSingleThreadExecutor())));
+        }
+        Assert.assertEquals(Arrays.asList(c1,
+                                          c2),
+                            tree.currentOrder());
+    }
+
     @Override
     protected F.Tuple<Constraint, Function<Constraint, CompletionStage<Boolean>>> satisfy()
     {
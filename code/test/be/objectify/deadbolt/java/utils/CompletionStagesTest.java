@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class CompletionStagesTest
+{
+    private final AtomicInteger executorRequests = new AtomicInteger();
+
+    private final Supplier<Executor> executor = () ->
+    {
+        executorRequests.incrementAndGet();
+        return Runnable::run;
+    };
+
+    @Test
+    public void testIsCompletedNormally_completed()
+    {
+        Assert.assertTrue(CompletionStages.isCompletedNormally(CompletableFuture.completedFuture(true)));
+    }
+
+    @Test
+    public void testIsCompletedNormally_pending()
+    {
+        Assert.assertFalse(CompletionStages.isCompletedNormally(new CompletableFuture<Boolean>()));
+    }
+
+    @Test
+    public void testIsCompletedNormally_failed()
+    {
+        Assert.assertFalse(CompletionStages.isCompletedNormally(CompletionStages.failed(new RuntimeException())));
+    }
+
+    @Test
+    public void testThenApply_inline_completed()
+    {
+        final CompletionStage<Boolean> result = CompletionStages.thenApply(true,
+                                                                           CompletableFuture.completedFuture(true),
+                                                                           b -> !b,
+                                                                           executor);
+        Assert.assertFalse(CompletionStages.getNow(result));
+        Assert.assertEquals(0,
+                            executorRequests.get());
+    }
+
+    @Test
+    public void testThenApply_inline_pending()
+    {
+        final CompletableFuture<Boolean> stage = new CompletableFuture<>();
+        final CompletionStage<Boolean> result = CompletionStages.thenApply(true,
+                                                                           stage,
+                                                                           b -> !b,
+                                                                           executor);
+        Assert.assertFalse(result.toCompletableFuture().isDone());
+        stage.complete(true);
+        Assert.assertFalse(result.toCompletableFuture().join());
+        Assert.assertEquals(1,
+                            executorRequests.get());
+    }
+
+    @Test
+    public void testThenApply_notInline()
+    {
+        final CompletionStage<Boolean> result = CompletionStages.thenApply(false,
+                                                                           CompletableFuture.completedFuture(true),
+                                                                           b -> !b,
+                                                                           executor);
+        Assert.assertFalse(result.toCompletableFuture().join());
+        Assert.assertEquals(1,
+                            executorRequests.get());
+    }
+
+    @Test
+    public void testThenApply_inline_exception()
+    {
+        final CompletionStage<Boolean> result = CompletionStages.thenApply(true,
+                                                                           CompletableFuture.completedFuture(true),
+                                                                           b ->
+                                                                           {
+                                                                               throw new IllegalStateException();
+                                                                           },
+                                                                           executor);
+        Assert.assertTrue(result.toCompletableFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testThenCompose_inline_completed()
+    {
+        final CompletionStage<String> result = CompletionStages.thenCompose(true,
+                                                                            CompletableFuture.completedFuture("foo"),
+                                                                            s -> CompletableFuture.completedFuture(s + "bar"),
+                                                                            executor);
+        Assert.assertEquals("foobar",
+                            CompletionStages.getNow(result));
+        Assert.assertEquals(0,
+                            executorRequests.get());
+    }
+
+    @Test
+    public void testThenCompose_inline_failedUpstream()
+    {
+        final CompletionStage<String> result = CompletionStages.thenCompose(true,
+                                                                            CompletionStages.<String>failed(new IllegalStateException()),
+                                                                            s -> CompletableFuture.completedFuture(s + "bar"),
+                                                                            executor);
+        Assert.assertTrue(result.toCompletableFuture().isCompletedExceptionally());
+        Assert.assertEquals(1,
+                            executorRequests.get());
+    }
+
+    @Test
+    public void testThenCompose_inline_error()
+    {
+        final CompletionStage<String> result = CompletionStages.thenCompose(true,
+                                                                            CompletableFuture.completedFuture("foo"),
+                                                                            s ->
+                                                                            {
+                                                                                throw new AssertionError();
+                                                                            },
+                                                                            executor);
+        Assert.assertTrue(result.toCompletableFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testThenCompose_inline_nullStage()
+    {
+        final CompletionStage<String> result = CompletionStages.thenCompose(true,
+                                                                            CompletableFuture.completedFuture("foo"),
+                                                                            s -> null,
+                                                                            executor);
+        try
+        {
+            result.toCompletableFuture().join();
+            Assert.fail("Expected the stage to fail");
+        }
+        catch (CompletionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof NullPointerException);
+        }
+    }
+}
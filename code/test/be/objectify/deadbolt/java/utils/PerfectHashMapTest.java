@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PerfectHashMapTest
+{
+    @Test
+    public void testGet()
+    {
+        final Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < 50; i++)
+        {
+            entries.put("handler" + i,
+                        i);
+        }
+
+        final PerfectHashMap<Integer> map = PerfectHashMap.of(entries);
+
+        Assert.assertEquals(50,
+                            map.size());
+        entries.forEach((key, value) -> Assert.assertEquals(value,
+                                                            map.get(key)));
+        Assert.assertNull(map.get("handler50"));
+        Assert.assertNull(map.get(null));
+        Assert.assertFalse(map.containsKey("foo"));
+        Assert.assertTrue(map.containsKey("handler0"));
+    }
+
+    @Test
+    public void testGet_empty()
+    {
+        final PerfectHashMap<Integer> map = PerfectHashMap.of(Collections.emptyMap());
+
+        Assert.assertEquals(0,
+                            map.size());
+        Assert.assertNull(map.get("foo"));
+    }
+
+    @Test
+    public void testGet_keysWithTheSameHashCode()
+    {
+        // "Aa" and "BB" have the same hash code, so no seed can separate them
+        final Map<String, Integer> entries = new HashMap<>();
+        entries.put("Aa",
+                    1);
+        entries.put("BB",
+                    2);
+
+        final PerfectHashMap<Integer> map = PerfectHashMap.of(entries);
+
+        Assert.assertEquals(Integer.valueOf(1),
+                            map.get("Aa"));
+        Assert.assertEquals(Integer.valueOf(2),
+                            map.get("BB"));
+        Assert.assertNull(map.get("CC"));
+    }
+
+    @Test
+    public void testOf_copiesEntries()
+    {
+        final Map<String, Integer> entries = new HashMap<>();
+        entries.put("foo",
+                    1);
+        final PerfectHashMap<Integer> map = PerfectHashMap.of(entries);
+
+        entries.put("bar",
+                    2);
+
+        Assert.assertNull(map.get("bar"));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010-2017 Steve Chaloner
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.objectify.deadbolt.java.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TimeoutsTest
+{
+    private final Executor executor = Runnable::run;
+
+    private final Timeouts timeouts = new Timeouts();
+
+    @After
+    public void tearDown()
+    {
+        timeouts.shutdown();
+    }
+
+    @Test
+    public void testWithin_alreadyCompleted()
+    {
+        final CompletableFuture<String> stage = CompletableFuture.completedFuture("foo");
+        Assert.assertSame(stage,
+                          timeouts.within(stage,
+                                          1L,
+                                          TimeUnit.MILLISECONDS,
+                                          executor));
+    }
+
+    @Test
+    public void testWithin_completesInTime() throws Exception
+    {
+        final CompletableFuture<String> stage = new CompletableFuture<>();
+        final CompletionStage<String> timed = timeouts.within(stage,
+                                                              10L,
+                                                              TimeUnit.SECONDS,
+                                                              executor);
+        stage.complete("foo");
+        Assert.assertEquals("foo",
+                            timed.toCompletableFuture().get(1L,
+                                                            TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWithin_timesOut() throws Exception
+    {
+        final long fired = timeouts.fired();
+        final CompletionStage<String> timed = timeouts.within(new CompletableFuture<>(),
+                                                              10L,
+                                                              TimeUnit.MILLISECONDS,
+                                                              executor);
+        try
+        {
+            timed.toCompletableFuture().get(5L,
+                                            TimeUnit.SECONDS);
+            Assert.fail("Expected a timeout");
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(fired + 1,
+                            timeouts.fired());
+    }
+
+    @Test
+    public void testWithin_dependentsRunOnExecutor() throws Exception
+    {
+        final AtomicReference<String> thread = new AtomicReference<>();
+        final CompletableFuture<String> stage = new CompletableFuture<>();
+        final CompletionStage<String> timed = timeouts.within(stage,
+                                                              10L,
+                                                              TimeUnit.SECONDS,
+                                                              runnable -> new Thread(runnable,
+                                                                                     "test-executor").start());
+        final CompletableFuture<Void> dependent = timed.thenAccept(value -> thread.set(Thread.currentThread().getName()))
+                                                       .toCompletableFuture();
+        stage.complete("foo");
+        dependent.get(5L,
+                      TimeUnit.SECONDS);
+        Assert.assertEquals("test-executor",
+                            thread.get());
+    }
+
+    @Test
+    public void testRecordTimeout()
+    {
+        timeouts.recordTimeout();
+        Assert.assertEquals(1L,
+                            timeouts.fired());
+    }
+
+    @Test
+    public void testJmx() throws Exception
+    {
+        timeouts.recordTimeout();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(Timeouts.OBJECT_NAME + ",test=true");
+        server.registerMBean(timeouts,
+                             name);
+        try
+        {
+            Assert.assertEquals(1L,
+                                server.getAttribute(name,
+                                                    "BlockingTimeouts"));
+        }
+        finally
+        {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testCheckBlockingMode_known()
+    {
+        Timeouts.checkBlockingMode(Timeouts.WAIT);
+        Timeouts.checkBlockingMode(Timeouts.ASYNC);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCheckBlockingMode_unknown()
+    {
+        Timeouts.checkBlockingMode("asnyc");
+    }
+}
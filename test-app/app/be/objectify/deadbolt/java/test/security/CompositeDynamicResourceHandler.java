@@ -15,7 +15,6 @@
  */
 package be.objectify.deadbolt.java.test.security;
 
-import be.objectify.deadbolt.java.ConfigKeys;
 import be.objectify.deadbolt.java.DeadboltHandler;
 import be.objectify.deadbolt.java.DynamicResourceHandler;
 import org.slf4j.Logger;
@@ -71,6 +70,20 @@ public class CompositeDynamicResourceHandler implements DynamicResourceHandler
                                                     final Optional<String> meta,
                                                     final DeadboltHandler deadboltHandler,
                                                     final Http.Context ctx)
+    {
+        return checkPermission(permissionValue,
+                               meta,
+                               false,
+                               deadboltHandler,
+                               ctx);
+    }
+
+    @Override
+    public CompletionStage<Boolean> checkPermission(final String permissionValue,
+                                                    final Optional<String> meta,
+                                                    final boolean invert,
+                                                    final DeadboltHandler deadboltHandler,
+                                                    final Http.Context ctx)
     {
         // this can be completely arbitrary, but to keep things simple for testing we're
         // just checking for zombies...just like I do every night before I go to bed
@@ -79,7 +92,6 @@ public class CompositeDynamicResourceHandler implements DynamicResourceHandler
                                                                                 .stream()
                                                                                 .filter(perm -> perm.getValue().contains("zombie"))
                                                                                 .count() > 0)
-                                                         .orElseGet(() -> (Boolean) ctx.args.getOrDefault(ConfigKeys.PATTERN_INVERT,
-                                                                                                          false)));
+                                                         .orElse(invert));
     }
 }